@@ -0,0 +1,45 @@
+package com.metadatastripper.config;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+
+@Configuration
+public class MetricsConfig {
+    
+    /**
+     * Spring Boot's multipart resolver with parsing timed as image.multipart.
+     * Uploads are read and parsed here, before any interceptor or controller
+     * runs, so this is the only place the cost shows up.
+     */
+    @Bean
+    public MultipartResolver multipartResolver(MultipartProperties properties, ObservationRegistry registry) {
+        TimedMultipartResolver resolver = new TimedMultipartResolver(registry);
+        resolver.setResolveLazily(properties.isResolveLazily());
+        resolver.setStrictServletCompliance(properties.isStrictServletCompliance());
+        return resolver;
+    }
+    
+    private static class TimedMultipartResolver extends StandardServletMultipartResolver {
+        
+        private final ObservationRegistry registry;
+        
+        TimedMultipartResolver(ObservationRegistry registry) {
+            this.registry = registry;
+        }
+        
+        @Override
+        public MultipartHttpServletRequest resolveMultipart(HttpServletRequest request) throws MultipartException {
+            return Observation.createNotStarted("image.multipart", registry)
+                    .contextualName("multipart parse")
+                    .observe(() -> super.resolveMultipart(request));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.metadatastripper.config;
+
+import com.metadatastripper.dto.BatchItemResultDto;
+import com.metadatastripper.service.job.StripJob;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Hints for native images that Spring AOT can't infer on its own. Only
+ * application types live here; metadata for the JDK and libraries (ImageIO,
+ * metadata-extractor) is in META-INF/native-image, where it also applies to
+ * the native test run.
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.JsonHints.class)
+public class NativeHintsConfig {
+    
+    /**
+     * Types Jackson reads and writes outside controller responses: job state
+     * files on disk and the results file in batch ZIPs
+     */
+    static class JsonHints implements RuntimeHintsRegistrar {
+        
+        private final BindingReflectionHintsRegistrar bindings = new BindingReflectionHintsRegistrar();
+        
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            bindings.registerReflectionHints(hints.reflection(), StripJob.class, BatchItemResultDto.class);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.metadatastripper.config;
+
+import com.metadatastripper.service.stripper.StripPolicyDefinitions;
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableConfigurationProperties(StripPolicyDefinitions.class)
+public class ProcessingConfig {
+    
+    /**
+     * Bounded pool of platform threads for CPU-heavy image work (decoding,
+     * metadata parsing, batch stripping). Request threads - virtual or not -
+     * only wait on it, so slow clients never hold one of these threads and
+     * the number of concurrent decodes is capped at the pool size. Tasks
+     * carry the submitting thread's observation along, so their phase spans
+     * belong to the request's trace.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService imageProcessingExecutor(
+            @Value("${strip.processing.threads:0}") int threads) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return ContextExecutorService.wrap(
+                Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory("image-processing-")),
+                ContextSnapshotFactory.builder().build()::captureAll);
+    }
+}
@@ -0,0 +1,78 @@
+package com.metadatastripper.config;
+
+import com.metadatastripper.service.ratelimit.BucketBackend;
+import com.metadatastripper.service.ratelimit.InMemoryBucketBackend;
+import com.metadatastripper.service.ratelimit.JdbcBucketBackend;
+import com.metadatastripper.service.ratelimit.RateLimitPolicies;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Duration;
+
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties(RateLimitPolicies.class)
+public class RateLimitConfig {
+
+    /**
+     * Buckets kept in this JVM. Fine for a single instance; with several
+     * replicas each one enforces the limit on its own.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "strip.rate-limit.backend", havingValue = "memory", matchIfMissing = true)
+    public BucketBackend inMemoryBucketBackend(
+            @Value("${strip.rate-limit.max-clients:100000}") long maxClients,
+            @Value("${strip.rate-limit.idle-timeout:2m}") Duration idleTimeout) {
+        // Each client has up to three buckets per route: requests, bytes, megapixels
+        return new InMemoryBucketBackend(3 * maxClients, idleTimeout);
+    }
+
+    /**
+     * Buckets in a database shared by all replicas, so a client gets the
+     * same budget no matter which instance serves it
+     */
+    @Bean
+    @ConditionalOnProperty(name = "strip.rate-limit.backend", havingValue = "jdbc")
+    public BucketBackend jdbcBucketBackend(
+            @Value("${strip.rate-limit.jdbc.url}") String url,
+            @Value("${strip.rate-limit.jdbc.username:}") String username,
+            @Value("${strip.rate-limit.jdbc.password:}") String password,
+            @Value("${strip.rate-limit.jdbc.pool-size:4}") int poolSize,
+            @Value("${strip.rate-limit.jdbc.initialize-schema:true}") boolean initializeSchema,
+            @Value("${strip.rate-limit.idle-timeout:2m}") Duration idleTimeout,
+            @Value("${strip.rate-limit.sync.max-unsynced-tokens:0}") long maxUnsyncedTokens,
+            @Value("${strip.rate-limit.sync.max-unsynced-timeout:1s}") Duration maxUnsyncedTimeout) {
+        JdbcBucketBackend backend = new JdbcBucketBackend(
+                rateLimitDataSource(url, username, password, poolSize),
+                idleTimeout, maxUnsyncedTokens, maxUnsyncedTimeout);
+        if (initializeSchema) {
+            backend.initializeSchema();
+        }
+        return backend;
+    }
+
+    /**
+     * A small pool of its own, so the limiter never competes with anything
+     * else for connections. Not a bean: that would switch on Spring's
+     * DataSource handling for the whole application.
+     */
+    private static HikariDataSource rateLimitDataSource(String url, String username, String password, int poolSize) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("rate-limit");
+        config.setJdbcUrl(url);
+        if (!username.isEmpty()) {
+            config.setUsername(username);
+            config.setPassword(password);
+        }
+        config.setMaximumPoolSize(poolSize);
+        // Fail fast: a request waiting on the limiter is a request not served
+        config.setConnectionTimeout(Duration.ofSeconds(2).toMillis());
+        return new HikariDataSource(config);
+    }
+}
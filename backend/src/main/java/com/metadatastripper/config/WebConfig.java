@@ -14,9 +14,10 @@ public class WebConfig implements WebMvcConfigurer {
     
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        // Apply rate limiting to all image processing endpoints
+        // Apply rate limiting to all image processing endpoints. Downloads of
+        // already processed images were paid for by the process or job request.
         registry.addInterceptor(rateLimitInterceptor)
                 .addPathPatterns("/images/**")
-                        .excludePathPatterns("/images/health");
+                        .excludePathPatterns("/images/health", "/images/download/**", "/images/jobs/*/result");
     }
 }
\ No newline at end of file
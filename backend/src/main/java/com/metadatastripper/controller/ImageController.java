@@ -1,15 +1,42 @@
 package com.metadatastripper.controller;
 
 import com.metadatastripper.dto.ImageMetadataDto;
+import com.metadatastripper.dto.ProcessedImageDto;
+import com.metadatastripper.dto.StripJobDto;
+import com.metadatastripper.dto.StrippedImage;
 import com.metadatastripper.service.ImageService;
+import com.metadatastripper.service.job.JobResult;
+import com.metadatastripper.service.metadata.CompactMetadataEncoder;
+import com.metadatastripper.service.metadata.MetadataFields;
+import com.metadatastripper.service.ratelimit.UsageMeter;
+import com.metadatastripper.service.stripper.FormatSniffer;
+import com.metadatastripper.service.stripper.StripPolicy;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/images")
@@ -17,7 +44,17 @@ import org.springframework.web.multipart.MultipartFile;
 @Slf4j
 public class ImageController {
     
+    // Written by CompactMetadataEncoder, next to JSON and CBOR
+    private static final String SMILE_VALUE = "application/x-jackson-smile";
+    
     private final ImageService imageService;
+    private final ContentNegotiationManager contentNegotiationManager;
+    
+    @Value("${strip.streaming.max-upload-size:100MB}")
+    private DataSize maxStreamingUploadSize;
+    
+    @Value("${strip.upload.max-in-memory-size:10MB}")
+    private DataSize maxInMemoryUploadSize;
     
     /**
      * Health check endpoint
@@ -28,34 +65,266 @@ public class ImageController {
     }
     
     /**
-     * Extract and view metadata from an image
+     * Extract and view metadata from an image. Only the start of the file is
+     * needed: clients may send just the first few hundred KB, together with
+     * the size of the whole file. {@code fields} limits the response to some
+     * groups, e.g. "location,camera"; {@code summary} returns only which
+     * groups have data. Either one skips work on the rest.
      */
     @PostMapping(value = "/metadata", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<ImageMetadataDto> extractMetadata(
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "fileSize", required = false) Long fileSize,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestParam(value = "summary", defaultValue = "false") boolean summary) {
         log.info("Received request to extract metadata from: {}", file.getOriginalFilename());
-        ImageMetadataDto metadata = imageService.getImageMetadata(file);
+        requireInMemorySize(file);
+        ImageMetadataDto metadata = imageService.getImageMetadata(file, MetadataFields.of(fields, summary));
+        if (fileSize != null && fileSize > file.getSize()) {
+            // A range upload: report the size of the whole file
+            metadata = metadata.toBuilder().fileSize(fileSize).build();
+        }
         return ResponseEntity.ok(metadata);
     }
     
     /**
-     * Strip metadata from an image and return the cleaned image
+     * Extract metadata in the compact v2 form: each tag once, as [name,
+     * description, category], grouped by directory. JSON unless the client
+     * asks for CBOR or Smile in its Accept header. Takes the same
+     * {@code fields} and {@code summary} options as v1.
+     */
+    @PostMapping(value = "/metadata/v2", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<byte[]> extractCompactMetadata(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "fileSize", required = false) Long fileSize,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestParam(value = "summary", defaultValue = "false") boolean summary,
+            NativeWebRequest webRequest) throws HttpMediaTypeNotAcceptableException {
+        log.info("Received request to extract compact metadata from: {}", file.getOriginalFilename());
+        requireInMemorySize(file);
+        MediaType mediaType = CompactMetadataEncoder.select(contentNegotiationManager.resolveMediaTypes(webRequest));
+        long reportedSize = fileSize != null && fileSize > file.getSize() ? fileSize : file.getSize();
+        byte[] metadata = imageService.getCompactMetadata(file, MetadataFields.of(fields, summary),
+                mediaType, reportedSize);
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(metadata);
+    }
+    
+    /**
+     * Strip metadata from an image and return the cleaned image. The strip
+     * policy decides what, if anything, is kept; without one the configured
+     * default applies. Large uploads are stripped from disk and sent straight
+     * from the result file. The format is detected from the upload's content,
+     * and anything that isn't a supported image is rejected up front.
      */
     @PostMapping(value = "/strip", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<byte[]> stripMetadata(
-            @RequestParam("file") MultipartFile file) {
+    public ResponseEntity<Resource> stripMetadata(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "policy", required = false) String policy) throws IOException {
         log.info("Received request to strip metadata from: {}", file.getOriginalFilename());
         
-        byte[] cleanedImage = imageService.processImage(file);
+        StripPolicy stripPolicy = imageService.resolveStripPolicy(policy);
+        String mimeType = imageService.detectMimeType(file);
+        Resource cleanedImage;
+        if (imageService.isLargeUpload(file)) {
+            cleanedImage = imageService.processLargeImage(file, stripPolicy);
+        } else {
+            requireInMemorySize(file);
+            cleanedImage = new ByteArrayResource(imageService.processImage(file, stripPolicy));
+        }
         
         String originalFilename = file.getOriginalFilename();
         String cleanedFilename = "cleaned_" + originalFilename;
         
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType(file.getContentType()));
+        headers.setContentType(MediaType.parseMediaType(mimeType));
         headers.setContentDispositionFormData("attachment", cleanedFilename);
-        headers.setContentLength(cleanedImage.length);
+        headers.setContentLength(cleanedImage.contentLength());
         
         return new ResponseEntity<>(cleanedImage, headers, HttpStatus.OK);
     }
+    
+    /**
+     * Extract metadata and strip it in a single request. The response holds
+     * the metadata and a token to download the cleaned image with.
+     */
+    @PostMapping(value = "/process", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ProcessedImageDto> processImage(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "policy", required = false) String policy) {
+        log.info("Received request to process: {}", file.getOriginalFilename());
+        requireInMemorySize(file);
+        return ResponseEntity.ok(imageService.processAndInspectImage(file, imageService.resolveStripPolicy(policy)));
+    }
+    
+    /**
+     * Download a cleaned image produced by the process endpoint
+     */
+    @GetMapping("/download/{token}")
+    public ResponseEntity<byte[]> downloadCleanedImage(@PathVariable String token) {
+        StrippedImage image = imageService.getStrippedImage(token);
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(image.getMimeType()));
+        headers.setContentDispositionFormData("attachment", "cleaned_" + image.getFileName());
+        headers.setContentLength(image.getData().length);
+        
+        return new ResponseEntity<>(image.getData(), headers, HttpStatus.OK);
+    }
+    
+    /**
+     * Queue an image to be stripped in the background. Answers straight away
+     * with the job, whose status URL is in the Location header.
+     */
+    @PostMapping(value = "/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StripJobDto> submitJob(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "policy", required = false) String policy) {
+        log.info("Received strip job for: {}", file.getOriginalFilename());
+        if (imageService.needsDecoding(file)) {
+            requireInMemorySize(file);
+        }
+        StripJobDto job = imageService.submitJob(file, imageService.resolveStripPolicy(policy));
+        return ResponseEntity.accepted()
+                .location(URI.create("/images/jobs/" + job.getJobId()))
+                .body(job);
+    }
+    
+    /**
+     * Status of a strip job. With {@code wait} (in seconds) the response is
+     * held until the job finishes or the wait runs out, so clients can
+     * long-poll instead of asking repeatedly.
+     */
+    @GetMapping("/jobs/{jobId}")
+    public CompletableFuture<StripJobDto> getJob(
+            @PathVariable String jobId,
+            @RequestParam(value = "wait", defaultValue = "0") long waitSeconds) {
+        return imageService.getJob(jobId, Duration.ofSeconds(Math.max(0, waitSeconds)));
+    }
+    
+    /**
+     * Download the cleaned image of a finished job
+     */
+    @GetMapping("/jobs/{jobId}/result")
+    public ResponseEntity<Resource> downloadJobResult(@PathVariable String jobId) {
+        JobResult result = imageService.getJobResult(jobId);
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(result.mimeType()));
+        headers.setContentDispositionFormData("attachment", "cleaned_" + result.fileName());
+        
+        return new ResponseEntity<>(result.data(), headers, HttpStatus.OK);
+    }
+    
+    /**
+     * Strip metadata from a raw image request body. The body is filtered as
+     * it arrives and the cleaned image is streamed back, so memory use does
+     * not depend on the file size; TIFF, WebP and HEIF bodies are spooled to
+     * disk first, as they need random access, and so are BMP bodies, which
+     * are decoded under admission control. The format is sniffed from the
+     * first bytes of the body before the response starts.
+     */
+    @PostMapping(value = "/strip/stream",
+            consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "image/*"})
+    public ResponseEntity<StreamingResponseBody> stripMetadataStream(
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "policy", required = false) String policy,
+            HttpServletRequest request) throws IOException {
+        log.info("Received request to stream-strip metadata from: {}", filename);
+        
+        long maxSize = maxStreamingUploadSize.toBytes();
+        if (request.getContentLengthLong() > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+        StripPolicy stripPolicy = imageService.resolveStripPolicy(policy);
+        UsageMeter usage = usageMeter(request);
+        MeteredInputStream metered = new MeteredInputStream(
+                new SizeLimitedInputStream(request.getInputStream(), maxSize), usage);
+        PushbackInputStream input = new PushbackInputStream(metered, FormatSniffer.HEADER_LENGTH);
+        String format = imageService.detectFormat(input);
+        
+        StreamingResponseBody body = out -> {
+            try (InputStream in = input) {
+                imageService.processImage(in, format, filename, out, stripPolicy);
+            } finally {
+                metered.dimensions(format).ifPresent(dimensions -> usage.addPixels(dimensions.pixelCount()));
+            }
+        };
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(imageService.getMimeType(format)));
+        headers.setContentDispositionFormData("attachment", "cleaned_" + filename);
+        
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+    
+    /**
+     * Strip metadata from several images at once. Files are processed in
+     * parallel and the cleaned images are streamed back as a ZIP archive
+     * with a manifest.json describing the outcome for each file.
+     */
+    @PostMapping(value = "/strip/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> stripMetadataBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "policy", required = false) String policy) {
+        log.info("Received request to strip metadata from batch of {} files", files.size());
+        imageService.validateBatch(files);
+        files.forEach(this::requireInMemorySize);
+        StripPolicy stripPolicy = imageService.resolveStripPolicy(policy);
+        
+        return zipResponse(out -> imageService.processBatch(files, out, stripPolicy));
+    }
+    
+    /**
+     * Strip metadata from every image in a ZIP archive sent as the raw
+     * request body. The result is a ZIP archive like the multipart batch.
+     */
+    @PostMapping(value = "/strip/batch", consumes = "application/zip")
+    public ResponseEntity<StreamingResponseBody> stripMetadataArchive(
+            @RequestParam(value = "policy", required = false) String policy,
+            HttpServletRequest request) {
+        log.info("Received request to strip metadata from image archive");
+        
+        long maxSize = maxStreamingUploadSize.toBytes();
+        if (request.getContentLengthLong() > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+        StripPolicy stripPolicy = imageService.resolveStripPolicy(policy);
+        UsageMeter usage = usageMeter(request);
+        
+        return zipResponse(out -> {
+            try (InputStream in = new MeteredInputStream(
+                    new SizeLimitedInputStream(request.getInputStream(), maxSize), usage)) {
+                imageService.processArchive(in, out, stripPolicy, usage);
+            }
+        });
+    }
+    
+    /**
+     * The meter the rate limiter attached to a raw body request, or a
+     * detached one when the path isn't rate limited
+     */
+    private static UsageMeter usageMeter(HttpServletRequest request) {
+        return request.getAttribute(UsageMeter.ATTRIBUTE) instanceof UsageMeter meter ? meter : new UsageMeter();
+    }
+    
+    /**
+     * The multipart cap is set for the endpoints that stream uploads from
+     * disk; anything that reads a whole upload into memory keeps this lower one
+     */
+    private void requireInMemorySize(MultipartFile file) {
+        long maxSize = maxInMemoryUploadSize.toBytes();
+        if (file.getSize() > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+    }
+    
+    private ResponseEntity<StreamingResponseBody> zipResponse(StreamingResponseBody body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/zip"));
+        headers.setContentDispositionFormData("attachment", "cleaned_images.zip");
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.metadatastripper.controller;
+
+import com.metadatastripper.service.ratelimit.UsageMeter;
+import com.metadatastripper.service.stripper.ImageDimensions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Records the bytes of a raw request body in the request's usage meter, and
+ * keeps the start of the body so the image's declared dimensions can be
+ * read once it has streamed through.
+ */
+class MeteredInputStream extends FilterInputStream {
+
+    // Covers the segments in front of the JPEG frame header in all but unusual files
+    private static final int HEADER_LIMIT = 256 * 1024;
+
+    private final UsageMeter meter;
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+    MeteredInputStream(InputStream in, UsageMeter meter) {
+        super(in);
+        this.meter = meter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            meter.addBytes(1);
+            if (header.size() < HEADER_LIMIT) {
+                header.write(b);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            meter.addBytes(n);
+            header.write(b, off, Math.min(n, HEADER_LIMIT - header.size()));
+        }
+        return n;
+    }
+
+    /**
+     * Skipped bytes are read, so the header stays contiguous
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        int read = read(new byte[(int) Math.min(n, 8192)]);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * The dimensions declared in the body's header
+     *
+     * @param format the sniffed format name, e.g. "jpeg"
+     * @return the dimensions, or empty if the header wasn't read that far or
+     *         the format declares none up front
+     */
+    Optional<ImageDimensions> dimensions(String format) {
+        try {
+            return ImageDimensions.read(new ByteArrayInputStream(header.toByteArray()), format);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.metadatastripper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one file in a batch strip request, written to the
+ * manifest.json entry of the returned archive
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchItemResultDto {
+    private String fileName;
+    private boolean success;
+    private String outputName;
+    private long originalSize;
+    private long cleanedSize;
+    private String error;
+}
@@ -0,0 +1,32 @@
+package com.metadatastripper.dto;
+
+import com.drew.metadata.Metadata;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.metadatastripper.service.metadata.CompactMetadataSerializer;
+import com.metadatastripper.service.metadata.MetadataFields;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Metadata response v2. Each tag is sent once, as [name, description,
+ * category], grouped by directory, where v1 sends it both in exifData and in
+ * its group. Holds the parsed metadata; tags are only described while the
+ * response is written, see {@link CompactMetadataSerializer}.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonSerialize(using = CompactMetadataSerializer.class)
+public class CompactMetadataDto {
+    private String fileName;
+    private long fileSize;
+    private String mimeType;
+    private boolean partial;
+    private Metadata metadata;
+    
+    // The groups to write; null for all of them
+    private MetadataFields fields;
+}
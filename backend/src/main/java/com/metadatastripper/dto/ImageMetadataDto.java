@@ -8,7 +8,7 @@ import lombok.NoArgsConstructor;
 import java.util.Map;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class ImageMetadataDto {
@@ -18,6 +18,10 @@ public class ImageMetadataDto {
     private Map<String, String> exifData;
     private boolean hasMetadata;
     
+    // The upload ended before the metadata did, e.g. only the start of the
+    // file was sent, so some metadata may be missing
+    private boolean partial;
+    
     // Grouped metadata
     private MetadataGroup cameraInfo;
     private MetadataGroup locationInfo;
@@ -0,0 +1,15 @@
+package com.metadatastripper.dto;
+
+/**
+ * Lifecycle of an async strip job
+ */
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED;
+
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED;
+    }
+}
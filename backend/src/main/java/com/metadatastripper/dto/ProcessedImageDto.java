@@ -0,0 +1,20 @@
+package com.metadatastripper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedImageDto {
+    private ImageMetadataDto metadata;
+    
+    // Single-use token for GET /images/download/{token}
+    private String downloadToken;
+    private String cleanedFileName;
+    private long cleanedFileSize;
+    private long expiresInSeconds;
+}
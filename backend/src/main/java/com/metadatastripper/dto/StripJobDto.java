@@ -0,0 +1,28 @@
+package com.metadatastripper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * State of an async strip job. Once it has succeeded the cleaned image can
+ * be downloaded from GET /images/jobs/{jobId}/result until it expires.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StripJobDto {
+    private String jobId;
+    private JobStatus status;
+    private String fileName;
+    private String policy;
+    private Instant submittedAt;
+    private Instant finishedAt;
+    private Long cleanedFileSize;
+    private String error;
+    private Long expiresInSeconds;
+}
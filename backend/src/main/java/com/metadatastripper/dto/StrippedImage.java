@@ -0,0 +1,20 @@
+package com.metadatastripper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A cleaned image held server-side until the client downloads it
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StrippedImage {
+    private String fileName;
+    private String mimeType;
+    private byte[] data;
+    private ImageMetadataDto metadata;
+}
@@ -0,0 +1,7 @@
+package com.metadatastripper.exception;
+
+public class DownloadNotFoundException extends RuntimeException {
+    public DownloadNotFoundException(String message) {
+        super(message);
+    }
+}
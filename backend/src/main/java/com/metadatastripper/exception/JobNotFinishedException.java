@@ -0,0 +1,7 @@
+package com.metadatastripper.exception;
+
+public class JobNotFinishedException extends RuntimeException {
+    public JobNotFinishedException(String message) {
+        super(message);
+    }
+}
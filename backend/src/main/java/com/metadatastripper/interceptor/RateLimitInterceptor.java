@@ -1,86 +1,148 @@
 package com.metadatastripper.interceptor;
 
+import com.metadatastripper.service.MetadataStripperService;
 import com.metadatastripper.service.RateLimitService;
+import com.metadatastripper.service.ratelimit.RateLimitResult;
+import com.metadatastripper.service.ratelimit.RequestCost;
+import com.metadatastripper.service.ratelimit.UsageMeter;
+import com.metadatastripper.service.stripper.ImageDimensions;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.util.function.SingletonSupplier;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.WebUtils;
+
+import java.util.List;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class RateLimitInterceptor implements HandlerInterceptor {
     
+    // What a raw body request was charged up front, settled once it completes
+    private static final String CHARGED_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".charged";
+    
     private final RateLimitService rateLimitService;
+    private final MetadataStripperService metadataStripperService;
     
     @Override
     public boolean preHandle(HttpServletRequest request, 
                            HttpServletResponse response, 
                            Object handler) throws Exception {
         
+        // Streaming responses are dispatched a second time once they complete;
+        // the request was already counted on the initial dispatch
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        
         // Get client IP address
         String ipAddress = getClientIpAddress(request);
         
-        // Check rate limit
-        if (!rateLimitService.allowRequest(ipAddress)) {
+        // Charge the request's cost, read from the upload's image headers once
+        // the request budget has admitted it
+        SingletonSupplier<RequestCost> cost = SingletonSupplier.of(() -> measure(request));
+        RateLimitResult result = rateLimitService.tryConsume(ipAddress, path(request), cost);
+        
+        for (RateLimitResult.Budget budget : result.budgets()) {
+            String prefix = "requests".equals(budget.name())
+                    ? "X-RateLimit-"
+                    : "X-RateLimit-" + StringUtils.capitalize(budget.name()) + "-";
+            response.setHeader(prefix + "Limit", String.valueOf(budget.limit()));
+            response.setHeader(prefix + "Remaining", String.valueOf(budget.remaining()));
+        }
+        
+        if (!result.allowed()) {
             // Rate limit exceeded
+            long retryAfter = toSeconds(result.nanosToWait());
             response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
             response.setContentType("application/json");
             response.getWriter().write(
                 "{\"error\": \"Too many requests. Please try again later.\", " +
-                "\"retryAfter\": 60}"
+                "\"retryAfter\": " + retryAfter + "}"
             );
-            
-            // Add rate limit headers
-            response.setHeader("X-RateLimit-Limit", "10");
-            response.setHeader("X-RateLimit-Remaining", "0");
-            response.setHeader("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() / 1000 + 60));
-            response.setHeader("Retry-After", "60");
+            response.setHeader("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() / 1000 + retryAfter));
+            response.setHeader("Retry-After", String.valueOf(retryAfter));
             
             return false;
         }
         
-        // Add rate limit headers for successful requests
-        long remaining = rateLimitService.getRemainingTokens(ipAddress);
-        response.setHeader("X-RateLimit-Limit", "10");
-        response.setHeader("X-RateLimit-Remaining", String.valueOf(remaining));
-        
+        if (!isMultipart(request)) {
+            // The handler meters the body as it reads it
+            request.setAttribute(UsageMeter.ATTRIBUTE, new UsageMeter());
+            request.setAttribute(CHARGED_ATTRIBUTE, cost.obtain());
+        }
         return true;
     }
     
     /**
-     * Get the real client IP address (handles proxies and load balancers)
+     * Charges a raw body for what it turned out to cost. A streaming response
+     * completes on its async dispatch, so this runs once the body is done.
      */
-    private String getClientIpAddress(HttpServletRequest request) {
-        String[] headerNames = {
-            "X-Forwarded-For",
-            "X-Real-IP",
-            "Proxy-Client-IP",
-            "WL-Proxy-Client-IP",
-            "HTTP_X_FORWARDED_FOR",
-            "HTTP_X_FORWARDED",
-            "HTTP_X_CLUSTER_CLIENT_IP",
-            "HTTP_CLIENT_IP",
-            "HTTP_FORWARDED_FOR",
-            "HTTP_FORWARDED",
-            "HTTP_VIA",
-            "REMOTE_ADDR"
-        };
+    @Override
+    public void afterCompletion(HttpServletRequest request,
+                                HttpServletResponse response,
+                                Object handler,
+                                Exception ex) {
+        if (!(request.getAttribute(UsageMeter.ATTRIBUTE) instanceof UsageMeter meter)
+                || !(request.getAttribute(CHARGED_ATTRIBUTE) instanceof RequestCost charged)) {
+            return;
+        }
+        request.removeAttribute(UsageMeter.ATTRIBUTE);
+        rateLimitService.settle(getClientIpAddress(request), path(request), charged, meter.cost());
+    }
+    
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+    
+    private static boolean isMultipart(HttpServletRequest request) {
+        return WebUtils.getNativeRequest(request, MultipartHttpServletRequest.class) != null;
+    }
+    
+    /**
+     * Upload bytes and declared pixels. Multipart uploads are already parsed
+     * at this point, so their image headers can be read; a raw body is only
+     * known by its declared length until it has been processed.
+     */
+    private RequestCost measure(HttpServletRequest request) {
+        MultipartHttpServletRequest multipart = WebUtils.getNativeRequest(request, MultipartHttpServletRequest.class);
+        if (multipart == null) {
+            return new RequestCost(Math.max(0, request.getContentLengthLong()), 0);
+        }
         
-        for (String header : headerNames) {
-            String ip = request.getHeader(header);
-            if (ip != null && !ip.isEmpty() && !"unknown".equalsIgnoreCase(ip)) {
-                // X-Forwarded-For can contain multiple IPs, take the first one
-                if (ip.contains(",")) {
-                    ip = ip.split(",")[0].trim();
-                }
-                return ip;
+        long bytes = 0;
+        long pixels = 0;
+        for (List<MultipartFile> files : multipart.getMultiFileMap().values()) {
+            for (MultipartFile file : files) {
+                bytes += file.getSize();
+                pixels += metadataStripperService.readDimensions(file)
+                        .map(ImageDimensions::pixelCount)
+                        .orElse(0L);
             }
         }
-        
+        return new RequestCost(bytes, pixels);
+    }
+    
+    private static long toSeconds(long nanos) {
+        // Round up so a client that waits Retry-After is never early
+        return Math.max(1, (nanos + 999_999_999L) / 1_000_000_000L);
+    }
+    
+    /**
+     * The address the connection came from. Forwarded headers are set by the
+     * client, so they are only honoured by the container, for connections
+     * from a trusted proxy (server.forward-headers-strategy=native).
+     */
+    private String getClientIpAddress(HttpServletRequest request) {
         return request.getRemoteAddr();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,331 @@
+package com.metadatastripper.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.metadatastripper.dto.BatchItemResultDto;
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.service.metrics.ImageMetrics;
+import com.metadatastripper.service.pool.BufferPool;
+import com.metadatastripper.service.pool.PooledOutputStream;
+import com.metadatastripper.service.ratelimit.UsageMeter;
+import com.metadatastripper.service.stripper.ImageDimensions;
+import com.metadatastripper.service.stripper.StripPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Strips a batch of images on the shared processing pool and streams the results
+ * back as a ZIP archive. Entries are written in completion order as soon as
+ * each file is done, and only a bounded number of files are held in memory
+ * at once. The archive ends with a manifest.json describing every file.
+ */
+@Service
+@Slf4j
+public class BatchStripService {
+
+    private static final String MANIFEST_NAME = "manifest.json";
+    private static final BufferPool BUFFER_POOL = BufferPool.getInstance();
+
+    private final MetadataStripperService metadataStripperService;
+    private final ProcessingScheduler processingScheduler;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper;
+    private final ImageMetrics imageMetrics;
+    private final int maxFiles;
+    private final int maxInFlight;
+    private final long maxEntrySize;
+
+    public BatchStripService(
+            MetadataStripperService metadataStripperService,
+            ProcessingScheduler processingScheduler,
+            @Qualifier("imageProcessingExecutor") ExecutorService executor,
+            ObjectMapper objectMapper,
+            ImageMetrics imageMetrics,
+            @Value("${strip.batch.max-files:200}") int maxFiles,
+            @Value("${strip.batch.max-in-flight:0}") int maxInFlight,
+            @Value("${strip.batch.max-entry-size:10MB}") DataSize maxEntrySize) {
+        this.metadataStripperService = metadataStripperService;
+        this.processingScheduler = processingScheduler;
+        this.executor = executor;
+        this.objectMapper = objectMapper;
+        this.imageMetrics = imageMetrics;
+        this.maxFiles = maxFiles;
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : 2 * Runtime.getRuntime().availableProcessors();
+        this.maxEntrySize = maxEntrySize.toBytes();
+    }
+
+    /**
+     * Rejects a multipart batch before any work is started
+     */
+    public void validateBatch(List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            throw new ImageProcessingException("At least one file is required");
+        }
+        if (files.size() > maxFiles) {
+            throw new ImageProcessingException(
+                "Too many files. A batch can contain at most " + maxFiles + " files"
+            );
+        }
+    }
+
+    /**
+     * Strips uploaded files in parallel and writes a ZIP of the results.
+     * Each worker opens its own file, so nothing is buffered up front.
+     */
+    public void stripFiles(List<MultipartFile> files, OutputStream out) throws IOException {
+        stripFiles(files, out, StripPolicy.REMOVE_ALL);
+    }
+
+    /**
+     * Strips uploaded files, keeping what the policy allows
+     */
+    public void stripFiles(List<MultipartFile> files, OutputStream out, StripPolicy policy) throws IOException {
+        validateBatch(files);
+
+        try (BatchWriter writer = new BatchWriter(out, policy)) {
+            for (MultipartFile file : files) {
+                // Client-supplied names can carry paths, so they get the same treatment as archive entries
+                writer.submit(uploadName(file), file.getSize(), file);
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * Strips every image inside a ZIP archive in parallel and writes a ZIP of
+     * the results. Entries are read one at a time as workers free up.
+     */
+    public void stripArchive(InputStream archive, OutputStream out) throws IOException {
+        stripArchive(archive, out, StripPolicy.REMOVE_ALL, new UsageMeter());
+    }
+
+    /**
+     * Strips every image inside a ZIP archive, keeping what the policy allows.
+     * The pixels each entry declares are added to {@code usage}.
+     */
+    public void stripArchive(InputStream archive, OutputStream out, StripPolicy policy, UsageMeter usage)
+            throws IOException {
+        try (BatchWriter writer = new BatchWriter(out, policy);
+             ZipInputStream zip = new ZipInputStream(archive)) {
+            int count = 0;
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory() || isHiddenEntry(entry.getName())) {
+                    continue;
+                }
+                if (++count > maxFiles) {
+                    throw new ImageProcessingException(
+                        "Too many files. A batch can contain at most " + maxFiles + " files"
+                    );
+                }
+                ByteArrayResource content = new ByteArrayResource(readEntry(zip, entry));
+                usage.addPixels(metadataStripperService.readDimensions(content)
+                        .map(ImageDimensions::pixelCount)
+                        .orElse(0L));
+                writer.submit(baseName(entry.getName()), content.contentLength(), content);
+            }
+            writer.finish();
+        }
+    }
+
+    private byte[] readEntry(ZipInputStream zip, ZipEntry entry) throws IOException {
+        // The declared size is only a hint; the read itself enforces the cap
+        long expectedSize = Math.min(Math.max(entry.getSize(), 0), maxEntrySize);
+        try (PooledOutputStream buffer = new PooledOutputStream(BUFFER_POOL, expectedSize)) {
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = zip.read(chunk)) > 0) {
+                if (buffer.size() + n > maxEntrySize) {
+                    throw new ImageProcessingException("Archive entry is too large: " + entry.getName());
+                }
+                buffer.write(chunk, 0, n);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    private boolean isHiddenEntry(String name) {
+        String base = baseName(name);
+        return name.startsWith("__MACOSX/") || base.startsWith(".");
+    }
+
+    private static String uploadName(MultipartFile file) {
+        String name = file.getOriginalFilename();
+        String base = name == null ? "" : baseName(name);
+        return base.isEmpty() || base.equals("..") ? "file" : base;
+    }
+
+    private static String baseName(String name) {
+        int slash = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+        return name.substring(slash + 1);
+    }
+
+    /**
+     * Submits files to the worker pool and writes finished files to the
+     * archive. All writing happens on the calling thread; when too many files
+     * are in flight it blocks on the next completed one, which keeps memory
+     * bounded by {@code maxInFlight} cleaned images.
+     */
+    private class BatchWriter implements AutoCloseable {
+
+        private final ZipOutputStream zip;
+        private final StripPolicy policy;
+        private final CompletionService<BatchItem> completion = new ExecutorCompletionService<>(executor);
+        private final Map<Future<BatchItem>, ProcessingScheduler.Permit> pending = new HashMap<>();
+        private final List<BatchItemResultDto> results = new ArrayList<>();
+        private final Set<String> usedNames = new HashSet<>();
+        private int inFlight;
+
+        BatchWriter(OutputStream out, StripPolicy policy) {
+            this.zip = new ZipOutputStream(out);
+            this.policy = policy;
+        }
+
+        void submit(String fileName, long size, InputStreamSource input) throws IOException {
+            while (inFlight >= maxInFlight) {
+                writeNext();
+            }
+            // The batch was already accepted, so wait for capacity rather than failing
+            ProcessingScheduler.Permit permit;
+            try {
+                permit = processingScheduler.acquire(metadataStripperService.estimateMemoryCost(input, size));
+            } catch (ImageProcessingException e) {
+                // Too large to ever be admitted; the rest of the batch goes on
+                log.warn("Skipping batch file {}: {}", fileName, e.getMessage());
+                results.add(BatchItemResultDto.builder()
+                        .fileName(fileName)
+                        .originalSize(size)
+                        .success(false)
+                        .error(e.getMessage())
+                        .build());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch processing was interrupted", e);
+            }
+            pending.put(completion.submit(permit.bind(() -> strip(fileName, size, input))), permit);
+            inFlight++;
+        }
+
+        void finish() throws IOException {
+            while (inFlight > 0) {
+                writeNext();
+            }
+            writeManifest();
+            zip.finish();
+        }
+
+        private BatchItem strip(String fileName, long size, InputStreamSource input) {
+            try (PooledOutputStream cleaned = new PooledOutputStream(BUFFER_POOL, size)) {
+                String format = metadataStripperService.stripMetadata(input, fileName, cleaned, policy);
+                imageMetrics.record("batch", format, size, cleaned.size(), false);
+                return new BatchItem(fileName, size, cleaned.toByteArray(), null);
+            } catch (ImageProcessingException e) {
+                log.warn("Failed to strip batch file {}: {}", fileName, e.getMessage());
+                return new BatchItem(fileName, size, null, e.getMessage());
+            }
+        }
+
+        private void writeNext() throws IOException {
+            BatchItem item;
+            try {
+                Future<BatchItem> future = completion.take();
+                pending.remove(future);
+                item = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch processing was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Batch processing failed", e.getCause());
+            } finally {
+                inFlight--;
+            }
+
+            BatchItemResultDto.BatchItemResultDtoBuilder result = BatchItemResultDto.builder()
+                    .fileName(item.fileName())
+                    .originalSize(item.size())
+                    .success(item.data() != null)
+                    .error(item.error());
+            if (item.data() != null) {
+                String outputName = uniqueName("cleaned_" + item.fileName());
+                writeStoredEntry(outputName, item.data());
+                result.outputName(outputName).cleanedSize(item.data().length);
+            }
+            results.add(result.build());
+        }
+
+        /**
+         * Images are already compressed, so entries are stored rather than deflated
+         */
+        private void writeStoredEntry(String name, byte[] data) throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(data);
+            zip.closeEntry();
+            zip.flush();
+        }
+
+        private void writeManifest() throws IOException {
+            zip.putNextEntry(new ZipEntry(uniqueName(MANIFEST_NAME)));
+            zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(results));
+            zip.closeEntry();
+        }
+
+        private String uniqueName(String name) {
+            String candidate = name;
+            int dot = name.lastIndexOf('.');
+            String stem = dot > 0 ? name.substring(0, dot) : name;
+            String extension = dot > 0 ? name.substring(dot) : "";
+            for (int i = 1; !usedNames.add(candidate); i++) {
+                candidate = stem + "_" + i + extension;
+            }
+            return candidate;
+        }
+
+        /**
+         * Finishing the archive is the caller's job; closing only cancels work
+         * that is still running, e.g. after the client disconnected. A file
+         * that is being stripped keeps its permit until it stops.
+         */
+        @Override
+        public void close() {
+            pending.forEach((future, permit) -> {
+                future.cancel(true);
+                permit.releaseIfNotStarted();
+            });
+        }
+    }
+
+    private record BatchItem(String fileName, long size, byte[] data, String error) {
+    }
+}
@@ -0,0 +1,235 @@
+package com.metadatastripper.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.metadatastripper.dto.ImageMetadataDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Caches processing results by the content of the upload, so the same image
+ * uploaded again skips parsing and stripping.
+ *
+ * Keys are a SHA-256 of the bytes alone: the format is read from the content,
+ * so a renamed upload is the same image. A cryptographic hash is used on
+ * purpose: with a weak hash someone could craft an upload that collides with
+ * a popular image and have their output served to others.
+ * Cleaned images evicted from the heap tier spill to an optional disk tier.
+ */
+@Service
+@Slf4j
+public class ImageResultCache {
+
+    private static final String DISK_SUFFIX = ".bin";
+
+    private final boolean enabled;
+    private final Cache<String, ImageMetadataDto> metadata;
+    private final Cache<String, byte[]> compactMetadata;
+    private final Cache<String, byte[]> stripped;
+    private final Cache<String, DiskEntry> disk;
+    private final Path diskDirectory;
+
+    public ImageResultCache(
+            MeterRegistry meterRegistry,
+            @Value("${strip.cache.enabled:true}") boolean enabled,
+            @Value("${strip.cache.ttl:30m}") Duration ttl,
+            @Value("${strip.cache.metadata.max-entries:10000}") long maxMetadataEntries,
+            @Value("${strip.cache.metadata.compact.max-size:32MB}") DataSize maxCompactMetadataSize,
+            @Value("${strip.cache.stripped.max-size:128MB}") DataSize maxStrippedSize,
+            @Value("${strip.cache.disk.directory:}") String diskDirectory,
+            @Value("${strip.cache.disk.max-size:1GB}") DataSize maxDiskSize) throws IOException {
+        this.enabled = enabled;
+        this.diskDirectory = enabled && !diskDirectory.isBlank() ? prepareDirectory(Path.of(diskDirectory)) : null;
+
+        this.metadata = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxMetadataEntries)
+                .recordStats()
+                .build();
+
+        this.compactMetadata = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumWeight(maxCompactMetadataSize.toBytes())
+                .weigher((String key, byte[] body) -> body.length)
+                .recordStats()
+                .build();
+
+        this.disk = this.diskDirectory == null ? null : Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumWeight(maxDiskSize.toBytes())
+                .weigher((String key, DiskEntry entry) -> entry.size())
+                // Synchronous, so a file is never deleted after being rewritten for the same key
+                .evictionListener((String key, DiskEntry entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        deleteQuietly(entry.path());
+                    }
+                })
+                .recordStats()
+                .build();
+
+        this.stripped = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumWeight(maxStrippedSize.toBytes())
+                .weigher((String key, byte[] data) -> data.length)
+                .evictionListener((String key, byte[] data, RemovalCause cause) -> {
+                    if (cause == RemovalCause.SIZE && key != null && data != null) {
+                        spillToDisk(key, data);
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, metadata, "imageMetadata");
+        CaffeineCacheMetrics.monitor(meterRegistry, compactMetadata, "imageMetadataCompact");
+        CaffeineCacheMetrics.monitor(meterRegistry, stripped, "strippedImages");
+        if (disk != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, disk, "strippedImagesDisk");
+        }
+    }
+
+    /**
+     * Computes the cache key of an upload, or null when caching is disabled
+     */
+    public String keyOf(MultipartFile file) {
+        if (!enabled) {
+            return null;
+        }
+
+        try (InputStream in = file.getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            log.warn("Could not hash upload {}, skipping the cache: {}", file.getOriginalFilename(), e.getMessage());
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public Optional<ImageMetadataDto> getMetadata(String key) {
+        return key == null ? Optional.empty() : Optional.ofNullable(metadata.getIfPresent(key));
+    }
+
+    public void putMetadata(String key, ImageMetadataDto value) {
+        if (key != null) {
+            metadata.put(key, value);
+        }
+    }
+
+    /**
+     * Returns an encoded compact metadata body, see
+     * {@link com.metadatastripper.service.metadata.CompactMetadataEncoder}
+     */
+    public Optional<byte[]> getCompactMetadata(String key) {
+        return key == null ? Optional.empty() : Optional.ofNullable(compactMetadata.getIfPresent(key));
+    }
+
+    public void putCompactMetadata(String key, byte[] body) {
+        if (key != null) {
+            compactMetadata.put(key, body);
+        }
+    }
+
+    /**
+     * Returns cleaned image bytes from the heap tier, or failing that the disk tier
+     */
+    public Optional<byte[]> getStripped(String key) {
+        if (key == null) {
+            return Optional.empty();
+        }
+
+        byte[] data = stripped.getIfPresent(key);
+        if (data != null || disk == null) {
+            return Optional.ofNullable(data);
+        }
+
+        DiskEntry entry = disk.getIfPresent(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Files.readAllBytes(entry.path()));
+        } catch (IOException e) {
+            log.warn("Dropping unreadable cache file {}: {}", entry.path(), e.getMessage());
+            disk.invalidate(key);
+            deleteQuietly(entry.path());
+            return Optional.empty();
+        }
+    }
+
+    public void putStripped(String key, byte[] data) {
+        if (key != null) {
+            stripped.put(key, data);
+        }
+    }
+
+    /**
+     * Runs pending evictions now rather than on the next cache operation
+     */
+    void cleanUp() {
+        stripped.cleanUp();
+        metadata.cleanUp();
+        compactMetadata.cleanUp();
+        if (disk != null) {
+            disk.cleanUp();
+        }
+    }
+
+    private void spillToDisk(String key, byte[] data) {
+        if (disk == null) {
+            return;
+        }
+        Path path = diskDirectory.resolve(key + DISK_SUFFIX);
+        try {
+            Files.write(path, data);
+            disk.put(key, new DiskEntry(path, data.length));
+        } catch (IOException e) {
+            log.warn("Could not spill cached image to {}: {}", path, e.getMessage());
+            deleteQuietly(path);
+        }
+    }
+
+    /**
+     * The disk index lives in memory, so files left by a previous run are orphans
+     */
+    private static Path prepareDirectory(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*" + DISK_SUFFIX)) {
+            leftovers.forEach(ImageResultCache::deleteQuietly);
+        }
+        return directory;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cache file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private record DiskEntry(Path path, int size) {
+    }
+}
@@ -1,31 +1,418 @@
 package com.metadatastripper.service;
 
 import com.metadatastripper.dto.ImageMetadataDto;
+import com.metadatastripper.dto.ProcessedImageDto;
+import com.metadatastripper.dto.StripJobDto;
+import com.metadatastripper.dto.StrippedImage;
+import com.metadatastripper.exception.DownloadNotFoundException;
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.service.job.JobResult;
+import com.metadatastripper.service.job.StripJob;
+import com.metadatastripper.service.job.StripJobService;
+import com.metadatastripper.service.metadata.CompactMetadataEncoder;
+import com.metadatastripper.service.metadata.MetadataFields;
+import com.metadatastripper.service.metrics.CountingInputStream;
+import com.metadatastripper.service.metrics.CountingOutputStream;
+import com.metadatastripper.service.metrics.ImageMetrics;
+import com.metadatastripper.service.ratelimit.UsageMeter;
+import com.metadatastripper.service.spool.SpooledFileResource;
+import com.metadatastripper.service.spool.UploadSpool;
+import com.metadatastripper.service.stripper.StripPolicy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ImageService {
     
+    // Heap a spooled strip needs whatever the file size: the read and write buffers
+    private static final long SPOOLED_STRIP_MEMORY_COST = 128 * 1024;
+    
     private final MetadataStripperService metadataStripperService;
+    private final StrippedImageStore strippedImageStore;
+    private final BatchStripService batchStripService;
+    private final ProcessingScheduler processingScheduler;
+    private final ImageResultCache resultCache;
+    private final StripPolicyRegistry stripPolicyRegistry;
+    private final UploadSpool uploadSpool;
+    private final StripJobService stripJobService;
+    private final ImageMetrics imageMetrics;
+    private final CompactMetadataEncoder compactMetadataEncoder;
     
     /**
      * Orchestrates the metadata extraction process
      */
     public ImageMetadataDto getImageMetadata(MultipartFile file) {
+        return getImageMetadata(file, MetadataFields.ALL);
+    }
+    
+    /**
+     * Extracts the requested metadata groups, from the cache when the same
+     * bytes were seen with the same selection before
+     */
+    public ImageMetadataDto getImageMetadata(MultipartFile file, MetadataFields fields) {
         log.info("Extracting metadata from file: {}", file.getOriginalFilename());
-        return metadataStripperService.extractMetadata(file);
+        String key = metadataKey(resultCache.keyOf(file), fields);
+        Optional<ImageMetadataDto> cached = resultCache.getMetadata(key);
+        if (cached.isPresent()) {
+            imageMetrics.record("metadata", formatOf(file), file.getSize(), -1, true);
+            return forUpload(cached.get(), file);
+        }
+        
+        ImageMetadataDto metadata = processingScheduler.execute(file.getSize(),
+                () -> metadataStripperService.extractMetadata(file, fields));
+        resultCache.putMetadata(key, metadata);
+        imageMetrics.record("metadata", formatOf(file), file.getSize(), -1, false);
+        return metadata;
+    }
+    
+    /**
+     * Returns the compact (v2) response for the requested metadata groups,
+     * encoded in the given media type. The part that depends on the image's
+     * content is cached encoded, so a repeated upload is neither parsed nor
+     * described again; only the file name and size are written per request.
+     *
+     * @param fileSize the size to report, which may be larger than the upload
+     */
+    public byte[] getCompactMetadata(MultipartFile file, MetadataFields fields, MediaType mediaType, long fileSize) {
+        log.info("Extracting compact metadata from file: {}", file.getOriginalFilename());
+        String key = compactKey(metadataKey(resultCache.keyOf(file), fields), mediaType);
+        Optional<byte[]> cached = resultCache.getCompactMetadata(key);
+        byte[] body;
+        if (cached.isPresent()) {
+            imageMetrics.record("metadata", formatOf(file), file.getSize(), -1, true);
+            body = cached.get();
+        } else {
+            body = processingScheduler.execute(file.getSize(), () -> compactMetadataEncoder.encodeBody(
+                    metadataStripperService.extractCompactMetadata(file, fields), mediaType));
+            resultCache.putCompactMetadata(key, body);
+            imageMetrics.record("metadata", formatOf(file), file.getSize(), -1, false);
+        }
+        return compactMetadataEncoder.encode(file.getOriginalFilename(), fileSize, body, mediaType);
+    }
+    
+    /**
+     * Returns the named strip policy, or the default one when no name is given
+     */
+    public StripPolicy resolveStripPolicy(String name) {
+        return stripPolicyRegistry.resolve(name);
     }
     
     /**
      * Orchestrates the metadata stripping process
      */
-    public byte[] processImage(MultipartFile file) {
+    public byte[] processImage(MultipartFile file, StripPolicy policy) {
         log.info("Processing image to strip metadata: {}", file.getOriginalFilename());
-        return metadataStripperService.stripMetadata(file);
+        String key = strippedKey(resultCache.keyOf(file), policy);
+        Optional<byte[]> cached = resultCache.getStripped(key);
+        if (cached.isPresent()) {
+            imageMetrics.record("strip", formatOf(file), file.getSize(), cached.get().length, true);
+            return cached.get();
+        }
+        
+        byte[] cleaned = processingScheduler.execute(metadataStripperService.estimateMemoryCost(file),
+                () -> metadataStripperService.stripMetadata(file, policy));
+        resultCache.putStripped(key, cleaned);
+        imageMetrics.record("strip", formatOf(file), file.getSize(), cleaned.length, false);
+        return cleaned;
+    }
+    
+    /**
+     * True when an upload should be stripped from disk rather than memory.
+     * Formats that have to be decoded never qualify: the bitmap needs the
+     * heap anyway.
+     */
+    public boolean isLargeUpload(MultipartFile file) {
+        return uploadSpool.shouldSpool(file) && metadataStripperService.canStripWithoutDecoding(file);
+    }
+    
+    /**
+     * True when an upload has to be decoded and re-encoded, which holds the
+     * whole image in memory
+     */
+    public boolean needsDecoding(MultipartFile file) {
+        return !metadataStripperService.canStripWithoutDecoding(file);
+    }
+    
+    /**
+     * Strips a large upload without holding it on the heap. The upload is
+     * moved to the spool, stripped from a memory mapping into a result file,
+     * and the result is deleted once it has been sent. Large results skip the
+     * result cache, where they would evict many small ones.
+     */
+    public Resource processLargeImage(MultipartFile file, StripPolicy policy) {
+        String filename = file.getOriginalFilename();
+        log.info("Processing large image from disk: {}", filename);
+        
+        long size = file.getSize();
+        Path input = null;
+        Path output = uploadSpool.newOutput();
+        try {
+            input = uploadSpool.spool(file);
+            Path spooled = input;
+            String format = processingScheduler.execute(SPOOLED_STRIP_MEMORY_COST,
+                    () -> metadataStripperService.stripMetadata(spooled, filename, output, policy));
+            imageMetrics.record("strip", format, size, Files.size(output), false);
+            return new SpooledFileResource(output);
+        } catch (IOException e) {
+            UploadSpool.deleteQuietly(output);
+            throw new ImageProcessingException("Failed to read upload", e);
+        } catch (RuntimeException e) {
+            UploadSpool.deleteQuietly(output);
+            throw e;
+        } finally {
+            if (input != null) {
+                UploadSpool.deleteQuietly(input);
+            }
+        }
+    }
+    
+    /**
+     * Orchestrates the combined extraction and stripping process. The cleaned
+     * image is kept briefly so the client can download it without uploading
+     * the file a second time.
+     */
+    public ProcessedImageDto processAndInspectImage(MultipartFile file, StripPolicy policy) {
+        log.info("Extracting and stripping metadata from file: {}", file.getOriginalFilename());
+        StrippedImage stripped = extractAndStrip(file, policy);
+        String token = strippedImageStore.save(stripped);
+        
+        return ProcessedImageDto.builder()
+                .metadata(stripped.getMetadata())
+                .downloadToken(token)
+                .cleanedFileName("cleaned_" + stripped.getFileName())
+                .cleanedFileSize(stripped.getData().length)
+                .expiresInSeconds(strippedImageStore.getTtl().toSeconds())
+                .build();
+    }
+    
+    /**
+     * Returns the combined result from the cache when both halves are there,
+     * otherwise processes the upload and caches both
+     */
+    private StrippedImage extractAndStrip(MultipartFile file, StripPolicy policy) {
+        String key = resultCache.keyOf(file);
+        Optional<ImageMetadataDto> cachedMetadata = resultCache.getMetadata(key);
+        Optional<byte[]> cachedData = resultCache.getStripped(strippedKey(key, policy));
+        if (cachedMetadata.isPresent() && cachedData.isPresent()) {
+            imageMetrics.record("process", formatOf(file), file.getSize(), cachedData.get().length, true);
+            return StrippedImage.builder()
+                    .fileName(file.getOriginalFilename())
+                    .mimeType(cachedMetadata.get().getMimeType())
+                    .data(cachedData.get())
+                    .metadata(forUpload(cachedMetadata.get(), file))
+                    .build();
+        }
+        
+        StrippedImage stripped = processingScheduler.execute(
+                metadataStripperService.estimateMemoryCost(file) + file.getSize(),
+                () -> metadataStripperService.extractAndStripMetadata(file, policy));
+        resultCache.putMetadata(key, stripped.getMetadata());
+        resultCache.putStripped(strippedKey(key, policy), stripped.getData());
+        imageMetrics.record("process", formatOf(file), file.getSize(), stripped.getData().length, false);
+        return stripped;
+    }
+    
+    /**
+     * Each selection of fields produces a different response; a full one
+     * shares the key used by {@link #processAndInspectImage}
+     */
+    private String metadataKey(String key, MetadataFields fields) {
+        String selection = fields.key();
+        return key == null || selection.isEmpty() ? key : key + "?" + selection;
+    }
+    
+    /**
+     * Each media type is cached as its own encoding
+     */
+    private String compactKey(String key, MediaType mediaType) {
+        return key == null ? null : key + "#" + mediaType.getSubtype();
+    }
+    
+    /**
+     * Each policy produces different output from the same upload
+     */
+    private String strippedKey(String key, StripPolicy policy) {
+        return key == null ? null : key + "." + policy.getName();
+    }
+    
+    /**
+     * The upload's format as a metrics tag, read from its first bytes
+     */
+    private String formatOf(MultipartFile file) {
+        return metadataStripperService.identifyFormat(file).orElse(null);
+    }
+    
+    /**
+     * Cached metadata may come from someone else's upload of the same bytes,
+     * so the file name is replaced with this request's. The MIME type was
+     * detected from those bytes and still holds.
+     */
+    private ImageMetadataDto forUpload(ImageMetadataDto cached, MultipartFile file) {
+        return cached.toBuilder()
+                .fileName(file.getOriginalFilename())
+                .build();
+    }
+    
+    /**
+     * Returns a cleaned image produced by {@link #processAndInspectImage}.
+     * Each token can only be used once.
+     */
+    public StrippedImage getStrippedImage(String token) {
+        return strippedImageStore.take(token)
+                .orElseThrow(() -> new DownloadNotFoundException(
+                    "Download not found. It may have expired or already been downloaded."
+                ));
+    }
+    
+    /**
+     * Orchestrates the streaming metadata stripping process. Streamed
+     * container formats stay on the request thread: they are bound by the
+     * client's upload speed, not by CPU or memory. Formats that need random
+     * access or decoding are spooled to disk first, then stripped on the
+     * processing pool once admitted.
+     *
+     * @param format the format sniffed from the start of {@code in}
+     */
+    public void processImage(InputStream in, String format, String filename, OutputStream out, StripPolicy policy) {
+        log.info("Streaming image to strip metadata: {}", filename);
+        CountingInputStream countedIn = new CountingInputStream(in);
+        CountingOutputStream countedOut = new CountingOutputStream(out);
+        String stripped = metadataStripperService.isContainerFormat(format)
+                && !metadataStripperService.needsRandomAccess(format)
+                ? metadataStripperService.stripMetadata(countedIn, filename, countedOut, policy)
+                : processSpooledStream(countedIn, format, filename, countedOut, policy);
+        imageMetrics.record("strip-stream", stripped, countedIn.getCount(), countedOut.getCount(), false);
+    }
+    
+    private String processSpooledStream(InputStream in, String format, String filename, OutputStream out,
+                                        StripPolicy policy) {
+        Path input = null;
+        Path output = uploadSpool.newOutput();
+        try {
+            input = uploadSpool.spool(in);
+            Path spooled = input;
+            long memoryCost = metadataStripperService.isContainerFormat(format)
+                    ? SPOOLED_STRIP_MEMORY_COST
+                    : metadataStripperService.estimateMemoryCost(new FileSystemResource(spooled), Files.size(spooled));
+            String stripped = processingScheduler.execute(memoryCost,
+                    () -> metadataStripperService.stripMetadata(spooled, filename, output, policy));
+            Files.copy(output, out);
+            return stripped;
+        } catch (IOException e) {
+            throw new ImageProcessingException("Failed to read upload", e);
+        } finally {
+            if (input != null) {
+                UploadSpool.deleteQuietly(input);
+            }
+            UploadSpool.deleteQuietly(output);
+        }
+    }
+    
+    /**
+     * Orchestrates stripping a batch of uploaded files into a ZIP archive
+     */
+    public void processBatch(List<MultipartFile> files, OutputStream out, StripPolicy policy) throws IOException {
+        log.info("Processing batch of {} images to strip metadata", files.size());
+        batchStripService.stripFiles(files, out, policy);
+    }
+    
+    /**
+     * Orchestrates stripping every image in a ZIP archive into a new archive
+     */
+    public void processArchive(InputStream archive, OutputStream out, StripPolicy policy, UsageMeter usage)
+            throws IOException {
+        log.info("Processing image archive to strip metadata");
+        batchStripService.stripArchive(archive, out, policy, usage);
+    }
+    
+    /**
+     * Queues an upload to be stripped in the background
+     */
+    public StripJobDto submitJob(MultipartFile file, StripPolicy policy) {
+        log.info("Submitting strip job for: {}", file.getOriginalFilename());
+        return toDto(stripJobService.submit(file, policy));
+    }
+    
+    /**
+     * Returns a job's state, waiting up to {@code wait} for it to finish
+     */
+    public CompletableFuture<StripJobDto> getJob(String jobId, Duration wait) {
+        return stripJobService.await(jobId, wait).thenApply(this::toDto);
+    }
+    
+    /**
+     * Returns the cleaned image of a finished job. It can be downloaded
+     * again until the job expires.
+     */
+    public JobResult getJobResult(String jobId) {
+        return stripJobService.result(jobId);
+    }
+    
+    private StripJobDto toDto(StripJob job) {
+        StripJobDto.StripJobDtoBuilder dto = StripJobDto.builder()
+                .jobId(job.id())
+                .status(job.status())
+                .fileName(job.fileName())
+                .policy(job.policy())
+                .submittedAt(job.submittedAt())
+                .finishedAt(job.finishedAt())
+                .error(job.error());
+        if (job.resultSize() >= 0) {
+            dto.cleanedFileSize(job.resultSize());
+        }
+        if (job.finishedAt() != null) {
+            Duration left = Duration.between(Instant.now(), job.finishedAt().plus(stripJobService.getResultTtl()));
+            dto.expiresInSeconds(Math.max(0, left.toSeconds()));
+        }
+        return dto.build();
+    }
+    
+    /**
+     * Rejects an invalid batch before the response starts streaming
+     */
+    public void validateBatch(List<MultipartFile> files) {
+        batchStripService.validateBatch(files);
+    }
+    
+    /**
+     * Identifies a streamed image from its first bytes, rejecting anything
+     * unsupported before the rest is read. The bytes are pushed back.
+     */
+    public String detectFormat(PushbackInputStream in) throws IOException {
+        return metadataStripperService.detectFormat(in);
+    }
+    
+    /**
+     * Returns the MIME type of an upload as detected from its content,
+     * rejecting anything that isn't a supported image
+     */
+    public String detectMimeType(MultipartFile file) {
+        return metadataStripperService.getMimeType(metadataStripperService.detectFormat(file));
+    }
+    
+    /**
+     * Returns the MIME type of a supported image format
+     */
+    public String getMimeType(String format) {
+        return metadataStripperService.getMimeType(format);
     }
 }
\ No newline at end of file
@@ -1,19 +1,52 @@
 package com.metadatastripper.service;
 
+import com.drew.imaging.FileType;
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.imaging.ImageProcessingException;
+import com.drew.imaging.jpeg.JpegMetadataReader;
 import com.drew.metadata.Directory;
 import com.drew.metadata.Metadata;
 import com.drew.metadata.Tag;
+import com.drew.metadata.file.FileTypeDirectory;
+import com.metadatastripper.dto.CompactMetadataDto;
 import com.metadatastripper.dto.ImageMetadataDto;
+import com.metadatastripper.dto.StrippedImage;
+import com.metadatastripper.service.metadata.JpegReaderSelection;
+import com.metadatastripper.service.metadata.MetadataFields;
+import com.metadatastripper.service.metadata.TagClassifier;
+import com.metadatastripper.service.pool.BufferPool;
+import com.metadatastripper.service.pool.ImageCodecPool;
+import com.metadatastripper.service.pool.PooledOutputStream;
+import com.metadatastripper.service.spool.MappedInputStream;
+import com.metadatastripper.service.stripper.FormatSniffer;
+import com.metadatastripper.service.stripper.FormatStripper;
+import com.metadatastripper.service.stripper.ImageDimensions;
+import com.metadatastripper.service.stripper.MetadataPrefix;
+import com.metadatastripper.service.stripper.RandomAccessStripper;
+import com.metadatastripper.service.stripper.StreamingStripper;
+import com.metadatastripper.service.stripper.StripPolicy;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -21,183 +54,696 @@ import java.util.stream.Collectors;
 @Slf4j
 public class MetadataStripperService {
     
-    private static final String[] SUPPORTED_FORMATS = {"jpg", "jpeg", "png", "gif", "bmp"};
+    // Batches the strippers' small writes into few file writes
+    private static final int FILE_OUTPUT_BUFFER_SIZE = 64 * 1024;
     
-    // Keywords for categorizing metadata
-    private static final Set<String> CAMERA_KEYWORDS = new HashSet<>(Arrays.asList(
-        "camera", "make", "model", "lens", "focal", "aperture", "iso", "shutter", 
-        "exposure", "flash", "metering", "white balance", "f-number", "f-stop",
-        "manufacturer", "brightness", "contrast", "saturation", "sharpness"
-    ));
+    // Heap per byte of input assumed for decoded formats whose header can't be read
+    private static final int DECODE_EXPANSION_FACTOR = 10;
     
-    private static final Set<String> LOCATION_KEYWORDS = new HashSet<>(Arrays.asList(
-        "gps", "latitude", "longitude", "altitude", "location", "coordinates",
-        "geo", "position", "place"
-    ));
+    // Maps each tag to its group without scanning keywords per tag
+    private static final TagClassifier TAG_CLASSIFIER = TagClassifier.getInstance();
     
-    private static final Set<String> DATETIME_KEYWORDS = new HashSet<>(Arrays.asList(
-        "date", "time", "timestamp", "created", "modified", "digitized", 
-        "datetime", "original", "offset"
-    ));
+    // Output buffers and ImageIO codecs are reused across requests
+    private static final BufferPool BUFFER_POOL = BufferPool.getInstance();
+    private static final ImageCodecPool CODEC_POOL = ImageCodecPool.getInstance();
     
-    private static final Set<String> IMAGE_KEYWORDS = new HashSet<>(Arrays.asList(
-        "width", "height", "resolution", "dimension", "dpi", "orientation",
-        "color space", "bits per sample", "compression", "photometric",
-        "pixel", "image", "x resolution", "y resolution", "unit"
-    ));
+    // Parse only the container prefix that holds the metadata, not the image data
+    @Value("${strip.metadata.header-only:true}")
+    private boolean headerOnly = true;
+    
+    // Times each phase as image.phase; a no-op outside the application context
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
+    
+    @Autowired(required = false)
+    public void setObservationRegistry(ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+    }
     
     /**
      * Extracts and groups metadata from an image file
      */
     public ImageMetadataDto extractMetadata(MultipartFile file) {
-        validateFile(file);
+        return extractMetadata(file, MetadataFields.ALL);
+    }
+    
+    /**
+     * Extracts the requested metadata groups from an image file. Groups that
+     * weren't requested are null in the result.
+     */
+    public ImageMetadataDto extractMetadata(MultipartFile file, MetadataFields fields) {
+        String format = validateFile(file);
         
         try {
-            Metadata metadata = ImageMetadataReader.readMetadata(file.getInputStream());
-            Map<String, String> allExifData = new HashMap<>();
+            return readMetadata(file, file, format, fields);
+        } catch (ImageProcessingException | IOException e) {
+            log.error("Error extracting metadata from file: {}", file.getOriginalFilename(), e);
+            throw new com.metadatastripper.exception.ImageProcessingException(
+                "Failed to extract metadata from image", e
+            );
+        }
+    }
+    
+    /**
+     * Extracts metadata for the compact response. The parsed directories are
+     * kept as they are; tags are described only while the response is written.
+     */
+    public CompactMetadataDto extractCompactMetadata(MultipartFile file) {
+        return extractCompactMetadata(file, MetadataFields.ALL);
+    }
+    
+    /**
+     * Extracts the requested metadata groups for the compact response
+     */
+    public CompactMetadataDto extractCompactMetadata(MultipartFile file, MetadataFields fields) {
+        String format = validateFile(file);
+        
+        try {
+            ParsedMetadata parsed = parseMetadata(file, format, fields);
+            return CompactMetadataDto.builder()
+                    .fileName(file.getOriginalFilename())
+                    .fileSize(file.getSize())
+                    .mimeType(getMimeType(format))
+                    .partial(parsed.partial())
+                    .metadata(parsed.metadata())
+                    .fields(fields)
+                    .build();
+        } catch (ImageProcessingException | IOException e) {
+            log.error("Error extracting metadata from file: {}", file.getOriginalFilename(), e);
+            throw new com.metadatastripper.exception.ImageProcessingException(
+                "Failed to extract metadata from image", e
+            );
+        }
+    }
+    
+    /**
+     * Extracts metadata and strips it from an upload in one go. The file is
+     * read and validated once, and both passes work on the same bytes.
+     */
+    public StrippedImage extractAndStripMetadata(MultipartFile file) {
+        return extractAndStripMetadata(file, StripPolicy.REMOVE_ALL);
+    }
+    
+    /**
+     * Extracts all metadata, then strips what the policy doesn't keep
+     */
+    public StrippedImage extractAndStripMetadata(MultipartFile file, StripPolicy policy) {
+        String format = validateFile(file);
+        FormatStripper stripper = policy.stripperFor(format);
+        
+        try {
+            byte[] content = file.getBytes();
+            ImageMetadataDto metadata = readMetadata(file, new ByteArrayResource(content), format, MetadataFields.ALL);
+            byte[] cleaned = stripper != null
+                    ? stripContainer(new ByteArrayResource(content), content.length, stripper, format)
+                    : reencode(new ByteArrayInputStream(content), content.length, format);
             
-            // Collect all metadata
+            log.info("Successfully extracted and stripped metadata from: {}", file.getOriginalFilename());
+            return StrippedImage.builder()
+                    .fileName(file.getOriginalFilename())
+                    .mimeType(getMimeType(format))
+                    .data(cleaned)
+                    .metadata(metadata)
+                    .build();
+            
+        } catch (ImageProcessingException | IOException e) {
+            log.error("Error processing file: {}", file.getOriginalFilename(), e);
+            throw new com.metadatastripper.exception.ImageProcessingException(
+                "Failed to process image", e
+            );
+        }
+    }
+    
+    /**
+     * Reads and groups the requested metadata of an already validated upload
+     */
+    private ImageMetadataDto readMetadata(MultipartFile file, InputStreamSource content, String format,
+            MetadataFields fields) throws ImageProcessingException, IOException {
+        ParsedMetadata parsed = parseMetadata(content, format, fields);
+        Metadata metadata = parsed.metadata();
+        boolean[] found = new boolean[TagClassifier.Category.values().length];
+        
+        // Linked maps keep tags in file order, so the response is deterministic
+        Map<String, String> allExifData = new LinkedHashMap<>();
+        Map<String, String> cameraData = new LinkedHashMap<>();
+        Map<String, String> locationData = new LinkedHashMap<>();
+        Map<String, String> dateTimeData = new LinkedHashMap<>();
+        Map<String, String> imageData = new LinkedHashMap<>();
+        Map<String, String> otherData = new LinkedHashMap<>();
+        
+        // Collect and group all metadata in one pass
+        phase("classify", format).observe(() -> {
             for (Directory directory : metadata.getDirectories()) {
                 for (Tag tag : directory.getTags()) {
+                    TagClassifier.Category category = TAG_CLASSIFIER.classify(directory, tag.getTagType());
+                    if (!fields.includes(category)) {
+                        continue;
+                    }
+                    found[category.ordinal()] = true;
+                    if (fields.summary()) {
+                        continue;
+                    }
+                    
+                    // Formatting a description is the costly part, so only returned tags get one
                     String key = directory.getName() + " - " + tag.getTagName();
-                    allExifData.put(key, tag.getDescription());
+                    String value = tag.getDescription();
+                    allExifData.put(key, value);
+                    
+                    Map<String, String> group = switch (category) {
+                        case CAMERA -> cameraData;
+                        case LOCATION -> locationData;
+                        case DATE_TIME -> dateTimeData;
+                        case IMAGE -> imageData;
+                        case OTHER -> otherData;
+                    };
+                    group.put(key, value);
                 }
             }
-            
-            // Group metadata
-            Map<String, String> cameraData = new LinkedHashMap<>();
-            Map<String, String> locationData = new LinkedHashMap<>();
-            Map<String, String> dateTimeData = new LinkedHashMap<>();
-            Map<String, String> imageData = new LinkedHashMap<>();
-            Map<String, String> otherData = new LinkedHashMap<>();
-            
-            for (Map.Entry<String, String> entry : allExifData.entrySet()) {
-                String key = entry.getKey();
-                String value = entry.getValue();
-                String lowerKey = key.toLowerCase();
-                
-                if (containsAny(lowerKey, CAMERA_KEYWORDS)) {
-                    cameraData.put(key, value);
-                } else if (containsAny(lowerKey, LOCATION_KEYWORDS)) {
-                    locationData.put(key, value);
-                } else if (containsAny(lowerKey, DATETIME_KEYWORDS)) {
-                    dateTimeData.put(key, value);
-                } else if (containsAny(lowerKey, IMAGE_KEYWORDS)) {
-                    imageData.put(key, value);
-                } else {
-                    otherData.put(key, value);
+        });
+        
+        return ImageMetadataDto.builder()
+                .fileName(file.getOriginalFilename())
+                .fileSize(file.getSize())
+                .mimeType(getMimeType(format))
+                .exifData(allExifData)
+                .hasMetadata(anyFound(found))
+                .partial(parsed.partial())
+                .cameraInfo(createMetadataGroup(fields, TagClassifier.Category.CAMERA, found,
+                        "Camera Information", cameraData))
+                .locationInfo(createMetadataGroup(fields, TagClassifier.Category.LOCATION, found,
+                        "Location Information", locationData))
+                .dateTimeInfo(createMetadataGroup(fields, TagClassifier.Category.DATE_TIME, found,
+                        "Date & Time Information", dateTimeData))
+                .imageInfo(createMetadataGroup(fields, TagClassifier.Category.IMAGE, found,
+                        "Image Properties", imageData))
+                .otherInfo(createMetadataGroup(fields, TagClassifier.Category.OTHER, found,
+                        "Other Metadata", otherData))
+                .build();
+    }
+    
+    /**
+     * Parses the metadata of an already validated upload, reading only the
+     * header when the format allows
+     */
+    private ParsedMetadata parseMetadata(InputStreamSource content, String format, MetadataFields fields)
+            throws ImageProcessingException, IOException {
+        Optional<MetadataPrefix> prefix = Optional.empty();
+        Metadata metadata;
+        
+        // Two checked exception types, so this phase can't use observeChecked
+        Observation parse = phase("parse", format).start();
+        try (Observation.Scope scope = parse.openScope()) {
+            if (headerOnly) {
+                try (InputStream in = content.getInputStream()) {
+                    prefix = MetadataPrefix.read(in, format);
                 }
             }
             
-            return ImageMetadataDto.builder()
-                    .fileName(file.getOriginalFilename())
-                    .fileSize(file.getSize())
-                    .mimeType(file.getContentType())
-                    .exifData(allExifData)
-                    .hasMetadata(!allExifData.isEmpty())
-                    .cameraInfo(createMetadataGroup("Camera Information", cameraData))
-                    .locationInfo(createMetadataGroup("Location Information", locationData))
-                    .dateTimeInfo(createMetadataGroup("Date & Time Information", dateTimeData))
-                    .imageInfo(createMetadataGroup("Image Properties", imageData))
-                    .otherInfo(createMetadataGroup("Other Metadata", otherData))
-                    .build();
-                    
-        } catch (ImageProcessingException | IOException e) {
-            log.error("Error extracting metadata from file: {}", file.getOriginalFilename(), e);
-            throw new com.metadatastripper.exception.ImageProcessingException(
-                "Failed to extract metadata from image", e
-            );
+            if (prefix.isPresent()) {
+                metadata = parseMetadata(new ByteArrayInputStream(prefix.get().data()), format, fields);
+            } else {
+                try (InputStream in = content.getInputStream()) {
+                    metadata = parseMetadata(in, format, fields);
+                }
+            }
+        } catch (ImageProcessingException | IOException | RuntimeException e) {
+            parse.error(e);
+            throw e;
+        } finally {
+            parse.stop();
+        }
+        
+        return new ParsedMetadata(metadata, prefix.isPresent() && !prefix.get().complete());
+    }
+    
+    /**
+     * JPEG segments can be skipped per reader, so only the readers that can
+     * produce a requested group run. Other formats are parsed in full.
+     */
+    private Metadata parseMetadata(InputStream in, String format, MetadataFields fields)
+            throws ImageProcessingException, IOException {
+        if (!"jpeg".equals(format) || JpegReaderSelection.readsEverything(fields.categories())) {
+            return ImageMetadataReader.readMetadata(in);
         }
+        
+        Metadata metadata = JpegMetadataReader.readMetadata(in, JpegReaderSelection.readersFor(fields.categories()));
+        // As added by ImageMetadataReader
+        metadata.addDirectory(new FileTypeDirectory(FileType.Jpeg));
+        return metadata;
     }
     
     /**
      * Strips all metadata from an image and returns the cleaned image bytes
      */
     public byte[] stripMetadata(MultipartFile file) {
-        validateFile(file);
+        return stripMetadata(file, StripPolicy.REMOVE_ALL);
+    }
+    
+    /**
+     * Strips the metadata the policy doesn't keep. Formats without a
+     * container-level stripper are re-encoded, which removes everything.
+     */
+    public byte[] stripMetadata(MultipartFile file, StripPolicy policy) {
+        String format = validateFile(file);
+        FormatStripper stripper = policy.stripperFor(format);
         
         try {
-            // Read the image
-            BufferedImage image = ImageIO.read(file.getInputStream());
+            byte[] cleaned = stripper != null
+                    ? stripContainer(file, file.getSize(), stripper, format)
+                    : reencode(file.getInputStream(), file.getSize(), format);
             
-            if (image == null) {
-                throw new com.metadatastripper.exception.ImageProcessingException(
-                    "Unable to read image file"
-                );
+            log.info("Successfully stripped metadata from: {}", file.getOriginalFilename());
+            return cleaned;
+            
+        } catch (IOException e) {
+            log.error("Error stripping metadata from file: {}", file.getOriginalFilename(), e);
+            throw new com.metadatastripper.exception.ImageProcessingException(
+                "Failed to strip metadata from image", e
+            );
+        }
+    }
+    
+    /**
+     * Strips all metadata from an image stream, writing the cleaned image to
+     * {@code out} as it is produced. Container formats are filtered with a
+     * fixed-size buffer; other formats are decoded and re-encoded. TIFF, WebP
+     * and HEIF need random access and can't be stripped from a stream.
+     *
+     * @return the sniffed format, e.g. "jpeg"
+     */
+    public String stripMetadata(InputStream in, String filename, OutputStream out) {
+        return stripMetadata(in, filename, out, StripPolicy.REMOVE_ALL);
+    }
+    
+    /**
+     * Streaming strip that keeps what the policy allows. The format is
+     * sniffed from the first bytes; the file name is only used for logging.
+     *
+     * @return the sniffed format, e.g. "jpeg"
+     * @throws IllegalArgumentException if the format needs random access,
+     *         see {@link #needsRandomAccess}
+     */
+    public String stripMetadata(InputStream in, String filename, OutputStream out, StripPolicy policy) {
+        PushbackInputStream input = new PushbackInputStream(in, FormatSniffer.HEADER_LENGTH);
+        
+        try {
+            String format = detectFormat(input);
+            FormatStripper stripper = policy.stripperFor(format);
+            if (stripper instanceof RandomAccessStripper) {
+                throw new IllegalArgumentException("Format needs random access, strip it from a file: " + filename);
+            }
+            if (stripper instanceof StreamingStripper streaming) {
+                phase("strip", format).observeChecked(() -> {
+                    streaming.strip(input, out);
+                    return null;
+                });
+            } else {
+                BufferedImage image = decode(input, format);
+                phase("encode", format).observeChecked(() -> {
+                    encode(image, format, out);
+                    return null;
+                });
             }
             
-            // Get the format
-            String format = getImageFormat(file.getOriginalFilename());
+            log.info("Successfully stripped metadata from stream: {}", filename);
+            return format;
             
-            // Write to output stream without metadata
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(image, format, baos);
+        } catch (IOException e) {
+            log.error("Error stripping metadata from stream: {}", filename, e);
+            throw new com.metadatastripper.exception.ImageProcessingException(
+                "Failed to strip metadata from image", e
+            );
+        }
+    }
+    
+    /**
+     * Strips an image already held in memory, e.g. a batch entry, writing
+     * the cleaned image to {@code out}. Unlike a stream, it can be handed
+     * whole to the formats that need random access.
+     *
+     * @return the sniffed format, e.g. "jpeg"
+     */
+    public String stripMetadata(InputStreamSource source, String filename, OutputStream out, StripPolicy policy) {
+        try {
+            Optional<String> format = sniffFormat(source);
+            if (format.isPresent() && policy.stripperFor(format.get()) instanceof RandomAccessStripper stripper) {
+                phase("strip", format.get()).observeChecked(() -> {
+                    strip(stripper, source, out);
+                    return null;
+                });
+                log.info("Successfully stripped metadata from: {}", filename);
+                return format.get();
+            }
+            try (InputStream in = source.getInputStream()) {
+                return stripMetadata(in, filename, out, policy);
+            }
             
-            log.info("Successfully stripped metadata from: {}", file.getOriginalFilename());
-            return baos.toByteArray();
+        } catch (IOException e) {
+            log.error("Error stripping metadata from: {}", filename, e);
+            throw new com.metadatastripper.exception.ImageProcessingException(
+                "Failed to strip metadata from image", e
+            );
+        }
+    }
+    
+    /**
+     * Strips a spooled upload into a file. The input is read through memory
+     * mappings and the output written through a fixed buffer, so for formats
+     * with a container-level stripper heap use does not depend on the file
+     * size. Other formats are decoded and re-encoded, which needs the whole
+     * bitmap on the heap.
+     *
+     * @return the sniffed format, e.g. "jpeg"
+     */
+    public String stripMetadata(Path input, String filename, Path output, StripPolicy policy) {
+        try (PushbackInputStream in = new PushbackInputStream(new MappedInputStream(input), FormatSniffer.HEADER_LENGTH);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), FILE_OUTPUT_BUFFER_SIZE)) {
+            String format = detectFormat(in);
+            FormatStripper stripper = policy.stripperFor(format);
+            if (stripper != null) {
+                phase("strip", format).observeChecked(() -> {
+                    switch (stripper) {
+                        case StreamingStripper streaming -> streaming.strip(in, out);
+                        case RandomAccessStripper randomAccess -> stripMapped(input, randomAccess, out);
+                    }
+                    return null;
+                });
+            } else {
+                BufferedImage image = decode(in, format);
+                phase("encode", format).observeChecked(() -> {
+                    encode(image, format, out);
+                    return null;
+                });
+            }
+            log.info("Successfully stripped metadata from spooled file: {}", filename);
+            return format;
             
         } catch (IOException e) {
-            log.error("Error stripping metadata from file: {}", file.getOriginalFilename(), e);
+            log.error("Error stripping metadata from spooled file: {}", filename, e);
             throw new com.metadatastripper.exception.ImageProcessingException(
                 "Failed to strip metadata from image", e
             );
         }
     }
     
+    /**
+     * Hands a stripper that needs random access one mapping of the whole
+     * file, so the file's pages are read by the OS rather than copied to heap
+     */
+    private void stripMapped(Path input, RandomAccessStripper stripper, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to strip: " + channel.size() + " bytes");
+            }
+            stripper.strip(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), out);
+        }
+    }
+    
+    /**
+     * Returns true when the upload is in a format that is stripped by
+     * filtering its container, which never decodes the image
+     */
+    public boolean canStripWithoutDecoding(MultipartFile file) {
+        try {
+            return sniffFormat(file).map(this::isContainerFormat).orElse(false);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * True when a format is stripped by filtering its container, which never
+     * decodes the image
+     */
+    public boolean isContainerFormat(String format) {
+        return StripPolicy.REMOVE_ALL.stripperFor(format) != null;
+    }
+    
+    /**
+     * True when a format's stripper needs random access to the whole file,
+     * so a stream of it has to be spooled before it can be stripped
+     */
+    public boolean needsRandomAccess(String format) {
+        return StripPolicy.REMOVE_ALL.stripperFor(format) instanceof RandomAccessStripper;
+    }
+    
+    /**
+     * Copies the image container while dropping its metadata, leaving the
+     * compressed pixel data untouched
+     */
+    private byte[] stripContainer(InputStreamSource source, long size, FormatStripper stripper, String format)
+            throws IOException {
+        // The output is rarely larger than the input, so a pooled buffer of
+        // the input's size holds it without growing
+        try (PooledOutputStream out = new PooledOutputStream(BUFFER_POOL, size)) {
+            return phase("strip", format).observeChecked(() -> {
+                strip(stripper, source, out);
+                return out.toByteArray();
+            });
+        }
+    }
+    
+    /**
+     * Runs a stripper over an image small enough to hold in memory. A
+     * stripper that needs random access gets the whole image as one buffer.
+     */
+    private static void strip(FormatStripper stripper, InputStreamSource source, OutputStream out)
+            throws IOException {
+        switch (stripper) {
+            case StreamingStripper streaming -> {
+                try (InputStream in = source.getInputStream()) {
+                    streaming.strip(in, out);
+                }
+            }
+            case RandomAccessStripper randomAccess -> randomAccess.strip(ByteBuffer.wrap(contentOf(source)), out);
+        }
+    }
+    
+    private static byte[] contentOf(InputStreamSource source) throws IOException {
+        if (source instanceof ByteArrayResource resource) {
+            return resource.getByteArray();
+        }
+        try (InputStream in = source.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+    
+    /**
+     * Decodes the image and writes it back out, which drops all metadata
+     * for formats without a container-level stripper
+     */
+    private byte[] reencode(InputStream input, long size, String format) throws IOException {
+        BufferedImage image;
+        try (InputStream in = input) {
+            image = decode(in, format);
+        }
+        
+        try (PooledOutputStream out = new PooledOutputStream(BUFFER_POOL, size)) {
+            return phase("encode", format).observeChecked(() -> {
+                encode(image, format, out);
+                return out.toByteArray();
+            });
+        }
+    }
+    
+    /**
+     * Encodes with a pooled writer. A decoded image can still be one the
+     * format's writer doesn't support, e.g. a colour model JPEG can't hold.
+     */
+    private void encode(BufferedImage image, String format, OutputStream out) throws IOException {
+        if (!CODEC_POOL.write(image, format, out)) {
+            throw new com.metadatastripper.exception.ImageProcessingException(
+                "Unable to write image as " + format
+            );
+        }
+    }
+    
+    /**
+     * Decodes the image with a pooled reader
+     */
+    private BufferedImage decode(InputStream in, String format) throws IOException {
+        BufferedImage image = phase("decode", format).observeChecked(() -> CODEC_POOL.read(in, format));
+        
+        if (image == null) {
+            throw new com.metadatastripper.exception.ImageProcessingException(
+                "Unable to read image file"
+            );
+        }
+        return image;
+    }
+    
+    /**
+     * An observation of one processing phase, tagged with the phase and the
+     * image format. Recorded as the image.phase timer, and as a span when
+     * tracing is on.
+     */
+    private Observation phase(String name, String format) {
+        if (observationRegistry.isNoop()) {
+            return Observation.NOOP;
+        }
+        return Observation.createNotStarted("image.phase", observationRegistry)
+                .contextualName("image " + name)
+                .lowCardinalityKeyValue("phase", name)
+                .lowCardinalityKeyValue("format", format != null ? format : "unknown");
+    }
+    
     /**
      * Creates a metadata group
      */
-    private ImageMetadataDto.MetadataGroup createMetadataGroup(String groupName, Map<String, String> data) {
+    private ImageMetadataDto.MetadataGroup createMetadataGroup(MetadataFields fields, TagClassifier.Category category,
+            boolean[] found, String groupName, Map<String, String> data) {
+        if (!fields.includes(category)) {
+            return null;
+        }
         return ImageMetadataDto.MetadataGroup.builder()
                 .groupName(groupName)
                 .data(data)
-                .hasData(!data.isEmpty())
+                .hasData(found[category.ordinal()])
                 .build();
     }
     
+    private static boolean anyFound(boolean[] found) {
+        for (boolean f : found) {
+            if (f) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
-     * Checks if the text contains any of the keywords
+     * Validates the uploaded file and identifies its format from its content
+     *
+     * @return the format name, e.g. "jpeg"
      */
-    private boolean containsAny(String text, Set<String> keywords) {
-        return keywords.stream().anyMatch(text::contains);
+    private String validateFile(MultipartFile file) {
+        Observation validate = phase("validate", null).start();
+        try (Observation.Scope scope = validate.openScope()) {
+            String format = detectFormat(file);
+            validate.lowCardinalityKeyValue("format", format);
+            return format;
+        } catch (RuntimeException e) {
+            validate.error(e);
+            throw e;
+        } finally {
+            validate.stop();
+        }
     }
     
     /**
-     * Validates the uploaded file
+     * Identifies the format of an upload from its first bytes, rejecting
+     * empty files and anything that isn't a supported image before any
+     * further work is done
+     *
+     * @return the format name, e.g. "jpeg"
      */
-    private void validateFile(MultipartFile file) {
+    public String detectFormat(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new com.metadatastripper.exception.ImageProcessingException(
                 "File cannot be empty"
             );
         }
         
-        String filename = file.getOriginalFilename();
-        if (filename == null || !isSupportedFormat(filename)) {
+        try {
+            return sniffFormat(file).orElseThrow(this::unsupportedFormat);
+        } catch (IOException e) {
             throw new com.metadatastripper.exception.ImageProcessingException(
-                "Unsupported file format. Supported formats: jpg, jpeg, png, gif, bmp"
+                "Failed to read image file", e
             );
         }
     }
     
     /**
-     * Checks if the file format is supported
+     * Identifies the format of a stream from its first bytes, which are
+     * pushed back so the stream can be read from the start. The pushback
+     * buffer must hold {@link FormatSniffer#HEADER_LENGTH} bytes.
+     *
+     * @return the format name, e.g. "jpeg"
      */
-    private boolean isSupportedFormat(String filename) {
-        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
-        for (String format : SUPPORTED_FORMATS) {
-            if (format.equals(extension)) {
-                return true;
-            }
+    public String detectFormat(PushbackInputStream in) throws IOException {
+        return FormatSniffer.peek(in).orElseThrow(this::unsupportedFormat);
+    }
+    
+    /**
+     * Identifies the format of an upload from its first bytes, without
+     * validating it
+     *
+     * @return the format name, or empty if it is unsupported or unreadable
+     */
+    public Optional<String> identifyFormat(InputStreamSource file) {
+        try {
+            return sniffFormat(file);
+        } catch (IOException e) {
+            return Optional.empty();
         }
-        return false;
+    }
+    
+    private Optional<String> sniffFormat(InputStreamSource file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return FormatSniffer.sniff(in);
+        }
+    }
+    
+    private com.metadatastripper.exception.ImageProcessingException unsupportedFormat() {
+        return new com.metadatastripper.exception.ImageProcessingException(
+            "Unsupported file format. Supported formats: jpg, jpeg, png, gif, bmp, webp, tiff, heic, heif, avif"
+        );
+    }
+    
+    /**
+     * Estimates the peak heap needed to strip an upload. Container formats
+     * need the input plus an output buffer no larger than it; decoded formats
+     * additionally need a full bitmap, sized from the declared dimensions.
+     */
+    public long estimateMemoryCost(MultipartFile file) {
+        return estimateMemoryCost(file, file.getSize());
+    }
+    
+    /**
+     * Estimates the peak heap needed to strip an image of the given size,
+     * e.g. one entry of a batch
+     */
+    public long estimateMemoryCost(InputStreamSource file, long size) {
+        Optional<String> format;
+        try {
+            format = sniffFormat(file);
+        } catch (IOException e) {
+            return size;
+        }
+        if (format.isEmpty()) {
+            return size;
+        }
+        
+        if (isContainerFormat(format.get())) {
+            return 2 * size;
+        }
+        
+        return readDimensions(file)
+                .map(dimensions -> dimensions.pixelCount() * 4 + 2 * size)
+                .orElse(DECODE_EXPANSION_FACTOR * size);
     }
     
     /**
-     * Extracts the image format from filename
+     * Reads the pixel dimensions from the upload's header without decoding it
+     *
+     * @return the declared dimensions, or empty if the format is unsupported
+     *         or the header can't be read
      */
-    private String getImageFormat(String filename) {
-        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
-        return extension.equals("jpg") ? "jpeg" : extension;
+    public Optional<ImageDimensions> readDimensions(InputStreamSource file) {
+        try (PushbackInputStream in = new PushbackInputStream(file.getInputStream(), FormatSniffer.HEADER_LENGTH)) {
+            Optional<String> format = FormatSniffer.peek(in);
+            return format.isPresent() ? ImageDimensions.read(in, format.get()) : Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * Returns the MIME type of a supported image format
+     */
+    public String getMimeType(String format) {
+        return "image/" + format;
+    }
+    
+    private record ParsedMetadata(Metadata metadata, boolean partial) {
     }
-}
\ No newline at end of file
+}
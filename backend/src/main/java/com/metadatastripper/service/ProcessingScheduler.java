@@ -0,0 +1,227 @@
+package com.metadatastripper.service;
+
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.exception.ServiceOverloadedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control in front of the image processing pool.
+ *
+ * A job is admitted only when both a concurrency slot and its estimated
+ * memory are available; a job that needs more than the whole memory budget
+ * is refused outright. Callers wait in a bounded queue for at most
+ * {@code maxWait}; when the queue is full or the wait times out the request
+ * is rejected straight away with a {@link ServiceOverloadedException}
+ * (503 + Retry-After) instead of piling up and exhausting the heap.
+ */
+@Service
+@Slf4j
+public class ProcessingScheduler {
+
+    private final ExecutorService executor;
+    private final Semaphore concurrency;
+    private final Semaphore memory;
+    private final int memoryBudgetKb;
+    private final int maxQueued;
+    private final Duration maxWait;
+    private final long retryAfterSeconds;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public ProcessingScheduler(
+            @Qualifier("imageProcessingExecutor") ExecutorService executor,
+            @Value("${strip.admission.max-concurrent:0}") int maxConcurrent,
+            @Value("${strip.processing.threads:0}") int processingThreads,
+            @Value("${strip.admission.max-queued:50}") int maxQueued,
+            @Value("${strip.admission.max-wait:10s}") Duration maxWait,
+            @Value("${strip.admission.memory-budget:512MB}") DataSize memoryBudget,
+            @Value("${strip.admission.retry-after:5s}") Duration retryAfter) {
+        int poolSize = processingThreads > 0 ? processingThreads : Runtime.getRuntime().availableProcessors();
+        this.executor = executor;
+        this.concurrency = new Semaphore(maxConcurrent > 0 ? maxConcurrent : poolSize, true);
+        this.memoryBudgetKb = (int) Math.min(Integer.MAX_VALUE, memoryBudget.toKilobytes());
+        this.memory = new Semaphore(memoryBudgetKb, true);
+        this.maxQueued = maxQueued;
+        this.maxWait = maxWait;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+    }
+
+    /**
+     * Runs a task on the processing pool once it has been admitted, rejecting
+     * it if the service is saturated. The calling thread waits for the result.
+     *
+     * @param estimatedBytes peak memory the task is expected to need
+     */
+    public <T> T execute(long estimatedBytes, Callable<T> task) {
+        Permit permit = tryAcquire(estimatedBytes);
+        Future<T> future;
+        try {
+            future = executor.submit(permit.bind(task));
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // A task that already started keeps its permit until it actually stops
+            future.cancel(true);
+            permit.releaseIfNotStarted();
+            Thread.currentThread().interrupt();
+            throw new ImageProcessingException("Image processing was interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new ImageProcessingException("Image processing failed", cause);
+        }
+    }
+
+    /**
+     * Admits a job for interactive requests: waits briefly in the bounded
+     * queue and fails fast when the service is saturated
+     */
+    public Permit tryAcquire(long estimatedBytes) {
+        int memoryPermits = memoryPermits(estimatedBytes);
+
+        // Fast path: nothing to wait for
+        if (memory.tryAcquire(memoryPermits)) {
+            if (concurrency.tryAcquire()) {
+                return new Permit(memoryPermits);
+            }
+            memory.release(memoryPermits);
+        }
+
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            throw overloaded("Server is busy processing other images. Please try again shortly.");
+        }
+        try {
+            long deadline = System.nanoTime() + maxWait.toNanos();
+            if (!memory.tryAcquire(memoryPermits, maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw overloaded("Server is busy processing other images. Please try again shortly.");
+            }
+            if (!concurrency.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                memory.release(memoryPermits);
+                throw overloaded("Server is busy processing other images. Please try again shortly.");
+            }
+            return new Permit(memoryPermits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImageProcessingException("Image processing was interrupted", e);
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Admits a job that was already accepted, e.g. the next file of a batch
+     * that is streaming its response. Waits as long as needed and does not
+     * count against the queue limit.
+     */
+    public Permit acquire(long estimatedBytes) throws InterruptedException {
+        int memoryPermits = memoryPermits(estimatedBytes);
+        memory.acquire(memoryPermits);
+        try {
+            concurrency.acquire();
+        } catch (InterruptedException e) {
+            memory.release(memoryPermits);
+            throw e;
+        }
+        return new Permit(memoryPermits);
+    }
+
+    /**
+     * Rejects a job that needs more memory than the whole budget. It could
+     * never be admitted, so it fails up front instead of waiting.
+     */
+    public void checkFits(long estimatedBytes) {
+        if (estimatedBytes / 1024 > memoryBudgetKb) {
+            throw new ImageProcessingException(
+                "Image is too large to process. It needs about " + estimatedBytes / (1024 * 1024)
+                    + "MB of memory, the limit is " + memoryBudgetKb / 1024 + "MB"
+            );
+        }
+    }
+
+    /**
+     * Memory is accounted in KB
+     */
+    private int memoryPermits(long estimatedBytes) {
+        checkFits(estimatedBytes);
+        return (int) Math.max(1, estimatedBytes / 1024);
+    }
+
+    private ServiceOverloadedException overloaded(String message) {
+        log.warn("Rejecting image processing request: {} queued, {} slots free",
+                queued.get(), concurrency.availablePermits());
+        return new ServiceOverloadedException(message, retryAfterSeconds);
+    }
+
+    /**
+     * An admitted job's share of the concurrency and memory limits; close it
+     * when the job has finished
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final int memoryPermits;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private Permit(int memoryPermits) {
+            this.memoryPermits = memoryPermits;
+        }
+
+        /**
+         * Wraps the job so it closes this permit once it has run. A job
+         * cancelled before it starts never runs; see {@link #releaseIfNotStarted}.
+         */
+        public <T> Callable<T> bind(Callable<T> task) {
+            return () -> {
+                if (!started.compareAndSet(false, true)) {
+                    throw new CancellationException();
+                }
+                try (this) {
+                    return task.call();
+                }
+            };
+        }
+
+        /**
+         * Releases the permit of a cancelled job that had not started yet. A
+         * job that did start still holds it until it returns, as cancelling
+         * only interrupts it.
+         */
+        public void releaseIfNotStarted() {
+            if (started.compareAndSet(false, true)) {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                concurrency.release();
+                memory.release(memoryPermits);
+            }
+        }
+    }
+}
@@ -1,82 +1,424 @@
 package com.metadatastripper.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.metadatastripper.service.ratelimit.BucketBackend;
+import com.metadatastripper.service.ratelimit.Ipv6Literal;
+import com.metadatastripper.service.ratelimit.RateLimitPolicies;
+import com.metadatastripper.service.ratelimit.RateLimitResult;
+import com.metadatastripper.service.ratelimit.RequestCost;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
 import io.github.bucket4j.Refill;
+import io.github.bucket4j.VerboseResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
 
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
 public class RateLimitService {
     
-    // Store buckets per IP address
-    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private static final long PIXELS_PER_MEGAPIXEL = 1_000_000;
+    
+    private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
+    
+    // Bucket state lives in the backend, which may be shared by replicas
+    private final BucketBackend backend;
+    
+    // Local bucket proxies per client and route. Bounded, and idle clients
+    // are dropped: a bucket idle for a full refill period is back to full
+    // anyway. A proxy also carries any tokens its backend lets it hand out
+    // without syncing.
+    private final Cache<String, ClientBuckets> buckets;
+    
+    // IPv6 clients are grouped by this prefix length; 128 tracks every address
+    private final int ipv6PrefixLength;
+    
+    // Configured routes in match order, then the default policy
+    private final List<Route> routes;
+    private final Route defaultRoute;
+    
+    // Outcome counters per route name, exported as ratelimit.requests
+    private final Map<String, Decisions> decisions = new HashMap<>();
+    
+    public RateLimitService(
+            MeterRegistry meterRegistry,
+            BucketBackend backend,
+            RateLimitPolicies policies,
+            @Value("${strip.rate-limit.max-clients:100000}") long maxClients,
+            @Value("${strip.rate-limit.idle-timeout:2m}") Duration idleTimeout,
+            @Value("${strip.rate-limit.ipv6-prefix-length:64}") int ipv6PrefixLength) {
+        if (ipv6PrefixLength < 1 || ipv6PrefixLength > 128) {
+            throw new IllegalArgumentException("IPv6 prefix length must be between 1 and 128");
+        }
+        if (idleTimeout.compareTo(Duration.ofMinutes(2)) < 0) {
+            // Dropping a bucket before it has refilled would reset its limit. A
+            // budget can be a minute in debt, so refilling takes up to two.
+            throw new IllegalArgumentException("Rate limit idle timeout must be at least 2 minutes, "
+                    + "the time a budget in debt takes to refill");
+        }
+        this.backend = backend;
+        this.ipv6PrefixLength = ipv6PrefixLength;
+        this.routes = new ArrayList<>();
+        for (Map.Entry<String, RateLimitPolicies.Route> route : policies.getRoutes().entrySet()) {
+            routes.add(Route.of(route.getKey(), route.getValue().getPaths(), route.getValue()));
+        }
+        this.defaultRoute = Route.of("default", List.of(), policies.getDefaults());
+        for (Route route : routes) {
+            decisions.put(route.name(), Decisions.register(meterRegistry, route.name()));
+        }
+        decisions.put(defaultRoute.name(), Decisions.register(meterRegistry, defaultRoute.name()));
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(idleTimeout)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, "rateLimitBuckets");
+    }
     
     /**
-     * Rate limit configuration:
-     * - 10 requests per minute per IP
-     * - Refills at 10 tokens per minute
+     * Maps an address to the client it is limited as. An IPv6 host usually
+     * owns a whole /64, so limiting single addresses would let one client
+     * rotate through billions of them.
      */
-    private static final int REQUESTS_PER_MINUTE = 10;
+    String clientKey(String ipAddress) {
+        if (ipAddress == null || ipAddress.indexOf(':') < 0 || ipv6PrefixLength == 128) {
+            return ipAddress;
+        }
+        // The address may come from a client header, so it is parsed as text
+        // and never handed to anything that could resolve it as a host name
+        Optional<byte[]> literal = Ipv6Literal.parse(stripZone(ipAddress));
+        if (literal.isEmpty()) {
+            return ipAddress;
+        }
+        
+        try {
+            InetAddress address = InetAddress.getByAddress(literal.get());
+            if (!(address instanceof Inet6Address)) {
+                // IPv4-mapped addresses come back as plain IPv4
+                return address.getHostAddress();
+            }
+            byte[] bytes = address.getAddress();
+            for (int bit = ipv6PrefixLength; bit < 128; bit++) {
+                bytes[bit / 8] &= (byte) ~(0x80 >>> (bit % 8));
+            }
+            return InetAddress.getByAddress(bytes).getHostAddress() + "/" + ipv6PrefixLength;
+        } catch (UnknownHostException e) {
+            return ipAddress;
+        }
+    }
+    
+    private static String stripZone(String ipAddress) {
+        String address = ipAddress.startsWith("[") && ipAddress.endsWith("]")
+                ? ipAddress.substring(1, ipAddress.length() - 1)
+                : ipAddress;
+        int zone = address.indexOf('%');
+        return zone < 0 ? address : address.substring(0, zone);
+    }
     
     /**
-     * Get or create a bucket for the given IP address
+     * Create proxies for the client's buckets on a route, one per budget.
+     * The buckets themselves are only created in the backend on first use.
      */
-    public Bucket resolveBucket(String ipAddress) {
-        return buckets.computeIfAbsent(ipAddress, this::createNewBucket);
+    private ClientBuckets createBuckets(Route route, String key) {
+        log.debug("Creating new rate limit buckets for client: {}", key);
+        
+        return new ClientBuckets(
+            proxy(key + ":requests", route.requestsConfiguration()),
+            proxy(key + ":bytes", route.bytesConfiguration()),
+            proxy(key + ":pixels", route.pixelsConfiguration()));
+    }
+    
+    private Bucket proxy(String key, BucketConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        return backend.proxyManager().builder()
+            .withOptimization(backend.optimization())
+            .build(key, () -> configuration);
+    }
+    
+    /**
+     * Charges a request to the client's budgets on the route its path
+     * matches. The request budget is checked first and the request is
+     * rejected if it is used up; otherwise the byte and megapixel budgets
+     * must not be exhausted, and are then charged the full cost even if that
+     * takes them below zero. A single request is charged at most one
+     * minute's worth, so a budget is never in debt for longer than a refill.
+     *
+     * @param path the request path, or null for the default policy
+     */
+    public RateLimitResult tryConsume(String ipAddress, String path, RequestCost cost) {
+        return tryConsume(ipAddress, path, () -> cost);
     }
     
     /**
-     * Create a new bucket with rate limiting rules
+     * Like {@link #tryConsume(String, String, RequestCost)}, but the cost is
+     * only measured once the request budget has let the request through, so
+     * a client over its request limit causes no work reading its uploads
      */
-    private Bucket createNewBucket(String ipAddress) {
-        log.info("Creating new rate limit bucket for IP: {}", ipAddress);
+    public RateLimitResult tryConsume(String ipAddress, String path, Supplier<RequestCost> cost) {
+        Route route = resolveRoute(path);
+        Decisions counters = decisions.get(route.name());
+        RateLimitResult result;
+        try {
+            ClientBuckets client = buckets.get(route.name() + ":" + clientKey(ipAddress),
+                    key -> createBuckets(route, key));
+            result = consume(route, client, cost);
+        } catch (RuntimeException e) {
+            // An unreachable bucket store shouldn't take the service down with it
+            log.warn("Rate limit check failed, allowing request from IP {}: {}", ipAddress, e.getMessage());
+            counters.unchecked().increment();
+            return RateLimitResult.unchecked();
+        }
         
-        // Define bandwidth: 10 requests per minute
-        Bandwidth limit = Bandwidth.classic(
-            REQUESTS_PER_MINUTE, 
-            Refill.intervally(REQUESTS_PER_MINUTE, Duration.ofMinutes(1))
-        );
+        if (result.allowed()) {
+            counters.allowed().increment();
+        } else {
+            counters.denied().increment();
+            log.warn("Rate limit exceeded for IP {} on route {}", ipAddress, route.name());
+        }
         
-        return Bucket.builder()
-            .addLimit(limit)
-            .build();
+        return result;
     }
     
     /**
-     * Check if request should be allowed
+     * One bucket call per budget. The budgets count different units, so they
+     * can't share one bucket: a consume takes the same amount from every
+     * bandwidth of a bucket.
      */
-    public boolean allowRequest(String ipAddress) {
-        Bucket bucket = resolveBucket(ipAddress);
-        boolean allowed = bucket.tryConsume(1);
+    private RateLimitResult consume(Route route, ClientBuckets client, Supplier<RequestCost> measure) {
+        List<RateLimitResult.Budget> budgets = new ArrayList<>(3);
+        ConsumptionProbe request = client.requests().tryConsumeAndReturnRemaining(1);
+        budgets.add(new RateLimitResult.Budget("requests", route.requestsPerMinute(), request.getRemainingTokens()));
+        if (!request.isConsumed()) {
+            return new RateLimitResult(false, request.getNanosToWaitForRefill(), budgets);
+        }
         
-        if (!allowed) {
-            log.warn("Rate limit exceeded for IP: {}", ipAddress);
+        RequestCost cost = measure.get();
+        Charge bytes = charge(client.bytes(), cost.bytes(), route.bytesPerMinute());
+        Charge pixels = charge(client.pixels(), cost.pixels(), route.pixelsPerMinute());
+        long nanosToWait = Math.max(waitFor(bytes), waitFor(pixels));
+        if (nanosToWait > 0) {
+            // An exhausted budget took nothing; give back what the others took
+            client.requests().addTokens(1);
+            budgets.set(0, new RateLimitResult.Budget("requests", route.requestsPerMinute(),
+                    request.getRemainingTokens() + 1));
+            refund(client.bytes(), bytes);
+            refund(client.pixels(), pixels);
+            addBudget(budgets, "bytes", route.bytesPerMinute(), bytes, 1);
+            addBudget(budgets, "megapixels", route.pixelsPerMinute(), pixels, PIXELS_PER_MEGAPIXEL);
+            return new RateLimitResult(false, nanosToWait, budgets);
         }
         
-        return allowed;
+        addBudget(budgets, "bytes", route.bytesPerMinute(), bytes, 1);
+        addBudget(budgets, "megapixels", route.pixelsPerMinute(), pixels, PIXELS_PER_MEGAPIXEL);
+        return new RateLimitResult(true, 0, budgets);
     }
     
     /**
-     * Get remaining tokens for an IP
+     * Charges a cost in one round trip unless the budget is exhausted, in
+     * which case nothing is taken. Whatever the budget can't cover is taken
+     * as debt with a second call, which only the request that empties the
+     * budget needs.
      */
-    public long getRemainingTokens(String ipAddress) {
-        Bucket bucket = resolveBucket(ipAddress);
-        return bucket.getAvailableTokens();
+    private static Charge charge(Bucket bucket, long cost, long perMinute) {
+        if (bucket == null) {
+            return null;
+        }
+        long charged = Math.min(cost, perMinute);
+        if (charged <= 0) {
+            VerboseResult<Long> available = bucket.asVerbose().getAvailableTokens();
+            return new Charge(0, available.getValue(), nanosToWait(available));
+        }
+        
+        VerboseResult<Long> consumed = bucket.asVerbose().tryConsumeAsMuchAsPossible(charged);
+        if (consumed.getValue() == 0) {
+            return new Charge(0, consumed.getDiagnostics().getAvailableTokens(), nanosToWait(consumed));
+        }
+        long debt = charged - consumed.getValue();
+        if (debt > 0) {
+            bucket.consumeIgnoringRateLimits(debt);
+        }
+        return new Charge(charged, consumed.getDiagnostics().getAvailableTokens() - debt, 0);
+    }
+    
+    private static long nanosToWait(VerboseResult<?> result) {
+        if (result.getDiagnostics().getAvailableTokens() > 0) {
+            return 0;
+        }
+        return Math.max(1, result.getState()
+                .calculateDelayNanosAfterWillBePossibleToConsume(1, result.getOperationTimeNanos(), false));
+    }
+    
+    private static long waitFor(Charge charge) {
+        return charge == null ? 0 : charge.nanosToWait();
+    }
+    
+    private static void refund(Bucket bucket, Charge charge) {
+        if (charge != null && charge.charged() > 0) {
+            bucket.addTokens(charge.charged());
+        }
+    }
+    
+    private static void addBudget(List<RateLimitResult.Budget> budgets, String name, long perMinute,
+                                  Charge charge, long unit) {
+        if (charge == null) {
+            return;
+        }
+        long remaining = Math.max(0, charge.remaining());
+        budgets.add(new RateLimitResult.Budget(name, perMinute / unit, remaining / unit));
     }
     
     /**
-     * Clean up old buckets (optional, for memory management)
-     * Call this periodically if needed
+     * Charges what a request turned out to cost beyond what it was charged
+     * when it was let through, e.g. a raw body sent without Content-Length.
+     * Nothing is rejected any more: the budgets just go into debt, still
+     * capped at one minute's worth per request.
+     *
+     * @param charged what {@link #tryConsume} was given for the request
+     * @param actual  what the request was measured at once it completed
      */
+    public void settle(String ipAddress, String path, RequestCost charged, RequestCost actual) {
+        Route route = resolveRoute(path);
+        long bytes = remainder(charged.bytes(), actual.bytes(), route.bytesPerMinute());
+        long pixels = remainder(charged.pixels(), actual.pixels(), route.pixelsPerMinute());
+        if (bytes == 0 && pixels == 0) {
+            return;
+        }
+        try {
+            ClientBuckets client = buckets.get(route.name() + ":" + clientKey(ipAddress),
+                    key -> createBuckets(route, key));
+            if (client.bytes() != null && bytes > 0) {
+                client.bytes().consumeIgnoringRateLimits(bytes);
+            }
+            if (client.pixels() != null && pixels > 0) {
+                client.pixels().consumeIgnoringRateLimits(pixels);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not charge usage of IP {} after the request: {}", ipAddress, e.getMessage());
+        }
+    }
+    
+    private static long remainder(long charged, long actual, long perMinute) {
+        return Math.max(0, Math.min(actual, perMinute) - Math.min(charged, perMinute));
+    }
+    
+    /**
+     * Check if request should be allowed under the default policy
+     */
+    public boolean allowRequest(String ipAddress) {
+        return tryConsume(ipAddress, null, RequestCost.NONE).allowed();
+    }
+    
+    private Route resolveRoute(String path) {
+        if (path != null) {
+            for (Route route : routes) {
+                for (String pattern : route.paths()) {
+                    if (PATH_MATCHER.match(pattern, path)) {
+                        return route;
+                    }
+                }
+            }
+        }
+        return defaultRoute;
+    }
+    
+    /**
+     * Evicts idle buckets now, locally and in the backend. Local eviction
+     * also happens on its own as the store is used; a shared backend relies
+     * on this to drop clients that stopped coming.
+     */
+    @Scheduled(fixedDelayString = "${strip.rate-limit.cleanup-interval:PT5M}")
     public void cleanupOldBuckets() {
-        // In production, implement TTL-based cleanup
-        // For now, buckets stay in memory
-        log.info("Current bucket count: {}", buckets.size());
+        buckets.cleanUp();
+        backend.removeExpired();
+        log.info("Current bucket count: {}", buckets.estimatedSize());
+    }
+    
+    /**
+     * How often a route let requests through, turned them away, or let them
+     * through unchecked because the bucket store failed
+     */
+    private record Decisions(Counter allowed, Counter denied, Counter unchecked) {
+        
+        static Decisions register(MeterRegistry registry, String route) {
+            return new Decisions(
+                counter(registry, route, "allowed"),
+                counter(registry, route, "denied"),
+                counter(registry, route, "unchecked"));
+        }
+        
+        private static Counter counter(MeterRegistry registry, String route, String result) {
+            return Counter.builder("ratelimit.requests")
+                    .description("Rate limit decisions")
+                    .tag("route", route)
+                    .tag("result", result)
+                    .register(registry);
+        }
+    }
+    
+    /**
+     * A route's policy, with the bucket configuration for each budget it
+     * limits; null where the budget is unlimited
+     */
+    private record Route(String name, List<String> paths,
+                         long requestsPerMinute, long bytesPerMinute, long pixelsPerMinute,
+                         BucketConfiguration requestsConfiguration,
+                         BucketConfiguration bytesConfiguration,
+                         BucketConfiguration pixelsConfiguration) {
+        
+        static Route of(String name, List<String> paths, RateLimitPolicies.Policy policy) {
+            if (policy.getRequestsPerMinute() < 1) {
+                throw new IllegalArgumentException("Rate limit route " + name + " must allow at least 1 request per minute");
+            }
+            long bytes = policy.getBytesPerMinute() == null ? 0 : policy.getBytesPerMinute().toBytes();
+            long pixels = policy.getMegapixelsPerMinute() * PIXELS_PER_MEGAPIXEL;
+            return new Route(name, List.copyOf(paths),
+                    policy.getRequestsPerMinute(), bytes, pixels,
+                    perMinute(policy.getRequestsPerMinute()), perMinute(bytes), perMinute(pixels));
+        }
+        
+        private static BucketConfiguration perMinute(long tokens) {
+            if (tokens <= 0) {
+                return null;
+            }
+            return BucketConfiguration.builder()
+                    .addLimit(Bandwidth.classic(tokens, Refill.intervally(tokens, Duration.ofMinutes(1))))
+                    .build();
+        }
+    }
+    
+    private record ClientBuckets(Bucket requests, Bucket bytes, Bucket pixels) {
+    }
+    
+    /**
+     * The outcome of charging one budget
+     *
+     * @param charged     tokens taken, 0 if the budget was exhausted
+     * @param remaining   tokens left afterwards; negative while in debt
+     * @param nanosToWait time until the budget has a token again, 0 if it was charged
+     */
+    private record Charge(long charged, long remaining, long nanosToWait) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package com.metadatastripper.service;
+
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.service.stripper.StripPolicy;
+import com.metadatastripper.service.stripper.StripPolicyDefinitions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The configured strip policies, compiled once at startup. "remove-all" is
+ * always available.
+ */
+@Service
+@Slf4j
+public class StripPolicyRegistry {
+
+    // Policy names end up in cache keys and file names
+    private static final Pattern NAME = Pattern.compile("[a-z0-9][a-z0-9-]*");
+
+    private final Map<String, StripPolicy> policies = new HashMap<>();
+    private final StripPolicy defaultPolicy;
+
+    public StripPolicyRegistry(StripPolicyDefinitions definitions) {
+        policies.put(StripPolicy.REMOVE_ALL.getName(), StripPolicy.REMOVE_ALL);
+        definitions.getPolicies().forEach((name, definition) -> {
+            if (!NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Strip policy names are lower-case letters, digits and dashes: " + name);
+            }
+            policies.put(name, StripPolicy.compile(name, definition.getKeepCategories(),
+                    definition.getKeepTags(), definition.getDropTags(), definition.isKeepIccProfile()));
+        });
+
+        defaultPolicy = policies.get(definitions.getDefaultPolicy());
+        if (defaultPolicy == null) {
+            throw new IllegalArgumentException("Unknown default strip policy: " + definitions.getDefaultPolicy());
+        }
+        log.info("Strip policies {}, default {}", policies.keySet(), defaultPolicy.getName());
+    }
+
+    /**
+     * Returns the named policy, or the default one when no name is given
+     */
+    public StripPolicy resolve(String name) {
+        if (name == null || name.isBlank()) {
+            return defaultPolicy;
+        }
+        StripPolicy policy = policies.get(name);
+        if (policy == null) {
+            throw new ImageProcessingException(
+                "Unknown strip policy: " + name + ". Available policies: " + String.join(", ", policies.keySet())
+            );
+        }
+        return policy;
+    }
+}
@@ -0,0 +1,57 @@
+package com.metadatastripper.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.metadatastripper.dto.StrippedImage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Holds cleaned images in memory between the combined process request and
+ * the client's download. Entries are single-use and expire quickly, and the
+ * store is capped by total bytes so it cannot grow without bound.
+ */
+@Service
+@Slf4j
+public class StrippedImageStore {
+    
+    private final Cache<String, StrippedImage> images;
+    private final Duration ttl;
+    
+    public StrippedImageStore(
+            @Value("${strip.download.ttl:5m}") Duration ttl,
+            @Value("${strip.download.max-store-size:256MB}") DataSize maxStoreSize) {
+        this.ttl = ttl;
+        this.images = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumWeight(maxStoreSize.toBytes())
+                .weigher((String token, StrippedImage image) -> image.getData().length)
+                .build();
+    }
+    
+    /**
+     * Stores a cleaned image and returns the token to download it with
+     */
+    public String save(StrippedImage image) {
+        String token = UUID.randomUUID().toString();
+        images.put(token, image);
+        return token;
+    }
+    
+    /**
+     * Removes and returns the image for a token, if it has not expired
+     */
+    public Optional<StrippedImage> take(String token) {
+        return Optional.ofNullable(images.asMap().remove(token));
+    }
+    
+    public Duration getTtl() {
+        return ttl;
+    }
+}
@@ -0,0 +1,9 @@
+package com.metadatastripper.service.job;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * The cleaned image of a finished job, read from the job directory
+ */
+public record JobResult(String fileName, String mimeType, Resource data) {
+}
@@ -0,0 +1,48 @@
+package com.metadatastripper.service.job;
+
+import com.metadatastripper.dto.JobStatus;
+
+import java.time.Instant;
+
+/**
+ * The persisted state of an async strip job, one JSON file per job. Each
+ * transition returns a new copy that replaces the file.
+ *
+ * @param format     the upload's format as sniffed at submit time
+ * @param memoryCost the admission estimate, worked out while the upload
+ *                   could still be inspected as a multipart file
+ * @param resultSize bytes of the cleaned image, -1 until the job succeeded
+ */
+public record StripJob(
+        String id,
+        String fileName,
+        String format,
+        String policy,
+        long fileSize,
+        long memoryCost,
+        JobStatus status,
+        Instant submittedAt,
+        Instant finishedAt,
+        long resultSize,
+        String error) {
+
+    static StripJob queued(String id, String fileName, String format, String policy, long fileSize, long memoryCost) {
+        return new StripJob(id, fileName, format, policy, fileSize, memoryCost,
+                JobStatus.QUEUED, Instant.now(), null, -1, null);
+    }
+
+    StripJob withStatus(JobStatus status) {
+        return new StripJob(id, fileName, format, policy, fileSize, memoryCost,
+                status, submittedAt, finishedAt, resultSize, error);
+    }
+
+    StripJob succeeded(long resultSize) {
+        return new StripJob(id, fileName, format, policy, fileSize, memoryCost,
+                JobStatus.SUCCEEDED, submittedAt, Instant.now(), resultSize, null);
+    }
+
+    StripJob failed(String error) {
+        return new StripJob(id, fileName, format, policy, fileSize, memoryCost,
+                JobStatus.FAILED, submittedAt, Instant.now(), -1, error);
+    }
+}
@@ -0,0 +1,378 @@
+package com.metadatastripper.service.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.metadatastripper.dto.JobStatus;
+import com.metadatastripper.exception.DownloadNotFoundException;
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.exception.JobNotFinishedException;
+import com.metadatastripper.exception.ServiceOverloadedException;
+import com.metadatastripper.service.MetadataStripperService;
+import com.metadatastripper.service.ProcessingScheduler;
+import com.metadatastripper.service.StripPolicyRegistry;
+import com.metadatastripper.service.metrics.ImageMetrics;
+import com.metadatastripper.service.spool.UploadSpool;
+import com.metadatastripper.service.stripper.StripPolicy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Async strip jobs, so large files and bulk work don't hold a request open
+ * for the whole strip.
+ *
+ * The job directory is the queue: each job is a JSON state file next to its
+ * upload and, once done, its result. Submitting only moves the upload there,
+ * and a fixed number of workers drain the jobs in submission order. Workers
+ * go through the same admission control as interactive requests, so a burst
+ * of jobs waits its turn instead of starving them. Jobs that were queued or
+ * running when the server stopped are picked up again on startup, and
+ * finished jobs are removed once their result has expired.
+ */
+@Service
+@Slf4j
+public class StripJobService {
+
+    private static final String STATE = ".json";
+    private static final String UPLOAD = ".upload";
+    private static final String RESULT = ".out";
+    private static final String PARTIAL = ".part";
+
+    // Heap a streamed container strip needs whatever the file size
+    private static final long STREAMED_STRIP_MEMORY_COST = 128 * 1024;
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    private final MetadataStripperService metadataStripperService;
+    private final StripPolicyRegistry stripPolicyRegistry;
+    private final ProcessingScheduler processingScheduler;
+    private final ImageMetrics imageMetrics;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final int maxQueued;
+    private final Duration resultTtl;
+    private final Duration maxWait;
+    private final long retryAfterSeconds;
+    private final ExecutorService workers;
+    private final Map<String, StripJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<StripJob>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public StripJobService(
+            MetadataStripperService metadataStripperService,
+            StripPolicyRegistry stripPolicyRegistry,
+            ProcessingScheduler processingScheduler,
+            ImageMetrics imageMetrics,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${strip.jobs.directory:}") String directory,
+            @Value("${strip.jobs.workers:2}") int workers,
+            @Value("${strip.jobs.max-queued:1000}") int maxQueued,
+            @Value("${strip.jobs.result-ttl:PT1H}") Duration resultTtl,
+            @Value("${strip.jobs.max-wait:30s}") Duration maxWait,
+            @Value("${strip.admission.retry-after:5s}") Duration retryAfter) throws IOException {
+        this.metadataStripperService = metadataStripperService;
+        this.stripPolicyRegistry = stripPolicyRegistry;
+        this.processingScheduler = processingScheduler;
+        this.imageMetrics = imageMetrics;
+        this.objectMapper = objectMapper;
+        this.directory = Files.createDirectories(directory.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "metadata-stripper-jobs")
+                : Path.of(directory));
+        this.maxQueued = maxQueued;
+        this.resultTtl = resultTtl;
+        this.maxWait = maxWait;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workers), new CustomizableThreadFactory("strip-job-"));
+
+        Gauge.builder("image.jobs.queued", queued, AtomicInteger::get)
+                .description("Async strip jobs waiting for a worker")
+                .register(meterRegistry);
+        recover();
+    }
+
+    /**
+     * Queues an upload for stripping. The upload is checked and moved into
+     * the job directory before this returns, so the request can end straight
+     * away; the multipart file can't be read afterwards.
+     */
+    public StripJob submit(MultipartFile file, StripPolicy policy) {
+        String format = metadataStripperService.detectFormat(file);
+        // Random-access strippers index the file's structure, which grows with the file
+        long memoryCost = metadataStripperService.isContainerFormat(format)
+                && !metadataStripperService.needsRandomAccess(format)
+                ? STREAMED_STRIP_MEMORY_COST
+                : metadataStripperService.estimateMemoryCost(file);
+        processingScheduler.checkFits(memoryCost);
+
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            throw new ServiceOverloadedException(
+                "Too many jobs are waiting to be processed. Please try again shortly.", retryAfterSeconds
+            );
+        }
+
+        StripJob job = StripJob.queued(UUID.randomUUID().toString(), file.getOriginalFilename(), format,
+                policy.getName(), file.getSize(), memoryCost);
+        Path upload = path(job.id(), UPLOAD);
+        try {
+            file.transferTo(upload);
+            save(job);
+        } catch (IOException e) {
+            queued.decrementAndGet();
+            UploadSpool.deleteQuietly(upload);
+            throw new ImageProcessingException("Failed to store upload", e);
+        }
+
+        workers.execute(() -> run(job));
+        log.info("Queued strip job {} for {}", job.id(), job.fileName());
+        return job;
+    }
+
+    /**
+     * Returns a job by id
+     */
+    public StripJob get(String id) {
+        StripJob job = jobs.get(id);
+        if (job == null) {
+            throw new DownloadNotFoundException("Job not found. It may have expired.");
+        }
+        return job;
+    }
+
+    /**
+     * Completes when the job has finished, or with its current state once
+     * the timeout (capped at max-wait) has passed
+     */
+    public CompletableFuture<StripJob> await(String id, Duration timeout) {
+        StripJob job = get(id);
+        if (job.status().isFinished() || timeout.isZero() || timeout.isNegative()) {
+            return CompletableFuture.completedFuture(job);
+        }
+
+        CompletableFuture<StripJob> done = waiters.computeIfAbsent(id, key -> new CompletableFuture<>());
+        // The job may have finished before the waiter was registered
+        StripJob current = jobs.get(id);
+        if (current == null || current.status().isFinished()) {
+            waiters.remove(id, done);
+            done.complete(current != null ? current : job);
+        }
+
+        long timeoutNanos = (timeout.compareTo(maxWait) > 0 ? maxWait : timeout).toNanos();
+        return done.copy()
+                .completeOnTimeout(null, timeoutNanos, TimeUnit.NANOSECONDS)
+                .thenApply(finished -> finished != null ? finished : jobs.getOrDefault(id, job));
+    }
+
+    /**
+     * Returns the cleaned image of a job that succeeded
+     */
+    public JobResult result(String id) {
+        StripJob job = get(id);
+        return switch (job.status()) {
+            case SUCCEEDED -> new JobResult(job.fileName(), metadataStripperService.getMimeType(job.format()),
+                    new FileSystemResource(path(id, RESULT)));
+            case FAILED -> throw new ImageProcessingException(job.error());
+            default -> throw new JobNotFinishedException("Job has not finished yet. Poll its status and try again.");
+        };
+    }
+
+    public Duration getResultTtl() {
+        return resultTtl;
+    }
+
+    /**
+     * Removes finished jobs whose result has expired
+     */
+    @Scheduled(fixedDelayString = "${strip.jobs.cleanup-interval:PT5M}")
+    public void removeExpired() {
+        Instant cutoff = Instant.now().minus(resultTtl);
+        for (StripJob job : jobs.values()) {
+            if (job.status().isFinished() && !job.finishedAt().isAfter(cutoff)) {
+                jobs.remove(job.id());
+                UploadSpool.deleteQuietly(path(job.id(), RESULT));
+                UploadSpool.deleteQuietly(path(job.id(), STATE));
+            }
+        }
+    }
+
+    /**
+     * Stops the workers. A job cut off mid-run keeps its upload and state,
+     * and runs again on the next startup.
+     */
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private void run(StripJob job) {
+        // The job was accepted when it was queued, so wait for capacity rather than failing
+        ProcessingScheduler.Permit permit;
+        try {
+            permit = processingScheduler.acquire(job.memoryCost());
+        } catch (ImageProcessingException e) {
+            // Only reachable for a recovered job after the memory budget was lowered
+            queued.decrementAndGet();
+            fail(job, e.getMessage(), e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        queued.decrementAndGet();
+        Path upload = path(job.id(), UPLOAD);
+        Path partial = path(job.id(), PARTIAL);
+        try (permit) {
+            save(job.withStatus(JobStatus.RUNNING));
+            StripPolicy policy = stripPolicyRegistry.resolve(job.policy());
+            if (metadataStripperService.isContainerFormat(job.format())) {
+                // Read through memory mappings, which random-access formats need
+                metadataStripperService.stripMetadata(upload, job.fileName(), partial, policy);
+            } else {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(upload), FILE_BUFFER_SIZE);
+                     OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), FILE_BUFFER_SIZE)) {
+                    metadataStripperService.stripMetadata(in, job.fileName(), out, policy);
+                }
+            }
+            Path result = Files.move(partial, path(job.id(), RESULT),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long resultSize = Files.size(result);
+            UploadSpool.deleteQuietly(upload);
+            finish(job.succeeded(resultSize));
+            imageMetrics.record("job", job.format(), job.fileSize(), resultSize, false);
+            log.info("Finished strip job {} for {}", job.id(), job.fileName());
+        } catch (ImageProcessingException e) {
+            fail(job, e.getMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            if (workers.isShutdown()) {
+                // Interrupted by shutdown: the upload and state stay for the next startup
+                log.info("Strip job {} was interrupted and will run again after a restart", job.id());
+                return;
+            }
+            fail(job, "Failed to strip metadata from image", e);
+        }
+    }
+
+    private void fail(StripJob job, String error, Exception cause) {
+        log.warn("Strip job {} for {} failed: {}", job.id(), job.fileName(), cause.getMessage());
+        UploadSpool.deleteQuietly(path(job.id(), PARTIAL));
+        UploadSpool.deleteQuietly(path(job.id(), UPLOAD));
+        try {
+            finish(job.failed(error));
+        } catch (IOException e) {
+            log.error("Could not record failure of strip job {}", job.id(), e);
+        }
+    }
+
+    private void finish(StripJob job) throws IOException {
+        save(job);
+        CompletableFuture<StripJob> done = waiters.remove(job.id());
+        if (done != null) {
+            done.complete(job);
+        }
+    }
+
+    /**
+     * Writes the state file through a rename, so a crash never leaves a
+     * half-written one behind
+     */
+    private void save(StripJob job) throws IOException {
+        Path state = path(job.id(), STATE);
+        Path temp = path(job.id(), STATE + ".tmp");
+        objectMapper.writeValue(temp.toFile(), job);
+        Files.move(temp, state, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        jobs.put(job.id(), job);
+    }
+
+    /**
+     * Reloads the job directory after a restart. Unfinished jobs whose upload
+     * is still there are queued again in their original order; files that
+     * don't belong to a job are leftovers of an interrupted submit or run.
+     */
+    private void recover() throws IOException {
+        List<StripJob> pending = new ArrayList<>();
+        try (DirectoryStream<Path> states = Files.newDirectoryStream(directory, "*" + STATE)) {
+            for (Path state : states) {
+                StripJob job;
+                try {
+                    job = objectMapper.readValue(state.toFile(), StripJob.class);
+                } catch (IOException e) {
+                    log.warn("Discarding unreadable job state {}: {}", state, e.getMessage());
+                    UploadSpool.deleteQuietly(state);
+                    continue;
+                }
+                if (job.status().isFinished()) {
+                    jobs.put(job.id(), job);
+                } else if (Files.exists(path(job.id(), UPLOAD))) {
+                    pending.add(job.withStatus(JobStatus.QUEUED));
+                } else if (Files.exists(path(job.id(), RESULT))) {
+                    // Stopped after the result was written but before the state was
+                    save(job.succeeded(Files.size(path(job.id(), RESULT))));
+                } else {
+                    save(job.failed("The upload was lost before the job could run"));
+                }
+            }
+        }
+
+        Set<String> keep = new HashSet<>();
+        for (StripJob job : pending) {
+            keep.add(job.id() + UPLOAD);
+        }
+        for (StripJob job : jobs.values()) {
+            keep.add(job.id() + (job.status() == JobStatus.SUCCEEDED ? RESULT : STATE));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(STATE) && !keep.contains(name)) {
+                    UploadSpool.deleteQuietly(file);
+                }
+            }
+        }
+
+        pending.sort(Comparator.comparing(StripJob::submittedAt));
+        for (StripJob job : pending) {
+            save(job);
+            queued.incrementAndGet();
+            workers.execute(() -> run(job));
+        }
+        if (!jobs.isEmpty()) {
+            log.info("Recovered {} strip jobs, {} of them queued", jobs.size(), pending.size());
+        }
+    }
+
+    private Path path(String id, String suffix) {
+        return directory.resolve(id + suffix);
+    }
+}
@@ -0,0 +1,118 @@
+package com.metadatastripper.service.metadata;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.metadatastripper.dto.CompactMetadataDto;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes compact metadata responses in two parts, so the expensive one can
+ * be cached. The body - everything after fileSize - depends only on the
+ * image's content and the requested fields; it is encoded once and kept as
+ * bytes. The head carries the upload's name and size and is encoded per
+ * request, then the cached body is appended to it.
+ *
+ * That works because each encoding writes a field without looking back at
+ * the ones before it. Smile does look back for repeated names, but the head
+ * always has the same three names, so the body's back-references still hold.
+ * Shared string values are turned off, as those would depend on the head's
+ * values.
+ */
+@Component
+public class CompactMetadataEncoder {
+
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+    /**
+     * In order of preference
+     */
+    public static final List<MediaType> MEDIA_TYPES = List.of(
+            MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, APPLICATION_SMILE);
+
+    // A head is written without ending the object, so closing must not end it
+    private final JsonFactory json = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_CONTENT)
+            .build();
+    private final CBORFactory cbor = CBORFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_CONTENT)
+            .build();
+    private final SmileFactory smile = SmileFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_CONTENT)
+            .disable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build();
+
+    /**
+     * Picks the encoding for a request from the media types it accepts, most
+     * preferred first. JSON when none of them match.
+     */
+    public static MediaType select(List<MediaType> acceptable) {
+        for (MediaType accepted : acceptable) {
+            for (MediaType mediaType : MEDIA_TYPES) {
+                if (accepted.isCompatibleWith(mediaType)) {
+                    return mediaType;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * Encodes everything after the head, up to and including the end of the
+     * response
+     */
+    public byte[] encodeBody(CompactMetadataDto value, MediaType mediaType) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator gen = factoryFor(mediaType).createGenerator(out)) {
+            gen.writeStartObject();
+            CompactMetadataSerializer.writeHead(value.getFileName(), value.getFileSize(), gen);
+            gen.flush();
+            int headLength = out.size();
+
+            CompactMetadataSerializer.writeBody(value, gen);
+            gen.writeEndObject();
+            gen.flush();
+            return Arrays.copyOfRange(out.toByteArray(), headLength, out.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes the response for one upload from a body made by
+     * {@link #encodeBody} in the same media type
+     */
+    public byte[] encode(String fileName, long fileSize, byte[] body, MediaType mediaType) {
+        ByteArrayOutputStream head = new ByteArrayOutputStream(128);
+        try (JsonGenerator gen = factoryFor(mediaType).createGenerator(head)) {
+            gen.writeStartObject();
+            CompactMetadataSerializer.writeHead(fileName, fileSize, gen);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Sized up front, so the body is copied once
+        byte[] response = Arrays.copyOf(head.toByteArray(), head.size() + body.length);
+        System.arraycopy(body, 0, response, head.size(), body.length);
+        return response;
+    }
+
+    private JsonFactory factoryFor(MediaType mediaType) {
+        if (MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mediaType)) {
+            return cbor;
+        }
+        if (APPLICATION_SMILE.equalsTypeAndSubtype(mediaType)) {
+            return smile;
+        }
+        return json;
+    }
+}
@@ -0,0 +1,127 @@
+package com.metadatastripper.service.metadata;
+
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.Tag;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.metadatastripper.dto.CompactMetadataDto;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link CompactMetadataDto} straight from the parsed directories:
+ * <pre>
+ * {"version":2, "fileName":..., "fileSize":..., "mimeType":..., "hasMetadata":..., "partial":...,
+ *  "categories":["camera","location","dateTime","image","other"],
+ *  "directories":[{"name":"Exif IFD0", "tags":[["Make","Canon",0], ...]}, ...]}
+ * </pre>
+ * The category of a tag is an index into "categories". Nothing is collected
+ * into maps first: each tag is classified as it is written, and described
+ * only if its group was requested, so the same code serves JSON, CBOR and
+ * Smile. A summary has no directories.
+ *
+ * The head - version, fileName and fileSize - is written separately, so
+ * {@link CompactMetadataEncoder} can cache the rest of the response and put
+ * a new head in front of it.
+ */
+public class CompactMetadataSerializer extends StdSerializer<CompactMetadataDto> {
+
+    public static final int VERSION = 2;
+
+    private static final TagClassifier TAG_CLASSIFIER = TagClassifier.getInstance();
+
+    public CompactMetadataSerializer() {
+        super(CompactMetadataDto.class);
+    }
+
+    @Override
+    public void serialize(CompactMetadataDto value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        writeHead(value.getFileName(), value.getFileSize(), gen);
+        writeBody(value, gen);
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes the fields that depend on the upload rather than its content,
+     * after the object has been started
+     */
+    static void writeHead(String fileName, long fileSize, JsonGenerator gen) throws IOException {
+        gen.writeNumberField("version", VERSION);
+        gen.writeStringField("fileName", fileName);
+        gen.writeNumberField("fileSize", fileSize);
+    }
+
+    /**
+     * Writes the fields that follow the head, leaving the object open
+     */
+    static void writeBody(CompactMetadataDto value, JsonGenerator gen) throws IOException {
+        Metadata metadata = value.getMetadata();
+        MetadataFields fields = value.getFields() != null ? value.getFields() : MetadataFields.ALL;
+
+        gen.writeStringField("mimeType", value.getMimeType());
+        gen.writeBooleanField("hasMetadata", hasTags(metadata, fields));
+        gen.writeBooleanField("partial", value.isPartial());
+
+        gen.writeArrayFieldStart("categories");
+        for (TagClassifier.Category category : TagClassifier.Category.values()) {
+            gen.writeString(category.getFieldName());
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("directories");
+        if (metadata != null && !fields.summary()) {
+            for (Directory directory : metadata.getDirectories()) {
+                if (directory.getTagCount() > 0) {
+                    writeDirectory(directory, fields, gen);
+                }
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Writes the directory's tags in the requested groups. The object is only
+     * started at the first such tag, so directories without any are left out.
+     */
+    private static void writeDirectory(Directory directory, MetadataFields fields, JsonGenerator gen) throws IOException {
+        boolean started = false;
+        for (Tag tag : directory.getTags()) {
+            TagClassifier.Category category = TAG_CLASSIFIER.classify(directory, tag.getTagType());
+            if (!fields.includes(category)) {
+                continue;
+            }
+            if (!started) {
+                gen.writeStartObject();
+                gen.writeStringField("name", directory.getName());
+                gen.writeArrayFieldStart("tags");
+                started = true;
+            }
+            gen.writeStartArray();
+            gen.writeString(tag.getTagName());
+            gen.writeString(tag.getDescription());
+            gen.writeNumber(category.ordinal());
+            gen.writeEndArray();
+        }
+        if (started) {
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    private static boolean hasTags(Metadata metadata, MetadataFields fields) {
+        if (metadata == null) {
+            return false;
+        }
+        for (Directory directory : metadata.getDirectories()) {
+            for (Tag tag : directory.getTags()) {
+                if (fields.includes(TAG_CLASSIFIER.classify(directory, tag.getTagType()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
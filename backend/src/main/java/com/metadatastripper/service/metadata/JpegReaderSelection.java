@@ -0,0 +1,116 @@
+package com.metadatastripper.service.metadata;
+
+import com.drew.imaging.jpeg.JpegMetadataReader;
+import com.drew.imaging.jpeg.JpegSegmentMetadataReader;
+import com.drew.metadata.Directory;
+import com.drew.metadata.adobe.AdobeJpegDirectory;
+import com.drew.metadata.adobe.AdobeJpegReader;
+import com.drew.metadata.icc.IccDirectory;
+import com.drew.metadata.icc.IccReader;
+import com.drew.metadata.iptc.IptcDirectory;
+import com.drew.metadata.iptc.IptcReader;
+import com.drew.metadata.jfif.JfifDirectory;
+import com.drew.metadata.jfif.JfifReader;
+import com.drew.metadata.jfxx.JfxxDirectory;
+import com.drew.metadata.jfxx.JfxxReader;
+import com.drew.metadata.jpeg.HuffmanTablesDirectory;
+import com.drew.metadata.jpeg.JpegCommentDirectory;
+import com.drew.metadata.jpeg.JpegCommentReader;
+import com.drew.metadata.jpeg.JpegDhtReader;
+import com.drew.metadata.jpeg.JpegDirectory;
+import com.drew.metadata.jpeg.JpegDnlReader;
+import com.drew.metadata.jpeg.JpegReader;
+import com.drew.metadata.photoshop.DuckyDirectory;
+import com.drew.metadata.photoshop.DuckyReader;
+import com.drew.metadata.xmp.XmpDirectory;
+import com.drew.metadata.xmp.XmpReader;
+import com.metadatastripper.service.metadata.TagClassifier.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Picks the JPEG segment readers that can produce tags in the requested
+ * groups, so the segments of the others aren't parsed at all.
+ *
+ * A reader is only skipped when every tag it can produce is known: those
+ * below each write one directory with a fixed tag table, classified here
+ * once. The Exif reader (maker notes) and the Photoshop reader (embedded
+ * Exif, IPTC, XMP and ICC) can produce anything and are always kept, as is
+ * any reader this table doesn't know.
+ */
+public final class JpegReaderSelection {
+
+    private static final Map<Class<?>, Directory> KNOWN_READERS = Map.ofEntries(
+        Map.entry(JpegReader.class, new JpegDirectory()),
+        Map.entry(JpegDnlReader.class, new JpegDirectory()),
+        Map.entry(JpegDhtReader.class, new HuffmanTablesDirectory()),
+        Map.entry(JpegCommentReader.class, new JpegCommentDirectory()),
+        Map.entry(JfifReader.class, new JfifDirectory()),
+        Map.entry(JfxxReader.class, new JfxxDirectory()),
+        Map.entry(AdobeJpegReader.class, new AdobeJpegDirectory()),
+        Map.entry(DuckyReader.class, new DuckyDirectory()),
+        Map.entry(IccReader.class, new IccDirectory()),
+        Map.entry(IptcReader.class, new IptcDirectory()),
+        Map.entry(XmpReader.class, new XmpDirectory())
+    );
+
+    private static final int MAX_TAG_TYPE = 0xFFFF;
+
+    private static final List<Candidate> CANDIDATES = candidates(TagClassifier.getInstance());
+
+    private JpegReaderSelection() {
+    }
+
+    /**
+     * Returns the readers that can produce tags in any of the categories, in
+     * the order metadata-extractor runs them
+     */
+    public static List<JpegSegmentMetadataReader> readersFor(Set<Category> categories) {
+        List<JpegSegmentMetadataReader> readers = new ArrayList<>();
+        for (Candidate candidate : CANDIDATES) {
+            if (!Collections.disjoint(candidate.categories(), categories)) {
+                readers.add(candidate.reader());
+            }
+        }
+        return readers;
+    }
+
+    /**
+     * Whether every reader would run, so selecting them gains nothing
+     */
+    public static boolean readsEverything(Set<Category> categories) {
+        return readersFor(categories).size() == CANDIDATES.size();
+    }
+
+    static List<Candidate> candidates(TagClassifier classifier) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (JpegSegmentMetadataReader reader : JpegMetadataReader.ALL_READERS) {
+            Directory directory = KNOWN_READERS.get(reader.getClass());
+            Set<Category> categories = directory == null
+                    ? EnumSet.allOf(Category.class)
+                    : categoriesOf(directory, classifier);
+            candidates.add(new Candidate(reader, categories));
+        }
+        return List.copyOf(candidates);
+    }
+
+    private static Set<Category> categoriesOf(Directory directory, TagClassifier classifier) {
+        Set<Category> categories = EnumSet.noneOf(Category.class);
+        for (int tagType = 0; tagType <= MAX_TAG_TYPE; tagType++) {
+            if (directory.hasTagName(tagType)) {
+                categories.add(classifier.classify(directory, tagType));
+            }
+        }
+        // Tags missing from the table, e.g. unknown ICC tags or IPTC datasets
+        categories.add(TagClassifier.classifyByKeywords(directory.getName(), "Unknown tag"));
+        return categories;
+    }
+
+    record Candidate(JpegSegmentMetadataReader reader, Set<Category> categories) {
+    }
+}
@@ -0,0 +1,72 @@
+package com.metadatastripper.service.metadata;
+
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.service.metadata.TagClassifier.Category;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The metadata groups a request asks for. Tags outside them are neither
+ * described nor returned, and for JPEG the segments that can only hold such
+ * tags aren't parsed. A summary returns no tags at all, only whether each
+ * requested group has any.
+ */
+public record MetadataFields(Set<Category> categories, boolean summary) {
+
+    public static final MetadataFields ALL = new MetadataFields(EnumSet.allOf(Category.class), false);
+
+    public MetadataFields {
+        categories = Collections.unmodifiableSet(EnumSet.copyOf(categories));
+    }
+
+    /**
+     * Parses the {@code fields} request parameter, a comma-separated list of
+     * group names such as "location,camera". No fields means all groups.
+     */
+    public static MetadataFields of(String fields, boolean summary) {
+        if (fields == null || fields.isBlank()) {
+            return summary ? new MetadataFields(ALL.categories, true) : ALL;
+        }
+
+        Set<Category> categories = EnumSet.noneOf(Category.class);
+        for (String name : fields.split(",")) {
+            categories.add(category(name.strip()));
+        }
+        return categories.isEmpty() ? of(null, summary) : new MetadataFields(categories, summary);
+    }
+
+    public boolean includes(Category category) {
+        return categories.contains(category);
+    }
+
+    public boolean includesAll() {
+        return categories.size() == Category.values().length;
+    }
+
+    /**
+     * Identifies the selection in cache keys; empty for a full response
+     */
+    public String key() {
+        if (includesAll() && !summary) {
+            return "";
+        }
+        String names = categories.stream().map(Category::getFieldName).collect(Collectors.joining(","));
+        return summary ? names + ";summary" : names;
+    }
+
+    private static Category category(String name) {
+        for (Category category : Category.values()) {
+            if (category.getFieldName().equals(name)) {
+                return category;
+            }
+        }
+        throw new ImageProcessingException(
+            "Unknown metadata field: " + name + ". Available fields: "
+                + Arrays.stream(Category.values()).map(Category::getFieldName).collect(Collectors.joining(", "))
+        );
+    }
+}
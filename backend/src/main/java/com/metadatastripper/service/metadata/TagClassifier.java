@@ -0,0 +1,254 @@
+package com.metadatastripper.service.metadata;
+
+import com.drew.imaging.FileType;
+import com.drew.metadata.Directory;
+import com.drew.metadata.adobe.AdobeJpegDirectory;
+import com.drew.metadata.bmp.BmpHeaderDirectory;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifImageDirectory;
+import com.drew.metadata.exif.ExifInteropDirectory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.ExifThumbnailDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+import com.drew.metadata.exif.PrintIMDirectory;
+import com.drew.metadata.file.FileTypeDirectory;
+import com.drew.metadata.gif.GifAnimationDirectory;
+import com.drew.metadata.gif.GifControlDirectory;
+import com.drew.metadata.gif.GifHeaderDirectory;
+import com.drew.metadata.gif.GifImageDirectory;
+import com.drew.metadata.icc.IccDirectory;
+import com.drew.metadata.iptc.IptcDirectory;
+import com.drew.metadata.jfif.JfifDirectory;
+import com.drew.metadata.jfxx.JfxxDirectory;
+import com.drew.metadata.jpeg.HuffmanTablesDirectory;
+import com.drew.metadata.jpeg.JpegCommentDirectory;
+import com.drew.metadata.jpeg.JpegDirectory;
+import com.drew.metadata.photoshop.DuckyDirectory;
+import com.drew.metadata.photoshop.PhotoshopDirectory;
+import com.drew.metadata.xmp.XmpDirectory;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps a metadata tag to the group it is shown in.
+ *
+ * The group is decided by keywords in "directory - tag name", but only once
+ * per tag: results are kept in an int-keyed table per directory, filled at
+ * startup for every tag of the directories our formats produce. Looking up a
+ * known tag is a hash lookup and an array probe with no allocation. Tags
+ * outside the table (maker notes, unknown ids) are classified by keyword on
+ * first sight and remembered.
+ */
+public final class TagClassifier {
+
+    /**
+     * Metadata groups, in the order they take precedence when a tag matches several
+     */
+    public enum Category {
+        CAMERA("camera"),
+        LOCATION("location"),
+        DATE_TIME("dateTime"),
+        IMAGE("image"),
+        OTHER("other");
+
+        private final String fieldName;
+
+        Category(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        /**
+         * The name clients use for the group, e.g. in {@code fields=location,camera}
+         */
+        public String getFieldName() {
+            return fieldName;
+        }
+    }
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    // Tag ids are 16-bit in EXIF, IPTC and friends; wider ids are learned on demand
+    private static final int MAX_WARM_TAG_TYPE = 0xFFFF;
+
+    // Keywords for categorizing metadata, checked in Category order
+    private static final List<String> CAMERA_KEYWORDS = List.of(
+        "camera", "make", "model", "lens", "focal", "aperture", "iso", "shutter",
+        "exposure", "flash", "metering", "white balance", "f-number", "f-stop",
+        "manufacturer", "brightness", "contrast", "saturation", "sharpness"
+    );
+
+    private static final List<String> LOCATION_KEYWORDS = List.of(
+        "gps", "latitude", "longitude", "altitude", "location", "coordinates",
+        "geo", "position", "place"
+    );
+
+    private static final List<String> DATETIME_KEYWORDS = List.of(
+        "date", "time", "timestamp", "created", "modified", "digitized",
+        "datetime", "original", "offset"
+    );
+
+    private static final List<String> IMAGE_KEYWORDS = List.of(
+        "width", "height", "resolution", "dimension", "dpi", "orientation",
+        "color space", "bits per sample", "compression", "photometric",
+        "pixel", "image", "x resolution", "y resolution", "unit"
+    );
+
+    private static final TagClassifier INSTANCE = new TagClassifier(List.of(
+        new ExifIFD0Directory(), new ExifSubIFDDirectory(), new ExifThumbnailDirectory(0),
+        new ExifInteropDirectory(), new ExifImageDirectory(), new GpsDirectory(), new PrintIMDirectory(),
+        new JpegDirectory(), new JfifDirectory(), new JfxxDirectory(), new JpegCommentDirectory(),
+        new HuffmanTablesDirectory(), new AdobeJpegDirectory(), new IccDirectory(), new IptcDirectory(),
+        new XmpDirectory(), new PhotoshopDirectory(), new DuckyDirectory(), new FileTypeDirectory(FileType.Jpeg),
+        new GifHeaderDirectory(), new GifImageDirectory(), new GifControlDirectory(),
+        new GifAnimationDirectory(), new BmpHeaderDirectory()
+    ));
+
+    // Keyed by directory name rather than class: some classes (PNG chunks) vary their name
+    private final Map<String, TagTable> tables = new ConcurrentHashMap<>();
+
+    TagClassifier(List<Directory> knownDirectories) {
+        for (Directory directory : knownDirectories) {
+            TagTable table = tables.computeIfAbsent(directory.getName(), name -> new TagTable());
+            for (int tagType = 0; tagType <= MAX_WARM_TAG_TYPE; tagType++) {
+                if (directory.hasTagName(tagType)) {
+                    table.put(tagType, classifyByKeywords(directory.getName(), directory.getTagName(tagType)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the shared classifier, warmed up for all standard directories
+     */
+    public static TagClassifier getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the group of a tag in a directory
+     */
+    public Category classify(Directory directory, int tagType) {
+        String directoryName = directory.getName();
+        TagTable table = tables.get(directoryName);
+        if (table == null) {
+            table = tables.computeIfAbsent(directoryName, name -> new TagTable());
+        }
+
+        Category category = table.get(tagType);
+        if (category == null) {
+            category = classifyByKeywords(directoryName, directory.getTagName(tagType));
+            table.put(tagType, category);
+        }
+        return category;
+    }
+
+    /**
+     * The original keyword rules: a tag belongs to the first group with a
+     * keyword occurring in its lower-cased "directory - tag name"
+     */
+    static Category classifyByKeywords(String directoryName, String tagName) {
+        String key = (directoryName + " - " + tagName).toLowerCase(Locale.ROOT);
+        if (containsAny(key, CAMERA_KEYWORDS)) {
+            return Category.CAMERA;
+        } else if (containsAny(key, LOCATION_KEYWORDS)) {
+            return Category.LOCATION;
+        } else if (containsAny(key, DATETIME_KEYWORDS)) {
+            return Category.DATE_TIME;
+        } else if (containsAny(key, IMAGE_KEYWORDS)) {
+            return Category.IMAGE;
+        }
+        return Category.OTHER;
+    }
+
+    private static boolean containsAny(String text, List<String> keywords) {
+        for (String keyword : keywords) {
+            if (text.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Open-addressing map from tag id to category ordinal. Writes copy the
+     * table and publish the copy through a volatile field, so a published
+     * table never changes and reads take no lock. A reader racing with an
+     * insert at worst misses the new entry and classifies the tag again,
+     * which gives the same answer.
+     */
+    private static final class TagTable {
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        private volatile Slots slots = new Slots(INITIAL_CAPACITY);
+        private int size;
+
+        Category get(int tagType) {
+            Slots current = slots;
+            int mask = current.keys.length - 1;
+            for (int i = mix(tagType) & mask; ; i = (i + 1) & mask) {
+                byte value = current.values[i];
+                if (value == 0) {
+                    return null;
+                }
+                if (current.keys[i] == tagType) {
+                    return CATEGORIES[value - 1];
+                }
+            }
+        }
+
+        synchronized void put(int tagType, Category category) {
+            Slots current = slots;
+            // Tags are few and classified once each, so copying on every insert is cheap
+            int capacity = (size + 1) * 2 > current.keys.length ? current.keys.length * 2 : current.keys.length;
+            Slots copy = new Slots(capacity);
+            for (int i = 0; i < current.keys.length; i++) {
+                if (current.values[i] != 0) {
+                    copy.insert(current.keys[i], current.values[i]);
+                }
+            }
+            if (copy.insert(tagType, (byte) (category.ordinal() + 1))) {
+                size++;
+            }
+            slots = copy;
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Parallel key and value arrays; a value of 0 marks an empty slot.
+         * Only filled in before it is published.
+         */
+        private static final class Slots {
+
+            final int[] keys;
+            final byte[] values;
+
+            Slots(int capacity) {
+                keys = new int[capacity];
+                values = new byte[capacity];
+            }
+
+            boolean insert(int key, byte value) {
+                int mask = keys.length - 1;
+                for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                    if (values[i] == 0) {
+                        keys[i] = key;
+                        values[i] = value;
+                        return true;
+                    }
+                    if (keys[i] == key) {
+                        values[i] = value;
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.metadatastripper.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Per-format counts and upload/result sizes of the images each endpoint
+ * handles. Exported as {@code image.processed} (tagged by whether the result
+ * came from the cache) and {@code image.bytes} (tagged in or out). Timings
+ * come from the {@code http.server.requests} and {@code image.phase} timers.
+ */
+@Component
+public class ImageMetrics {
+
+    private static final Set<String> FORMATS = Set.of("jpeg", "png", "gif", "bmp", "webp", "tiff", "heic", "heif", "avif");
+
+    private final MeterRegistry registry;
+
+    public ImageMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Records one image handled by an operation
+     *
+     * @param sniffedFormat the format read from the image's bytes, or null
+     *                      when it wasn't identified
+     * @param bytesOut size of the cleaned image, or -1 when the operation
+     *                 returns none
+     */
+    public void record(String operation, String sniffedFormat, long bytesIn, long bytesOut, boolean cached) {
+        String format = formatOf(sniffedFormat);
+        Counter.builder("image.processed")
+                .description("Images handled, by operation and format")
+                .tag("operation", operation)
+                .tag("format", format)
+                .tag("source", cached ? "cache" : "processed")
+                .register(registry)
+                .increment();
+        bytes(operation, format, "in").record(bytesIn);
+        if (bytesOut >= 0) {
+            bytes(operation, format, "out").record(bytesOut);
+        }
+    }
+
+    private DistributionSummary bytes(String operation, String format, String direction) {
+        return DistributionSummary.builder("image.bytes")
+                .description("Image sizes received and returned")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("format", format)
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    /**
+     * The format as a tag value. It comes from the image's bytes rather than
+     * the client's file name, and anything unexpected is "other", so the set
+     * of time series stays fixed.
+     */
+    static String formatOf(String format) {
+        return format != null && FORMATS.contains(format) ? format : "other";
+    }
+}
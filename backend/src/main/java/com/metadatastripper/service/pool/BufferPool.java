@@ -0,0 +1,89 @@
+package com.metadatastripper.service.pool;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable byte arrays for the strip output buffers.
+ *
+ * Buffers come in power-of-two size classes from 64 KB to 16 MB, so a
+ * request gets one close to its upload size and can hand it back for the
+ * next request of a similar size. Idle buffers are capped by total bytes;
+ * above the cap, and for requests larger than the biggest class, buffers
+ * are plain allocations left to the garbage collector.
+ */
+public final class BufferPool {
+
+    private static final int MIN_SHIFT = 16;
+    private static final int MAX_SHIFT = 24;
+    private static final long DEFAULT_MAX_IDLE_BYTES = 64L * 1024 * 1024;
+
+    private static final BufferPool INSTANCE = new BufferPool(DEFAULT_MAX_IDLE_BYTES);
+
+    private final Queue<byte[]>[] sizeClasses;
+    private final long maxIdleBytes;
+    private final AtomicLong idleBytes = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    BufferPool(long maxIdleBytes) {
+        this.maxIdleBytes = maxIdleBytes;
+        this.sizeClasses = new Queue[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    public static BufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a buffer of at least {@code minSize} bytes. Its contents are
+     * whatever the previous user left in it.
+     */
+    public byte[] acquire(int minSize) {
+        int sizeClass = sizeClassOf(minSize);
+        if (sizeClass < 0) {
+            return new byte[minSize];
+        }
+        byte[] buffer = sizeClasses[sizeClass].poll();
+        if (buffer == null) {
+            return new byte[1 << (sizeClass + MIN_SHIFT)];
+        }
+        idleBytes.addAndGet(-buffer.length);
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer back for reuse. The caller must not touch it afterwards.
+     * Buffers that didn't come from a size class are dropped.
+     */
+    public void release(byte[] buffer) {
+        int length = buffer.length;
+        if (Integer.bitCount(length) != 1 || length < (1 << MIN_SHIFT) || length > (1 << MAX_SHIFT)) {
+            return;
+        }
+        if (idleBytes.addAndGet(length) > maxIdleBytes) {
+            idleBytes.addAndGet(-length);
+            return;
+        }
+        sizeClasses[Integer.numberOfTrailingZeros(length) - MIN_SHIFT].offer(buffer);
+    }
+
+    long idleBytes() {
+        return idleBytes.get();
+    }
+
+    /**
+     * Index of the smallest size class holding {@code size} bytes, or -1
+     * when it is larger than every class
+     */
+    private static int sizeClassOf(int size) {
+        if (size > (1 << MAX_SHIFT)) {
+            return -1;
+        }
+        int shift = size <= (1 << MIN_SHIFT) ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift - MIN_SHIFT;
+    }
+}
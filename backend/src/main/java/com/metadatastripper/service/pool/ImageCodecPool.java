@@ -0,0 +1,197 @@
+package com.metadatastripper.service.pool;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Idle {@link ImageReader}s and {@link ImageWriter}s per format, so decoding
+ * and re-encoding skip the ImageIO registry scan and the codec setup on every
+ * request. A codec is reset before it goes back; one that failed mid-call is
+ * disposed instead, since its state is unknown.
+ *
+ * Behaves like {@link ImageIO#read} and {@link ImageIO#write}: content that
+ * doesn't match the format's codec is handed to whichever codec ImageIO
+ * finds for it.
+ */
+public final class ImageCodecPool {
+
+    private static final ImageCodecPool INSTANCE = new ImageCodecPool(Runtime.getRuntime().availableProcessors());
+
+    private final int maxIdlePerFormat;
+    private final Map<String, BlockingQueue<ImageReader>> readers = new ConcurrentHashMap<>();
+    private final Map<String, BlockingQueue<ImageWriter>> writers = new ConcurrentHashMap<>();
+
+    ImageCodecPool(int maxIdlePerFormat) {
+        this.maxIdlePerFormat = maxIdlePerFormat;
+    }
+
+    public static ImageCodecPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Decodes the first image in the stream
+     *
+     * @return the image, or null if no codec can read it
+     */
+    public BufferedImage read(InputStream in, String format) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(in);
+        if (stream == null) {
+            throw new IIOException("Can't create an ImageInputStream");
+        }
+        try (stream) {
+            ImageReader reader = borrowReader(format, stream);
+            boolean pooled = reader != null;
+            if (!pooled) {
+                Iterator<ImageReader> candidates = ImageIO.getImageReaders(stream);
+                if (!candidates.hasNext()) {
+                    return null;
+                }
+                reader = candidates.next();
+            }
+
+            boolean succeeded = false;
+            try {
+                reader.setInput(stream, true, true);
+                BufferedImage image = reader.read(0, reader.getDefaultReadParam());
+                succeeded = true;
+                return image;
+            } finally {
+                if (pooled && succeeded) {
+                    giveBack(format, reader);
+                } else {
+                    reader.dispose();
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes an image in the given format
+     *
+     * @return false if no codec can write the image in that format
+     */
+    public boolean write(RenderedImage image, String format, OutputStream out) throws IOException {
+        ImageWriter writer = borrowWriter(format, image);
+        if (writer == null) {
+            return ImageIO.write(image, format, out);
+        }
+
+        ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+        if (stream == null) {
+            writer.dispose();
+            throw new IIOException("Can't create an ImageOutputStream");
+        }
+        boolean succeeded = false;
+        try (stream) {
+            writer.setOutput(stream);
+            writer.write(image);
+            stream.flush();
+            succeeded = true;
+            return true;
+        } finally {
+            if (succeeded) {
+                giveBack(format, writer);
+            } else {
+                writer.dispose();
+            }
+        }
+    }
+
+    /**
+     * Takes an idle reader for the format, or makes one
+     *
+     * @return null if the format has no reader or the content isn't in that format
+     */
+    private ImageReader borrowReader(String format, ImageInputStream stream) throws IOException {
+        ImageReader reader = idle(readers, format).poll();
+        if (reader == null) {
+            Iterator<ImageReader> created = ImageIO.getImageReadersByFormatName(format);
+            if (!created.hasNext()) {
+                return null;
+            }
+            reader = created.next();
+        }
+        if (!canDecode(reader, stream)) {
+            giveBack(format, reader);
+            return null;
+        }
+        return reader;
+    }
+
+    /**
+     * Probes the content the way ImageIO does: a probe that runs out of data
+     * is a mismatch, and the stream is rewound either way
+     */
+    private static boolean canDecode(ImageReader reader, ImageInputStream stream) throws IOException {
+        stream.mark();
+        try {
+            return reader.getOriginatingProvider().canDecodeInput(stream);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            stream.reset();
+        }
+    }
+
+    /**
+     * Takes an idle writer for the format, or makes one
+     *
+     * @return null if the format has no writer able to encode this image
+     */
+    private ImageWriter borrowWriter(String format, RenderedImage image) {
+        ImageWriter writer = idle(writers, format).poll();
+        if (writer == null) {
+            Iterator<ImageWriter> created = ImageIO.getImageWritersByFormatName(format);
+            if (!created.hasNext()) {
+                return null;
+            }
+            writer = created.next();
+        }
+        if (!writer.getOriginatingProvider().canEncodeImage(image)) {
+            giveBack(format, writer);
+            return null;
+        }
+        return writer;
+    }
+
+    private void giveBack(String format, ImageReader reader) {
+        reader.reset();
+        if (!idle(readers, format).offer(reader)) {
+            reader.dispose();
+        }
+    }
+
+    private void giveBack(String format, ImageWriter writer) {
+        writer.reset();
+        if (!idle(writers, format).offer(writer)) {
+            writer.dispose();
+        }
+    }
+
+    private <T> BlockingQueue<T> idle(Map<String, BlockingQueue<T>> codecs, String format) {
+        return codecs.computeIfAbsent(format, key -> new ArrayBlockingQueue<>(maxIdlePerFormat));
+    }
+
+    int idleReaders(String format) {
+        return idle(readers, format).size();
+    }
+
+    int idleWriters(String format) {
+        return idle(writers, format).size();
+    }
+}
@@ -0,0 +1,81 @@
+package com.metadatastripper.service.pool;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A {@link java.io.ByteArrayOutputStream} that writes into buffers borrowed
+ * from a {@link BufferPool}. Sized from the upload, it normally never grows;
+ * if it does, the outgrown buffer goes back to the pool. {@link #close()}
+ * returns the buffer, so the stream belongs in a try-with-resources block
+ * and {@link #toByteArray()} must be called before it ends.
+ *
+ * Not synchronized: a stream is used by one request at a time.
+ */
+public final class PooledOutputStream extends OutputStream {
+
+    private final BufferPool pool;
+    private byte[] buffer;
+    private int count;
+
+    public PooledOutputStream(BufferPool pool, long expectedSize) {
+        this.pool = pool;
+        this.buffer = pool.acquire((int) Math.min(Integer.MAX_VALUE - 8, Math.max(expectedSize, 0)));
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Copies the written bytes into an array of exactly their length
+     */
+    public byte[] toByteArray() {
+        ensureOpen();
+        return Arrays.copyOf(buffer, count);
+    }
+
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        ensureOpen();
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError("Image output exceeds the maximum array size");
+        }
+        if (minCapacity <= buffer.length) {
+            return;
+        }
+        int newCapacity = Math.max(minCapacity, buffer.length << 1);
+        byte[] grown = pool.acquire(newCapacity < 0 ? minCapacity : newCapacity);
+        System.arraycopy(buffer, 0, grown, 0, count);
+        pool.release(buffer);
+        buffer = grown;
+    }
+
+    private void ensureOpen() {
+        if (buffer == null) {
+            throw new IllegalStateException("Stream is closed");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.metadatastripper.service.ratelimit;
+
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+
+/**
+ * Where rate limit buckets are kept. Buckets are bucket4j proxies over the
+ * backend's {@link ProxyManager}, so an in-process store and a store shared
+ * by all replicas are interchangeable.
+ */
+public interface BucketBackend extends AutoCloseable {
+
+    /**
+     * The proxy manager holding bucket state, keyed by client
+     */
+    ProxyManager<String> proxyManager();
+
+    /**
+     * How bucket proxies avoid a round trip to the store on every request
+     */
+    Optimization optimization();
+
+    /**
+     * Drops buckets that have been idle for longer than the idle timeout
+     */
+    void removeExpired();
+
+    /**
+     * Releases whatever the backend holds open
+     */
+    @Override
+    default void close() {
+    }
+}
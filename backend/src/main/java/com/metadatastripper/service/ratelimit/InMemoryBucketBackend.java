@@ -0,0 +1,117 @@
+package com.metadatastripper.service.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps bucket state in this JVM, bounded by client count and dropped when
+ * idle. Each replica enforces its own limit.
+ */
+public class InMemoryBucketBackend implements BucketBackend {
+
+    private final Cache<String, byte[]> states;
+    private final ProxyManager<String> proxyManager;
+
+    public InMemoryBucketBackend(long maxClients, Duration idleTimeout) {
+        this.states = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(idleTimeout)
+                .build();
+        this.proxyManager = new CaffeineProxyManager();
+    }
+
+    @Override
+    public ProxyManager<String> proxyManager() {
+        return proxyManager;
+    }
+
+    /**
+     * The state is already local, so there is no round trip to save
+     */
+    @Override
+    public Optimization optimization() {
+        return Optimization.NONE_OPTIMIZED;
+    }
+
+    @Override
+    public void removeExpired() {
+        states.cleanUp();
+    }
+
+    /**
+     * Compare-and-swap over the cache. The swap compares by reference, which
+     * is what we want: it succeeds only if nobody replaced the state we read.
+     */
+    private class CaffeineProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+        CaffeineProxyManager() {
+            super(ClientSideConfig.getDefault());
+        }
+
+        @Override
+        protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+            return new CompareAndSwapOperation() {
+                @Override
+                public Optional<byte[]> getStateData() {
+                    return Optional.ofNullable(states.getIfPresent(key));
+                }
+
+                @Override
+                public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                    if (originalData == null) {
+                        return states.asMap().putIfAbsent(key, newData) == null;
+                    }
+                    return states.asMap().replace(key, originalData, newData);
+                }
+            };
+        }
+
+        /**
+         * The cache never blocks, so the async operation is the synchronous
+         * one wrapped in completed futures
+         */
+        @Override
+        protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+            CompareAndSwapOperation operation = beginCompareAndSwapOperation(key);
+            return new AsyncCompareAndSwapOperation() {
+                @Override
+                public CompletableFuture<Optional<byte[]>> getStateData() {
+                    return CompletableFuture.completedFuture(operation.getStateData());
+                }
+
+                @Override
+                public CompletableFuture<Boolean> compareAndSwap(byte[] originalData, byte[] newData,
+                                                                 RemoteBucketState newState) {
+                    return CompletableFuture.completedFuture(operation.compareAndSwap(originalData, newData, newState));
+                }
+            };
+        }
+
+        @Override
+        public void removeProxy(String key) {
+            states.invalidate(key);
+        }
+
+        @Override
+        protected CompletableFuture<Void> removeAsync(String key) {
+            removeProxy(key);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public boolean isAsyncModeSupported() {
+            return true;
+        }
+    }
+}
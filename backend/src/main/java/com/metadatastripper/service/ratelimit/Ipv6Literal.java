@@ -0,0 +1,129 @@
+package com.metadatastripper.service.ratelimit;
+
+import java.util.Optional;
+
+/**
+ * Parses IPv6 address literals as text only. Client addresses can come from
+ * request headers, and {@link java.net.InetAddress#getByName} would treat
+ * anything it can't parse as a host name and look it up.
+ */
+public final class Ipv6Literal {
+
+    private Ipv6Literal() {
+    }
+
+    /**
+     * Parses an address such as {@code 2001:db8::1} or {@code ::ffff:192.0.2.1},
+     * without brackets or zone id
+     *
+     * @return the 16 address bytes, or empty if the text is not an IPv6 literal
+     */
+    public static Optional<byte[]> parse(String text) {
+        int gap = text.indexOf("::");
+        if (gap >= 0 && text.indexOf("::", gap + 1) >= 0) {
+            return Optional.empty();
+        }
+        int[] head = gap < 0 ? groups(text, true) : groups(text.substring(0, gap), false);
+        int[] tail = gap < 0 ? new int[0] : groups(text.substring(gap + 2), true);
+        if (head == null || tail == null) {
+            return Optional.empty();
+        }
+        int count = head.length + tail.length;
+        if (gap < 0 ? count != 8 : count > 7) {
+            return Optional.empty();
+        }
+
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < head.length; i++) {
+            setGroup(bytes, i, head[i]);
+        }
+        for (int i = 0; i < tail.length; i++) {
+            setGroup(bytes, 8 - tail.length + i, tail[i]);
+        }
+        return Optional.of(bytes);
+    }
+
+    /**
+     * Splits colon-separated hex groups. When {@code last} is set the final
+     * part may be a dotted IPv4 address, which fills two groups.
+     */
+    private static int[] groups(String text, boolean last) {
+        if (text.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = text.split(":", -1);
+        int[] groups = new int[parts.length + 1];
+        int count = 0;
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (last && i == parts.length - 1 && part.indexOf('.') >= 0) {
+                long ipv4 = parseIpv4(part);
+                if (ipv4 < 0) {
+                    return null;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xFFFF);
+                continue;
+            }
+            int group = parseHexGroup(part);
+            if (group < 0) {
+                return null;
+            }
+            groups[count++] = group;
+        }
+        int[] result = new int[count];
+        System.arraycopy(groups, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * @return the address as an unsigned 32-bit value, or -1 if invalid
+     */
+    private static long parseIpv4(String part) {
+        String[] octets = part.split("\\.", -1);
+        if (octets.length != 4) {
+            return -1;
+        }
+        long value = 0;
+        for (String octet : octets) {
+            if (octet.isEmpty() || octet.length() > 3) {
+                return -1;
+            }
+            int number = 0;
+            for (int i = 0; i < octet.length(); i++) {
+                char c = octet.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                number = number * 10 + (c - '0');
+            }
+            if (number > 255) {
+                return -1;
+            }
+            value = (value << 8) | number;
+        }
+        return value;
+    }
+
+    private static int parseHexGroup(String part) {
+        if (part.isEmpty() || part.length() > 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            // Character.digit also accepts non-ASCII digits
+            int digit = c < 0x80 ? Character.digit(c, 16) : -1;
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static void setGroup(byte[] bytes, int index, int group) {
+        bytes[2 * index] = (byte) (group >>> 8);
+        bytes[2 * index + 1] = (byte) group;
+    }
+}
@@ -0,0 +1,249 @@
+package com.metadatastripper.service.ratelimit;
+
+import io.github.bucket4j.TimeMeter;
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.AbstractSelectForUpdateBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.LockAndGetResult;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.SelectForUpdateBasedTransaction;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.NopeOptimizationListener;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.github.bucket4j.distributed.proxy.optimization.skiponzero.SkipSyncOnZeroOptimization;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Keeps bucket state in a database table shared by all replicas, so the
+ * limit holds across the cluster. Works with any database that supports
+ * SELECT ... FOR UPDATE (PostgreSQL, MySQL, H2).
+ *
+ * State is stored as base64 text so the same schema works everywhere. The
+ * backend owns the data source and closes it on shutdown.
+ */
+@Slf4j
+public class JdbcBucketBackend implements BucketBackend {
+
+    static final String TABLE = "rate_limit_buckets";
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE
+            + " (id VARCHAR(255) PRIMARY KEY, state VARCHAR(4096), expires_at BIGINT NOT NULL)";
+    private static final String SELECT_FOR_UPDATE = "SELECT state FROM " + TABLE + " WHERE id = ? FOR UPDATE";
+    private static final String INSERT_EMPTY = "INSERT INTO " + TABLE + " (id, state, expires_at) VALUES (?, NULL, ?)";
+    private static final String UPDATE = "UPDATE " + TABLE + " SET state = ?, expires_at = ? WHERE id = ?";
+    private static final String DELETE = "DELETE FROM " + TABLE + " WHERE id = ?";
+    private static final String DELETE_EXPIRED = "DELETE FROM " + TABLE + " WHERE expires_at < ?";
+
+    private final DataSource dataSource;
+    private final Duration idleTimeout;
+    private final Optimization optimization;
+    private final ProxyManager<String> proxyManager;
+
+    /**
+     * @param maxUnsyncedTokens tokens a replica may hand out locally before
+     *        syncing; 0 keeps the limit exact and only skips syncing while a
+     *        bucket is known to be empty
+     */
+    public JdbcBucketBackend(DataSource dataSource, Duration idleTimeout,
+                             long maxUnsyncedTokens, Duration maxUnsyncedTimeout) {
+        this.dataSource = dataSource;
+        this.idleTimeout = idleTimeout;
+        this.optimization = maxUnsyncedTokens > 0
+                ? Optimizations.delaying(new DelayParameters(maxUnsyncedTokens, maxUnsyncedTimeout))
+                : new SkipSyncOnZeroOptimization(NopeOptimizationListener.INSTANCE, TimeMeter.SYSTEM_MILLISECONDS);
+        // Replicas share state, so everyone uses the wall clock
+        this.proxyManager = new SelectForUpdateProxyManager(
+                ClientSideConfig.getDefault().withClientClock(TimeMeter.SYSTEM_MILLISECONDS));
+    }
+
+    /**
+     * Creates the bucket table if it doesn't exist yet
+     */
+    public void initializeSchema() {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not create the " + TABLE + " table", e);
+        }
+    }
+
+    @Override
+    public ProxyManager<String> proxyManager() {
+        return proxyManager;
+    }
+
+    @Override
+    public Optimization optimization() {
+        return optimization;
+    }
+
+    @Override
+    public void removeExpired() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(DELETE_EXPIRED)) {
+            statement.setLong(1, System.currentTimeMillis());
+            int removed = statement.executeUpdate();
+            log.debug("Removed {} idle rate limit buckets", removed);
+        } catch (SQLException e) {
+            log.warn("Could not remove idle rate limit buckets: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the data source if it is a pool the backend was handed to own
+     */
+    @Override
+    public void close() {
+        if (dataSource instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("Could not close the rate limit data source: {}", e.getMessage());
+            }
+        }
+    }
+
+    private long expiresAt() {
+        return System.currentTimeMillis() + idleTimeout.toMillis();
+    }
+
+    private class SelectForUpdateProxyManager extends AbstractSelectForUpdateBasedProxyManager<String> {
+
+        SelectForUpdateProxyManager(ClientSideConfig clientSideConfig) {
+            super(clientSideConfig);
+        }
+
+        @Override
+        protected SelectForUpdateBasedTransaction allocateTransaction(String key) {
+            return new JdbcTransaction(key);
+        }
+
+        @Override
+        public void removeProxy(String key) {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(DELETE)) {
+                statement.setString(1, key);
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not remove rate limit bucket", e);
+            }
+        }
+
+        @Override
+        public boolean isAsyncModeSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * One bucket4j transaction: lock the row, let bucket4j apply the command
+     * to the state, write it back
+     */
+    private class JdbcTransaction implements SelectForUpdateBasedTransaction {
+
+        private final String key;
+        private Connection connection;
+
+        JdbcTransaction(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void begin() {
+            try {
+                connection = dataSource.getConnection();
+                connection.setAutoCommit(false);
+            } catch (SQLException e) {
+                release();
+                throw new IllegalStateException("Could not open a rate limit transaction", e);
+            }
+        }
+
+        @Override
+        public LockAndGetResult tryLockAndGet() {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_FOR_UPDATE)) {
+                statement.setString(1, key);
+                try (ResultSet result = statement.executeQuery()) {
+                    if (!result.next()) {
+                        return LockAndGetResult.notLocked();
+                    }
+                    String state = result.getString(1);
+                    return LockAndGetResult.locked(state == null ? null : Base64.getDecoder().decode(state));
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not lock rate limit bucket", e);
+            }
+        }
+
+        @Override
+        public boolean tryInsertEmptyData() {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_EMPTY)) {
+                statement.setString(1, key);
+                statement.setLong(2, expiresAt());
+                statement.executeUpdate();
+                return true;
+            } catch (SQLException e) {
+                // Integrity violation: another replica inserted the row first
+                if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                    return false;
+                }
+                throw new IllegalStateException("Could not create rate limit bucket", e);
+            }
+        }
+
+        @Override
+        public void update(byte[] data, RemoteBucketState newState) {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE)) {
+                statement.setString(1, Base64.getEncoder().encodeToString(data));
+                statement.setLong(2, expiresAt());
+                statement.setString(3, key);
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not update rate limit bucket", e);
+            }
+        }
+
+        @Override
+        public void commit() {
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not commit rate limit bucket", e);
+            }
+        }
+
+        @Override
+        public void rollback() {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                log.warn("Could not roll back rate limit transaction: {}", e.getMessage());
+            }
+        }
+
+        @Override
+        public void release() {
+            if (connection == null) {
+                return;
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Could not release rate limit connection: {}", e.getMessage());
+            } finally {
+                connection = null;
+            }
+        }
+    }
+}
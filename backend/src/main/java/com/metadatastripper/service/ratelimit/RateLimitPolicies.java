@@ -0,0 +1,57 @@
+package com.metadatastripper.service.ratelimit;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-route rate limit budgets. A route can limit requests, upload bytes
+ * and decoded megapixels per minute; each limit is tracked separately, and
+ * a request is rejected once any of them is used up.
+ */
+@Data
+@ConfigurationProperties(prefix = "strip.rate-limit")
+public class RateLimitPolicies {
+
+    /**
+     * Applies to rate limited paths that no route matches
+     */
+    private Policy defaults = new Policy();
+
+    /**
+     * Named routes, matched against the request path in order
+     */
+    private Map<String, Route> routes = new LinkedHashMap<>();
+
+    @Data
+    public static class Policy {
+
+        private int requestsPerMinute = 10;
+
+        /**
+         * Upload bytes per minute; unset means unlimited
+         */
+        private DataSize bytesPerMinute;
+
+        /**
+         * Image megapixels per minute, from the declared dimensions; 0 means unlimited
+         */
+        private long megapixelsPerMinute;
+    }
+
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    public static class Route extends Policy {
+
+        /**
+         * Ant-style path patterns, e.g. /images/strip/**
+         */
+        private List<String> paths = new ArrayList<>();
+    }
+}
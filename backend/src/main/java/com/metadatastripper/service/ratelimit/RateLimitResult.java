@@ -0,0 +1,29 @@
+package com.metadatastripper.service.ratelimit;
+
+import java.util.List;
+
+/**
+ * Outcome of a rate limit check, with what is left of each budget after it
+ *
+ * @param allowed     whether the request may go ahead
+ * @param nanosToWait when rejected, how long until the exhausted budget refills
+ * @param budgets     the route's budgets, requests first
+ */
+public record RateLimitResult(boolean allowed, long nanosToWait, List<Budget> budgets) {
+
+    /**
+     * @param name      "requests", "bytes" or "megapixels"
+     * @param limit     the per-minute limit
+     * @param remaining what is left this minute, never negative
+     */
+    public record Budget(String name, long limit, long remaining) {
+    }
+
+    /**
+     * Lets a request through without budget information, for when the
+     * bucket store can't be reached
+     */
+    public static RateLimitResult unchecked() {
+        return new RateLimitResult(true, 0, List.of());
+    }
+}
@@ -0,0 +1,12 @@
+package com.metadatastripper.service.ratelimit;
+
+/**
+ * What a request costs against the byte and megapixel budgets
+ *
+ * @param bytes  upload size
+ * @param pixels pixels declared in the image headers; 0 when unknown
+ */
+public record RequestCost(long bytes, long pixels) {
+
+    public static final RequestCost NONE = new RequestCost(0, 0);
+}
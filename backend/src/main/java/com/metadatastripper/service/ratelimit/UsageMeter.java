@@ -0,0 +1,33 @@
+package com.metadatastripper.service.ratelimit;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a raw request body turned out to cost, recorded while it is
+ * processed. Unlike a multipart upload, a raw body can't be measured before
+ * the handler runs: a chunked body has no length, and its image headers are
+ * only seen as it streams through. The rate limiter charges the difference
+ * once the request has completed.
+ */
+public final class UsageMeter {
+
+    /**
+     * Request attribute holding the meter of a raw body request
+     */
+    public static final String ATTRIBUTE = UsageMeter.class.getName();
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder pixels = new LongAdder();
+
+    public void addBytes(long count) {
+        bytes.add(count);
+    }
+
+    public void addPixels(long count) {
+        pixels.add(count);
+    }
+
+    public RequestCost cost() {
+        return new RequestCost(bytes.sum(), pixels.sum());
+    }
+}
@@ -0,0 +1,60 @@
+package com.metadatastripper.service.spool;
+
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A spooled result file served as a response body. The file is deleted once
+ * its stream is closed, and is copied out with {@link FileChannel#transferTo}
+ * so the bytes never pass through a heap buffer of ours; whether that ends in
+ * sendfile depends on the container's output stream.
+ */
+public class SpooledFileResource extends FileSystemResource {
+
+    public SpooledFileResource(Path path) {
+        super(path);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        FileChannel channel = FileChannel.open(getFile().toPath(),
+                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        return new TransferInputStream(channel);
+    }
+
+    /**
+     * Reads like any channel stream, but {@link #transferTo} hands the
+     * remaining bytes to the channel
+     */
+    private static final class TransferInputStream extends FilterInputStream {
+
+        private final FileChannel channel;
+
+        TransferInputStream(FileChannel channel) {
+            super(Channels.newInputStream(channel));
+            this.channel = channel;
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long start = channel.position();
+            long position = start;
+            long size = channel.size();
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+            channel.position(position);
+            return position - start;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.metadatastripper.service.spool;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Temp files for uploads too large to hold on the heap. Uploads are moved
+ * here from the container's own multipart storage, which is a rename rather
+ * than a copy when both are on the same disk.
+ */
+@Service
+@Slf4j
+public class UploadSpool {
+
+    private final Path directory;
+    private final long threshold;
+    private final Duration maxAge;
+
+    public UploadSpool(
+            @Value("${strip.spool.directory:}") String directory,
+            @Value("${strip.spool.threshold:8MB}") DataSize threshold,
+            @Value("${strip.spool.max-age:PT1H}") Duration maxAge) throws IOException {
+        this.directory = Files.createDirectories(directory.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "metadata-stripper-spool")
+                : Path.of(directory));
+        this.threshold = threshold.toBytes();
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * True when an upload should be processed from disk rather than memory
+     */
+    public boolean shouldSpool(MultipartFile file) {
+        return file.getSize() > threshold;
+    }
+
+    /**
+     * Moves an upload into the spool. The multipart file can't be read
+     * afterwards.
+     */
+    public Path spool(MultipartFile file) throws IOException {
+        Path path = newPath(".upload");
+        file.transferTo(path.toFile());
+        return path;
+    }
+
+    /**
+     * Copies a request body into the spool, leaving nothing behind if the
+     * body can't be read to its end
+     */
+    public Path spool(InputStream in) throws IOException {
+        Path path = newPath(".upload");
+        try {
+            Files.copy(in, path);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(path);
+            throw e;
+        }
+        return path;
+    }
+
+    /**
+     * Returns a fresh path for a result file, not yet created
+     */
+    public Path newOutput() {
+        return newPath(".out");
+    }
+
+    /**
+     * Removes files whose response was never written, e.g. after the client
+     * went away or the server stopped mid-request. The directory may be
+     * shared, so only files older than max-age are touched.
+     */
+    @Scheduled(fixedDelayString = "${strip.spool.cleanup-interval:PT10M}")
+    public void removeAbandoned() {
+        Instant cutoff = Instant.now().minus(maxAge);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                if (isOlderThan(path, cutoff)) {
+                    deleteQuietly(path);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not sweep spool directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static boolean isOlderThan(Path path, Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant().isBefore(cutoff);
+        } catch (IOException e) {
+            // Deleted by its request in the meantime
+            return false;
+        }
+    }
+
+    public static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete spool file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private Path newPath(String suffix) {
+        return directory.resolve(UUID.randomUUID() + suffix);
+    }
+}
@@ -0,0 +1,38 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Copies ranges of a buffer to a stream: straight from the backing array
+ * when there is one, otherwise (memory mappings) through one reused chunk.
+ */
+final class BufferCopier {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ByteBuffer source;
+    private byte[] chunk;
+
+    BufferCopier(ByteBuffer source) {
+        this.source = source;
+    }
+
+    void copy(int offset, int length, OutputStream out) throws IOException {
+        if (source.hasArray()) {
+            out.write(source.array(), source.arrayOffset() + offset, length);
+            return;
+        }
+        if (chunk == null) {
+            chunk = new byte[CHUNK_SIZE];
+        }
+        while (length > 0) {
+            int n = Math.min(length, chunk.length);
+            source.get(offset, chunk, 0, n);
+            out.write(chunk, 0, n);
+            offset += n;
+            length -= n;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.metadatastripper.service.stripper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rebuilds an EXIF (TIFF) structure keeping only an allowed set of tags.
+ *
+ * Only IFD0 and the Exif and GPS sub-IFDs it points to are read; IFD1 (the
+ * embedded thumbnail), the interoperability IFD and maker notes are always
+ * dropped. Kept values are copied byte-for-byte in the original byte order,
+ * so nothing is decoded or re-encoded. Anything malformed drops the whole
+ * structure rather than risk passing through tags the policy didn't allow.
+ */
+final class ExifRewriter {
+
+    static final int EXIF_IFD_POINTER = 0x8769;
+    static final int GPS_IFD_POINTER = 0x8825;
+
+    // Offsets into data that is always removed, and pointers to IFDs we don't rebuild
+    private static final int[] ALWAYS_DROPPED = {
+        0x0111, 0x0117, 0x0144, 0x0145, 0x014A, 0x0201, 0x0202,
+        0x927C, 0xA005, EXIF_IFD_POINTER, GPS_IFD_POINTER
+    };
+
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 12;
+    private static final int TYPE_LONG = 4;
+
+    static final ExifRewriter REMOVE_ALL = new ExifRewriter(new BitSet(), new BitSet(), new BitSet());
+
+    private final BitSet ifd0Tags;
+    private final BitSet exifTags;
+    private final BitSet gpsTags;
+
+    ExifRewriter(BitSet ifd0Tags, BitSet exifTags, BitSet gpsTags) {
+        this.ifd0Tags = withoutStructuralTags(ifd0Tags);
+        this.exifTags = withoutStructuralTags(exifTags);
+        this.gpsTags = withoutStructuralTags(gpsTags);
+    }
+
+    /**
+     * True when every EXIF structure would be dropped, so callers can skip it unread
+     */
+    boolean keepsNothing() {
+        return ifd0Tags.isEmpty() && exifTags.isEmpty() && gpsTags.isEmpty();
+    }
+
+    /**
+     * True when the policy keeps an IFD0 tag. Offsets and sub-IFD pointers
+     * are never kept.
+     */
+    boolean keepsIfd0Tag(int tag) {
+        return ifd0Tags.get(tag);
+    }
+
+    /**
+     * Returns a new TIFF structure holding only the allowed tags of
+     * {@code data[offset, offset + length)}.
+     *
+     * @return the rewritten structure, or null if no tag is kept or the input
+     *         is malformed
+     */
+    byte[] rewrite(byte[] data, int offset, int length) {
+        if (keepsNothing() || length < HEADER_SIZE) {
+            return null;
+        }
+        try {
+            ByteBuffer tiff = ByteBuffer.wrap(data, offset, length).slice();
+            if (data[offset] == 'I' && data[offset + 1] == 'I') {
+                tiff.order(ByteOrder.LITTLE_ENDIAN);
+            } else if (data[offset] != 'M' || data[offset + 1] != 'M') {
+                return null;
+            }
+            if (tiff.getShort(2) != 42) {
+                return null;
+            }
+
+            int ifd0Offset = tiff.getInt(4);
+            List<Entry> ifd0 = readIfd(tiff, ifd0Offset, ifd0Tags);
+            List<Entry> exif = readSubIfd(tiff, ifd0Offset, EXIF_IFD_POINTER, exifTags);
+            List<Entry> gps = readSubIfd(tiff, ifd0Offset, GPS_IFD_POINTER, gpsTags);
+            if (ifd0.isEmpty() && exif.isEmpty() && gps.isEmpty()) {
+                return null;
+            }
+
+            // Layout: header, IFD0 with its values, then the Exif IFD, then GPS
+            Entry exifPointer = exif.isEmpty() ? null : Entry.pointer(EXIF_IFD_POINTER);
+            Entry gpsPointer = gps.isEmpty() ? null : Entry.pointer(GPS_IFD_POINTER);
+            if (exifPointer != null) {
+                ifd0.add(exifPointer);
+            }
+            if (gpsPointer != null) {
+                ifd0.add(gpsPointer);
+            }
+            ifd0.sort(Comparator.comparingInt(entry -> entry.tag));
+
+            int exifOffset = HEADER_SIZE + ifdSize(ifd0);
+            int gpsOffset = exifOffset + ifdSize(exif);
+            if (exifPointer != null) {
+                exifPointer.value = exifOffset;
+            }
+            if (gpsPointer != null) {
+                gpsPointer.value = gpsOffset;
+            }
+
+            ByteBuffer out = ByteBuffer.allocate(gpsOffset + ifdSize(gps)).order(tiff.order());
+            out.put(0, data, offset, 2);
+            out.putShort(2, (short) 42);
+            out.putInt(4, HEADER_SIZE);
+            writeIfd(tiff, out, HEADER_SIZE, ifd0);
+            writeIfd(tiff, out, exifOffset, exif);
+            writeIfd(tiff, out, gpsOffset, gps);
+            return out.array();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private List<Entry> readSubIfd(ByteBuffer tiff, int ifd0Offset, int pointerTag, BitSet keep) {
+        if (keep.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int count = tiff.getShort(ifd0Offset) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int pos = ifd0Offset + 2 + i * ENTRY_SIZE;
+            if ((tiff.getShort(pos) & 0xFFFF) == pointerTag) {
+                return readIfd(tiff, tiff.getInt(pos + 8), keep);
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private List<Entry> readIfd(ByteBuffer tiff, int ifdOffset, BitSet keep) {
+        List<Entry> entries = new ArrayList<>();
+        if (keep.isEmpty()) {
+            return entries;
+        }
+        int count = tiff.getShort(ifdOffset) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int pos = ifdOffset + 2 + i * ENTRY_SIZE;
+            int tag = tiff.getShort(pos) & 0xFFFF;
+            if (!keep.get(tag)) {
+                continue;
+            }
+            int type = tiff.getShort(pos + 2) & 0xFFFF;
+            long valueCount = tiff.getInt(pos + 4) & 0xFFFFFFFFL;
+            int typeSize = typeSize(type);
+            if (typeSize == 0) {
+                // A type we can't size can't be copied safely
+                continue;
+            }
+            long size = typeSize * valueCount;
+            if (size > tiff.limit()) {
+                throw new IllegalArgumentException("EXIF value runs past the segment");
+            }
+            int source = size <= 4 ? pos + 8 : tiff.getInt(pos + 8);
+            if (source < 0 || source + size > tiff.limit()) {
+                throw new IllegalArgumentException("EXIF value runs past the segment");
+            }
+            entries.add(new Entry(tag, type, (int) valueCount, source, (int) size));
+        }
+        return entries;
+    }
+
+    private void writeIfd(ByteBuffer tiff, ByteBuffer out, int ifdOffset, List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        out.putShort(ifdOffset, (short) entries.size());
+        int pos = ifdOffset + 2;
+        int valuePos = pos + entries.size() * ENTRY_SIZE + 4;
+        for (Entry entry : entries) {
+            out.putShort(pos, (short) entry.tag);
+            out.putShort(pos + 2, (short) entry.type);
+            out.putInt(pos + 4, entry.count);
+            if (entry.source < 0) {
+                out.putInt(pos + 8, entry.value);
+            } else if (entry.size <= 4) {
+                out.put(pos + 8, tiff, entry.source, entry.size);
+            } else {
+                out.putInt(pos + 8, valuePos);
+                out.put(valuePos, tiff, entry.source, entry.size);
+                // Values start on a word boundary
+                valuePos += entry.size + (entry.size & 1);
+            }
+            pos += ENTRY_SIZE;
+        }
+        // No next IFD: the thumbnail in IFD1 is not carried over
+        out.putInt(pos, 0);
+    }
+
+    private static int ifdSize(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        int size = 2 + entries.size() * ENTRY_SIZE + 4;
+        for (Entry entry : entries) {
+            if (entry.size > 4) {
+                size += entry.size + (entry.size & 1);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Bytes per value of a TIFF field type, or 0 for an unknown type
+     */
+    private static int typeSize(int type) {
+        return switch (type) {
+            case 1, 2, 6, 7 -> 1;
+            case 3, 8 -> 2;
+            case 4, 9, 11, 13 -> 4;
+            case 5, 10, 12 -> 8;
+            default -> 0;
+        };
+    }
+
+    private static BitSet withoutStructuralTags(BitSet tags) {
+        BitSet copy = (BitSet) tags.clone();
+        for (int tag : ALWAYS_DROPPED) {
+            copy.clear(tag);
+        }
+        return copy;
+    }
+
+    /**
+     * A kept entry: {@code source} is where its value bytes start in the
+     * input, or -1 for a sub-IFD pointer whose {@code value} is filled in
+     * once the layout is known
+     */
+    private static final class Entry {
+
+        final int tag;
+        final int type;
+        final int count;
+        final int source;
+        final int size;
+        int value;
+
+        Entry(int tag, int type, int count, int source, int size) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.source = source;
+            this.size = size;
+        }
+
+        static Entry pointer(int tag) {
+            return new Entry(tag, TYPE_LONG, 1, -1, 4);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Identifies an image format from the magic bytes at the start of the file,
+ * so uploads are handled by what they contain rather than by their name.
+ * Format names are the ones used by ImageIO and the strippers, e.g. "jpeg".
+ */
+public final class FormatSniffer {
+
+    /**
+     * Bytes needed to recognise every supported format
+     */
+    public static final int HEADER_LENGTH = 18;
+
+    private static final int[] JPEG = {0xFF, 0xD8, 0xFF};
+    private static final int[] PNG = {0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int[] GIF = {'G', 'I', 'F', '8'};
+    private static final int[] TIFF_LITTLE_ENDIAN = {'I', 'I', 42, 0};
+    private static final int[] TIFF_BIG_ENDIAN = {'M', 'M', 0, 42};
+
+    private FormatSniffer() {
+    }
+
+    /**
+     * Identifies the format from the first bytes of a file
+     *
+     * @return the format name, or empty if the bytes don't start a supported image
+     */
+    public static Optional<String> sniff(byte[] header, int length) {
+        if (startsWith(header, length, JPEG)) {
+            return Optional.of("jpeg");
+        }
+        if (startsWith(header, length, PNG)) {
+            return Optional.of("png");
+        }
+        // GIF87a or GIF89a
+        if (startsWith(header, length, GIF) && length >= 6
+                && (header[4] == '7' || header[4] == '9') && header[5] == 'a') {
+            return Optional.of("gif");
+        }
+        if (isBmp(header, length)) {
+            return Optional.of("bmp");
+        }
+        if (startsWith(header, length, TIFF_LITTLE_ENDIAN) || startsWith(header, length, TIFF_BIG_ENDIAN)) {
+            return Optional.of("tiff");
+        }
+        if (length >= 12 && ascii(header, 0).equals("RIFF") && ascii(header, 8).equals("WEBP")) {
+            return Optional.of("webp");
+        }
+        if (length >= 12 && ascii(header, 4).equals("ftyp")) {
+            return heifFormat(ascii(header, 8));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Identifies the format of a stream, consuming up to {@link #HEADER_LENGTH} bytes
+     */
+    public static Optional<String> sniff(InputStream in) throws IOException {
+        byte[] header = in.readNBytes(HEADER_LENGTH);
+        return sniff(header, header.length);
+    }
+
+    /**
+     * Identifies the format of a stream without consuming anything. The
+     * stream's pushback buffer must hold at least {@link #HEADER_LENGTH} bytes.
+     */
+    public static Optional<String> peek(PushbackInputStream in) throws IOException {
+        byte[] header = in.readNBytes(HEADER_LENGTH);
+        in.unread(header);
+        return sniff(header, header.length);
+    }
+
+    /**
+     * "BM" alone is too weak a signature, so the size of the DIB header that
+     * follows the file header must also be one of the known versions
+     */
+    private static boolean isBmp(byte[] header, int length) {
+        if (length < HEADER_LENGTH || header[0] != 'B' || header[1] != 'M') {
+            return false;
+        }
+        int dibHeaderSize = (header[14] & 0xFF) | (header[15] & 0xFF) << 8
+                | (header[16] & 0xFF) << 16 | (header[17] & 0xFF) << 24;
+        return switch (dibHeaderSize) {
+            // BITMAPCOREHEADER, BITMAPINFOHEADER, its V2-V5 versions, OS/2 2.x
+            case 12, 40, 52, 56, 64, 108, 124 -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Maps the major brand of an ISO-BMFF file to a format. The generic
+     * "mif1" brand doesn't say which codec is inside, so it is plain "heif".
+     */
+    private static Optional<String> heifFormat(String brand) {
+        return switch (brand) {
+            case "heic", "heix", "heim", "heis", "hevc", "hevx" -> Optional.of("heic");
+            case "avif", "avis" -> Optional.of("avif");
+            case "mif1", "msf1" -> Optional.of("heif");
+            default -> Optional.empty();
+        };
+    }
+
+    private static String ascii(byte[] header, int offset) {
+        return new String(header, offset, 4, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean startsWith(byte[] header, int length, int[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,9 @@
+package com.metadatastripper.service.stripper;
+
+/**
+ * Removes metadata from a single image container format by copying only the
+ * structural parts of the file, without decoding any pixel data. A stripper
+ * either reads its input in one forward pass or needs random access to it.
+ */
+public sealed interface FormatStripper permits StreamingStripper, RandomAccessStripper {
+}
@@ -0,0 +1,143 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Strips metadata from a GIF by filtering its blocks.
+ *
+ * Image descriptors, color tables, LZW image data, graphic control and plain
+ * text extensions are copied byte for byte, so every frame of an animation
+ * and its timing survive. Comment extensions and application extensions are
+ * skipped, except the NETSCAPE2.0/ANIMEXTS1.0 looping extension and, when the
+ * policy keeps it, the ICC profile. Nothing is decompressed, so the cost is
+ * one pass over the file and memory use does not depend on its size.
+ */
+public class GifMetadataStripper implements StreamingStripper {
+
+    private static final int EXTENSION = 0x21;
+    private static final int IMAGE_DESCRIPTOR = 0x2C;
+    private static final int TRAILER = 0x3B;
+
+    private static final int PLAIN_TEXT = 0x01;
+    private static final int GRAPHIC_CONTROL = 0xF9;
+    private static final int APPLICATION = 0xFF;
+
+    // Application identifier (8 bytes) and authentication code (3 bytes)
+    private static final int APPLICATION_ID_LENGTH = 11;
+    private static final byte[] NETSCAPE = ascii("NETSCAPE2.0");
+    private static final byte[] ANIMEXTS = ascii("ANIMEXTS1.0");
+    private static final byte[] ICC_PROFILE = ascii("ICCRGBG1012");
+
+    private final boolean keepIccProfile;
+
+    public GifMetadataStripper() {
+        this(false);
+    }
+
+    public GifMetadataStripper(boolean keepIccProfile) {
+        this.keepIccProfile = keepIccProfile;
+    }
+
+    @Override
+    public void strip(InputStream inputStream, OutputStream out) throws IOException {
+        ImageInput in = new ImageInput(inputStream);
+
+        // "GIF87a" or "GIF89a", then the logical screen descriptor
+        byte[] header = new byte[13];
+        in.readFully(header, 0, header.length);
+        if (header[0] != 'G' || header[1] != 'I' || header[2] != 'F') {
+            throw new IOException("Not a valid GIF stream: bad signature");
+        }
+        out.write(header);
+        copyColorTable(in, out, header[10]);
+
+        while (true) {
+            int block = in.read();
+            switch (block) {
+                case IMAGE_DESCRIPTOR -> copyImage(in, out);
+                case EXTENSION -> filterExtension(in, out);
+                // Many encoders leave out the trailer; decoders stop at the end anyway
+                case TRAILER, -1 -> {
+                    out.write(TRAILER);
+                    return;
+                }
+                default -> throw new IOException("Not a valid GIF stream: unexpected block 0x"
+                        + Integer.toHexString(block));
+            }
+        }
+    }
+
+    private void copyImage(ImageInput in, OutputStream out) throws IOException {
+        // Position, size and flags, then the local color table and LZW code size
+        out.write(IMAGE_DESCRIPTOR);
+        byte[] descriptor = new byte[9];
+        in.readFully(descriptor, 0, descriptor.length);
+        out.write(descriptor);
+        copyColorTable(in, out, descriptor[8]);
+        out.write(in.readUnsignedByte());
+        in.copySubBlocks(out);
+    }
+
+    private void filterExtension(ImageInput in, OutputStream out) throws IOException {
+        int label = in.readUnsignedByte();
+        if (label == GRAPHIC_CONTROL || label == PLAIN_TEXT) {
+            out.write(EXTENSION);
+            out.write(label);
+            in.copySubBlocks(out);
+        } else if (label == APPLICATION) {
+            filterApplicationExtension(in, out);
+        } else {
+            // Comments, and labels no decoder knows what to do with
+            skipSubBlocks(in);
+        }
+    }
+
+    private void filterApplicationExtension(ImageInput in, OutputStream out) throws IOException {
+        int size = in.readUnsignedByte();
+        if (size != APPLICATION_ID_LENGTH) {
+            in.skipFully(size);
+            if (size > 0) {
+                skipSubBlocks(in);
+            }
+            return;
+        }
+
+        byte[] id = new byte[APPLICATION_ID_LENGTH];
+        in.readFully(id, 0, id.length);
+        if (Arrays.equals(id, NETSCAPE) || Arrays.equals(id, ANIMEXTS)
+                || (keepIccProfile && Arrays.equals(id, ICC_PROFILE))) {
+            out.write(EXTENSION);
+            out.write(APPLICATION);
+            out.write(size);
+            out.write(id);
+            in.copySubBlocks(out);
+        } else {
+            // XMP, Photoshop/IPTC, ICC and vendor data
+            skipSubBlocks(in);
+        }
+    }
+
+    /**
+     * Copies the color table that follows a descriptor whose flags say it has one
+     */
+    private void copyColorTable(ImageInput in, OutputStream out, byte flags) throws IOException {
+        if ((flags & 0x80) != 0) {
+            in.copyTo(out, 3L << ((flags & 0x07) + 1));
+        }
+    }
+
+    private void skipSubBlocks(ImageInput in) throws IOException {
+        int size;
+        while ((size = in.readUnsignedByte()) > 0) {
+            in.skipFully(size);
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,667 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Strips metadata from a HEIC or AVIF (ISO-BMFF) file by removing its Exif
+ * and XMP items.
+ *
+ * The items are found in the {@code iinf} box and removed from {@code iinf},
+ * {@code iloc}, {@code iref} and {@code ipma}; their bytes are cut out of
+ * {@code mdat} (or zeroed inside {@code idat}) and the {@code iloc} offsets
+ * of every remaining item are moved back by the bytes removed before it.
+ * Coded image data is copied as it is. Orientation and colour are item
+ * properties ({@code irot}, {@code imir}, {@code colr}) rather than EXIF, so
+ * they are kept whatever the policy.
+ *
+ * Files with a {@code moov} track box carry absolute offsets this stripper
+ * doesn't rewrite; for those the metadata bytes are zeroed in place instead
+ * and every offset stays valid.
+ */
+public class HeifMetadataStripper implements RandomAccessStripper {
+
+    private static final int FTYP = boxType("ftyp");
+    private static final int META = boxType("meta");
+    private static final int MDAT = boxType("mdat");
+    private static final int MOOV = boxType("moov");
+    private static final int IINF = boxType("iinf");
+    private static final int INFE = boxType("infe");
+    private static final int ILOC = boxType("iloc");
+    private static final int IREF = boxType("iref");
+    private static final int IPRP = boxType("iprp");
+    private static final int IPMA = boxType("ipma");
+    private static final int IDAT = boxType("idat");
+
+    private static final int EXIF_ITEM = boxType("Exif");
+    private static final int MIME_ITEM = boxType("mime");
+    private static final String XMP_CONTENT_TYPE = "application/rdf+xml";
+
+    private static final int BOX_HEADER_SIZE = 8;
+    private static final int FULL_BOX_HEADER_SIZE = 4;
+
+    // iloc construction methods
+    private static final int FILE_OFFSET = 0;
+    private static final int IDAT_OFFSET = 1;
+
+    private static final byte[] ZEROS = new byte[8192];
+
+    @Override
+    public void strip(ByteBuffer image, OutputStream out) throws IOException {
+        ByteBuffer heif = image.slice();
+        try {
+            strip(heif, new BufferCopier(heif), out);
+        } catch (IndexOutOfBoundsException e) {
+            // A field ran past the end of the file
+            throw new IOException("Not a valid HEIF stream: truncated box", e);
+        }
+    }
+
+    private void strip(ByteBuffer heif, BufferCopier copier, OutputStream out) throws IOException {
+        List<Box> top = boxes(heif, 0, heif.limit());
+        if (top.isEmpty() || top.get(0).type() != FTYP) {
+            throw new IOException("Not a valid HEIF stream: no ftyp box");
+        }
+        int end = top.get(top.size() - 1).end();
+
+        Box meta = find(top, META);
+        List<Box> children = meta != null
+                ? boxes(heif, meta.payload() + FULL_BOX_HEADER_SIZE, meta.end())
+                : List.of();
+        Box iinf = find(children, IINF);
+        Box iloc = find(children, ILOC);
+        Set<Long> removed = iinf != null ? metadataItems(heif, iinf) : Set.of();
+        if (removed.isEmpty() || iloc == null) {
+            // Nothing to remove, or nothing locating it
+            copier.copy(0, end, out);
+            return;
+        }
+
+        Iloc locations = Iloc.read(heif, iloc);
+        Box idat = find(children, IDAT);
+        List<Range> keptData = new ArrayList<>();
+        boolean fixedOffsets = find(top, MOOV) != null;
+        for (Location location : locations.items) {
+            if (!removed.contains(location.itemId) && location.constructionMethod == FILE_OFFSET) {
+                // Offsets into another file can't be told apart from ones into this file
+                fixedOffsets |= location.dataReferenceIndex != 0;
+                keptData.addAll(location.ranges(0));
+            }
+        }
+
+        List<Range> mdatRanges = new ArrayList<>();
+        List<Range> idatRanges = new ArrayList<>();
+        for (Location location : locations.items) {
+            if (!removed.contains(location.itemId)) {
+                continue;
+            }
+            if (location.constructionMethod == FILE_OFFSET && location.dataReferenceIndex == 0) {
+                for (Range range : location.ranges(0)) {
+                    // Data shared with a kept item, or outside mdat, stays where it is
+                    if (insideMdat(top, range) && keptData.stream().noneMatch(range::overlaps)) {
+                        mdatRanges.add(range);
+                    }
+                }
+            } else if (location.constructionMethod == IDAT_OFFSET && idat != null) {
+                for (Range range : location.ranges(idat.payload())) {
+                    if (range.start >= idat.payload() && range.end <= idat.end()) {
+                        idatRanges.add(range);
+                    }
+                }
+            }
+        }
+
+        Rewrite rewrite = new Rewrite(copier);
+        rewrite.zero(idatRanges);
+        if (fixedOffsets) {
+            rewrite.zero(mdatRanges);
+            rewrite.copy(0, end, out);
+            return;
+        }
+        rewrite.cut(mdatRanges);
+
+        // The rewritten iloc has the same size whatever its offsets, so a
+        // first pass gives how much meta shrinks
+        byte[] newMeta = rewriteMeta(heif, rewrite, meta, children, locations, removed, LongUnaryOperator.identity());
+        long shrink = meta.size() - newMeta.length;
+        newMeta = rewriteMeta(heif, rewrite, meta, children, locations, removed,
+                position -> position - rewrite.cutBefore(position) - (position >= meta.end() ? shrink : 0));
+
+        for (Box box : top) {
+            if (box == meta) {
+                out.write(newMeta);
+            } else if (box.type() == MDAT) {
+                writeMdat(heif, rewrite, box, out);
+            } else {
+                copier.copy(box.start(), (int) box.size(), out);
+            }
+        }
+    }
+
+    /**
+     * Ids of the Exif and XMP items listed in {@code iinf}
+     */
+    private static Set<Long> metadataItems(ByteBuffer heif, Box iinf) throws IOException {
+        int version = heif.get(iinf.payload()) & 0xFF;
+        int entries = iinf.payload() + FULL_BOX_HEADER_SIZE + (version == 0 ? 2 : 4);
+        Set<Long> items = new HashSet<>();
+        for (Box infe : boxes(heif, entries, iinf.end())) {
+            if (infe.type() != INFE) {
+                continue;
+            }
+            int infeVersion = heif.get(infe.payload()) & 0xFF;
+            int pos = infe.payload() + FULL_BOX_HEADER_SIZE;
+            long itemId;
+            int itemType = 0;
+            if (infeVersion >= 2) {
+                itemId = infeVersion == 2 ? heif.getShort(pos) & 0xFFFF : heif.getInt(pos) & 0xFFFFFFFFL;
+                // Then the protection index
+                pos += (infeVersion == 2 ? 2 : 4) + 2;
+                itemType = heif.getInt(pos);
+                pos += 4;
+            } else {
+                itemId = heif.getShort(pos) & 0xFFFF;
+                pos += 4;
+            }
+            String contentType = null;
+            if (infeVersion < 2 || itemType == MIME_ITEM) {
+                // Item name, then content type
+                pos = skipString(heif, pos, infe.end());
+                contentType = readString(heif, pos, infe.end());
+            }
+            if (itemType == EXIF_ITEM || XMP_CONTENT_TYPE.equals(contentType)) {
+                items.add(itemId);
+            }
+        }
+        return items;
+    }
+
+    private static byte[] rewriteMeta(ByteBuffer heif, Rewrite rewrite, Box meta, List<Box> children,
+                                      Iloc locations, Set<Long> removed, LongUnaryOperator newPosition)
+            throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(meta.headerSize() + (int) meta.size());
+        rewrite.copy(meta.payload(), meta.payload() + FULL_BOX_HEADER_SIZE, body);
+        for (Box child : children) {
+            if (child.type() == IINF) {
+                body.write(rewriteIinf(heif, child, removed));
+            } else if (child.type() == ILOC) {
+                body.write(locations.write(removed, newPosition));
+            } else if (child.type() == IREF) {
+                body.write(rewriteIref(heif, child, removed));
+            } else if (child.type() == IPRP) {
+                body.write(rewriteIprp(heif, rewrite, child, removed));
+            } else {
+                rewrite.copy(child.start(), child.end(), body);
+            }
+        }
+        return box(META, body.toByteArray());
+    }
+
+    private static byte[] rewriteIinf(ByteBuffer heif, Box iinf, Set<Long> removed) throws IOException {
+        int version = heif.get(iinf.payload()) & 0xFF;
+        int entries = iinf.payload() + FULL_BOX_HEADER_SIZE + (version == 0 ? 2 : 4);
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        int count = 0;
+        for (Box infe : boxes(heif, entries, iinf.end())) {
+            if (infe.type() == INFE && removed.contains(infeItemId(heif, infe))) {
+                continue;
+            }
+            copyTo(heif, infe.start(), infe.end(), kept);
+            count++;
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeInt(heif.getInt(iinf.payload()));
+        if (version == 0) {
+            data.writeShort(count);
+        } else {
+            data.writeInt(count);
+        }
+        kept.writeTo(data);
+        return box(IINF, payload.toByteArray());
+    }
+
+    private static long infeItemId(ByteBuffer heif, Box infe) {
+        int version = heif.get(infe.payload()) & 0xFF;
+        int pos = infe.payload() + FULL_BOX_HEADER_SIZE;
+        return version == 3 ? heif.getInt(pos) & 0xFFFFFFFFL : heif.getShort(pos) & 0xFFFF;
+    }
+
+    /**
+     * Drops references from a removed item, and removed items from the
+     * targets of the rest
+     */
+    private static byte[] rewriteIref(ByteBuffer heif, Box iref, Set<Long> removed) throws IOException {
+        int version = heif.get(iref.payload()) & 0xFF;
+        int idSize = version == 0 ? 2 : 4;
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeInt(heif.getInt(iref.payload()));
+        for (Box reference : boxes(heif, iref.payload() + FULL_BOX_HEADER_SIZE, iref.end())) {
+            int pos = reference.payload();
+            long fromItem = readUnsigned(heif, pos, idSize);
+            int count = heif.getShort(pos + idSize) & 0xFFFF;
+            if (pos + idSize + 2 + (long) count * idSize > reference.end()) {
+                throw new IOException("Not a valid HEIF stream: iref entry runs past its box");
+            }
+            if (removed.contains(fromItem)) {
+                continue;
+            }
+            List<Long> targets = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                long toItem = readUnsigned(heif, pos + idSize + 2 + i * idSize, idSize);
+                if (!removed.contains(toItem)) {
+                    targets.add(toItem);
+                }
+            }
+            if (targets.isEmpty()) {
+                continue;
+            }
+            ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            DataOutputStream entryData = new DataOutputStream(entry);
+            writeUnsigned(entryData, idSize, fromItem);
+            entryData.writeShort(targets.size());
+            for (long target : targets) {
+                writeUnsigned(entryData, idSize, target);
+            }
+            data.write(box(reference.type(), entry.toByteArray()));
+        }
+        return box(IREF, payload.toByteArray());
+    }
+
+    private static byte[] rewriteIprp(ByteBuffer heif, Rewrite rewrite, Box iprp, Set<Long> removed)
+            throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (Box child : boxes(heif, iprp.payload(), iprp.end())) {
+            if (child.type() == IPMA) {
+                payload.write(rewriteIpma(heif, child, removed));
+            } else {
+                rewrite.copy(child.start(), child.end(), payload);
+            }
+        }
+        return box(IPRP, payload.toByteArray());
+    }
+
+    /**
+     * Drops the property associations of removed items
+     */
+    private static byte[] rewriteIpma(ByteBuffer heif, Box ipma, Set<Long> removed) throws IOException {
+        int versionAndFlags = heif.getInt(ipma.payload());
+        int version = versionAndFlags >>> 24;
+        int idSize = version < 1 ? 2 : 4;
+        int associationSize = (versionAndFlags & 1) != 0 ? 2 : 1;
+        long entryCount = heif.getInt(ipma.payload() + FULL_BOX_HEADER_SIZE) & 0xFFFFFFFFL;
+
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        int count = 0;
+        int pos = ipma.payload() + FULL_BOX_HEADER_SIZE + 4;
+        for (long i = 0; i < entryCount; i++) {
+            if (pos + idSize + 1 > ipma.end()) {
+                throw new IOException("Not a valid HEIF stream: ipma entry runs past its box");
+            }
+            long itemId = readUnsigned(heif, pos, idSize);
+            int entryEnd = pos + idSize + 1 + (heif.get(pos + idSize) & 0xFF) * associationSize;
+            if (entryEnd > ipma.end()) {
+                throw new IOException("Not a valid HEIF stream: ipma entry runs past its box");
+            }
+            if (!removed.contains(itemId)) {
+                copyTo(heif, pos, entryEnd, kept);
+                count++;
+            }
+            pos = entryEnd;
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeInt(versionAndFlags);
+        data.writeInt(count);
+        kept.writeTo(data);
+        return box(IPMA, payload.toByteArray());
+    }
+
+    /**
+     * Writes an mdat box with the cut ranges left out, keeping the form of
+     * its size field
+     */
+    private static void writeMdat(ByteBuffer heif, Rewrite rewrite, Box mdat, OutputStream out) throws IOException {
+        long cut = rewrite.cutBefore(mdat.end()) - rewrite.cutBefore(mdat.start());
+        if (cut == 0) {
+            rewrite.copy(mdat.start(), mdat.end(), out);
+            return;
+        }
+        DataOutputStream header = new DataOutputStream(out);
+        long size = mdat.size() - cut;
+        if (mdat.headerSize() == 16) {
+            header.writeInt(1);
+            header.writeInt(MDAT);
+            header.writeLong(size);
+        } else {
+            // A size of 0 means "to the end of the file" and stays that way
+            header.writeInt(heif.getInt(mdat.start()) == 0 ? 0 : (int) size);
+            header.writeInt(MDAT);
+        }
+        header.flush();
+        rewrite.copy(mdat.payload(), mdat.end(), out);
+    }
+
+    private static boolean insideMdat(List<Box> top, Range range) {
+        for (Box box : top) {
+            if (box.type() == MDAT && range.start >= box.payload() && range.end <= box.end()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the boxes in {@code [from, to)}. A size of 0 extends a box to
+     * {@code to}; trailing bytes too short for a box header are ignored.
+     */
+    private static List<Box> boxes(ByteBuffer heif, int from, int to) throws IOException {
+        List<Box> boxes = new ArrayList<>();
+        int pos = from;
+        while (pos + BOX_HEADER_SIZE <= to) {
+            long size = heif.getInt(pos) & 0xFFFFFFFFL;
+            int type = heif.getInt(pos + 4);
+            int headerSize = BOX_HEADER_SIZE;
+            if (size == 1) {
+                if (pos + 16 > to) {
+                    throw new IOException("Not a valid HEIF stream: truncated box header");
+                }
+                size = heif.getLong(pos + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = to - pos;
+            }
+            if (size < headerSize || pos + size > to) {
+                throw new IOException("Not a valid HEIF stream: box runs past its parent");
+            }
+            boxes.add(new Box(type, pos, headerSize, size));
+            pos += (int) size;
+        }
+        return boxes;
+    }
+
+    private static Box find(List<Box> boxes, int type) {
+        for (Box box : boxes) {
+            if (box.type() == type) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] box(int type, byte[] payload) throws IOException {
+        ByteArrayOutputStream box = new ByteArrayOutputStream(BOX_HEADER_SIZE + payload.length);
+        DataOutputStream data = new DataOutputStream(box);
+        data.writeInt(BOX_HEADER_SIZE + payload.length);
+        data.writeInt(type);
+        data.write(payload);
+        return box.toByteArray();
+    }
+
+    private static void copyTo(ByteBuffer heif, int from, int to, ByteArrayOutputStream out) {
+        byte[] bytes = new byte[to - from];
+        heif.get(from, bytes);
+        out.writeBytes(bytes);
+    }
+
+    private static int skipString(ByteBuffer heif, int pos, int end) {
+        while (pos < end && heif.get(pos) != 0) {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    private static String readString(ByteBuffer heif, int pos, int end) {
+        if (pos >= end) {
+            return null;
+        }
+        byte[] bytes = new byte[skipString(heif, pos, end) - 1 - pos];
+        heif.get(pos, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readUnsigned(ByteBuffer heif, int pos, int size) throws IOException {
+        return switch (size) {
+            case 0 -> 0;
+            case 2 -> heif.getShort(pos) & 0xFFFF;
+            case 4 -> heif.getInt(pos) & 0xFFFFFFFFL;
+            case 8 -> heif.getLong(pos);
+            default -> throw new IOException("Not a valid HEIF stream: " + size + "-byte field");
+        };
+    }
+
+    private static void writeUnsigned(DataOutputStream out, int size, long value) throws IOException {
+        switch (size) {
+            case 0 -> {
+                if (value != 0) {
+                    throw new IOException("Offset " + value + " doesn't fit an empty iloc field");
+                }
+            }
+            case 2 -> out.writeShort((int) value);
+            case 4 -> out.writeInt((int) value);
+            case 8 -> out.writeLong(value);
+            default -> throw new IOException("Not a valid HEIF stream: " + size + "-byte field");
+        }
+    }
+
+    private static int boxType(String type) {
+        return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+    }
+
+    private record Box(int type, int start, int headerSize, long size) {
+
+        int payload() {
+            return start + headerSize;
+        }
+
+        int end() {
+            return (int) (start + size);
+        }
+    }
+
+    private record Range(long start, long end, boolean cut) {
+
+        Range(long start, long end) {
+            this(start, end, false);
+        }
+
+        boolean overlaps(Range other) {
+            return start < other.end && other.start < end;
+        }
+    }
+
+    private record Extent(long index, long offset, long length) {
+    }
+
+    private record Location(long itemId, int constructionMethod, int dataReferenceIndex, long baseOffset,
+                            List<Extent> extents) {
+
+        /**
+         * The byte ranges of the item's extents, relative to {@code origin}.
+         * An extent of length 0 (the rest of the data) has no fixed range.
+         */
+        List<Range> ranges(long origin) {
+            List<Range> ranges = new ArrayList<>();
+            for (Extent extent : extents) {
+                if (extent.length > 0) {
+                    long start = origin + baseOffset + extent.offset;
+                    ranges.add(new Range(start, start + extent.length));
+                }
+            }
+            return ranges;
+        }
+    }
+
+    /**
+     * A parsed {@code iloc} box, written back with the same version and field sizes
+     */
+    private record Iloc(int versionAndFlags, int offsetSize, int lengthSize, int baseOffsetSize, int indexSize,
+                        List<Location> items) {
+
+        static Iloc read(ByteBuffer heif, Box iloc) throws IOException {
+            int versionAndFlags = heif.getInt(iloc.payload());
+            int version = versionAndFlags >>> 24;
+            if (version > 2) {
+                throw new IOException("Not a valid HEIF stream: iloc version " + version);
+            }
+            int pos = iloc.payload() + FULL_BOX_HEADER_SIZE;
+            int offsetSize = (heif.get(pos) & 0xF0) >> 4;
+            int lengthSize = heif.get(pos) & 0x0F;
+            int baseOffsetSize = (heif.get(pos + 1) & 0xF0) >> 4;
+            int indexSize = version >= 1 ? heif.get(pos + 1) & 0x0F : 0;
+            pos += 2;
+            int idSize = version < 2 ? 2 : 4;
+            long itemCount = readUnsigned(heif, pos, idSize);
+            pos += idSize;
+
+            List<Location> items = new ArrayList<>();
+            for (long i = 0; i < itemCount; i++) {
+                long itemId = readUnsigned(heif, pos, idSize);
+                pos += idSize;
+                int constructionMethod = 0;
+                if (version >= 1) {
+                    constructionMethod = heif.getShort(pos) & 0x0F;
+                    pos += 2;
+                }
+                int dataReferenceIndex = heif.getShort(pos) & 0xFFFF;
+                long baseOffset = readUnsigned(heif, pos + 2, baseOffsetSize);
+                int extentCount = heif.getShort(pos + 2 + baseOffsetSize) & 0xFFFF;
+                pos += 4 + baseOffsetSize;
+                List<Extent> extents = new ArrayList<>(extentCount);
+                for (int e = 0; e < extentCount; e++) {
+                    long index = readUnsigned(heif, pos, indexSize);
+                    long offset = readUnsigned(heif, pos + indexSize, offsetSize);
+                    long length = readUnsigned(heif, pos + indexSize + offsetSize, lengthSize);
+                    pos += indexSize + offsetSize + lengthSize;
+                    extents.add(new Extent(index, offset, length));
+                }
+                if (pos > iloc.end()) {
+                    throw new IOException("Not a valid HEIF stream: iloc entry runs past its box");
+                }
+                items.add(new Location(itemId, constructionMethod, dataReferenceIndex, baseOffset, extents));
+            }
+            return new Iloc(versionAndFlags, offsetSize, lengthSize, baseOffsetSize, indexSize, items);
+        }
+
+        /**
+         * Writes the box without the removed items, moving each file offset
+         * to {@code newPosition} of where it pointed
+         */
+        byte[] write(Set<Long> removed, LongUnaryOperator newPosition) throws IOException {
+            int version = versionAndFlags >>> 24;
+            int idSize = version < 2 ? 2 : 4;
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(payload);
+            data.writeInt(versionAndFlags);
+            data.writeByte(offsetSize << 4 | lengthSize);
+            data.writeByte(baseOffsetSize << 4 | indexSize);
+            List<Location> kept = items.stream().filter(item -> !removed.contains(item.itemId)).toList();
+            writeUnsigned(data, idSize, kept.size());
+            for (Location item : kept) {
+                writeUnsigned(data, idSize, item.itemId);
+                if (version >= 1) {
+                    data.writeShort(item.constructionMethod);
+                }
+                data.writeShort(item.dataReferenceIndex);
+                boolean inFile = item.constructionMethod == FILE_OFFSET && item.dataReferenceIndex == 0;
+                long base = inFile ? newPosition.applyAsLong(item.baseOffset) : item.baseOffset;
+                writeUnsigned(data, baseOffsetSize, base);
+                data.writeShort(item.extents.size());
+                for (Extent extent : item.extents) {
+                    long offset = inFile
+                            ? newPosition.applyAsLong(item.baseOffset + extent.offset) - base
+                            : extent.offset;
+                    writeUnsigned(data, indexSize, extent.index);
+                    writeUnsigned(data, offsetSize, offset);
+                    writeUnsigned(data, lengthSize, extent.length);
+                }
+            }
+            return box(ILOC, payload.toByteArray());
+        }
+    }
+
+    /**
+     * Copies ranges of the input with some parts cut out and others zeroed
+     */
+    private static final class Rewrite {
+
+        private final BufferCopier copier;
+        private final List<Range> edits = new ArrayList<>();
+
+        Rewrite(BufferCopier copier) {
+            this.copier = copier;
+        }
+
+        void cut(List<Range> ranges) {
+            add(ranges, true);
+        }
+
+        void zero(List<Range> ranges) {
+            add(ranges, false);
+        }
+
+        private void add(List<Range> ranges, boolean cut) {
+            List<Range> sorted = new ArrayList<>(ranges);
+            sorted.sort(Comparator.comparingLong(Range::start));
+            Range last = null;
+            for (Range range : sorted) {
+                if (last != null && range.start <= last.end) {
+                    last = new Range(last.start, Math.max(last.end, range.end), cut);
+                    edits.set(edits.size() - 1, last);
+                } else {
+                    last = new Range(range.start, range.end, cut);
+                    edits.add(last);
+                }
+            }
+            edits.sort(Comparator.comparingLong(Range::start));
+        }
+
+        /**
+         * Bytes cut out before {@code position}
+         */
+        long cutBefore(long position) {
+            long total = 0;
+            for (Range edit : edits) {
+                if (edit.cut && edit.start < position) {
+                    total += Math.min(edit.end, position) - edit.start;
+                }
+            }
+            return total;
+        }
+
+        void copy(int from, int to, OutputStream out) throws IOException {
+            int pos = from;
+            for (Range edit : edits) {
+                if (edit.end <= pos) {
+                    continue;
+                }
+                if (edit.start >= to) {
+                    break;
+                }
+                int start = (int) Math.max(edit.start, pos);
+                int end = (int) Math.min(edit.end, to);
+                copier.copy(pos, start - pos, out);
+                if (!edit.cut) {
+                    for (int n = end - start; n > 0; n -= ZEROS.length) {
+                        out.write(ZEROS, 0, Math.min(n, ZEROS.length));
+                    }
+                }
+                pos = end;
+            }
+            copier.copy(pos, to - pos, out);
+        }
+    }
+}
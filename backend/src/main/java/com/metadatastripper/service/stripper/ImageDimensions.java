@@ -0,0 +1,111 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Pixel dimensions declared in an image header, read without decoding the image
+ */
+public record ImageDimensions(int width, int height) {
+
+    public long pixelCount() {
+        return (long) width * height;
+    }
+
+    /**
+     * Reads the dimensions from the header of a JPEG, PNG, GIF or BMP stream.
+     * Only the bytes up to the dimension fields are consumed.
+     *
+     * @param format the image format name as used by ImageIO, e.g. "jpeg"
+     * @return the declared dimensions, or empty if the header is not recognised
+     */
+    public static Optional<ImageDimensions> read(InputStream inputStream, String format) throws IOException {
+        ImageInput in = new ImageInput(inputStream);
+        return switch (format) {
+            case "jpeg" -> readJpeg(in);
+            case "png" -> readPng(in);
+            case "gif" -> readGif(in);
+            case "bmp" -> readBmp(in);
+            default -> Optional.empty();
+        };
+    }
+
+    private static Optional<ImageDimensions> readJpeg(ImageInput in) throws IOException {
+        if (in.read() != 0xFF || in.read() != 0xD8) {
+            return Optional.empty();
+        }
+        while (true) {
+            int b = in.read();
+            if (b != 0xFF) {
+                return Optional.empty();
+            }
+            int marker;
+            do {
+                marker = in.read();
+            } while (marker == 0xFF);
+            if (marker < 0 || marker == 0xD9 || marker == 0xDA) {
+                return Optional.empty();
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue;
+            }
+            int length = in.readUnsignedShort();
+            if (length < 2) {
+                return Optional.empty();
+            }
+            // SOF0-SOF15, excluding DHT (C4), JPG (C8) and DAC (CC)
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                in.readUnsignedByte();
+                int height = in.readUnsignedShort();
+                int width = in.readUnsignedShort();
+                return of(width, height);
+            }
+            in.skipFully(length - 2);
+        }
+    }
+
+    private static Optional<ImageDimensions> readPng(ImageInput in) throws IOException {
+        // Signature (8), IHDR length (4) and type (4)
+        in.skipFully(16);
+        long width = in.readUnsignedInt();
+        long height = in.readUnsignedInt();
+        return of(width, height);
+    }
+
+    private static Optional<ImageDimensions> readGif(ImageInput in) throws IOException {
+        // "GIF87a" or "GIF89a", then little-endian logical screen size
+        in.skipFully(6);
+        int width = readUnsignedShortLe(in);
+        int height = readUnsignedShortLe(in);
+        return of(width, height);
+    }
+
+    private static Optional<ImageDimensions> readBmp(ImageInput in) throws IOException {
+        // File header (14) and DIB header size (4), then little-endian width and height
+        in.skipFully(18);
+        int width = readIntLe(in);
+        int height = readIntLe(in);
+        // A negative height marks a top-down bitmap
+        return of(width, Math.abs((long) height));
+    }
+
+    /**
+     * Headers are untrusted: a zero, negative or oversized dimension is
+     * treated as an unrecognised header rather than a real size
+     */
+    private static Optional<ImageDimensions> of(long width, long height) {
+        if (width <= 0 || height <= 0 || width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+            return Optional.empty();
+        }
+        return Optional.of(new ImageDimensions((int) width, (int) height));
+    }
+
+    private static int readUnsignedShortLe(ImageInput in) throws IOException {
+        return in.readUnsignedByte() | (in.readUnsignedByte() << 8);
+    }
+
+    private static int readIntLe(ImageInput in) throws IOException {
+        return readUnsignedShortLe(in) | (readUnsignedShortLe(in) << 16);
+    }
+}
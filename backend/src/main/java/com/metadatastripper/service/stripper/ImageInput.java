@@ -0,0 +1,188 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Small buffered big-endian reader used by the format strippers.
+ * Unlike {@link java.io.BufferedInputStream} it is not synchronized and
+ * exposes its buffer so entropy-coded data can be scanned and copied in bulk.
+ */
+final class ImageInput {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+
+    ImageInput(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns the next byte, or -1 at the end of the stream
+     */
+    int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    int readUnsignedByte() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw new EOFException("Unexpected end of image data");
+        }
+        return b;
+    }
+
+    int readUnsignedShort() throws IOException {
+        return (readUnsignedByte() << 8) | readUnsignedByte();
+    }
+
+    long readUnsignedInt() throws IOException {
+        return ((long) readUnsignedShort() << 16) | readUnsignedShort();
+    }
+
+    void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (pos >= limit && !fill()) {
+                throw new EOFException("Unexpected end of image data");
+            }
+            int n = Math.min(len, limit - pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    void skipFully(long n) throws IOException {
+        long buffered = Math.min(n, limit - pos);
+        pos += (int) buffered;
+        n -= buffered;
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                // skip() may legitimately return 0, fall back to reading
+                if (in.read() < 0) {
+                    throw new EOFException("Unexpected end of image data");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    void copyTo(OutputStream out, long n) throws IOException {
+        while (n > 0) {
+            if (pos >= limit && !fill()) {
+                throw new EOFException("Unexpected end of image data");
+            }
+            int len = (int) Math.min(n, limit - pos);
+            out.write(buf, pos, len);
+            pos += len;
+            n -= len;
+        }
+    }
+
+    /**
+     * Copies JPEG entropy-coded data up to, but not including, the next marker.
+     * Stuffed bytes (FF 00) and restart markers (FF D0-D7) belong to the scan
+     * and are copied through.
+     *
+     * @return false if the stream ended before another marker was found
+     */
+    boolean copyEntropyCodedData(OutputStream out) throws IOException {
+        while (true) {
+            if (pos >= limit && !fill()) {
+                return false;
+            }
+            int i = pos;
+            while (i < limit) {
+                if (buf[i] != (byte) 0xFF) {
+                    i++;
+                    continue;
+                }
+                if (i + 1 >= limit) {
+                    break;
+                }
+                int next = buf[i + 1] & 0xFF;
+                if (next == 0x00 || (next >= 0xD0 && next <= 0xD7)) {
+                    i += 2;
+                    continue;
+                }
+                out.write(buf, pos, i - pos);
+                pos = i;
+                return true;
+            }
+            out.write(buf, pos, i - pos);
+            pos = i;
+            // A lone 0xFF at the end of the buffer needs the following byte
+            if (pos < limit && !fill()) {
+                out.write(buf, pos, limit - pos);
+                pos = limit;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Copies GIF data sub-blocks up to and including the zero-length
+     * terminator. Runs of blocks already in the buffer are written at once
+     * rather than block by block.
+     */
+    void copySubBlocks(OutputStream out) throws IOException {
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new EOFException("Unexpected end of image data");
+            }
+            int i = pos;
+            while (i < limit) {
+                int size = buf[i] & 0xFF;
+                if (size == 0) {
+                    out.write(buf, pos, i + 1 - pos);
+                    pos = i + 1;
+                    return;
+                }
+                if (i + 1 + size > limit) {
+                    break;
+                }
+                i += 1 + size;
+            }
+            out.write(buf, pos, i - pos);
+            pos = i;
+            // A block that runs past the end of the buffer
+            if (pos < limit) {
+                int size = buf[pos++] & 0xFF;
+                out.write(size);
+                copyTo(out, size);
+            }
+        }
+    }
+
+    /**
+     * Moves unread bytes to the front of the buffer and reads more after them.
+     *
+     * @return false if no further bytes could be read
+     */
+    private boolean fill() throws IOException {
+        int remaining = limit - pos;
+        if (remaining > 0 && pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, remaining);
+        }
+        pos = 0;
+        limit = remaining;
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n <= 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+}
@@ -0,0 +1,195 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Strips metadata from a JPEG by walking its marker segments.
+ *
+ * APPn and COM segments are dropped, except for the JFIF header (APP0) and
+ * the Adobe colour transform segment (APP14) which decoders need to
+ * interpret the pixel data. JFXX extensions (also APP0) only carry a
+ * thumbnail, so they go too. Every other segment and all entropy-coded scan
+ * data is copied byte-for-byte, so the image is never decoded or re-encoded.
+ * Anything after the EOI marker (vendor trailers, appended previews) is dropped.
+ *
+ * A {@link StripPolicy} may keep the ICC profile (APP2) and some EXIF tags;
+ * the EXIF segment (APP1) is then rebuilt with just those tags.
+ */
+public class JpegMetadataStripper implements StreamingStripper {
+
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int TEM = 0x01;
+    private static final int RST0 = 0xD0;
+    private static final int RST7 = 0xD7;
+    private static final int APP0 = 0xE0;
+    private static final int APP1 = 0xE1;
+    private static final int APP2 = 0xE2;
+    private static final int APP14 = 0xEE;
+    private static final int APP15 = 0xEF;
+    private static final int COM = 0xFE;
+
+    private static final byte[] JFIF = "JFIF\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ADOBE = "Adobe".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXIF = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ICC_PROFILE = "ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII);
+
+    // Longest identifier we need to look at to classify an APPn segment
+    private static final int IDENTIFIER_LENGTH = 12;
+
+    private static final int MAX_SEGMENT_LENGTH = 0xFFFF;
+
+    private final ExifRewriter exif;
+    private final boolean keepIccProfile;
+
+    public JpegMetadataStripper() {
+        this(ExifRewriter.REMOVE_ALL, false);
+    }
+
+    JpegMetadataStripper(ExifRewriter exif, boolean keepIccProfile) {
+        this.exif = exif;
+        this.keepIccProfile = keepIccProfile;
+    }
+
+    @Override
+    public void strip(InputStream inputStream, OutputStream out) throws IOException {
+        ImageInput in = new ImageInput(inputStream);
+
+        if (in.read() != 0xFF || in.read() != SOI) {
+            throw new IOException("Not a valid JPEG stream: missing SOI marker");
+        }
+        writeMarker(out, SOI);
+
+        byte[] identifier = new byte[IDENTIFIER_LENGTH];
+        while (true) {
+            int marker = readMarker(in);
+            if (marker < 0 || marker == EOI) {
+                // Tolerate a missing EOI, which is common for truncated uploads
+                writeMarker(out, EOI);
+                return;
+            }
+
+            if (marker == TEM || (marker >= RST0 && marker <= RST7)) {
+                writeMarker(out, marker);
+                continue;
+            }
+
+            int length = in.readUnsignedShort();
+            if (length < 2) {
+                throw new IOException("Invalid JPEG segment length: " + length);
+            }
+            int payloadLength = length - 2;
+
+            if (isMetadataCandidate(marker)) {
+                int idLength = Math.min(payloadLength, IDENTIFIER_LENGTH);
+                in.readFully(identifier, 0, idLength);
+                if (marker == APP1 && !exif.keepsNothing() && startsWith(identifier, idLength, EXIF)) {
+                    rewriteExif(in, out, identifier, idLength, payloadLength);
+                    continue;
+                }
+                if (!isRequiredApplicationSegment(marker, identifier, idLength)) {
+                    in.skipFully(payloadLength - idLength);
+                    continue;
+                }
+                writeSegmentHeader(out, marker, length);
+                out.write(identifier, 0, idLength);
+                in.copyTo(out, payloadLength - idLength);
+                continue;
+            }
+
+            writeSegmentHeader(out, marker, length);
+            in.copyTo(out, payloadLength);
+
+            if (marker == SOS && !in.copyEntropyCodedData(out)) {
+                writeMarker(out, EOI);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replaces an EXIF segment with one holding only the tags the policy
+     * keeps, or drops it if there are none
+     */
+    private void rewriteExif(ImageInput in, OutputStream out, byte[] identifier, int idLength,
+                             int payloadLength) throws IOException {
+        byte[] payload = new byte[payloadLength];
+        System.arraycopy(identifier, 0, payload, 0, idLength);
+        in.readFully(payload, idLength, payloadLength - idLength);
+
+        byte[] tiff = exif.rewrite(payload, EXIF.length, payloadLength - EXIF.length);
+        if (tiff == null || 2 + EXIF.length + tiff.length > MAX_SEGMENT_LENGTH) {
+            return;
+        }
+        writeSegmentHeader(out, APP1, 2 + EXIF.length + tiff.length);
+        out.write(EXIF);
+        out.write(tiff);
+    }
+
+    /**
+     * Reads the next marker code, skipping any 0xFF fill bytes.
+     *
+     * @return the marker code, or -1 at the end of the stream
+     */
+    private int readMarker(ImageInput in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return -1;
+        }
+        if (b != 0xFF) {
+            throw new IOException("Invalid JPEG stream: expected marker but found 0x"
+                    + Integer.toHexString(b));
+        }
+        do {
+            b = in.read();
+        } while (b == 0xFF);
+        return b;
+    }
+
+    private boolean isMetadataCandidate(int marker) {
+        return (marker >= APP0 && marker <= APP15) || marker == COM;
+    }
+
+    /**
+     * Only the segments that affect how pixels are decoded survive
+     */
+    private boolean isRequiredApplicationSegment(int marker, byte[] identifier, int length) {
+        if (marker == APP0) {
+            return startsWith(identifier, length, JFIF);
+        }
+        if (marker == APP2) {
+            return keepIccProfile && startsWith(identifier, length, ICC_PROFILE);
+        }
+        if (marker == APP14) {
+            return startsWith(identifier, length, ADOBE);
+        }
+        return false;
+    }
+
+    private boolean startsWith(byte[] data, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeMarker(OutputStream out, int marker) throws IOException {
+        out.write(0xFF);
+        out.write(marker);
+    }
+
+    private void writeSegmentHeader(OutputStream out, int marker, int length) throws IOException {
+        writeMarker(out, marker);
+        out.write(length >>> 8);
+        out.write(length & 0xFF);
+    }
+}
@@ -0,0 +1,207 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * The part of an image that holds its metadata, cut out of the container so
+ * it can be parsed without reading the image data behind it. Reading stops
+ * at the JPEG start of scan or the first GIF image descriptor; PNG IDAT
+ * chunks are skipped, as text and eXIf chunks may follow them. The prefix is
+ * closed with an end marker so it parses as a complete image.
+ *
+ * GIF extensions placed after the image data are not included.
+ */
+public record MetadataPrefix(byte[] data, boolean complete) {
+
+    private static final byte[] PNG_SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+    };
+
+    private static final byte[] PNG_IEND = {
+        0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xAE, 0x42, 0x60, (byte) 0x82
+    };
+
+    /**
+     * Reads the metadata prefix of a JPEG, PNG or GIF stream. A stream that
+     * ends early, such as the first few KB of a larger file, gives whatever
+     * whole segments were read, with {@code complete} false.
+     *
+     * @param format the image format name as used by ImageIO, e.g. "jpeg"
+     * @return the prefix, or empty if the format has none or the stream
+     *         doesn't start like one
+     */
+    public static Optional<MetadataPrefix> read(InputStream inputStream, String format) throws IOException {
+        ImageInput in = new ImageInput(inputStream);
+        PrefixOutput out = new PrefixOutput();
+        Boolean complete = switch (format) {
+            case "jpeg" -> readJpeg(in, out);
+            case "png" -> readPng(in, out);
+            case "gif" -> readGif(in, out);
+            default -> null;
+        };
+        return complete == null
+                ? Optional.empty()
+                : Optional.of(new MetadataPrefix(out.toByteArray(), complete));
+    }
+
+    private static Boolean readJpeg(ImageInput in, PrefixOutput out) throws IOException {
+        if (in.read() != 0xFF || in.read() != 0xD8) {
+            return null;
+        }
+        out.write(0xFF);
+        out.write(0xD8);
+
+        boolean complete = false;
+        while (true) {
+            int b = in.read();
+            if (b != 0xFF) {
+                break;
+            }
+            int marker;
+            do {
+                marker = in.read();
+            } while (marker == 0xFF);
+            if (marker == 0xDA || marker == 0xD9) {
+                complete = true;
+                break;
+            }
+            if (marker < 0) {
+                break;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue;
+            }
+            int mark = out.size();
+            try {
+                int length = in.readUnsignedShort();
+                if (length < 2) {
+                    break;
+                }
+                out.write(0xFF);
+                out.write(marker);
+                out.write(length >> 8);
+                out.write(length);
+                in.copyTo(out, length - 2);
+            } catch (EOFException e) {
+                out.truncate(mark);
+                break;
+            }
+        }
+
+        out.write(0xFF);
+        out.write(0xD9);
+        return complete;
+    }
+
+    private static Boolean readPng(ImageInput in, PrefixOutput out) throws IOException {
+        for (byte b : PNG_SIGNATURE) {
+            if (in.read() != (b & 0xFF)) {
+                return null;
+            }
+        }
+        out.write(PNG_SIGNATURE);
+
+        boolean complete = false;
+        byte[] header = new byte[8];
+        while (true) {
+            int mark = out.size();
+            try {
+                in.readFully(header, 0, 8);
+                long length = ((header[0] & 0xFFL) << 24) | ((header[1] & 0xFF) << 16)
+                        | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+                String type = new String(header, 4, 4, StandardCharsets.US_ASCII);
+                if (type.equals("IEND")) {
+                    complete = true;
+                    break;
+                }
+                if (type.equals("IDAT")) {
+                    // Only the chunk headers are read, so the pixels are skipped, not copied
+                    in.skipFully(length + 4);
+                    continue;
+                }
+                out.write(header);
+                // Chunk data plus its CRC
+                in.copyTo(out, length + 4);
+            } catch (EOFException e) {
+                out.truncate(mark);
+                break;
+            }
+        }
+
+        out.write(PNG_IEND);
+        return complete;
+    }
+
+    private static Boolean readGif(ImageInput in, PrefixOutput out) throws IOException {
+        byte[] header = new byte[13];
+        try {
+            in.readFully(header, 0, header.length);
+        } catch (EOFException e) {
+            return null;
+        }
+        if (header[0] != 'G' || header[1] != 'I' || header[2] != 'F') {
+            return null;
+        }
+        out.write(header);
+
+        boolean complete = false;
+        try {
+            // Global color table, if the logical screen descriptor has one
+            int flags = header[10] & 0xFF;
+            if ((flags & 0x80) != 0) {
+                in.copyTo(out, 3L << ((flags & 0x07) + 1));
+            }
+            while (true) {
+                int block = in.read();
+                if (block == 0x2C || block == 0x3B) {
+                    complete = true;
+                    break;
+                }
+                if (block != 0x21) {
+                    break;
+                }
+                int mark = out.size();
+                try {
+                    out.write(0x21);
+                    out.write(in.readUnsignedByte());
+                    int size;
+                    do {
+                        size = in.readUnsignedByte();
+                        out.write(size);
+                        in.copyTo(out, size);
+                    } while (size > 0);
+                } catch (EOFException e) {
+                    out.truncate(mark);
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // Cut off inside the color table: keep the header, without the table
+            header[10] &= 0x7F;
+            out.reset();
+            out.write(header);
+        }
+
+        out.write(0x3B);
+        return complete;
+    }
+
+    /**
+     * Lets a segment cut off by the end of the stream be dropped again
+     */
+    private static final class PrefixOutput extends ByteArrayOutputStream {
+
+        PrefixOutput() {
+            super(16 * 1024);
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Strips metadata from a PNG by filtering its chunks.
+ *
+ * Critical chunks (IHDR, PLTE, IDAT, IEND and any other chunk whose type
+ * starts with an upper-case letter) are always copied, together with their
+ * original CRC. Ancillary chunks are copied only if the policy allows them;
+ * everything else - tEXt, zTXt, iTXt, eXIf, tIME and private chunks - is
+ * skipped. IDAT data is never inflated, so memory use does not depend on
+ * image size. When a {@link StripPolicy} keeps EXIF tags, the eXIf chunk is
+ * rebuilt with just those tags.
+ */
+public class PngMetadataStripper implements StreamingStripper {
+
+    private static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+    };
+
+    private static final int IEND = chunkType("IEND");
+    private static final int EXIF = chunkType("eXIf");
+
+    // Rewriting buffers the chunk, so larger eXIf chunks are dropped instead
+    private static final int MAX_EXIF_LENGTH = 0xFFFF;
+
+    /**
+     * Ancillary chunks that only affect how pixels are rendered, plus the
+     * APNG animation chunks
+     */
+    public static final Set<String> DEFAULT_ALLOWED_ANCILLARY_CHUNKS = Set.of(
+        "tRNS", "gAMA", "cHRM", "sRGB", "sBIT", "bKGD", "pHYs",
+        "acTL", "fcTL", "fdAT"
+    );
+
+    private final int[] allowedAncillaryChunks;
+    private final ExifRewriter exif;
+
+    public PngMetadataStripper() {
+        this(DEFAULT_ALLOWED_ANCILLARY_CHUNKS);
+    }
+
+    public PngMetadataStripper(Set<String> allowedAncillaryChunks) {
+        this(allowedAncillaryChunks, ExifRewriter.REMOVE_ALL);
+    }
+
+    PngMetadataStripper(Set<String> allowedAncillaryChunks, ExifRewriter exif) {
+        this.allowedAncillaryChunks = allowedAncillaryChunks.stream()
+                .mapToInt(PngMetadataStripper::chunkType)
+                .toArray();
+        this.exif = exif;
+    }
+
+    @Override
+    public void strip(InputStream inputStream, OutputStream out) throws IOException {
+        ImageInput in = new ImageInput(inputStream);
+
+        for (byte b : SIGNATURE) {
+            if (in.read() != (b & 0xFF)) {
+                throw new IOException("Not a valid PNG stream: bad signature");
+            }
+        }
+        out.write(SIGNATURE);
+
+        while (true) {
+            long length = in.readUnsignedInt();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid PNG chunk length: " + length);
+            }
+            int type = (int) in.readUnsignedInt();
+
+            // Chunk data is followed by a 4-byte CRC
+            if (type == EXIF && !exif.keepsNothing() && length <= MAX_EXIF_LENGTH) {
+                rewriteExif(in, out, (int) length);
+            } else if (isAllowed(type)) {
+                writeInt(out, (int) length);
+                writeInt(out, type);
+                in.copyTo(out, length + 4);
+            } else {
+                in.skipFully(length + 4);
+            }
+
+            if (type == IEND) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replaces an eXIf chunk with one holding only the tags the policy keeps,
+     * or drops it if there are none
+     */
+    private void rewriteExif(ImageInput in, OutputStream out, int length) throws IOException {
+        byte[] data = new byte[length];
+        in.readFully(data, 0, length);
+        in.skipFully(4);
+
+        byte[] tiff = exif.rewrite(data, 0, length);
+        if (tiff == null) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(EXIF >>> 24);
+        crc.update(EXIF >>> 16);
+        crc.update(EXIF >>> 8);
+        crc.update(EXIF);
+        crc.update(tiff);
+        writeInt(out, tiff.length);
+        writeInt(out, EXIF);
+        out.write(tiff);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private boolean isAllowed(int type) {
+        // Bit 5 of the first type byte is the ancillary flag
+        if ((type & 0x20000000) == 0) {
+            return true;
+        }
+        for (int allowed : allowedAncillaryChunks) {
+            if (allowed == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int chunkType(String type) {
+        if (type.length() != 4) {
+            throw new IllegalArgumentException("PNG chunk types are four characters: " + type);
+        }
+        return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+    }
+
+    private void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
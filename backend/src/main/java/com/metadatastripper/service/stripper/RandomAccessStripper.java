@@ -0,0 +1,22 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A stripper for formats whose structure points into the file by offset
+ * (TIFF IFDs, ISO-BMFF item locations), so it needs random access to the
+ * input rather than a single forward pass. Callers holding a file should
+ * pass a memory mapping of it, which keeps the heap out of it; a stream
+ * has to be spooled to a file first.
+ */
+public non-sealed interface RandomAccessStripper extends FormatStripper {
+
+    /**
+     * Writes the image in {@code image} (from its position to its limit)
+     * without its metadata to {@code out}. The buffer's position, limit and
+     * byte order are left as they were.
+     */
+    void strip(ByteBuffer image, OutputStream out) throws IOException;
+}
@@ -0,0 +1,18 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A stripper for formats made of chunks or segments that can be filtered in
+ * a single forward pass, so memory use does not depend on the file size.
+ */
+public non-sealed interface StreamingStripper extends FormatStripper {
+
+    /**
+     * Reads an image from {@code in} and writes the same image without its
+     * metadata to {@code out}. Neither stream is closed.
+     */
+    void strip(InputStream in, OutputStream out) throws IOException;
+}
@@ -0,0 +1,142 @@
+package com.metadatastripper.service.stripper;
+
+import com.drew.metadata.Directory;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+import com.metadatastripper.service.metadata.TagClassifier;
+import com.metadatastripper.service.metadata.TagClassifier.Category;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which metadata survives stripping, compiled into the format strippers that
+ * apply it.
+ *
+ * EXIF tags are kept by group (the same groups the metadata view uses) or by
+ * name, and a dropped tag wins over a kept one. The ICC colour profile can be
+ * kept as a whole. Everything else - XMP, IPTC, comments, PNG text - is always
+ * removed. HEIC/AVIF carry orientation and colour as item properties, which
+ * are always kept. Their EXIF item is dropped as a whole.
+ *
+ * Compiling resolves every tag up front into a bit set per IFD, so applying
+ * a policy is a bit test per EXIF entry.
+ */
+public final class StripPolicy {
+
+    private static final int MAX_TAG_TYPE = 0xFFFF;
+
+    /**
+     * Removes everything, including orientation and colour profile
+     */
+    public static final StripPolicy REMOVE_ALL = new StripPolicy("remove-all", ExifRewriter.REMOVE_ALL, false);
+
+    private final String name;
+    private final Map<String, FormatStripper> formatStrippers;
+
+    private StripPolicy(String name, ExifRewriter exif, boolean keepIccProfile) {
+        this.name = name;
+        Set<String> pngChunks = new HashSet<>(PngMetadataStripper.DEFAULT_ALLOWED_ANCILLARY_CHUNKS);
+        if (keepIccProfile) {
+            pngChunks.add("iCCP");
+        }
+        HeifMetadataStripper heif = new HeifMetadataStripper();
+        this.formatStrippers = Map.of(
+            "jpeg", new JpegMetadataStripper(exif, keepIccProfile),
+            "png", new PngMetadataStripper(pngChunks, exif),
+            "gif", new GifMetadataStripper(keepIccProfile),
+            "webp", new WebpMetadataStripper(exif, keepIccProfile),
+            "tiff", new TiffMetadataStripper(exif, keepIccProfile),
+            "heic", heif,
+            "heif", heif,
+            "avif", heif
+        );
+    }
+
+    /**
+     * Compiles a policy.
+     *
+     * @param keepCategories EXIF groups to keep
+     * @param keepTags EXIF tags to keep regardless of group, by name (as shown
+     *        in the metadata view, e.g. "Orientation") or hex id ("0x0112")
+     * @param dropTags EXIF tags to remove even if their group is kept
+     * @throws IllegalArgumentException if a tag name is not a known EXIF tag
+     */
+    public static StripPolicy compile(String name, Collection<Category> keepCategories,
+                                      Collection<String> keepTags, Collection<String> dropTags,
+                                      boolean keepIccProfile) {
+        List<Directory> directories = List.of(new ExifIFD0Directory(), new ExifSubIFDDirectory(), new GpsDirectory());
+        BitSet[] kept = new BitSet[directories.size()];
+        for (int i = 0; i < directories.size(); i++) {
+            Directory directory = directories.get(i);
+            kept[i] = new BitSet();
+            for (int tagType = 0; tagType <= MAX_TAG_TYPE; tagType++) {
+                if (directory.hasTagName(tagType)
+                        && keepCategories.contains(TagClassifier.getInstance().classify(directory, tagType))) {
+                    kept[i].set(tagType);
+                }
+            }
+        }
+        for (String tag : keepTags) {
+            forEachMatch(directories, tag, (i, tagType) -> kept[i].set(tagType));
+        }
+        for (String tag : dropTags) {
+            forEachMatch(directories, tag, (i, tagType) -> kept[i].clear(tagType));
+        }
+        return new StripPolicy(name, new ExifRewriter(kept[0], kept[1], kept[2]), keepIccProfile);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the stripper applying this policy to a format, or null if the
+     * format has no container-level stripper
+     */
+    public FormatStripper stripperFor(String format) {
+        return formatStrippers.get(format);
+    }
+
+    /**
+     * A hex id matches in every IFD; a name matches wherever a tag has it
+     */
+    private static void forEachMatch(List<Directory> directories, String tag, TagAction action) {
+        String trimmed = tag.trim();
+        if (trimmed.toLowerCase(Locale.ROOT).startsWith("0x")) {
+            int tagType = Integer.parseInt(trimmed.substring(2), 16);
+            if (tagType < 0 || tagType > MAX_TAG_TYPE) {
+                throw new IllegalArgumentException("EXIF tag ids are 16-bit: " + tag);
+            }
+            for (int i = 0; i < directories.size(); i++) {
+                action.apply(i, tagType);
+            }
+            return;
+        }
+
+        boolean found = false;
+        for (int i = 0; i < directories.size(); i++) {
+            Directory directory = directories.get(i);
+            for (int tagType = 0; tagType <= MAX_TAG_TYPE; tagType++) {
+                if (directory.hasTagName(tagType) && directory.getTagName(tagType).equalsIgnoreCase(trimmed)) {
+                    action.apply(i, tagType);
+                    found = true;
+                }
+            }
+        }
+        if (!found) {
+            throw new IllegalArgumentException("Unknown EXIF tag: " + tag);
+        }
+    }
+
+    @FunctionalInterface
+    private interface TagAction {
+        void apply(int directory, int tagType);
+    }
+}
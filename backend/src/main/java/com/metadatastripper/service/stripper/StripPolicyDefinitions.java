@@ -0,0 +1,49 @@
+package com.metadatastripper.service.stripper;
+
+import com.metadatastripper.service.metadata.TagClassifier.Category;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Named strip policies a request can choose from. Each one is compiled into
+ * a {@link StripPolicy} at startup.
+ */
+@Data
+@ConfigurationProperties(prefix = "strip.policy")
+public class StripPolicyDefinitions {
+
+    /**
+     * Policy used when a request doesn't name one
+     */
+    private String defaultPolicy = StripPolicy.REMOVE_ALL.getName();
+
+    private Map<String, Definition> policies = new LinkedHashMap<>();
+
+    @Data
+    public static class Definition {
+
+        /**
+         * EXIF groups to keep: camera, location, date-time, image, other
+         */
+        private Set<Category> keepCategories = EnumSet.noneOf(Category.class);
+
+        /**
+         * EXIF tags to keep whatever their group, by name or hex id
+         */
+        private List<String> keepTags = new ArrayList<>();
+
+        /**
+         * EXIF tags to remove even if their group is kept
+         */
+        private List<String> dropTags = new ArrayList<>();
+
+        private boolean keepIccProfile;
+    }
+}
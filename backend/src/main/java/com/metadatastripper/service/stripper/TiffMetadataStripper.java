@@ -0,0 +1,369 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Strips metadata from a TIFF by rewriting its IFDs.
+ *
+ * Every page in the IFD chain is kept. Of each IFD only the tags needed to
+ * decode and display the pixels are copied, plus the IFD0 tags the policy
+ * keeps and optionally the ICC profile; Exif and GPS sub-IFDs, XMP, IPTC,
+ * Photoshop resources, GeoTIFF keys and private tags are dropped. The file
+ * is written out as header, then per page its IFD, the IFD's values and the
+ * page's strips or tiles, with offsets updated to the new layout. Strip and
+ * tile data is copied as it is, never decompressed. Classic TIFF only;
+ * BigTIFF is rejected.
+ */
+public class TiffMetadataStripper implements RandomAccessStripper {
+
+    private static final int STRIP_OFFSETS = 273;
+    private static final int STRIP_BYTE_COUNTS = 279;
+    private static final int TILE_OFFSETS = 324;
+    private static final int TILE_BYTE_COUNTS = 325;
+    private static final int ICC_PROFILE = 34675;
+
+    // Baseline and extension tags that describe the pixels
+    private static final BitSet IMAGE_TAGS = tags(
+        254, 255, 256, 257, 258, 259, 262, 263, 264, 265, 266,
+        STRIP_OFFSETS, 277, 278, STRIP_BYTE_COUNTS, 280, 281, 282, 283, 284,
+        290, 291, 292, 293, 296, 301, 317, 318, 319, 320, 321,
+        322, 323, TILE_OFFSETS, TILE_BYTE_COUNTS,
+        332, 333, 334, 336, 338, 339, 340, 341, 342, 347, 529, 530, 531, 532
+    );
+
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 12;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int CLASSIC_TIFF = 42;
+    private static final int BIG_TIFF = 43;
+
+    // Bounds the work a crafted IFD chain can cause
+    private static final int MAX_PAGES = 10_000;
+
+    private final ExifRewriter exif;
+    private final boolean keepIccProfile;
+
+    public TiffMetadataStripper() {
+        this(ExifRewriter.REMOVE_ALL, false);
+    }
+
+    TiffMetadataStripper(ExifRewriter exif, boolean keepIccProfile) {
+        this.exif = exif;
+        this.keepIccProfile = keepIccProfile;
+    }
+
+    @Override
+    public void strip(ByteBuffer image, OutputStream out) throws IOException {
+        ByteBuffer tiff = image.slice();
+        if (tiff.limit() < HEADER_SIZE) {
+            throw new IOException("Not a valid TIFF stream: too short");
+        }
+        byte order = tiff.get(0);
+        if (order == 'I' && tiff.get(1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (order != 'M' || tiff.get(1) != 'M') {
+            throw new IOException("Not a valid TIFF stream: bad byte order mark");
+        }
+        int version = tiff.getShort(2) & 0xFFFF;
+        if (version == BIG_TIFF) {
+            throw new IOException("BigTIFF files are not supported");
+        }
+        if (version != CLASSIC_TIFF) {
+            throw new IOException("Not a valid TIFF stream: bad signature");
+        }
+
+        List<Page> pages = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        long locations = 0;
+        long dataBytes = 0;
+        for (long ifd = unsignedInt(tiff, 4); ifd != 0; ifd = pages.get(pages.size() - 1).next) {
+            if (!seen.add(ifd)) {
+                throw new IOException("Not a valid TIFF stream: IFD chain loops");
+            }
+            if (pages.size() == MAX_PAGES) {
+                throw new IOException("TIFF has more than " + MAX_PAGES + " pages");
+            }
+            Page page = readPage(tiff, ifd, locations);
+            pages.add(page);
+            // Pages may share or overlap their image data, which is copied once per location,
+            // so the total is capped to keep the output in proportion to the input
+            locations += page.dataOffsets.length;
+            for (long length : page.dataLengths) {
+                dataBytes += length;
+            }
+            if (dataBytes > tiff.limit()) {
+                throw new IOException("Not a valid TIFF stream: image data is larger than the file");
+            }
+        }
+        if (pages.isEmpty()) {
+            throw new IOException("Not a valid TIFF stream: no image");
+        }
+
+        // Every part is padded to an even length, so each IFD starts on a word boundary
+        long end = HEADER_SIZE;
+        for (Page page : pages) {
+            end = page.layout(end);
+        }
+        if (end > 0xFFFFFFFFL) {
+            throw new IOException("Stripped TIFF would exceed 4 GB");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(tiff.order());
+        header.put(0, order).put(1, order).putShort(2, (short) CLASSIC_TIFF).putInt(4, HEADER_SIZE);
+        out.write(header.array());
+
+        BufferCopier copier = new BufferCopier(tiff);
+        for (int i = 0; i < pages.size(); i++) {
+            long next = i + 1 < pages.size() ? pages.get(i + 1).ifdOffset : 0;
+            pages.get(i).write(tiff, copier, next, out);
+        }
+    }
+
+    /**
+     * Reads one IFD
+     *
+     * @param locations strip or tile locations read from the pages before it
+     */
+    private Page readPage(ByteBuffer tiff, long ifdOffset, long locations) throws IOException {
+        if (ifdOffset + 2 > tiff.limit()) {
+            throw new IOException("Not a valid TIFF stream: IFD offset past the end of the file");
+        }
+        int ifd = (int) ifdOffset;
+        int count = tiff.getShort(ifd) & 0xFFFF;
+        long nextPointer = ifdOffset + 2 + (long) count * ENTRY_SIZE;
+        if (nextPointer + 4 > tiff.limit()) {
+            throw new IOException("Not a valid TIFF stream: IFD runs past the end of the file");
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long valueBytes = 0;
+        for (int i = 0; i < count; i++) {
+            int pos = ifd + 2 + i * ENTRY_SIZE;
+            int tag = tiff.getShort(pos) & 0xFFFF;
+            if (!keeps(tag)) {
+                continue;
+            }
+            int type = tiff.getShort(pos + 2) & 0xFFFF;
+            long valueCount = unsignedInt(tiff, pos + 4);
+            int typeSize = typeSize(type);
+            if (typeSize == 0) {
+                // A type we can't size can't be copied safely
+                continue;
+            }
+            long size = typeSize * valueCount;
+            long source = size <= 4 ? pos + 8 : unsignedInt(tiff, pos + 8);
+            if (source + size > tiff.limit()) {
+                throw new IOException("Not a valid TIFF stream: tag " + tag + " runs past the end of the file");
+            }
+            // Values may overlap, so their total is capped to keep the rewritten IFD in proportion
+            valueBytes += size;
+            if (valueBytes > tiff.limit()) {
+                throw new IOException("Not a valid TIFF stream: IFD values are larger than the file");
+            }
+            entries.add(new Entry(tag, type, (int) valueCount, (int) source, (int) size));
+        }
+        entries.sort(Comparator.comparingInt(entry -> entry.tag));
+
+        Entry offsets = find(entries, STRIP_OFFSETS);
+        Entry byteCounts = find(entries, STRIP_BYTE_COUNTS);
+        if (offsets == null || byteCounts == null) {
+            offsets = find(entries, TILE_OFFSETS);
+            byteCounts = find(entries, TILE_BYTE_COUNTS);
+        }
+        if (offsets == null || byteCounts == null || offsets.count != byteCounts.count) {
+            throw new IOException("Not a valid TIFF stream: page without strip or tile locations");
+        }
+        // Each location takes at least four bytes of offset and byte count values, unless
+        // pages share them, so this bounds the arrays below before they are allocated
+        if (locations + offsets.count > tiff.limit() / 4) {
+            throw new IOException("Not a valid TIFF stream: more strips or tiles than the file can hold");
+        }
+        long[] dataOffsets = values(tiff, offsets);
+        long[] dataLengths = values(tiff, byteCounts);
+        for (int i = 0; i < dataOffsets.length; i++) {
+            if (dataOffsets[i] + dataLengths[i] > tiff.limit()) {
+                throw new IOException("Not a valid TIFF stream: image data runs past the end of the file");
+            }
+        }
+        // A stray location pair of the other kind would point at data that isn't copied
+        boolean strips = offsets.tag == STRIP_OFFSETS;
+        entries.removeIf(entry -> strips ? entry.tag == TILE_OFFSETS || entry.tag == TILE_BYTE_COUNTS
+                : entry.tag == STRIP_OFFSETS || entry.tag == STRIP_BYTE_COUNTS);
+        return new Page(entries, offsets, dataOffsets, dataLengths, unsignedInt(tiff, (int) nextPointer));
+    }
+
+    private boolean keeps(int tag) {
+        return IMAGE_TAGS.get(tag) || (keepIccProfile && tag == ICC_PROFILE) || exif.keepsIfd0Tag(tag);
+    }
+
+    private static Entry find(List<Entry> entries, int tag) {
+        for (Entry entry : entries) {
+            if (entry.tag == tag) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the values of an offsets or byte counts entry
+     */
+    private static long[] values(ByteBuffer tiff, Entry entry) throws IOException {
+        long[] values = new long[entry.count];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = switch (entry.type) {
+                case TYPE_SHORT -> tiff.getShort(entry.source + 2 * i) & 0xFFFF;
+                case TYPE_LONG -> unsignedInt(tiff, entry.source + 4 * i);
+                default -> throw new IOException("Not a valid TIFF stream: tag " + entry.tag
+                        + " has type " + entry.type);
+            };
+        }
+        return values;
+    }
+
+    private static long unsignedInt(ByteBuffer tiff, int offset) {
+        return tiff.getInt(offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Bytes per value of a TIFF field type, or 0 for an unknown type
+     */
+    private static int typeSize(int type) {
+        return switch (type) {
+            case 1, 2, 6, 7 -> 1;
+            case 3, 8 -> 2;
+            case 4, 9, 11, 13 -> 4;
+            case 5, 10, 12 -> 8;
+            default -> 0;
+        };
+    }
+
+    private static BitSet tags(int... tags) {
+        BitSet set = new BitSet();
+        for (int tag : tags) {
+            set.set(tag);
+        }
+        return set;
+    }
+
+    /**
+     * A kept entry: {@code size} bytes of values at {@code source} in the
+     * input, moved to {@code valueOffset} in the output when they don't fit
+     * in the entry
+     */
+    private static final class Entry {
+
+        final int tag;
+        final int type;
+        final int count;
+        final int source;
+        final int size;
+        long valueOffset;
+
+        Entry(int tag, int type, int count, int source, int size) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.source = source;
+            this.size = size;
+        }
+    }
+
+    /**
+     * One IFD and the image data it points to
+     */
+    private static final class Page {
+
+        final List<Entry> entries;
+        final Entry offsets;
+        final long[] dataOffsets;
+        final long[] dataLengths;
+        final long next;
+        final long[] newOffsets;
+        long ifdOffset;
+        long valuesEnd;
+
+        Page(List<Entry> entries, Entry offsets, long[] dataOffsets, long[] dataLengths, long next) {
+            this.entries = entries;
+            this.offsets = offsets;
+            this.dataOffsets = dataOffsets;
+            this.dataLengths = dataLengths;
+            this.next = next;
+            this.newOffsets = new long[dataOffsets.length];
+        }
+
+        /**
+         * Places the IFD at {@code start}, its values after it and the image
+         * data after those
+         *
+         * @return where the page ends
+         */
+        long layout(long start) {
+            ifdOffset = start;
+            long pos = start + 2 + (long) entries.size() * ENTRY_SIZE + 4;
+            for (Entry entry : entries) {
+                long size = sizeOf(entry);
+                if (size > 4) {
+                    entry.valueOffset = pos;
+                    // Values start on a word boundary
+                    pos += size + (size & 1);
+                }
+            }
+            valuesEnd = pos;
+            for (int i = 0; i < dataOffsets.length; i++) {
+                newOffsets[i] = pos;
+                pos += dataLengths[i] + (dataLengths[i] & 1);
+            }
+            return pos;
+        }
+
+        void write(ByteBuffer tiff, BufferCopier copier, long nextIfd, OutputStream out) throws IOException {
+            ByteBuffer ifd = ByteBuffer.allocate((int) (valuesEnd - ifdOffset)).order(tiff.order());
+            ifd.putShort(0, (short) entries.size());
+            int pos = 2;
+            for (Entry entry : entries) {
+                int size = (int) sizeOf(entry);
+                int valuePos = size > 4 ? (int) (entry.valueOffset - ifdOffset) : pos + 8;
+                ifd.putShort(pos, (short) entry.tag);
+                if (entry == offsets) {
+                    // Written as LONG whatever the input used, since the new offsets may not fit a SHORT
+                    ifd.putShort(pos + 2, (short) TYPE_LONG);
+                    for (int i = 0; i < newOffsets.length; i++) {
+                        ifd.putInt(valuePos + 4 * i, (int) newOffsets[i]);
+                    }
+                } else {
+                    ifd.putShort(pos + 2, (short) entry.type);
+                    ifd.put(valuePos, tiff, entry.source, size);
+                }
+                ifd.putInt(pos + 4, entry.count);
+                if (size > 4) {
+                    ifd.putInt(pos + 8, (int) entry.valueOffset);
+                }
+                pos += ENTRY_SIZE;
+            }
+            ifd.putInt(pos, (int) nextIfd);
+            out.write(ifd.array());
+
+            for (int i = 0; i < dataOffsets.length; i++) {
+                copier.copy((int) dataOffsets[i], (int) dataLengths[i], out);
+                if ((dataLengths[i] & 1) != 0) {
+                    out.write(0);
+                }
+            }
+        }
+
+        private long sizeOf(Entry entry) {
+            return entry == offsets ? 4L * entry.count : entry.size;
+        }
+    }
+}
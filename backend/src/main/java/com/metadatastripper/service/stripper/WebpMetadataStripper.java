@@ -0,0 +1,186 @@
+package com.metadatastripper.service.stripper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Strips metadata from a WebP by filtering its RIFF chunks.
+ *
+ * The bitstream chunks (VP8, VP8L, ALPH) and the animation chunks (ANIM,
+ * ANMF) are copied byte for byte; EXIF, XMP and unknown chunks are dropped,
+ * and ICCP is kept only if the policy keeps the ICC profile. When a policy
+ * keeps EXIF tags, the EXIF chunk is rebuilt with just those tags. The RIFF
+ * size and the VP8X feature flags are then rewritten to match what is left.
+ * The chunk list is walked once before anything is written, because the
+ * RIFF header carries the size of everything after it.
+ */
+public class WebpMetadataStripper implements RandomAccessStripper {
+
+    private static final int RIFF = fourCc("RIFF");
+    private static final int WEBP = fourCc("WEBP");
+
+    private static final int VP8X = fourCc("VP8X");
+    private static final int ICCP = fourCc("ICCP");
+    private static final int EXIF = fourCc("EXIF");
+
+    private static final Set<Integer> IMAGE_CHUNKS = Set.of(
+        fourCc("VP8 "), fourCc("VP8L"), fourCc("ALPH"), fourCc("ANIM"), fourCc("ANMF")
+    );
+
+    // VP8X feature flags for the chunks this stripper can add or remove
+    private static final int ICC_FLAG = 0x20;
+    private static final int EXIF_FLAG = 0x08;
+    private static final int XMP_FLAG = 0x04;
+
+    // Some encoders prefix the EXIF chunk like a JPEG APP1 segment
+    private static final byte[] EXIF_PREFIX = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+    // Rewriting buffers the chunk, so larger EXIF chunks are dropped instead
+    private static final int MAX_EXIF_LENGTH = 0xFFFF;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int CHUNK_HEADER_SIZE = 8;
+
+    private final ExifRewriter exif;
+    private final boolean keepIccProfile;
+
+    public WebpMetadataStripper() {
+        this(ExifRewriter.REMOVE_ALL, false);
+    }
+
+    WebpMetadataStripper(ExifRewriter exif, boolean keepIccProfile) {
+        this.exif = exif;
+        this.keepIccProfile = keepIccProfile;
+    }
+
+    @Override
+    public void strip(ByteBuffer image, OutputStream out) throws IOException {
+        ByteBuffer webp = image.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (webp.limit() < HEADER_SIZE || webp.getInt(0) != RIFF || webp.getInt(8) != WEBP) {
+            throw new IOException("Not a valid WebP stream: bad signature");
+        }
+        // Anything after the RIFF payload is not part of the image
+        long riffEnd = CHUNK_HEADER_SIZE + (webp.getInt(4) & 0xFFFFFFFFL);
+        int end = (int) Math.min(riffEnd, webp.limit());
+
+        List<Chunk> chunks = new ArrayList<>();
+        int pos = HEADER_SIZE;
+        while (pos + CHUNK_HEADER_SIZE <= end) {
+            int type = webp.getInt(pos);
+            long size = webp.getInt(pos + 4) & 0xFFFFFFFFL;
+            int data = pos + CHUNK_HEADER_SIZE;
+            if (data + size > end) {
+                throw new IOException("Not a valid WebP stream: chunk runs past the end of the file");
+            }
+            Chunk chunk = filter(webp, type, data, (int) size);
+            if (chunk != null) {
+                chunks.add(chunk);
+            }
+            // Chunks are padded to an even size
+            pos = (int) Math.min(data + size + (size & 1), end);
+        }
+        if (chunks.isEmpty()) {
+            throw new IOException("Not a valid WebP stream: no image data");
+        }
+
+        long riffSize = 4;
+        boolean hasIcc = false;
+        boolean hasExif = false;
+        for (Chunk chunk : chunks) {
+            riffSize += CHUNK_HEADER_SIZE + chunk.size() + (chunk.size() & 1);
+            hasIcc |= chunk.type() == ICCP;
+            hasExif |= chunk.type() == EXIF;
+        }
+        if (riffSize > 0xFFFFFFFFL) {
+            throw new IOException("Not a valid WebP stream: too large");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(RIFF).putInt((int) riffSize).putInt(WEBP);
+        out.write(header.array());
+
+        BufferCopier copier = new BufferCopier(webp);
+        byte[] chunkHeader = new byte[CHUNK_HEADER_SIZE];
+        for (Chunk chunk : chunks) {
+            ByteBuffer.wrap(chunkHeader).order(ByteOrder.LITTLE_ENDIAN).putInt(chunk.type()).putInt(chunk.size());
+            out.write(chunkHeader);
+            if (chunk.replacement() != null) {
+                out.write(chunk.replacement());
+            } else if (chunk.type() == VP8X && chunk.size() > 0) {
+                out.write(features(webp.get(chunk.offset()), hasIcc, hasExif));
+                copier.copy(chunk.offset() + 1, chunk.size() - 1, out);
+            } else {
+                copier.copy(chunk.offset(), chunk.size(), out);
+            }
+            if ((chunk.size() & 1) != 0) {
+                out.write(0);
+            }
+        }
+    }
+
+    /**
+     * Decides what becomes of one chunk
+     *
+     * @return the chunk to write, or null to drop it
+     */
+    private Chunk filter(ByteBuffer webp, int type, int offset, int size) {
+        if (type == VP8X || IMAGE_CHUNKS.contains(type) || (type == ICCP && keepIccProfile)) {
+            return new Chunk(type, offset, size, null);
+        }
+        if (type == EXIF && !exif.keepsNothing() && size <= MAX_EXIF_LENGTH) {
+            byte[] data = new byte[size];
+            webp.get(offset, data);
+            int skip = startsWith(data, EXIF_PREFIX) ? EXIF_PREFIX.length : 0;
+            byte[] tiff = exif.rewrite(data, skip, size - skip);
+            return tiff != null ? new Chunk(EXIF, -1, tiff.length, tiff) : null;
+        }
+        // XMP, unknown chunks, and EXIF or ICC the policy doesn't keep
+        return null;
+    }
+
+    /**
+     * The VP8X flags byte with the metadata flags set to what was kept
+     */
+    private static int features(byte flags, boolean hasIcc, boolean hasExif) {
+        int features = flags & ~(ICC_FLAG | EXIF_FLAG | XMP_FLAG);
+        if (hasIcc) {
+            features |= ICC_FLAG;
+        }
+        if (hasExif) {
+            features |= EXIF_FLAG;
+        }
+        return features;
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A FourCC as a little-endian int, the way it is read from the file
+     */
+    private static int fourCc(String type) {
+        return type.charAt(0) | type.charAt(1) << 8 | type.charAt(2) << 16 | type.charAt(3) << 24;
+    }
+
+    /**
+     * A kept chunk: either {@code size} bytes at {@code offset} in the
+     * input, or a rebuilt {@code replacement}
+     */
+    private record Chunk(int type, int offset, int size, byte[] replacement) {
+    }
+}
@@ -0,0 +1,218 @@
+package com.metadatastripper;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the platform-thread and virtual-thread execution modes under a
+ * burst of slow uploads, the traffic pattern that exhausted the Tomcat pool.
+ *
+ * Excluded from the normal build; run with {@code mvn test -Pload-test}.
+ */
+@Tag("load")
+class ExecutionModeLoadTest {
+
+    private static final int CLIENTS = 200;
+
+    // Scaled-down Tomcat pool so that a test-sized burst is enough to exhaust it
+    private static final int TOMCAT_THREADS = 50;
+
+    // Each client trickles its upload over this long, like a slow mobile link
+    private static final Duration UPLOAD_TIME = Duration.ofSeconds(1);
+    private static final int UPLOAD_CHUNKS = 20;
+
+    // Long enough for one core to work through the whole burst
+    private static final Duration ADMISSION_WAIT = Duration.ofMinutes(1);
+
+    private static final String BOUNDARY = "load-test-boundary";
+
+    @Test
+    void compareExecutionModes() throws Exception {
+        byte[] body = multipartBody(createJpeg());
+
+        LoadResult platform = runLoad(false, body);
+        LoadResult virtual = runLoad(true, body);
+
+        System.out.printf("%n%-10s %8s %8s %10s %10s %10s%n",
+                "mode", "clients", "ok", "p50 (ms)", "p99 (ms)", "total (ms)");
+        for (LoadResult result : List.of(platform, virtual)) {
+            System.out.printf("%-10s %8d %8d %10d %10d %10d%n",
+                    result.mode(), CLIENTS, result.succeeded(),
+                    result.percentile(50), result.percentile(99), result.totalMillis());
+        }
+
+        assertEquals(CLIENTS, platform.succeeded());
+        assertEquals(CLIENTS, virtual.succeeded());
+    }
+
+    private LoadResult runLoad(boolean virtualThreads, byte[] body) throws Exception {
+        // Passed as arguments: builder properties are only defaults, which
+        // application.properties would override
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(MetadataStripperApplication.class)
+                .run(
+                    "--server.port=0",
+                    // Each client is told apart by X-Forwarded-For, trusted from localhost
+                    "--server.forward-headers-strategy=native",
+                    "--spring.threads.virtual.enabled=" + virtualThreads,
+                    "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                    // The burst is meant to reach the processing pool, not be shed by
+                    // admission control, which ProcessingSchedulerTest covers
+                    "--strip.admission.max-queued=" + CLIENTS,
+                    "--strip.admission.max-wait=" + ADMISSION_WAIT.toSeconds() + "s",
+                    "--logging.level.com.metadatastripper=WARN");
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(clients)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Long>> requests = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                // Spread clients over distinct addresses so the per-IP limit doesn't apply
+                String clientIp = "10.0." + (i / 250) + "." + (i % 250 + 1);
+                requests.add(CompletableFuture.supplyAsync(() -> send(client, port, clientIp, body), clients));
+            }
+
+            long[] latencies = new long[CLIENTS];
+            int succeeded = 0;
+            for (CompletableFuture<Long> request : requests) {
+                long latency = request.join();
+                if (latency >= 0) {
+                    latencies[succeeded++] = latency;
+                }
+            }
+            long total = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            return new LoadResult(virtualThreads ? "virtual" : "platform", succeeded,
+                    Arrays.copyOf(latencies, succeeded), total);
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Sends one slow upload and returns its latency in ms, or -1 on failure
+     */
+    private long send(HttpClient client, int port, String clientIp, byte[] body) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/images/strip"))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .header("X-Forwarded-For", clientIp)
+                .timeout(Duration.ofMinutes(2))
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new SlowInputStream(body)))
+                .build();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            return response.statusCode() == 200
+                    ? Duration.ofNanos(System.nanoTime() - start).toMillis()
+                    : -1;
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private byte[] createJpeg() throws IOException {
+        BufferedImage img = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpg", baos);
+        return baos.toByteArray();
+    }
+
+    private byte[] multipartBody(byte[] image) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"load.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.write(image);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+
+    /**
+     * Delivers the body in chunks spread over {@link #UPLOAD_TIME}
+     */
+    private static class SlowInputStream extends InputStream {
+
+        private final InputStream in;
+        private final int chunkSize;
+        private int leftInChunk;
+
+        SlowInputStream(byte[] data) {
+            this.in = new ByteArrayInputStream(data);
+            this.chunkSize = Math.max(1, data.length / UPLOAD_CHUNKS);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (leftInChunk == 0) {
+                try {
+                    Thread.sleep(UPLOAD_TIME.toMillis() / UPLOAD_CHUNKS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                leftInChunk = chunkSize;
+            }
+            int n = in.read(b, off, Math.min(len, leftInChunk));
+            if (n > 0) {
+                leftInChunk -= n;
+            }
+            return n;
+        }
+    }
+
+    private record LoadResult(String mode, int succeeded, long[] latencies, long totalMillis) {
+
+        long percentile(int p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.metadatastripper.config;
+
+import com.metadatastripper.dto.BatchItemResultDto;
+import com.metadatastripper.service.job.StripJob;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeHintsConfigTest {
+    
+    @Test
+    void testJsonHints_CoverTypesWrittenOutsideControllers() {
+        RuntimeHints hints = new RuntimeHints();
+        new NativeHintsConfig.JsonHints().registerHints(hints, getClass().getClassLoader());
+        
+        assertTrue(RuntimeHintsPredicates.reflection().onType(StripJob.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(BatchItemResultDto.class).test(hints));
+    }
+}
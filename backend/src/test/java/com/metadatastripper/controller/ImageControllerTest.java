@@ -1,24 +1,75 @@
 package com.metadatastripper.controller;
 
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.metadatastripper.dto.CompactMetadataDto;
 import com.metadatastripper.dto.ImageMetadataDto;
+import com.metadatastripper.dto.JobStatus;
+import com.metadatastripper.dto.ProcessedImageDto;
+import com.metadatastripper.dto.StripJobDto;
+import com.metadatastripper.dto.StrippedImage;
+import com.metadatastripper.exception.DownloadNotFoundException;
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.exception.JobNotFinishedException;
 import com.metadatastripper.service.ImageService;
+import com.metadatastripper.service.MetadataStripperService;
+import com.metadatastripper.service.RateLimitService;
+import com.metadatastripper.service.metadata.CompactMetadataEncoder;
+import com.metadatastripper.service.metadata.MetadataFields;
+import com.metadatastripper.service.ratelimit.RateLimitResult;
+import com.metadatastripper.service.ratelimit.RequestCost;
+import com.metadatastripper.service.spool.SpooledFileResource;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.aot.DisabledInAotMode;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+// @MockBean can't be processed ahead of time, so this only runs on the JVM
 @WebMvcTest(ImageController.class)
+@DisabledInAotMode
+@TestPropertySource(properties = {
+    "strip.streaming.max-upload-size=1KB",
+    "strip.upload.max-in-memory-size=1KB"
+})
 class ImageControllerTest {
     
     @Autowired
@@ -27,6 +78,19 @@ class ImageControllerTest {
     @MockBean
     private ImageService imageService;
     
+    @MockBean
+    private RateLimitService rateLimitService;
+    
+    @MockBean
+    private MetadataStripperService metadataStripperService;
+    
+    @BeforeEach
+    void setUp() {
+        when(rateLimitService.tryConsume(any(), any(), any(Supplier.class))).thenReturn(new RateLimitResult(true, 0,
+                List.of(new RateLimitResult.Budget("requests", 10, 9))));
+        when(imageService.detectMimeType(any())).thenReturn(MediaType.IMAGE_JPEG_VALUE);
+    }
+    
     @Test
     void testHealthCheck() throws Exception {
         mockMvc.perform(get("/images/health"))
@@ -55,7 +119,7 @@ class ImageControllerTest {
                 .hasMetadata(true)
                 .build();
         
-        when(imageService.getImageMetadata(any())).thenReturn(mockMetadata);
+        when(imageService.getImageMetadata(any(), any())).thenReturn(mockMetadata);
         
         mockMvc.perform(multipart("/images/metadata")
                         .file(file))
@@ -64,6 +128,141 @@ class ImageControllerTest {
                 .andExpect(jsonPath("$.hasMetadata").value(true));
     }
     
+    @Test
+    void testExtractMetadata_RangeUpload_ReportsWholeFileSize() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            "test image content".getBytes()
+        );
+        
+        when(imageService.getImageMetadata(any(), any())).thenReturn(ImageMetadataDto.builder()
+                .fileName("test.jpg")
+                .fileSize(18L)
+                .partial(true)
+                .build());
+        
+        mockMvc.perform(multipart("/images/metadata")
+                        .file(file)
+                        .param("fileSize", "10485760"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fileSize").value(10485760))
+                .andExpect(jsonPath("$.partial").value(true));
+    }
+    
+    @Test
+    void testExtractMetadata_PassesRequestedFields() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            "test image content".getBytes()
+        );
+        
+        when(imageService.getImageMetadata(any(), any())).thenReturn(ImageMetadataDto.builder()
+                .fileName("test.jpg")
+                .build());
+        
+        mockMvc.perform(multipart("/images/metadata")
+                        .file(file)
+                        .param("fields", "location, camera")
+                        .param("summary", "true"))
+                .andExpect(status().isOk());
+        
+        verify(imageService).getImageMetadata(any(), eq(MetadataFields.of("camera,location", true)));
+    }
+    
+    @Test
+    void testExtractMetadata_UnknownField_ReturnsBadRequest() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            "test image content".getBytes()
+        );
+        
+        mockMvc.perform(multipart("/images/metadata")
+                        .file(file)
+                        .param("fields", "colour"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value(containsString("colour")));
+        
+        verify(imageService, never()).getImageMetadata(any(), any());
+    }
+    
+    @Test
+    void testExtractCompactMetadata_Json() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            "test image content".getBytes()
+        );
+        
+        when(imageService.getCompactMetadata(any(), any(), eq(MediaType.APPLICATION_JSON), eq(10485760L)))
+                .thenAnswer(invocation -> encodeCompactMetadata(invocation.getArgument(2), invocation.getArgument(3)));
+        
+        mockMvc.perform(multipart("/images/metadata/v2")
+                        .file(file)
+                        .param("fileSize", "10485760"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.version").value(2))
+                .andExpect(jsonPath("$.fileSize").value(10485760))
+                .andExpect(jsonPath("$.directories[0].name").value("Exif IFD0"))
+                .andExpect(jsonPath("$.directories[0].tags[0][0]").value("Make"))
+                .andExpect(jsonPath("$.directories[0].tags[0][1]").value("Canon"))
+                .andExpect(jsonPath("$.exifData").doesNotExist());
+    }
+    
+    @Test
+    void testExtractCompactMetadata_CborWhenAccepted() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            "test image content".getBytes()
+        );
+        
+        when(imageService.getCompactMetadata(any(), any(), eq(MediaType.APPLICATION_CBOR), eq(18L)))
+                .thenAnswer(invocation -> encodeCompactMetadata(invocation.getArgument(2), invocation.getArgument(3)));
+        
+        MvcResult result = mockMvc.perform(multipart("/images/metadata/v2")
+                        .file(file)
+                        .accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+        
+        JsonNode tree = new ObjectMapper(new CBORFactory()).readTree(result.getResponse().getContentAsByteArray());
+        assertEquals("test.jpg", tree.get("fileName").asText());
+        assertEquals("Canon", tree.get("directories").get(0).get("tags").get(0).get(1).asText());
+    }
+    
+    @Test
+    void testExtractMetadata_RateLimited() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            "test image content".getBytes()
+        );
+        
+        when(rateLimitService.tryConsume(any(), eq("/images/metadata"), costOf(new RequestCost(18, 0))))
+                .thenReturn(new RateLimitResult(false, 42_500_000_000L, List.of(
+                        new RateLimitResult.Budget("requests", 20, 12),
+                        new RateLimitResult.Budget("bytes", 100_000_000, 0))));
+        
+        mockMvc.perform(multipart("/images/metadata")
+                        .file(file))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "43"))
+                .andExpect(header().string("X-RateLimit-Remaining", "12"))
+                .andExpect(header().string("X-RateLimit-Bytes-Remaining", "0"))
+                .andExpect(jsonPath("$.retryAfter").value(43));
+    }
+    
     @Test
     void testStripMetadata_Success() throws Exception {
         MockMultipartFile file = new MockMultipartFile(
@@ -75,7 +274,7 @@ class ImageControllerTest {
         
         byte[] cleanedImage = "cleaned image bytes".getBytes();
         
-        when(imageService.processImage(any())).thenReturn(cleanedImage);
+        when(imageService.processImage(any(), any())).thenReturn(cleanedImage);
         
         mockMvc.perform(multipart("/images/strip")
                         .file(file))
@@ -83,4 +282,311 @@ class ImageControllerTest {
                 .andExpect(header().exists("Content-Disposition"))
                 .andExpect(content().bytes(cleanedImage));
     }
-}
\ No newline at end of file
+    
+    @Test
+    void testStripMetadata_LargeUploadIsSentFromFile(@TempDir Path dir) throws Exception {
+        // Above the in-memory cap, which doesn't apply to uploads stripped from disk
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            new byte[2048]
+        );
+        
+        byte[] cleanedImage = "cleaned image bytes".getBytes();
+        Path result = Files.write(dir.resolve("cleaned"), cleanedImage);
+        when(imageService.isLargeUpload(any())).thenReturn(true);
+        when(imageService.processLargeImage(any(), any())).thenReturn(new SpooledFileResource(result));
+        
+        mockMvc.perform(multipart("/images/strip")
+                        .file(file))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue("Content-Length", cleanedImage.length))
+                .andExpect(content().bytes(cleanedImage));
+        assertFalse(Files.exists(result));
+    }
+    
+    @Test
+    void testStripMetadata_InMemoryUploadOverCapIsRejected() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.bmp",
+            "image/bmp",
+            new byte[2048]
+        );
+        
+        mockMvc.perform(multipart("/images/strip")
+                        .file(file))
+                .andExpect(status().isPayloadTooLarge());
+        mockMvc.perform(multipart("/images/process")
+                        .file(file))
+                .andExpect(status().isPayloadTooLarge());
+        verify(imageService, never()).processImage(any(MockMultipartFile.class), any());
+    }
+    
+    @Test
+    void testExtractMetadata_UploadOverCapIsRejected() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.tiff",
+            "image/tiff",
+            new byte[2048]
+        );
+        
+        mockMvc.perform(multipart("/images/metadata")
+                        .file(file))
+                .andExpect(status().isPayloadTooLarge());
+        mockMvc.perform(multipart("/images/metadata/v2")
+                        .file(file))
+                .andExpect(status().isPayloadTooLarge());
+        verify(imageService, never()).getImageMetadata(any(), any());
+        verify(imageService, never()).getCompactMetadata(any(), any(), any(), anyLong());
+    }
+    
+    @Test
+    void testSubmitJob_DecodedUploadOverCapIsRejected() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.bmp",
+            "image/bmp",
+            new byte[2048]
+        );
+        
+        when(imageService.needsDecoding(any())).thenReturn(true);
+        
+        mockMvc.perform(multipart("/images/jobs")
+                        .file(file))
+                .andExpect(status().isPayloadTooLarge());
+        verify(imageService, never()).submitJob(any(), any());
+    }
+    
+    @Test
+    void testStripMetadata_UnknownPolicy() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            "test image content".getBytes()
+        );
+        
+        when(imageService.resolveStripPolicy("keep-everything"))
+                .thenThrow(new ImageProcessingException("Unknown strip policy: keep-everything"));
+        
+        mockMvc.perform(multipart("/images/strip")
+                        .file(file)
+                        .param("policy", "keep-everything"))
+                .andExpect(status().isBadRequest());
+        verify(imageService, never()).processImage(any(), any());
+    }
+    
+    @Test
+    void testProcessImage_ReturnsMetadataAndToken() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            "test image content".getBytes()
+        );
+        
+        ProcessedImageDto processed = ProcessedImageDto.builder()
+                .metadata(ImageMetadataDto.builder().fileName("test.jpg").hasMetadata(true).build())
+                .downloadToken("abc123")
+                .cleanedFileName("cleaned_test.jpg")
+                .cleanedFileSize(19L)
+                .expiresInSeconds(300L)
+                .build();
+        
+        when(imageService.processAndInspectImage(any(), any())).thenReturn(processed);
+        
+        mockMvc.perform(multipart("/images/process")
+                        .file(file))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.metadata.fileName").value("test.jpg"))
+                .andExpect(jsonPath("$.downloadToken").value("abc123"));
+    }
+    
+    @Test
+    void testDownloadCleanedImage_Success() throws Exception {
+        byte[] cleanedImage = "cleaned image bytes".getBytes();
+        
+        when(imageService.getStrippedImage("abc123")).thenReturn(StrippedImage.builder()
+                .fileName("test.jpg")
+                .mimeType(MediaType.IMAGE_JPEG_VALUE)
+                .data(cleanedImage)
+                .build());
+        
+        mockMvc.perform(get("/images/download/abc123"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("Content-Disposition"))
+                .andExpect(content().bytes(cleanedImage));
+    }
+    
+    @Test
+    void testDownloadCleanedImage_Expired() throws Exception {
+        when(imageService.getStrippedImage("gone"))
+                .thenThrow(new DownloadNotFoundException("Download not found"));
+        
+        mockMvc.perform(get("/images/download/gone"))
+                .andExpect(status().isNotFound());
+    }
+    
+    @Test
+    void testSubmitJob_ReturnsAcceptedWithLocation() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            MediaType.IMAGE_JPEG_VALUE,
+            "test image content".getBytes()
+        );
+        
+        when(imageService.submitJob(any(), any())).thenReturn(StripJobDto.builder()
+                .jobId("job-1")
+                .status(JobStatus.QUEUED)
+                .fileName("test.jpg")
+                .build());
+        
+        mockMvc.perform(multipart("/images/jobs")
+                        .file(file))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/images/jobs/job-1"))
+                .andExpect(jsonPath("$.status").value("QUEUED"));
+    }
+    
+    @Test
+    void testGetJob_WaitsForCompletion() throws Exception {
+        when(imageService.getJob("job-1", Duration.ofSeconds(10))).thenReturn(CompletableFuture.completedFuture(
+                StripJobDto.builder()
+                        .jobId("job-1")
+                        .status(JobStatus.SUCCEEDED)
+                        .cleanedFileSize(42L)
+                        .build()));
+        
+        MvcResult result = mockMvc.perform(get("/images/jobs/job-1").param("wait", "10"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("SUCCEEDED"))
+                .andExpect(jsonPath("$.cleanedFileSize").value(42));
+    }
+    
+    @Test
+    void testDownloadJobResult_NotFinished() throws Exception {
+        when(imageService.getJobResult("job-1"))
+                .thenThrow(new JobNotFinishedException("Job has not finished yet"));
+        
+        mockMvc.perform(get("/images/jobs/job-1/result"))
+                .andExpect(status().isConflict());
+    }
+    
+    @Test
+    void testStripMetadataStream_Success() throws Exception {
+        byte[] cleanedImage = "cleaned image bytes".getBytes();
+        
+        when(imageService.detectFormat(any())).thenReturn("jpeg");
+        when(imageService.getMimeType("jpeg")).thenReturn(MediaType.IMAGE_JPEG_VALUE);
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(3);
+            out.write(cleanedImage);
+            return null;
+        }).when(imageService).processImage(any(), eq("jpeg"), eq("test.jpg"), any(), any());
+        
+        MvcResult result = mockMvc.perform(post("/images/strip/stream")
+                        .param("filename", "test.jpg")
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .content("test image content".getBytes()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", MediaType.IMAGE_JPEG_VALUE))
+                .andExpect(header().exists("Content-Disposition"))
+                .andExpect(content().bytes(cleanedImage));
+    }
+    
+    @Test
+    void testStripMetadataStream_ChargesStreamedBytesAndPixels() throws Exception {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+        byte[] image = jpeg.toByteArray();
+        
+        when(imageService.detectFormat(any())).thenReturn("jpeg");
+        when(imageService.getMimeType("jpeg")).thenReturn(MediaType.IMAGE_JPEG_VALUE);
+        doAnswer(invocation -> invocation.getArgument(0, InputStream.class).readAllBytes())
+                .when(imageService).processImage(any(), eq("jpeg"), eq("test.jpg"), any(), any());
+        
+        MvcResult result = mockMvc.perform(post("/images/strip/stream")
+                        .param("filename", "test.jpg")
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .content(image))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+        
+        // Charged the declared length up front, and the pixels once they were seen
+        verify(rateLimitService).tryConsume(any(), eq("/images/strip/stream"), costOf(new RequestCost(image.length, 0)));
+        verify(rateLimitService).settle(any(), eq("/images/strip/stream"),
+                eq(new RequestCost(image.length, 0)), eq(new RequestCost(image.length, 40 * 30)));
+    }
+    
+    @Test
+    void testStripMetadataStream_TooLarge() throws Exception {
+        mockMvc.perform(post("/images/strip/stream")
+                        .param("filename", "test.jpg")
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .content(new byte[2048]))
+                .andExpect(status().isPayloadTooLarge());
+    }
+    
+    @Test
+    void testStripMetadataBatch_StreamsZip() throws Exception {
+        MockMultipartFile first = new MockMultipartFile(
+            "files", "a.jpg", MediaType.IMAGE_JPEG_VALUE, "a".getBytes());
+        MockMultipartFile second = new MockMultipartFile(
+            "files", "b.jpg", MediaType.IMAGE_JPEG_VALUE, "b".getBytes());
+        
+        byte[] zipBytes = "zip bytes".getBytes();
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write(zipBytes);
+            return null;
+        }).when(imageService).processBatch(any(), any(), any());
+        
+        MvcResult result = mockMvc.perform(multipart("/images/strip/batch")
+                        .file(first)
+                        .file(second))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/zip"))
+                .andExpect(content().bytes(zipBytes));
+    }
+    
+    private static Supplier<RequestCost> costOf(RequestCost expected) {
+        return argThat(cost -> cost.get().equals(expected));
+    }
+    
+    private byte[] encodeCompactMetadata(MediaType mediaType, long fileSize) {
+        CompactMetadataEncoder encoder = new CompactMetadataEncoder();
+        byte[] body = encoder.encodeBody(createCompactMetadata(), mediaType);
+        return encoder.encode("test.jpg", fileSize, body, mediaType);
+    }
+    
+    private CompactMetadataDto createCompactMetadata() {
+        ExifIFD0Directory ifd0 = new ExifIFD0Directory();
+        ifd0.setString(ExifIFD0Directory.TAG_MAKE, "Canon");
+        Metadata metadata = new Metadata();
+        metadata.addDirectory(ifd0);
+        return CompactMetadataDto.builder()
+                .fileName("test.jpg")
+                .fileSize(18L)
+                .mimeType("image/jpeg")
+                .metadata(metadata)
+                .build();
+    }
+}
@@ -0,0 +1,152 @@
+package com.metadatastripper.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.service.metrics.ImageMetrics;
+import com.metadatastripper.service.ratelimit.UsageMeter;
+import com.metadatastripper.service.stripper.StripPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchStripServiceTest {
+    
+    private ExecutorService executor;
+    private BatchStripService service;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        ProcessingScheduler scheduler = new ProcessingScheduler(executor, 2, 2, 10,
+                Duration.ofSeconds(5), DataSize.ofMegabytes(64), Duration.ofSeconds(1));
+        service = new BatchStripService(new MetadataStripperService(), scheduler, executor, objectMapper,
+                new ImageMetrics(new SimpleMeterRegistry()),
+                5, 2, DataSize.ofMegabytes(1));
+    }
+    
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    void testStripFiles_WritesEntriesAndManifest() throws IOException {
+        List<MultipartFile> files = List.of(
+            new MockMultipartFile("files", "a.jpg", "image/jpeg", createImage("jpg")),
+            new MockMultipartFile("files", "b.png", "image/png", createImage("png")),
+            new MockMultipartFile("files", "a.jpg", "image/jpeg", createImage("jpg")),
+            new MockMultipartFile("files", "notes.txt", "text/plain", "hello".getBytes())
+        );
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.stripFiles(files, out);
+        
+        Map<String, byte[]> entries = readZip(out.toByteArray());
+        assertTrue(entries.containsKey("cleaned_a.jpg"));
+        assertTrue(entries.containsKey("cleaned_a_1.jpg"));
+        assertTrue(entries.containsKey("cleaned_b.png"));
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(entries.get("cleaned_b.png"))));
+        
+        JsonNode manifest = objectMapper.readTree(entries.get("manifest.json"));
+        assertEquals(4, manifest.size());
+        long failures = 0;
+        for (JsonNode item : manifest) {
+            if (!item.get("success").asBoolean()) {
+                failures++;
+                assertEquals("notes.txt", item.get("fileName").asText());
+            }
+        }
+        assertEquals(1, failures);
+    }
+    
+    @Test
+    void testStripFiles_StripsPathsFromUploadNames() throws IOException {
+        List<MultipartFile> files = List.of(
+            new MockMultipartFile("files", "../../etc/evil.jpg", "image/jpeg", createImage("jpg")),
+            new MockMultipartFile("files", "C:\\temp\\evil.jpg", "image/jpeg", createImage("jpg"))
+        );
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.stripFiles(files, out);
+        
+        Map<String, byte[]> entries = readZip(out.toByteArray());
+        assertEquals(Set.of("cleaned_evil.jpg", "cleaned_evil_1.jpg", "manifest.json"), entries.keySet());
+    }
+    
+    @Test
+    void testStripArchive_ProcessesImageEntries() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("holiday/"));
+            zip.putNextEntry(new ZipEntry("holiday/beach.jpg"));
+            zip.write(createImage("jpg"));
+            zip.putNextEntry(new ZipEntry("__MACOSX/holiday/._beach.jpg"));
+            zip.write(new byte[] {0, 1, 2});
+            zip.closeEntry();
+        }
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UsageMeter usage = new UsageMeter();
+        service.stripArchive(new ByteArrayInputStream(archive.toByteArray()), out, StripPolicy.REMOVE_ALL, usage);
+        
+        Map<String, byte[]> entries = readZip(out.toByteArray());
+        assertEquals(Set.of("cleaned_beach.jpg", "manifest.json"), entries.keySet());
+        // Only the image entry declares pixels
+        assertEquals(32 * 32, usage.cost().pixels());
+    }
+    
+    @Test
+    void testValidateBatch_TooManyFiles_ThrowsException() {
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            files.add(new MockMultipartFile("files", i + ".jpg", "image/jpeg", new byte[] {1}));
+        }
+        
+        assertThrows(ImageProcessingException.class, () -> service.validateBatch(files));
+    }
+    
+    private Map<String, byte[]> readZip(byte[] zipBytes) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(zipBytes))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+    
+    private byte[] createImage(String format) throws IOException {
+        BufferedImage img = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillRect(0, 0, 32, 32);
+        g.dispose();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+}
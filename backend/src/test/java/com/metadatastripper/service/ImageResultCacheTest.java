@@ -0,0 +1,106 @@
+package com.metadatastripper.service;
+
+import com.metadatastripper.dto.ImageMetadataDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageResultCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testKeyOf_SameContentSameKey() throws IOException {
+        ImageResultCache cache = createCache("", true);
+
+        String first = cache.keyOf(upload("a.jpg", new byte[]{1, 2, 3}));
+        String renamed = cache.keyOf(upload("b.jpg", new byte[]{1, 2, 3}));
+        String otherContent = cache.keyOf(upload("a.jpg", new byte[]{1, 2, 4}));
+        String otherExtension = cache.keyOf(upload("a.png", new byte[]{1, 2, 3}));
+
+        assertEquals(first, renamed);
+        assertEquals(first, otherExtension);
+        assertNotEquals(first, otherContent);
+    }
+
+    @Test
+    void testMetadata_HitAndMissAreRecorded() throws IOException {
+        ImageResultCache cache = createCache("", true);
+        String key = cache.keyOf(upload("a.jpg", new byte[]{1, 2, 3}));
+        ImageMetadataDto metadata = ImageMetadataDto.builder().fileName("a.jpg").build();
+
+        assertTrue(cache.getMetadata(key).isEmpty());
+        cache.putMetadata(key, metadata);
+        assertSame(metadata, cache.getMetadata(key).orElseThrow());
+
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "imageMetadata").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "imageMetadata").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void testStripped_EvictedEntriesSpillToDisk(@TempDir Path directory) throws IOException {
+        ImageResultCache cache = createCache(directory.toString(), true);
+        byte[] first = new byte[600];
+        byte[] second = new byte[600];
+        first[0] = 1;
+        second[0] = 2;
+
+        cache.putStripped("first.jpg", first);
+        cache.putStripped("second.jpg", second);
+        cache.cleanUp();
+
+        // The heap tier holds 1KB, so one of the entries must now be on disk
+        assertArrayEquals(first, cache.getStripped("first.jpg").orElseThrow());
+        assertArrayEquals(second, cache.getStripped("second.jpg").orElseThrow());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testCompactMetadata_BoundedByEncodedSize() throws IOException {
+        ImageResultCache cache = createCache("", true);
+
+        cache.putCompactMetadata("first.jpg", new byte[600]);
+        cache.putCompactMetadata("second.jpg", new byte[600]);
+        cache.cleanUp();
+
+        // 1KB holds only one of them
+        long kept = Stream.of("first.jpg", "second.jpg")
+                .filter(key -> cache.getCompactMetadata(key).isPresent())
+                .count();
+        assertEquals(1, kept);
+    }
+
+    @Test
+    void testDisabled_NeverCaches() throws IOException {
+        ImageResultCache cache = createCache("", false);
+        String key = cache.keyOf(upload("a.jpg", new byte[]{1, 2, 3}));
+
+        cache.putStripped(key, new byte[]{1});
+
+        assertNull(key);
+        assertTrue(cache.getStripped(key).isEmpty());
+    }
+
+    private ImageResultCache createCache(String diskDirectory, boolean enabled) throws IOException {
+        return new ImageResultCache(meterRegistry, enabled, Duration.ofMinutes(5), 100,
+                DataSize.ofKilobytes(1), DataSize.ofKilobytes(1), diskDirectory, DataSize.ofMegabytes(1));
+    }
+
+    private MockMultipartFile upload(String name, byte[] content) {
+        return new MockMultipartFile("file", name, "image/jpeg", content);
+    }
+}
@@ -1,16 +1,29 @@
 package com.metadatastripper.service;
 
 import com.metadatastripper.dto.ImageMetadataDto;
+import com.metadatastripper.dto.StrippedImage;
 import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.service.metadata.MetadataFields;
+import com.metadatastripper.service.stripper.StripPolicy;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.mock.web.MockMultipartFile;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -110,6 +123,143 @@ class MetadataStripperServiceTest {
         assertTrue(result.length > 0);
     }
     
+    @Test
+    void testStripMetadata_JPEGImage_KeepsPixelData() throws IOException {
+        BufferedImage img = createTestImage();
+        byte[] imageBytes = convertImageToBytes(img, "jpg");
+        
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            "image/jpeg",
+            imageBytes
+        );
+        
+        byte[] result = service.stripMetadata(file);
+        
+        // Segment-level stripping must not re-encode the image
+        assertArrayEquals(imageBytes, result);
+    }
+    
+    @Test
+    void testStripMetadata_Stream_WritesCleanedImage() throws IOException {
+        BufferedImage img = createTestImage();
+        byte[] imageBytes = convertImageToBytes(img, "png");
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.stripMetadata(new ByteArrayInputStream(imageBytes), "test.png", out);
+        
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+    
+    @Test
+    void testStripMetadata_Stream_ReturnsSniffedFormat() throws IOException {
+        byte[] imageBytes = convertImageToBytes(createTestImage(), "png");
+        
+        String format = service.stripMetadata(new ByteArrayInputStream(imageBytes), "photo.jpg",
+                new ByteArrayOutputStream());
+        
+        assertEquals("png", format);
+        assertEquals(Optional.of("png"),
+                service.identifyFormat(new MockMultipartFile("file", "photo.jpg", "image/jpeg", imageBytes)));
+    }
+    
+    @Test
+    void testStripMetadata_SpooledFile_MatchesInMemoryStrip(@TempDir Path dir) throws IOException {
+        byte[] imageBytes = convertImageToBytes(createTestImage(), "jpg");
+        Path input = Files.write(dir.resolve("upload"), imageBytes);
+        Path output = dir.resolve("cleaned");
+        
+        service.stripMetadata(input, "test.jpg", output, StripPolicy.REMOVE_ALL);
+        
+        assertArrayEquals(service.stripMetadata(new MockMultipartFile("file", "test.jpg", "image/jpeg", imageBytes)),
+                Files.readAllBytes(output));
+    }
+    
+    @Test
+    void testStripMetadata_SpooledFile_DecodedFormatIsReencoded(@TempDir Path dir) throws IOException {
+        byte[] imageBytes = convertImageToBytes(createTestImage(), "bmp");
+        Path input = Files.write(dir.resolve("upload"), imageBytes);
+        Path output = dir.resolve("cleaned");
+        
+        assertEquals("bmp", service.stripMetadata(input, "test.bmp", output, StripPolicy.REMOVE_ALL));
+        
+        assertNotNull(ImageIO.read(output.toFile()));
+    }
+    
+    @Test
+    void testStripMetadata_RandomAccessFormat_IsNotReadFromStream(@TempDir Path dir) throws IOException {
+        byte[] imageBytes = convertImageToBytes(createTestImage(), "tiff");
+        Path input = Files.write(dir.resolve("upload"), imageBytes);
+        Path output = dir.resolve("cleaned");
+        
+        service.stripMetadata(input, "test.tiff", output, StripPolicy.REMOVE_ALL);
+        ByteArrayOutputStream inMemory = new ByteArrayOutputStream();
+        String format = service.stripMetadata(new ByteArrayResource(imageBytes), "test.tiff", inMemory,
+                StripPolicy.REMOVE_ALL);
+        
+        assertEquals("tiff", format);
+        assertArrayEquals(Files.readAllBytes(output), inMemory.toByteArray());
+        assertTrue(service.needsRandomAccess("tiff"));
+        assertThrows(IllegalArgumentException.class, () -> service.stripMetadata(
+            new ByteArrayInputStream(imageBytes), "test.tiff", new ByteArrayOutputStream()));
+    }
+    
+    @Test
+    void testStripMetadata_Stream_UnsupportedFormat_ThrowsException() {
+        assertThrows(ImageProcessingException.class, () -> service.stripMetadata(
+            new ByteArrayInputStream("test content".getBytes()), "test.txt", new ByteArrayOutputStream()));
+    }
+    
+    @Test
+    void testExtractAndStripMetadata_ReturnsBoth() throws IOException {
+        BufferedImage img = createTestImage();
+        byte[] imageBytes = convertImageToBytes(img, "jpg");
+        
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            "image/jpeg",
+            imageBytes
+        );
+        
+        StrippedImage result = service.extractAndStripMetadata(file);
+        
+        assertEquals("test.jpg", result.getMetadata().getFileName());
+        assertEquals("image/jpeg", result.getMimeType());
+        assertArrayEquals(service.stripMetadata(file), result.getData());
+    }
+    
+    @Test
+    void testEstimateMemoryCost_DecodedFormatUsesDimensions() throws IOException {
+        BufferedImage img = createTestImage();
+        byte[] imageBytes = convertImageToBytes(img, "bmp");
+        
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.bmp",
+            "image/bmp",
+            imageBytes
+        );
+        
+        // 100 x 100 pixels at 4 bytes each, plus input and output buffers
+        assertEquals(100 * 100 * 4 + 2L * imageBytes.length, service.estimateMemoryCost(file));
+    }
+    
+    @Test
+    void testReadDimensions_InvalidBmpHeight_IsIgnored() throws IOException {
+        byte[] imageBytes = convertImageToBytes(createTestImage(), "bmp");
+        // Height is a little-endian int at offset 22; Integer.MIN_VALUE has no positive counterpart
+        imageBytes[22] = 0;
+        imageBytes[23] = 0;
+        imageBytes[24] = 0;
+        imageBytes[25] = (byte) 0x80;
+        
+        MockMultipartFile file = new MockMultipartFile("file", "test.bmp", "image/bmp", imageBytes);
+        
+        assertTrue(service.readDimensions(file).isEmpty());
+    }
+    
     @Test
     void testStripMetadata_EmptyFile_ThrowsException() {
         MockMultipartFile emptyFile = new MockMultipartFile(
@@ -141,6 +291,35 @@ class MetadataStripperServiceTest {
         assertTrue(exception.getMessage().contains("Unsupported file format"));
     }
     
+    @Test
+    void testStripMetadata_MislabeledFile_IsHandledByContent() throws IOException {
+        byte[] png = convertImageToBytes(createTestImage(), "png");
+        MockMultipartFile file = new MockMultipartFile("file", "photo.jpg", "image/jpeg", png);
+        
+        StrippedImage result = service.extractAndStripMetadata(file);
+        
+        assertEquals("image/png", result.getMimeType());
+        assertEquals("image/png", result.getMetadata().getMimeType());
+        assertArrayEquals(Arrays.copyOf(png, 8), Arrays.copyOf(result.getData(), 8));
+    }
+    
+    @Test
+    void testStripMetadata_NonImageWithImageExtension_ThrowsException() {
+        MockMultipartFile file = new MockMultipartFile(
+            "file",
+            "test.jpg",
+            "image/jpeg",
+            "<html>not an image</html>".getBytes()
+        );
+        
+        ImageProcessingException exception = assertThrows(
+            ImageProcessingException.class,
+            () -> service.stripMetadata(file)
+        );
+        
+        assertTrue(exception.getMessage().contains("Unsupported file format"));
+    }
+    
     @Test
     void testStripMetadata_NullFile_ThrowsException() {
         assertThrows(ImageProcessingException.class, () -> {
@@ -166,6 +345,56 @@ class MetadataStripperServiceTest {
         assertEquals("test.jpg", result.getFileName());
     }
     
+    @Test
+    void testExtractMetadata_RangeUpload_IsMarkedPartial() throws IOException {
+        byte[] imageBytes = convertImageToBytes(createTestImage(), "jpg");
+        
+        ImageMetadataDto full = service.extractMetadata(
+            new MockMultipartFile("file", "test.jpg", "image/jpeg", imageBytes));
+        // Only the start of the file: SOI and part of the first segment
+        ImageMetadataDto range = service.extractMetadata(
+            new MockMultipartFile("file", "test.jpg", "image/jpeg", Arrays.copyOf(imageBytes, 12)));
+        
+        assertFalse(full.isPartial());
+        assertTrue(range.isPartial());
+        assertEquals(12, range.getFileSize());
+    }
+    
+    @Test
+    void testExtractMetadata_FieldsReturnOnlyRequestedGroups() throws IOException {
+        byte[] imageBytes = convertImageToBytes(createTestImage(), "jpg");
+        MockMultipartFile file = new MockMultipartFile("file", "test.jpg", "image/jpeg", imageBytes);
+        
+        ImageMetadataDto full = service.extractMetadata(file);
+        ImageMetadataDto image = service.extractMetadata(file, MetadataFields.of("image", false));
+        
+        // Segment readers that can't produce image tags are skipped, without changing the group
+        assertEquals(full.getImageInfo(), image.getImageInfo());
+        assertEquals(full.getImageInfo().getData(), image.getExifData());
+        assertNull(image.getCameraInfo());
+        assertNull(image.getOtherInfo());
+    }
+    
+    @Test
+    void testExtractMetadata_SummaryHasFlagsButNoTags() throws IOException {
+        byte[] imageBytes = convertImageToBytes(createTestImage(), "png");
+        MockMultipartFile file = new MockMultipartFile("file", "test.png", "image/png", imageBytes);
+        
+        ImageMetadataDto full = service.extractMetadata(file);
+        ImageMetadataDto summary = service.extractMetadata(file, MetadataFields.of(null, true));
+        
+        assertEquals(full.isHasMetadata(), summary.isHasMetadata());
+        assertTrue(summary.getExifData().isEmpty());
+        assertEquals(full.getImageInfo().isHasData(), summary.getImageInfo().isHasData());
+        assertEquals(full.getOtherInfo().isHasData(), summary.getOtherInfo().isHasData());
+        assertTrue(summary.getImageInfo().getData().isEmpty());
+    }
+    
+    @Test
+    void testExtractMetadata_UnknownField_ThrowsException() {
+        assertThrows(ImageProcessingException.class, () -> MetadataFields.of("location,colour", false));
+    }
+    
     @Test
     void testMetadataGroups_HasDataFlag() throws IOException {
         BufferedImage img = createTestImage();
@@ -188,6 +417,26 @@ class MetadataStripperServiceTest {
         assertEquals(!locationInfo.getData().isEmpty(), locationInfo.isHasData());
     }
     
+    @Test
+    void testPhases_AreTimedPerFormat() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        service.setObservationRegistry(observationRegistry);
+        
+        byte[] bmp = convertImageToBytes(createTestImage(), "bmp");
+        service.stripMetadata(new MockMultipartFile("file", "test.bmp", "image/bmp", bmp));
+        byte[] png = convertImageToBytes(createTestImage(), "png");
+        service.extractMetadata(new MockMultipartFile("file", "test.png", "image/png", png));
+        
+        for (String phase : new String[]{"validate", "decode", "encode"}) {
+            assertEquals(1, meterRegistry.get("image.phase").tags("phase", phase, "format", "bmp").timer().count());
+        }
+        for (String phase : new String[]{"validate", "parse", "classify"}) {
+            assertEquals(1, meterRegistry.get("image.phase").tags("phase", phase, "format", "png").timer().count());
+        }
+    }
+    
     private BufferedImage createTestImage() {
         BufferedImage img = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = img.createGraphics();
@@ -0,0 +1,140 @@
+package com.metadatastripper.service;
+
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.exception.ServiceOverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessingSchedulerTest {
+    
+    private ExecutorService executor;
+    private ProcessingScheduler scheduler;
+    
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        // Two slots, no waiting room, 10MB of memory
+        scheduler = new ProcessingScheduler(executor, 2, 2, 0,
+                Duration.ofMillis(50), DataSize.ofMegabytes(10), Duration.ofSeconds(3));
+    }
+    
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    void testExecute_ReturnsResult() {
+        assertEquals("done", scheduler.execute(1024, () -> "done"));
+    }
+    
+    @Test
+    void testExecute_InterruptedCallerLeavesPermitWithRunningTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Thread caller = new Thread(() -> assertThrows(ImageProcessingException.class,
+                () -> scheduler.execute(1024, () -> {
+                    started.countDown();
+                    awaitUninterruptibly(finish);
+                    return "done";
+                })));
+        caller.start();
+        started.await();
+        
+        caller.interrupt();
+        caller.join();
+        
+        // The task is still running, so it still holds one of the two slots
+        ProcessingScheduler.Permit other = scheduler.tryAcquire(1024);
+        assertThrows(ServiceOverloadedException.class, () -> scheduler.tryAcquire(1024));
+        finish.countDown();
+        scheduler.acquire(1024).close();
+        other.close();
+    }
+    
+    @Test
+    void testPermit_CancelledBeforeStartIsReleased() throws Exception {
+        ProcessingScheduler.Permit permit = scheduler.tryAcquire(1024);
+        Callable<String> task = permit.bind(() -> "done");
+        
+        permit.releaseIfNotStarted();
+        
+        assertThrows(CancellationException.class, task::call);
+        ProcessingScheduler.Permit a = scheduler.tryAcquire(1024);
+        ProcessingScheduler.Permit b = scheduler.tryAcquire(1024);
+        a.close();
+        b.close();
+    }
+    
+    @Test
+    void testTryAcquire_RejectsWhenConcurrencyExhausted() {
+        ProcessingScheduler.Permit first = scheduler.tryAcquire(1024);
+        ProcessingScheduler.Permit second = scheduler.tryAcquire(1024);
+        
+        ServiceOverloadedException ex = assertThrows(ServiceOverloadedException.class,
+                () -> scheduler.tryAcquire(1024));
+        assertEquals(3, ex.getRetryAfterSeconds());
+        
+        first.close();
+        scheduler.tryAcquire(1024).close();
+        second.close();
+    }
+    
+    @Test
+    void testTryAcquire_RejectsWhenMemoryBudgetExhausted() {
+        ProcessingScheduler.Permit large = scheduler.tryAcquire(DataSize.ofMegabytes(8).toBytes());
+        
+        assertThrows(ServiceOverloadedException.class,
+                () -> scheduler.tryAcquire(DataSize.ofMegabytes(4).toBytes()));
+        
+        large.close();
+        scheduler.tryAcquire(DataSize.ofMegabytes(4).toBytes()).close();
+    }
+    
+    @Test
+    void testAcquire_RejectsJobLargerThanBudget() {
+        assertThrows(ImageProcessingException.class,
+                () -> scheduler.tryAcquire(DataSize.ofGigabytes(1).toBytes()));
+        assertThrows(ImageProcessingException.class,
+                () -> scheduler.acquire(DataSize.ofGigabytes(1).toBytes()));
+        
+        // Nothing was taken, so the whole budget is still free
+        scheduler.tryAcquire(DataSize.ofMegabytes(10).toBytes()).close();
+    }
+    
+    @Test
+    void testPermit_CloseTwiceReleasesOnce() {
+        ProcessingScheduler.Permit first = scheduler.tryAcquire(1024);
+        first.close();
+        // Closing twice must not release capacity twice
+        first.close();
+        
+        ProcessingScheduler.Permit a = scheduler.tryAcquire(1024);
+        ProcessingScheduler.Permit b = scheduler.tryAcquire(1024);
+        assertThrows(ServiceOverloadedException.class, () -> scheduler.tryAcquire(1024));
+        a.close();
+        b.close();
+    }
+    
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // Keep running, like a task that doesn't check for interrupts
+            }
+        }
+    }
+}
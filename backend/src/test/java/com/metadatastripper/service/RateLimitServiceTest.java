@@ -0,0 +1,187 @@
+package com.metadatastripper.service;
+
+import com.metadatastripper.service.ratelimit.InMemoryBucketBackend;
+import com.metadatastripper.service.ratelimit.RateLimitPolicies;
+import com.metadatastripper.service.ratelimit.RateLimitResult;
+import com.metadatastripper.service.ratelimit.RequestCost;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testAllowRequest_LimitsEachClient() {
+        RateLimitService service = createService(100, 64);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(service.allowRequest("203.0.113.7"));
+        }
+        assertFalse(service.allowRequest("203.0.113.7"));
+        assertTrue(service.allowRequest("203.0.113.8"));
+
+        assertEquals(11, meterRegistry.get("ratelimit.requests")
+                .tags("route", "default", "result", "allowed").counter().count());
+        assertEquals(1, meterRegistry.get("ratelimit.requests")
+                .tags("route", "default", "result", "denied").counter().count());
+    }
+
+    @Test
+    void testAllowRequest_GroupsIpv6ClientsByPrefix() {
+        RateLimitService service = createService(100, 64);
+
+        // Rotating through addresses in one /64 doesn't get a fresh budget
+        for (int i = 0; i < 10; i++) {
+            assertTrue(service.allowRequest("2001:db8:1:2::" + Integer.toHexString(i + 1)));
+        }
+        assertFalse(service.allowRequest("2001:db8:1:2:ffff:ffff:ffff:ffff"));
+        assertTrue(service.allowRequest("2001:db8:1:3::1"));
+    }
+
+    @Test
+    void testTryConsume_ReportsRemainingAndRefill() {
+        RateLimitService service = createService(100, 64);
+
+        RateLimitResult first = service.tryConsume("203.0.113.7", "/images/process", RequestCost.NONE);
+        assertEquals(List.of(new RateLimitResult.Budget("requests", 10, 9)), first.budgets());
+        for (int i = 0; i < 9; i++) {
+            service.tryConsume("203.0.113.7", "/images/process", RequestCost.NONE);
+        }
+        RateLimitResult rejected = service.tryConsume("203.0.113.7", "/images/process", RequestCost.NONE);
+        assertFalse(rejected.allowed());
+        assertTrue(rejected.nanosToWait() > 0);
+        assertTrue(rejected.nanosToWait() <= Duration.ofMinutes(1).toNanos());
+
+        // A client over its request limit doesn't get its upload measured
+        assertFalse(service.tryConsume("203.0.113.7", "/images/process", () -> {
+            throw new AssertionError("measured a rejected request");
+        }).allowed());
+    }
+
+    @Test
+    void testTryConsume_ChargesBytesAndMegapixels() {
+        RateLimitPolicies policies = new RateLimitPolicies();
+        RateLimitPolicies.Route strip = new RateLimitPolicies.Route();
+        strip.setPaths(List.of("/images/strip", "/images/strip/**"));
+        strip.setRequestsPerMinute(100);
+        strip.setBytesPerMinute(DataSize.ofMegabytes(100));
+        strip.setMegapixelsPerMinute(200);
+        policies.getRoutes().put("strip", strip);
+        RateLimitService service = createService(policies);
+
+        // A thumbnail barely dents the budgets
+        RateLimitResult small = service.tryConsume("203.0.113.7", "/images/strip",
+                new RequestCost(5_000, 10_000));
+        assertTrue(small.allowed());
+        assertEquals(List.of(
+                new RateLimitResult.Budget("requests", 100, 99),
+                new RateLimitResult.Budget("bytes", DataSize.ofMegabytes(100).toBytes(),
+                        DataSize.ofMegabytes(100).toBytes() - 5_000),
+                new RateLimitResult.Budget("megapixels", 200, 199)), small.budgets());
+
+        // Large strips use up the megapixel budget long before the request budget
+        assertTrue(service.tryConsume("203.0.113.7", "/images/strip/batch",
+                new RequestCost(10_000_000, 120_000_000)).allowed());
+        assertTrue(service.tryConsume("203.0.113.7", "/images/strip",
+                new RequestCost(10_000_000, 120_000_000)).allowed());
+        RateLimitResult rejected = service.tryConsume("203.0.113.7", "/images/strip",
+                new RequestCost(5_000, 10_000));
+        assertFalse(rejected.allowed());
+        assertTrue(rejected.nanosToWait() > 0);
+        assertTrue(rejected.budgets().contains(new RateLimitResult.Budget("megapixels", 200, 0)));
+        // The rejected request doesn't count against the request budget
+        assertTrue(rejected.budgets().contains(new RateLimitResult.Budget("requests", 100, 97)));
+
+        // Other routes have budgets of their own
+        assertTrue(service.tryConsume("203.0.113.7", "/images/metadata", RequestCost.NONE).allowed());
+    }
+
+    @Test
+    void testTryConsume_ChargesAtMostOneMinutePerRequest() {
+        RateLimitPolicies policies = new RateLimitPolicies();
+        policies.getDefaults().setBytesPerMinute(DataSize.ofMegabytes(10));
+        RateLimitService service = createService(policies);
+
+        // Larger than the whole budget: allowed, but it drains the minute
+        assertTrue(service.tryConsume("203.0.113.7", null, new RequestCost(50_000_000, 0)).allowed());
+        RateLimitResult next = service.tryConsume("203.0.113.7", null, new RequestCost(1, 0));
+        assertFalse(next.allowed());
+        assertTrue(next.nanosToWait() <= Duration.ofMinutes(1).toNanos());
+    }
+
+    @Test
+    void testSettle_ChargesWhatARawBodyTurnedOutToCost() {
+        RateLimitPolicies policies = new RateLimitPolicies();
+        policies.getDefaults().setBytesPerMinute(DataSize.ofMegabytes(10));
+        policies.getDefaults().setMegapixelsPerMinute(10);
+        RateLimitService service = createService(policies);
+
+        // A chunked body has no length, so it is let through for free at first
+        assertTrue(service.tryConsume("203.0.113.7", null, RequestCost.NONE).allowed());
+        service.settle("203.0.113.7", null, RequestCost.NONE, new RequestCost(6_000_000, 12_000_000));
+
+        RateLimitResult next = service.tryConsume("203.0.113.7", null, RequestCost.NONE);
+        assertFalse(next.allowed());
+        assertTrue(next.budgets().contains(new RateLimitResult.Budget("megapixels", 10, 0)));
+        assertTrue(next.budgets().contains(
+                new RateLimitResult.Budget("bytes", DataSize.ofMegabytes(10).toBytes(),
+                        DataSize.ofMegabytes(10).toBytes() - 6_000_000)));
+    }
+
+    @Test
+    void testClientKey() {
+        RateLimitService grouped = createService(100, 64);
+        RateLimitService perAddress = createService(100, 128);
+
+        assertEquals("2001:db8:1:2:0:0:0:0/64", grouped.clientKey("2001:db8:1:2:aaaa::1"));
+        assertEquals("2001:db8:1:2:0:0:0:0/64", grouped.clientKey("[2001:db8:1:2::1%eth0]"));
+        assertEquals("192.0.2.1", grouped.clientKey("::ffff:192.0.2.1"));
+        assertEquals("192.0.2.1", grouped.clientKey("192.0.2.1"));
+        assertEquals("not-an-address", grouped.clientKey("not-an-address"));
+        // Anything with a colon that isn't an IPv6 literal is kept as-is, never resolved
+        assertEquals("example.com:80", grouped.clientKey("example.com:80"));
+        assertEquals("1:2:3:4:5:6:7:8:9", grouped.clientKey("1:2:3:4:5:6:7:8:9"));
+        assertEquals("2001:db8::1::2", grouped.clientKey("2001:db8::1::2"));
+        assertEquals("::1.2.3.256", grouped.clientKey("::1.2.3.256"));
+        assertEquals("0:0:0:0:0:0:0:0/64", grouped.clientKey("::"));
+        assertEquals("2001:db8::1", perAddress.clientKey("2001:db8::1"));
+    }
+
+    @Test
+    void testBucketStore_IsBoundedAndReportsMetrics() {
+        RateLimitService service = createService(50, 64);
+
+        for (int i = 0; i < 1000; i++) {
+            service.allowRequest("10.0." + (i / 250) + "." + (i % 250));
+        }
+        service.cleanupOldBuckets();
+
+        assertTrue(meterRegistry.get("cache.size").tag("cache", "rateLimitBuckets").gauge().value() <= 50);
+        assertTrue(meterRegistry.get("cache.evictions").tag("cache", "rateLimitBuckets")
+                .functionCounter().count() >= 950);
+    }
+
+    @Test
+    void testConstructor_RejectsIdleTimeoutShorterThanRefill() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new RateLimitService(meterRegistry, new InMemoryBucketBackend(100, Duration.ofMinutes(2)),
+                    new RateLimitPolicies(), 100, Duration.ofSeconds(90), 64));
+    }
+
+    private RateLimitService createService(long maxClients, int ipv6PrefixLength) {
+        return new RateLimitService(meterRegistry, new InMemoryBucketBackend(3 * maxClients, Duration.ofMinutes(2)),
+                new RateLimitPolicies(), maxClients, Duration.ofMinutes(2), ipv6PrefixLength);
+    }
+
+    private RateLimitService createService(RateLimitPolicies policies) {
+        return new RateLimitService(meterRegistry, new InMemoryBucketBackend(300, Duration.ofMinutes(2)),
+                policies, 100, Duration.ofMinutes(2), 64);
+    }
+}
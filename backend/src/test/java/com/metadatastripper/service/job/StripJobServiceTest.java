@@ -0,0 +1,165 @@
+package com.metadatastripper.service.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.metadatastripper.dto.JobStatus;
+import com.metadatastripper.exception.DownloadNotFoundException;
+import com.metadatastripper.exception.ImageProcessingException;
+import com.metadatastripper.exception.ServiceOverloadedException;
+import com.metadatastripper.service.MetadataStripperService;
+import com.metadatastripper.service.ProcessingScheduler;
+import com.metadatastripper.service.StripPolicyRegistry;
+import com.metadatastripper.service.metrics.ImageMetrics;
+import com.metadatastripper.service.stripper.StripPolicy;
+import com.metadatastripper.service.stripper.StripPolicyDefinitions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripJobServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final List<StripJobService> services = new ArrayList<>();
+    private ExecutorService executor;
+    private ProcessingScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        scheduler = new ProcessingScheduler(executor, 2, 2, 10,
+                Duration.ofSeconds(1), DataSize.ofMegabytes(64), Duration.ofSeconds(3));
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(StripJobService::shutdown);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testSubmit_JobRunsAndResultCanBeDownloaded() throws Exception {
+        StripJobService service = createService(10, Duration.ofMinutes(5));
+
+        StripJob job = service.submit(upload("photo.png", createImage("png")), StripPolicy.REMOVE_ALL);
+        StripJob finished = service.await(job.id(), Duration.ofSeconds(5)).get();
+
+        assertEquals(JobStatus.SUCCEEDED, finished.status());
+        JobResult result = service.result(job.id());
+        assertEquals("image/png", result.mimeType());
+        assertEquals("photo.png", result.fileName());
+        try (InputStream in = result.data().getInputStream()) {
+            assertNotNull(ImageIO.read(in));
+        }
+        assertEquals(finished.resultSize(), result.data().contentLength());
+        assertFalse(Files.exists(directory.resolve(job.id() + ".upload")));
+    }
+
+    @Test
+    void testSubmit_RandomAccessFormatIsStrippedFromFile() throws Exception {
+        StripJobService service = createService(10, Duration.ofMinutes(5));
+        byte[] tiff = createImage("tiff");
+
+        StripJob job = service.submit(upload("scan.tiff", tiff), StripPolicy.REMOVE_ALL);
+        StripJob finished = service.await(job.id(), Duration.ofSeconds(5)).get();
+
+        assertEquals(JobStatus.SUCCEEDED, finished.status());
+        assertEquals(2L * tiff.length, job.memoryCost());
+        try (InputStream in = service.result(job.id()).data().getInputStream()) {
+            assertNotNull(ImageIO.read(in));
+        }
+    }
+
+    @Test
+    void testSubmit_RejectsNonImageBeforeQueueing() throws IOException {
+        StripJobService service = createService(10, Duration.ofMinutes(5));
+
+        assertThrows(ImageProcessingException.class, () ->
+                service.submit(upload("photo.jpg", "not an image".getBytes()), StripPolicy.REMOVE_ALL));
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    void testSubmit_RejectsWhenQueueIsFull() throws IOException {
+        StripJobService service = createService(0, Duration.ofMinutes(5));
+
+        assertThrows(ServiceOverloadedException.class, () ->
+                service.submit(upload("photo.png", createImage("png")), StripPolicy.REMOVE_ALL));
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    void testRestart_RequeuesUnfinishedJobs() throws Exception {
+        StripJob interrupted = StripJob.queued("interrupted", "photo.jpg", "jpeg", "remove-all", 0, 1024)
+                .withStatus(JobStatus.RUNNING);
+        objectMapper.writeValue(directory.resolve("interrupted.json").toFile(), interrupted);
+        Files.write(directory.resolve("interrupted.upload"), createImage("jpeg"));
+        Files.write(directory.resolve("interrupted.part"), new byte[10]);
+
+        StripJobService service = createService(10, Duration.ofMinutes(5));
+        StripJob finished = service.await("interrupted", Duration.ofSeconds(5)).get();
+
+        assertEquals(JobStatus.SUCCEEDED, finished.status());
+        assertFalse(Files.exists(directory.resolve("interrupted.part")));
+        assertEquals("image/jpeg", service.result("interrupted").mimeType());
+    }
+
+    @Test
+    void testRemoveExpired_DeletesFinishedJobs() throws Exception {
+        StripJobService service = createService(10, Duration.ZERO);
+        StripJob job = service.submit(upload("photo.png", createImage("png")), StripPolicy.REMOVE_ALL);
+        assertEquals(JobStatus.SUCCEEDED, service.await(job.id(), Duration.ofSeconds(5)).get().status());
+
+        service.removeExpired();
+
+        assertThrows(DownloadNotFoundException.class, () -> service.get(job.id()));
+        assertEquals(0, fileCount());
+    }
+
+    private StripJobService createService(int maxQueued, Duration resultTtl) throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StripJobService service = new StripJobService(new MetadataStripperService(),
+                new StripPolicyRegistry(new StripPolicyDefinitions()), scheduler, new ImageMetrics(registry),
+                objectMapper, registry, directory.toString(), 1, maxQueued, resultTtl,
+                Duration.ofSeconds(5), Duration.ofSeconds(3));
+        services.add(service);
+        return service;
+    }
+
+    private long fileCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private MockMultipartFile upload(String name, byte[] content) {
+        return new MockMultipartFile("file", name, "application/octet-stream", content);
+    }
+
+    private byte[] createImage(String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), format, out);
+        return out.toByteArray();
+    }
+}
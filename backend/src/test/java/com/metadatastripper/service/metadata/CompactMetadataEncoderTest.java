@@ -0,0 +1,76 @@
+package com.metadatastripper.service.metadata;
+
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.GpsDirectory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.metadatastripper.dto.CompactMetadataDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactMetadataEncoderTest {
+
+    private final CompactMetadataEncoder encoder = new CompactMetadataEncoder();
+
+    @Test
+    void testEncode_CachedBodyUnderNewHead_MatchesFullResponse() throws Exception {
+        CompactMetadataDto cached = createDto("photo.jpg", 1234);
+        CompactMetadataDto reuploaded = createDto("a-much-longer-name-for-the-same-image.jpg", 9_876_543_210L);
+
+        for (MediaType mediaType : CompactMetadataEncoder.MEDIA_TYPES) {
+            ObjectMapper mapper = mapperFor(mediaType);
+            byte[] body = encoder.encodeBody(cached, mediaType);
+
+            byte[] response = encoder.encode(reuploaded.getFileName(), reuploaded.getFileSize(), body, mediaType);
+
+            assertEquals(mapper.readTree(mapper.writeValueAsBytes(reuploaded)), mapper.readTree(response),
+                    mediaType.toString());
+        }
+    }
+
+    @Test
+    void testSelect_FirstAcceptedEncoding() {
+        MediaType smile = CompactMetadataEncoder.APPLICATION_SMILE;
+
+        assertEquals(MediaType.APPLICATION_JSON, CompactMetadataEncoder.select(List.of(MediaType.ALL)));
+        assertEquals(MediaType.APPLICATION_CBOR,
+                CompactMetadataEncoder.select(List.of(MediaType.APPLICATION_CBOR, MediaType.APPLICATION_JSON)));
+        assertEquals(smile, CompactMetadataEncoder.select(List.of(MediaType.TEXT_HTML, smile)));
+        assertEquals(MediaType.APPLICATION_JSON, CompactMetadataEncoder.select(List.of(MediaType.TEXT_HTML)));
+    }
+
+    private ObjectMapper mapperFor(MediaType mediaType) {
+        if (mediaType.equals(MediaType.APPLICATION_CBOR)) {
+            return new ObjectMapper(new CBORFactory());
+        }
+        if (mediaType.equals(CompactMetadataEncoder.APPLICATION_SMILE)) {
+            return new ObjectMapper(new SmileFactory());
+        }
+        return new ObjectMapper();
+    }
+
+    private CompactMetadataDto createDto(String fileName, long fileSize) {
+        ExifIFD0Directory ifd0 = new ExifIFD0Directory();
+        ifd0.setString(ExifIFD0Directory.TAG_MAKE, "Canon");
+        ifd0.setString(ExifIFD0Directory.TAG_MODEL, "Canon");
+        GpsDirectory gps = new GpsDirectory();
+        gps.setString(GpsDirectory.TAG_LATITUDE_REF, "N");
+
+        Metadata metadata = new Metadata();
+        metadata.addDirectory(ifd0);
+        metadata.addDirectory(gps);
+
+        return CompactMetadataDto.builder()
+                .fileName(fileName)
+                .fileSize(fileSize)
+                .mimeType("image/jpeg")
+                .metadata(metadata)
+                .build();
+    }
+}
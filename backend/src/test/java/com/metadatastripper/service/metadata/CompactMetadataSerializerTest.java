@@ -0,0 +1,92 @@
+package com.metadatastripper.service.metadata;
+
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.metadatastripper.dto.CompactMetadataDto;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactMetadataSerializerTest {
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    void testSerialize_WritesEachTagOnceWithCategoryCode() throws Exception {
+        JsonNode tree = json.readTree(json.writeValueAsBytes(createDto()));
+
+        assertEquals(2, tree.get("version").asInt());
+        assertEquals("photo.jpg", tree.get("fileName").asText());
+        assertEquals(1234, tree.get("fileSize").asLong());
+        assertTrue(tree.get("hasMetadata").asBoolean());
+        assertEquals(TagClassifier.Category.values().length, tree.get("categories").size());
+
+        // The empty Exif SubIFD is left out
+        JsonNode directories = tree.get("directories");
+        assertEquals(2, directories.size());
+        assertEquals("Exif IFD0", directories.get(0).get("name").asText());
+
+        JsonNode make = directories.get(0).get("tags").get(0);
+        assertEquals("Make", make.get(0).asText());
+        assertEquals("Canon", make.get(1).asText());
+        assertEquals("camera", tree.get("categories").get(make.get(2).asInt()).asText());
+
+        JsonNode latitudeRef = directories.get(1).get("tags").get(0);
+        assertEquals("location", tree.get("categories").get(latitudeRef.get(2).asInt()).asText());
+        assertEquals(1, directories.get(1).get("tags").size());
+    }
+
+    @Test
+    void testSerialize_BinaryEncodingsCarryTheSameTree() throws Exception {
+        CompactMetadataDto dto = createDto();
+        byte[] text = json.writeValueAsBytes(dto);
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+        ObjectMapper smile = new ObjectMapper(new SmileFactory());
+
+        byte[] cborBytes = cbor.writeValueAsBytes(dto);
+
+        assertEquals(json.readTree(text), cbor.readTree(cborBytes));
+        assertEquals(json.readTree(text), smile.readTree(smile.writeValueAsBytes(dto)));
+        assertTrue(cborBytes.length < text.length);
+    }
+
+    @Test
+    void testSerialize_WithoutTags() throws Exception {
+        CompactMetadataDto dto = CompactMetadataDto.builder()
+                .fileName("clean.png")
+                .mimeType("image/png")
+                .metadata(new Metadata())
+                .build();
+
+        JsonNode tree = json.readTree(json.writeValueAsBytes(dto));
+
+        assertFalse(tree.get("hasMetadata").asBoolean());
+        assertEquals(0, tree.get("directories").size());
+    }
+
+    private CompactMetadataDto createDto() {
+        ExifIFD0Directory ifd0 = new ExifIFD0Directory();
+        ifd0.setString(ExifIFD0Directory.TAG_MAKE, "Canon");
+        ifd0.setInt(ExifIFD0Directory.TAG_ORIENTATION, 6);
+        GpsDirectory gps = new GpsDirectory();
+        gps.setString(GpsDirectory.TAG_LATITUDE_REF, "N");
+
+        Metadata metadata = new Metadata();
+        metadata.addDirectory(ifd0);
+        metadata.addDirectory(new ExifSubIFDDirectory());
+        metadata.addDirectory(gps);
+
+        return CompactMetadataDto.builder()
+                .fileName("photo.jpg")
+                .fileSize(1234)
+                .mimeType("image/jpeg")
+                .metadata(metadata)
+                .build();
+    }
+}
@@ -0,0 +1,49 @@
+package com.metadatastripper.service.metadata;
+
+import com.drew.imaging.jpeg.JpegMetadataReader;
+import com.drew.imaging.jpeg.JpegSegmentMetadataReader;
+import com.drew.metadata.exif.ExifReader;
+import com.drew.metadata.jfif.JfifReader;
+import com.drew.metadata.photoshop.PhotoshopReader;
+import com.metadatastripper.service.metadata.TagClassifier.Category;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JpegReaderSelectionTest {
+
+    @Test
+    void testReadersFor_AllCategoriesKeepsEveryReader() {
+        List<JpegSegmentMetadataReader> readers = JpegReaderSelection.readersFor(EnumSet.allOf(Category.class));
+
+        int count = 0;
+        for (JpegSegmentMetadataReader ignored : JpegMetadataReader.ALL_READERS) {
+            count++;
+        }
+        assertEquals(count, readers.size());
+        assertTrue(JpegReaderSelection.readsEverything(EnumSet.allOf(Category.class)));
+    }
+
+    @Test
+    void testReadersFor_AlwaysKeepsOpenEndedReaders() {
+        for (Category category : Category.values()) {
+            List<JpegSegmentMetadataReader> readers = JpegReaderSelection.readersFor(Set.of(category));
+
+            assertTrue(readers.stream().anyMatch(ExifReader.class::isInstance), category.name());
+            assertTrue(readers.stream().anyMatch(PhotoshopReader.class::isInstance), category.name());
+        }
+    }
+
+    @Test
+    void testReadersFor_SkipsReadersWithoutRequestedTags() {
+        // JFIF only holds a version, resolution and thumbnail size
+        List<JpegSegmentMetadataReader> readers = JpegReaderSelection.readersFor(Set.of(Category.LOCATION));
+
+        assertFalse(readers.stream().anyMatch(JfifReader.class::isInstance));
+        assertFalse(JpegReaderSelection.readsEverything(Set.of(Category.LOCATION)));
+    }
+}
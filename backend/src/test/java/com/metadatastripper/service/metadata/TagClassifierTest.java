@@ -0,0 +1,77 @@
+package com.metadatastripper.service.metadata;
+
+import com.drew.metadata.Directory;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+import com.drew.metadata.exif.makernotes.CanonMakernoteDirectory;
+import com.drew.metadata.iptc.IptcDirectory;
+import com.drew.metadata.png.PngDirectory;
+import com.drew.imaging.png.PngChunkType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagClassifierTest {
+
+    private final TagClassifier classifier = TagClassifier.getInstance();
+
+    @Test
+    void testClassify_CommonTags() {
+        assertEquals(TagClassifier.Category.CAMERA,
+            classifier.classify(new ExifIFD0Directory(), ExifIFD0Directory.TAG_MAKE));
+        assertEquals(TagClassifier.Category.LOCATION,
+            classifier.classify(new GpsDirectory(), GpsDirectory.TAG_LATITUDE));
+        assertEquals(TagClassifier.Category.DATE_TIME,
+            classifier.classify(new ExifSubIFDDirectory(), ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL));
+        assertEquals(TagClassifier.Category.IMAGE,
+            classifier.classify(new ExifIFD0Directory(), ExifIFD0Directory.TAG_ORIENTATION));
+        assertEquals(TagClassifier.Category.OTHER,
+            classifier.classify(new IptcDirectory(), IptcDirectory.TAG_KEYWORDS));
+    }
+
+    @Test
+    void testClassify_MatchesKeywordRulesForEveryKnownTag() {
+        for (Directory directory : List.of(new ExifIFD0Directory(), new ExifSubIFDDirectory(),
+                new GpsDirectory(), new IptcDirectory())) {
+            for (int tagType = 0; tagType <= 0xFFFF; tagType++) {
+                if (directory.hasTagName(tagType)) {
+                    assertEquals(
+                        TagClassifier.classifyByKeywords(directory.getName(), directory.getTagName(tagType)),
+                        classifier.classify(directory, tagType),
+                        directory.getName() + " - " + directory.getTagName(tagType));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testClassify_LearnsUnknownDirectoriesAndTags() {
+        CanonMakernoteDirectory canon = new CanonMakernoteDirectory();
+        PngDirectory png = new PngDirectory(PngChunkType.tIME);
+        int unknownTag = 0x7FFF_0001;
+
+        for (int i = 0; i < 2; i++) {
+            // Canon maker notes match "camera"; the PNG directory name varies per chunk
+            assertEquals(TagClassifier.Category.CAMERA, classifier.classify(canon, unknownTag));
+            assertEquals(TagClassifier.Category.DATE_TIME,
+                classifier.classify(png, PngDirectory.TAG_LAST_MODIFICATION_TIME));
+        }
+    }
+
+    @Test
+    void testClassify_TableGrowsWithoutLosingEntries() {
+        TagClassifier fresh = new TagClassifier(List.of());
+        GpsDirectory gps = new GpsDirectory();
+
+        for (int tagType = 0; tagType < 1000; tagType++) {
+            fresh.classify(gps, tagType);
+        }
+        for (int tagType = 0; tagType < 1000; tagType++) {
+            assertEquals(TagClassifier.classifyByKeywords(gps.getName(), gps.getTagName(tagType)),
+                fresh.classify(gps, tagType));
+        }
+    }
+}
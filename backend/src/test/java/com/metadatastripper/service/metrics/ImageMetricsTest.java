@@ -0,0 +1,56 @@
+package com.metadatastripper.service.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ImageMetrics metrics = new ImageMetrics(meterRegistry);
+
+    @Test
+    void testRecord_CountsImagesAndBytes() {
+        metrics.record("strip", "jpeg", 1000, 800, false);
+        metrics.record("strip", "jpeg", 2000, 1500, true);
+        metrics.record("metadata", "png", 500, -1, false);
+
+        assertEquals(1, meterRegistry.get("image.processed")
+                .tags("operation", "strip", "format", "jpeg", "source", "cache").counter().count());
+        DistributionSummary in = meterRegistry.get("image.bytes")
+                .tags("operation", "strip", "format", "jpeg", "direction", "in").summary();
+        assertEquals(2, in.count());
+        assertEquals(3000, in.totalAmount());
+        assertEquals(2300, meterRegistry.get("image.bytes")
+                .tags("operation", "strip", "direction", "out").summary().totalAmount());
+        assertNull(meterRegistry.find("image.bytes").tags("operation", "metadata", "direction", "out").summary());
+    }
+
+    @Test
+    void testFormatOf_KeepsTagValuesBounded() {
+        assertEquals("jpeg", ImageMetrics.formatOf("jpeg"));
+        assertEquals("heic", ImageMetrics.formatOf("heic"));
+        assertEquals("other", ImageMetrics.formatOf("JPEG"));
+        assertEquals("other", ImageMetrics.formatOf("photo.jpg"));
+        assertEquals("other", ImageMetrics.formatOf("exe"));
+        assertEquals("other", ImageMetrics.formatOf(null));
+    }
+
+    @Test
+    void testCountingStreams() throws IOException {
+        var out = new CountingOutputStream(new ByteArrayOutputStream());
+        try (var in = new CountingInputStream(new ByteArrayInputStream(new byte[100]))) {
+            assertEquals(10, in.skip(10));
+            in.read();
+            in.transferTo(out);
+            assertEquals(100, in.getCount());
+        }
+        assertEquals(89, out.getCount());
+    }
+}
@@ -0,0 +1,67 @@
+package com.metadatastripper.service.pool;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    private final BufferPool pool = new BufferPool(1024 * 1024);
+
+    @Test
+    void testAcquire_RoundsUpToSizeClass() {
+        assertEquals(64 * 1024, pool.acquire(0).length);
+        assertEquals(64 * 1024, pool.acquire(64 * 1024).length);
+        assertEquals(128 * 1024, pool.acquire(64 * 1024 + 1).length);
+        assertEquals(32 * 1024 * 1024 + 1, pool.acquire(32 * 1024 * 1024 + 1).length);
+    }
+
+    @Test
+    void testRelease_BufferIsReused() {
+        byte[] buffer = pool.acquire(100_000);
+        pool.release(buffer);
+        assertEquals(buffer.length, pool.idleBytes());
+
+        assertSame(buffer, pool.acquire(70_000));
+        assertEquals(0, pool.idleBytes());
+    }
+
+    @Test
+    void testRelease_DropsForeignBuffersAndRespectsIdleCap() {
+        pool.release(new byte[100_000]);
+        assertEquals(0, pool.idleBytes());
+
+        for (int i = 0; i < 5; i++) {
+            pool.release(new byte[256 * 1024]);
+        }
+        assertEquals(1024 * 1024, pool.idleBytes());
+    }
+
+    @Test
+    void testPooledOutputStream_GrowsAndReturnsBuffers() {
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        try (PooledOutputStream out = new PooledOutputStream(pool, 10)) {
+            out.write(data[0]);
+            out.write(data, 1, data.length - 1);
+            assertEquals(data.length, out.size());
+            assertArrayEquals(data, out.toByteArray());
+        }
+
+        // The outgrown 64 KB buffer and the final 256 KB one
+        assertEquals((64 + 256) * 1024, pool.idleBytes());
+    }
+
+    @Test
+    void testPooledOutputStream_UnusableAfterClose() {
+        PooledOutputStream out = new PooledOutputStream(pool, 10);
+        out.close();
+        out.close();
+
+        assertThrows(IllegalStateException.class, out::toByteArray);
+        assertThrows(IllegalStateException.class, () -> out.write(1));
+    }
+}
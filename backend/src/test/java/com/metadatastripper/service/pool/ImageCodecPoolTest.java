@@ -0,0 +1,58 @@
+package com.metadatastripper.service.pool;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageCodecPoolTest {
+
+    private final ImageCodecPool pool = new ImageCodecPool(2);
+
+    @Test
+    void testReadAndWrite_ReuseCodecs() throws IOException {
+        BufferedImage image = new BufferedImage(16, 8, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(3, 2, 0x00FF00);
+
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(pool.write(image, "bmp", out));
+
+            BufferedImage decoded = pool.read(new ByteArrayInputStream(out.toByteArray()), "bmp");
+            assertEquals(16, decoded.getWidth());
+            assertEquals(0x00FF00, decoded.getRGB(3, 2) & 0xFFFFFF);
+        }
+
+        assertEquals(1, pool.idleReaders("bmp"));
+        assertEquals(1, pool.idleWriters("bmp"));
+    }
+
+    @Test
+    void testRead_ContentInAnotherFormatFallsBackToImageIO() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", png);
+
+        BufferedImage decoded = pool.read(new ByteArrayInputStream(png.toByteArray()), "bmp");
+
+        assertEquals(4, decoded.getWidth());
+        assertEquals(1, pool.idleReaders("bmp"));
+    }
+
+    @Test
+    void testRead_UnreadableContent() throws IOException {
+        assertNull(pool.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}), "gif"));
+    }
+
+    @Test
+    void testWrite_ImageTheCodecCannotEncode() throws IOException {
+        // The BMP writer has no alpha support, just as with ImageIO.write
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+
+        assertFalse(pool.write(image, "bmp", new ByteArrayOutputStream()));
+    }
+}
@@ -0,0 +1,27 @@
+package com.metadatastripper.service.ratelimit;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.AsyncBucketProxy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryBucketBackendTest {
+
+    @Test
+    void testAsyncBucketSharesStateWithSyncBucket() throws Exception {
+        InMemoryBucketBackend backend = new InMemoryBucketBackend(100, Duration.ofMinutes(2));
+        BucketConfiguration configuration = BucketConfiguration.builder()
+                .addLimit(Bandwidth.builder().capacity(2).refillGreedy(2, Duration.ofMinutes(1)).build())
+                .build();
+
+        AsyncBucketProxy async = backend.proxyManager().asAsync().builder().build("client", configuration);
+        assertTrue(async.tryConsume(1).get());
+
+        assertTrue(backend.proxyManager().builder().build("client", configuration).tryConsume(1));
+        assertFalse(async.tryConsume(1).get());
+    }
+}
@@ -0,0 +1,122 @@
+package com.metadatastripper.service.ratelimit;
+
+import com.metadatastripper.service.RateLimitService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Several "replicas" sharing one embedded database in place of the shared
+ * store
+ */
+class JdbcBucketBackendTest {
+
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        new JdbcBucketBackend(dataSource, Duration.ofMinutes(2), 0, Duration.ZERO).initializeSchema();
+    }
+
+    @Test
+    void testLimitIsSharedAcrossReplicas() {
+        RateLimitService first = createReplica(0);
+        RateLimitService second = createReplica(0);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(first.allowRequest("203.0.113.7"));
+            assertTrue(second.allowRequest("203.0.113.7"));
+        }
+        assertFalse(first.allowRequest("203.0.113.7"));
+        assertFalse(second.allowRequest("203.0.113.7"));
+        assertTrue(second.allowRequest("203.0.113.8"));
+    }
+
+    @Test
+    void testConcurrentRequestsNeverExceedTheLimit() throws Exception {
+        List<RateLimitService> replicas = List.of(createReplica(0), createReplica(0), createReplica(0));
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                RateLimitService replica = replicas.get(i % replicas.size());
+                results.add(executor.submit(() -> replica.allowRequest("203.0.113.7")));
+            }
+            int allowed = 0;
+            for (Future<Boolean> result : results) {
+                allowed += result.get() ? 1 : 0;
+            }
+            assertEquals(10, allowed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testUnsyncedTokensBoundTheOvershoot() {
+        // Each replica may hand out up to 2 tokens the store hasn't seen yet
+        RateLimitService first = createReplica(2);
+        RateLimitService second = createReplica(2);
+
+        int allowed = 0;
+        for (int i = 0; i < 20; i++) {
+            allowed += first.allowRequest("203.0.113.7") ? 1 : 0;
+            allowed += second.allowRequest("203.0.113.7") ? 1 : 0;
+        }
+        assertTrue(allowed >= 10, "allowed " + allowed);
+        assertTrue(allowed <= 10 + 2 * 2, "allowed " + allowed);
+    }
+
+    @Test
+    void testRemoveExpired_DropsIdleBuckets() throws SQLException {
+        JdbcBucketBackend backend = new JdbcBucketBackend(dataSource, Duration.ofMinutes(2), 0, Duration.ZERO);
+        createReplica(backend).allowRequest("203.0.113.7");
+        assertEquals(1, countBuckets());
+
+        backend.removeExpired();
+        assertEquals(1, countBuckets());
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE " + JdbcBucketBackend.TABLE + " SET expires_at = 0");
+        }
+        backend.removeExpired();
+        assertEquals(0, countBuckets());
+    }
+
+    private RateLimitService createReplica(long maxUnsyncedTokens) {
+        return createReplica(new JdbcBucketBackend(dataSource, Duration.ofMinutes(2),
+                maxUnsyncedTokens, Duration.ofSeconds(1)));
+    }
+
+    private RateLimitService createReplica(BucketBackend backend) {
+        return new RateLimitService(new SimpleMeterRegistry(), backend, new RateLimitPolicies(),
+                100, Duration.ofMinutes(2), 64);
+    }
+
+    private int countBuckets() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + JdbcBucketBackend.TABLE)) {
+            result.next();
+            return result.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.metadatastripper.service.spool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedInputStreamTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRead_AcrossWindows() throws IOException {
+        byte[] data = sequence(100);
+        Path file = Files.write(dir.resolve("data"), data);
+
+        try (MappedInputStream in = new MappedInputStream(file, 7)) {
+            assertEquals(0, in.read());
+            byte[] rest = in.readAllBytes();
+            assertEquals(99, rest.length);
+            assertEquals(99, rest[98]);
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testSkip_AcrossWindowsAndPastTheEnd() throws IOException {
+        Path file = Files.write(dir.resolve("data"), sequence(100));
+
+        try (MappedInputStream in = new MappedInputStream(file, 16)) {
+            assertEquals(3, in.skip(3));
+            assertEquals(3, in.read());
+            assertEquals(40, in.skip(40));
+            assertEquals(44, in.read());
+            assertEquals(55, in.available());
+            assertEquals(55, in.skip(1000));
+            assertEquals(0, in.skip(1));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        Path file = Files.createFile(dir.resolve("empty"));
+
+        try (MappedInputStream in = new MappedInputStream(file)) {
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(new byte[4], 0, 4));
+        }
+    }
+
+    @Test
+    void testSpooledFileResource_TransfersAndDeletes() throws IOException {
+        byte[] data = sequence(5000);
+        Path file = Files.write(dir.resolve("cleaned"), data);
+        SpooledFileResource resource = new SpooledFileResource(file);
+        assertEquals(5000, resource.contentLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (var in = resource.getInputStream()) {
+            assertEquals(0, in.read());
+            assertEquals(4999, in.transferTo(out));
+        }
+
+        assertEquals(4999, out.size());
+        assertFalse(Files.exists(file));
+    }
+
+    private static byte[] sequence(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
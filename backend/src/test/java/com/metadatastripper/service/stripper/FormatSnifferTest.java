@@ -0,0 +1,79 @@
+package com.metadatastripper.service.stripper;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormatSnifferTest {
+
+    @Test
+    void testSniff_RecognisesEverySupportedFormat() throws IOException {
+        for (String format : new String[]{"jpeg", "png", "gif", "bmp", "tiff"}) {
+            byte[] image = createImage(format);
+            assertEquals(Optional.of(format), FormatSniffer.sniff(image, image.length), format);
+        }
+    }
+
+    @Test
+    void testSniff_RejectsOtherContent() {
+        for (String content : new String[]{"<html></html>", "%PDF-1.7", "GIF90a", "BM", ""}) {
+            byte[] bytes = content.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(Optional.empty(), FormatSniffer.sniff(bytes, bytes.length), content);
+        }
+    }
+
+    @Test
+    void testSniff_RecognisesWebpAndHeifBrands() {
+        assertEquals(Optional.of("webp"), sniff("RIFF\0\0\0\0WEBPVP8 "));
+        assertEquals(Optional.of("heic"), sniff("\0\0\0\u0018ftypheic\0\0\0\0"));
+        assertEquals(Optional.of("avif"), sniff("\0\0\0\u0018ftypavif\0\0\0\0"));
+        assertEquals(Optional.of("heif"), sniff("\0\0\0\u0018ftypmif1\0\0\0\0"));
+        // Other RIFF and ISO-BMFF files: WAV audio and MP4 video
+        assertEquals(Optional.empty(), sniff("RIFF\0\0\0\0WAVEfmt "));
+        assertEquals(Optional.empty(), sniff("\0\0\0\u0018ftypisom\0\0\0\0"));
+    }
+
+    @Test
+    void testSniff_BmpNeedsKnownDibHeaderSize() throws IOException {
+        byte[] bmp = createImage("bmp");
+        bmp[14] = 99;
+
+        assertEquals(Optional.empty(), FormatSniffer.sniff(bmp, bmp.length));
+    }
+
+    @Test
+    void testSniff_OnlyLooksAtGivenLength() throws IOException {
+        byte[] png = createImage("png");
+
+        assertEquals(Optional.empty(), FormatSniffer.sniff(png, 4));
+    }
+
+    @Test
+    void testPeek_LeavesStreamUnread() throws IOException {
+        byte[] gif = createImage("gif");
+        PushbackInputStream in = new PushbackInputStream(new ByteArrayInputStream(gif), FormatSniffer.HEADER_LENGTH);
+
+        assertEquals(Optional.of("gif"), FormatSniffer.peek(in));
+        assertArrayEquals(gif, in.readAllBytes());
+    }
+
+    private Optional<String> sniff(String header) {
+        byte[] bytes = header.getBytes(StandardCharsets.ISO_8859_1);
+        return FormatSniffer.sniff(bytes, bytes.length);
+    }
+
+    private byte[] createImage(String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), format, out);
+        return out.toByteArray();
+    }
+}
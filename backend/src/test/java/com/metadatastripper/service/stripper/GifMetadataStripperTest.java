@@ -0,0 +1,159 @@
+package com.metadatastripper.service.stripper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.metadatastripper.service.stripper.ImageFixtures.ascii;
+import static com.metadatastripper.service.stripper.ImageFixtures.contains;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GifMetadataStripperTest {
+
+    private GifMetadataStripper stripper;
+
+    @BeforeEach
+    void setUp() {
+        stripper = new GifMetadataStripper();
+    }
+
+    @Test
+    void testStrip_RemovesCommentsAndXmp() throws IOException {
+        byte[] original = createGif(1);
+        byte[] withMetadata = insertAfterColorTable(original,
+            extension(0xFE, ascii("secret comment")),
+            applicationExtension("XMP DataXMP", ascii("<x:xmpmeta>secret</x:xmpmeta>")),
+            applicationExtension("MGK8BIM0000", ascii("photoshop")));
+
+        byte[] stripped = strip(stripper, withMetadata);
+
+        assertArrayEquals(original, stripped);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(stripped)));
+    }
+
+    @Test
+    void testStrip_KeepsEveryFrameAndLooping() throws IOException {
+        byte[] animation = insertAfterColorTable(createGif(3),
+            applicationExtension("NETSCAPE2.0", new byte[] {1, 0, 0}),
+            extension(0xFE, ascii("made with some editor")));
+
+        byte[] stripped = strip(stripper, animation);
+
+        assertEquals(3, frameCount(stripped));
+        assertTrue(contains(stripped, ascii("NETSCAPE2.0")));
+        assertFalse(contains(stripped, ascii("some editor")));
+    }
+
+    @Test
+    void testStrip_KeepsIccProfileOnlyWhenAsked() throws IOException {
+        byte[] gif = insertAfterColorTable(createGif(1),
+            applicationExtension("ICCRGBG1012", ascii("profile")));
+
+        assertFalse(contains(strip(stripper, gif), ascii("ICCRGBG1")));
+        assertTrue(contains(strip(new GifMetadataStripper(true), gif), ascii("ICCRGBG1")));
+    }
+
+    @Test
+    void testStrip_AddsMissingTrailer() throws IOException {
+        byte[] original = createGif(1);
+        byte[] truncated = Arrays.copyOf(original, original.length - 1);
+
+        assertArrayEquals(original, strip(stripper, truncated));
+    }
+
+    @Test
+    void testStrip_RejectsNonGif() {
+        assertThrows(IOException.class, () -> strip(stripper, ascii("not a gif at all")));
+    }
+
+    private byte[] strip(GifMetadataStripper stripper, byte[] gif) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stripper.strip(new ByteArrayInputStream(gif), out);
+        return out.toByteArray();
+    }
+
+    private byte[] createGif(int frames) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.prepareWriteSequence(null);
+            for (int i = 0; i < frames; i++) {
+                BufferedImage img = new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = img.createGraphics();
+                g.setColor(new Color(40 * i, 100, 200));
+                g.fillRect(0, 0, 20, 20);
+                g.dispose();
+                writer.writeToSequence(new IIOImage(img, null, null), null);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private int frameCount(byte[] gif) throws IOException {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(gif))) {
+            reader.setInput(stream);
+            return reader.getNumImages(true);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Inserts blocks after the logical screen descriptor and global color table
+     */
+    private byte[] insertAfterColorTable(byte[] gif, byte[]... blocks) throws IOException {
+        int flags = gif[10] & 0xFF;
+        int offset = 13 + ((flags & 0x80) != 0 ? 3 << ((flags & 0x07) + 1) : 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(gif, 0, offset);
+        for (byte[] block : blocks) {
+            out.write(block);
+        }
+        out.write(gif, offset, gif.length - offset);
+        return out.toByteArray();
+    }
+
+    private byte[] extension(int label, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x21);
+        out.write(label);
+        writeSubBlocks(out, data);
+        return out.toByteArray();
+    }
+
+    private byte[] applicationExtension(String id, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x21);
+        out.write(0xFF);
+        out.write(11);
+        out.writeBytes(ascii(id));
+        writeSubBlocks(out, data);
+        return out.toByteArray();
+    }
+
+    private void writeSubBlocks(ByteArrayOutputStream out, byte[] data) {
+        for (int off = 0; off < data.length; off += 255) {
+            int len = Math.min(255, data.length - off);
+            out.write(len);
+            out.write(data, off, len);
+        }
+        out.write(0);
+    }
+}
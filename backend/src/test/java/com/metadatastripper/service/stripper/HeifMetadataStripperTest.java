@@ -0,0 +1,156 @@
+package com.metadatastripper.service.stripper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.metadatastripper.service.stripper.ImageFixtures.ascii;
+import static com.metadatastripper.service.stripper.ImageFixtures.concat;
+import static com.metadatastripper.service.stripper.ImageFixtures.contains;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeifMetadataStripperTest {
+
+    private static final byte[] IMAGE = ascii("coded image data");
+    private static final byte[] EXIF = ascii("\0\0\0\0MM\0*Canon EOS");
+    private static final byte[] XMP = ascii("<x:xmpmeta>secret</x:xmpmeta>");
+
+    private final HeifMetadataStripper stripper = new HeifMetadataStripper();
+
+    @Test
+    void testStrip_RemovesExifAndXmpItems() throws IOException {
+        byte[] heif = createHeif(true, false);
+
+        byte[] stripped = strip(heif);
+
+        assertFalse(contains(stripped, "Canon"));
+        assertFalse(contains(stripped, "xmpmeta"));
+        assertFalse(contains(stripped, "Exif"));
+        assertFalse(contains(stripped, "cdsc"));
+        // The image item is left, and its offset points at the moved image data
+        ByteBuffer iloc = ByteBuffer.wrap(stripped, indexOf(stripped, "iloc") + 4, 24).slice();
+        assertEquals(1, iloc.getShort(6));
+        assertEquals(1, iloc.getShort(8));
+        int offset = iloc.getInt(14);
+        assertArrayEquals(IMAGE, Arrays.copyOfRange(stripped, offset, offset + iloc.getInt(18)));
+        assertTrue(stripped.length < heif.length - EXIF.length - XMP.length);
+    }
+
+    @Test
+    void testStrip_ZeroesMetadataInPlaceWhenOffsetsCantMove() throws IOException {
+        byte[] heif = createHeif(true, true);
+
+        byte[] stripped = strip(heif);
+
+        assertEquals(heif.length, stripped.length);
+        assertFalse(contains(stripped, "Canon"));
+        assertFalse(contains(stripped, "xmpmeta"));
+        assertEquals(indexOf(heif, "coded image"), indexOf(stripped, "coded image"));
+    }
+
+    @Test
+    void testStrip_CopiesFilesWithoutMetadataUnchanged() throws IOException {
+        byte[] heif = createHeif(false, false);
+
+        assertArrayEquals(heif, strip(heif));
+    }
+
+    @Test
+    void testStrip_RejectsNonHeif() {
+        assertThrows(IOException.class, () -> strip(ascii("\0\0\0\u0010moovfree\0\0\0\0")));
+        // A box that runs past the end of the file
+        assertThrows(IOException.class, () -> strip(ascii("\0\0\0\u0010ftypheic\0\0\0\0\0\0\0\u00FFmdat")));
+    }
+
+    private byte[] strip(byte[] heif) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stripper.strip(ByteBuffer.wrap(heif), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds a HEIC with one image item and, when asked, an Exif and an XMP
+     * item describing it. The metadata is stored in mdat ahead of the image.
+     */
+    private byte[] createHeif(boolean withMetadata, boolean withMoov) throws IOException {
+        byte[] ftyp = box("ftyp", concat(ascii("heic"), new byte[4], ascii("mif1heic")));
+        byte[] moov = withMoov ? box("moov", new byte[0]) : new byte[0];
+        // iloc offsets have a fixed width, so a first pass gives the size of meta
+        int metaLength = meta(withMetadata, 0).length;
+        int mdatPayload = ftyp.length + metaLength + moov.length + 8;
+        byte[] mdat = withMetadata ? concat(EXIF, XMP, IMAGE) : IMAGE;
+        return concat(ftyp, meta(withMetadata, mdatPayload), moov, box("mdat", mdat));
+    }
+
+    private byte[] meta(boolean withMetadata, int mdatPayload) throws IOException {
+        int imageOffset = mdatPayload + (withMetadata ? EXIF.length + XMP.length : 0);
+        ByteArrayOutputStream items = new ByteArrayOutputStream();
+        ByteArrayOutputStream locations = new ByteArrayOutputStream();
+        ByteArrayOutputStream references = new ByteArrayOutputStream();
+        items.write(infe(1, "hvc1", ""));
+        locations.write(location(1, imageOffset, IMAGE.length));
+        if (withMetadata) {
+            items.write(infe(2, "Exif", ""));
+            items.write(infe(3, "mime", "application/rdf+xml"));
+            locations.write(location(2, mdatPayload, EXIF.length));
+            locations.write(location(3, mdatPayload + EXIF.length, XMP.length));
+            references.write(box("cdsc", shorts(2, 1, 1)));
+            references.write(box("cdsc", shorts(3, 1, 1)));
+        }
+        int count = withMetadata ? 3 : 1;
+
+        byte[] hdlr = fullBox("hdlr", concat(new byte[4], ascii("pict"), new byte[13]));
+        byte[] pitm = fullBox("pitm", shorts(1));
+        // Offsets and lengths are 4 bytes, no base offset
+        byte[] iloc = fullBox("iloc", concat(new byte[] {0x44, 0}, shorts(count), locations.toByteArray()));
+        byte[] iinf = fullBox("iinf", concat(shorts(count), items.toByteArray()));
+        byte[] iref = withMetadata ? fullBox("iref", references.toByteArray()) : new byte[0];
+        byte[] ispe = fullBox("ispe", ints(64, 64));
+        byte[] ipma = fullBox("ipma", withMetadata
+                ? concat(ints(2), shorts(1), new byte[] {1, (byte) 0x81}, shorts(2), new byte[] {1, 1})
+                : concat(ints(1), shorts(1), new byte[] {1, (byte) 0x81}));
+        byte[] iprp = box("iprp", concat(box("ipco", ispe), ipma));
+        return fullBox("meta", concat(hdlr, pitm, iloc, iinf, iref, iprp));
+    }
+
+    private byte[] infe(int itemId, String type, String contentType) throws IOException {
+        byte[] entry = concat(new byte[] {2, 0, 0, 0}, shorts(itemId, 0), ascii(type), new byte[1]);
+        return box("infe", contentType.isEmpty() ? entry : concat(entry, ascii(contentType + "\0")));
+    }
+
+    private byte[] location(int itemId, int offset, int length) throws IOException {
+        return concat(shorts(itemId, 0, 1), ints(offset, length));
+    }
+
+    private byte[] fullBox(String type, byte[] payload) throws IOException {
+        return box(type, concat(new byte[4], payload));
+    }
+
+    private byte[] box(String type, byte[] payload) throws IOException {
+        return concat(ints(8 + payload.length), ascii(type), payload);
+    }
+
+    private byte[] shorts(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * values.length);
+        for (int value : values) {
+            buffer.putShort((short) value);
+        }
+        return buffer.array();
+    }
+
+    private byte[] ints(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private int indexOf(byte[] data, String text) {
+        return new String(data, StandardCharsets.ISO_8859_1).indexOf(text);
+    }
+}
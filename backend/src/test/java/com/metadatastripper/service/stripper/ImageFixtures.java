@@ -0,0 +1,111 @@
+package com.metadatastripper.service.stripper;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Builds the images and metadata blocks the stripper tests feed in
+ */
+final class ImageFixtures {
+
+    private ImageFixtures() {
+    }
+
+    /**
+     * A 64x48 gradient, so lossy encodings have pixels worth comparing
+     */
+    static byte[] createImage(String format) throws IOException {
+        BufferedImage img = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, 64, 48, Color.BLUE));
+        g.fillRect(0, 0, 64, 48);
+        g.dispose();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * A JPEG marker segment
+     */
+    static byte[] segment(int marker, String payload) {
+        return segment(marker, ascii(payload));
+    }
+
+    static byte[] segment(int marker, byte[] data) {
+        return ByteBuffer.allocate(data.length + 4)
+                .put((byte) 0xFF)
+                .put((byte) marker)
+                .putShort((short) (data.length + 2))
+                .put(data)
+                .array();
+    }
+
+    static byte[] insertAfterSoi(byte[] jpeg, byte[]... segments) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        for (byte[] segment : segments) {
+            out.write(segment, 0, segment.length);
+        }
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    /**
+     * A PNG chunk with a valid CRC
+     */
+    static byte[] chunk(String type, String data) {
+        return chunk(type, ascii(data));
+    }
+
+    static byte[] chunk(String type, byte[] data) {
+        byte[] typeBytes = ascii(type);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        return ByteBuffer.allocate(data.length + 12)
+                .putInt(data.length)
+                .put(typeBytes)
+                .put(data)
+                .putInt((int) crc.getValue())
+                .array();
+    }
+
+    static byte[] insertAfterIhdr(byte[] png, byte[]... chunks) {
+        // Signature (8) + IHDR chunk (8 + 13 + 4)
+        int ihdrEnd = 8 + 25;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(png, 0, ihdrEnd);
+        for (byte[] chunk : chunks) {
+            out.write(chunk, 0, chunk.length);
+        }
+        out.write(png, ihdrEnd, png.length - ihdrEnd);
+        return out.toByteArray();
+    }
+
+    static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    static boolean contains(byte[] data, String text) {
+        return new String(data, StandardCharsets.ISO_8859_1).contains(text);
+    }
+
+    static boolean contains(byte[] data, byte[] pattern) {
+        return contains(data, new String(pattern, StandardCharsets.ISO_8859_1));
+    }
+}
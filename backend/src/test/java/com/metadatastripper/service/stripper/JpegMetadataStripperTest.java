@@ -0,0 +1,100 @@
+package com.metadatastripper.service.stripper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.metadatastripper.service.stripper.ImageFixtures.createImage;
+import static com.metadatastripper.service.stripper.ImageFixtures.insertAfterSoi;
+import static com.metadatastripper.service.stripper.ImageFixtures.segment;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JpegMetadataStripperTest {
+
+    private JpegMetadataStripper stripper;
+
+    @BeforeEach
+    void setUp() {
+        stripper = new JpegMetadataStripper();
+    }
+
+    @Test
+    void testStrip_RemovesExifAndComments() throws IOException {
+        byte[] original = createImage("jpeg");
+        byte[] withMetadata = insertAfterSoi(original,
+            segment(0xE1, "Exif\0\0secret-gps-data"),
+            segment(0xFE, "a comment"));
+
+        byte[] stripped = strip(withMetadata);
+
+        assertFalse(containsMarker(stripped, 0xE1));
+        assertFalse(containsMarker(stripped, 0xFE));
+        assertFalse(new String(stripped, StandardCharsets.ISO_8859_1).contains("secret-gps-data"));
+    }
+
+    @Test
+    void testStrip_PreservesPixelDataByteForByte() throws IOException {
+        byte[] original = createImage("jpeg");
+        byte[] withMetadata = insertAfterSoi(original, segment(0xE1, "Exif\0\0data"));
+
+        byte[] stripped = strip(withMetadata);
+
+        // ImageIO output only carries a JFIF header, which is kept
+        assertArrayEquals(original, stripped);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(stripped)));
+    }
+
+    @Test
+    void testStrip_KeepsAdobeSegment() throws IOException {
+        byte[] original = createImage("jpeg");
+        byte[] withAdobe = insertAfterSoi(original, segment(0xEE, "Adobe\0\144\0\0\0\0\1"));
+
+        byte[] stripped = strip(withAdobe);
+
+        assertTrue(containsMarker(stripped, 0xEE));
+    }
+
+    @Test
+    void testStrip_DropsJfxxThumbnail() throws IOException {
+        byte[] original = createImage("jpeg");
+        // Extension code 0x10: a JPEG-compressed thumbnail follows
+        byte[] withJfxx = insertAfterSoi(original, segment(0xE0, "JFXX\0\u0010\u00FF\u00D8secret thumbnail\u00FF\u00D9"));
+
+        assertArrayEquals(original, strip(withJfxx));
+    }
+
+    @Test
+    void testStrip_DropsTrailingData() throws IOException {
+        byte[] original = createImage("jpeg");
+        byte[] withTrailer = Arrays.copyOf(original, original.length + 4);
+        System.arraycopy("junk".getBytes(StandardCharsets.US_ASCII), 0, withTrailer, original.length, 4);
+
+        assertArrayEquals(original, strip(withTrailer));
+    }
+
+    @Test
+    void testStrip_NotAJpeg_ThrowsException() {
+        assertThrows(IOException.class, () -> strip("not a jpeg".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private byte[] strip(byte[] input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stripper.strip(new ByteArrayInputStream(input), out);
+        return out.toByteArray();
+    }
+
+    private boolean containsMarker(byte[] jpeg, int marker) {
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if (jpeg[i] == (byte) 0xFF && jpeg[i + 1] == (byte) marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,105 @@
+package com.metadatastripper.service.stripper;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.png.PngDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static com.metadatastripper.service.stripper.ImageFixtures.chunk;
+import static com.metadatastripper.service.stripper.ImageFixtures.concat;
+import static com.metadatastripper.service.stripper.ImageFixtures.createImage;
+import static com.metadatastripper.service.stripper.ImageFixtures.insertAfterIhdr;
+import static com.metadatastripper.service.stripper.ImageFixtures.insertAfterSoi;
+import static com.metadatastripper.service.stripper.ImageFixtures.segment;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataPrefixTest {
+
+    @Test
+    void testJpeg_StopsAtStartOfScan() throws Exception {
+        byte[] jpeg = insertAfterSoi(createImage("jpeg"), segment(0xE1, "Exif\0\0secret"));
+
+        MetadataPrefix prefix = read(jpeg, "jpeg");
+
+        assertTrue(prefix.complete());
+        assertTrue(prefix.data().length < jpeg.length);
+        assertTrue(new String(prefix.data(), StandardCharsets.ISO_8859_1).contains("Exif\0\0secret"));
+        assertEquals((byte) 0xD9, prefix.data()[prefix.data().length - 1]);
+        // The frame header comes before the scan, so dimensions are still there
+        assertEquals(Optional.of(new ImageDimensions(64, 48)),
+                ImageDimensions.read(new ByteArrayInputStream(prefix.data()), "jpeg"));
+    }
+
+    @Test
+    void testJpeg_CutOffUploadKeepsWholeSegments() throws Exception {
+        byte[] jpeg = insertAfterSoi(createImage("jpeg"),
+                segment(0xE1, "Exif\0\0first"), segment(0xED, "Photoshop 3.0\0" + "x".repeat(1000)));
+
+        // Only part of the second segment was uploaded
+        MetadataPrefix prefix = read(Arrays.copyOf(jpeg, 2 + 16 + 200), "jpeg");
+
+        assertFalse(prefix.complete());
+        String data = new String(prefix.data(), StandardCharsets.ISO_8859_1);
+        assertTrue(data.contains("Exif\0\0first"));
+        assertFalse(data.contains("Photoshop"));
+        ImageMetadataReader.readMetadata(new ByteArrayInputStream(prefix.data()));
+    }
+
+    @Test
+    void testPng_SkipsImageData() throws Exception {
+        byte[] png = insertAfterIhdr(createImage("png"), chunk("tEXt", "Author\0Jane Doe"));
+        // Text may also follow the image data
+        int iend = png.length - 12;
+        png = concat(Arrays.copyOf(png, iend), chunk("tEXt", "Comment\0after pixels"),
+                Arrays.copyOfRange(png, iend, png.length));
+
+        MetadataPrefix prefix = read(png, "png");
+
+        assertTrue(prefix.complete());
+        String data = new String(prefix.data(), StandardCharsets.ISO_8859_1);
+        assertFalse(data.contains("IDAT"));
+        assertTrue(data.contains("after pixels"));
+        Metadata metadata = ImageMetadataReader.readMetadata(new ByteArrayInputStream(prefix.data()));
+        assertEquals(2, metadata.getDirectoriesOfType(PngDirectory.class).stream()
+                .filter(directory -> directory.getName().equals("PNG-tEXt"))
+                .count());
+    }
+
+    @Test
+    void testPng_CutOffInImageDataIsIncomplete() throws Exception {
+        byte[] png = createImage("png");
+
+        MetadataPrefix prefix = read(Arrays.copyOf(png, png.length - 20), "png");
+
+        assertFalse(prefix.complete());
+        assertFalse(new String(prefix.data(), StandardCharsets.ISO_8859_1).contains("IDAT"));
+    }
+
+    @Test
+    void testGif_StopsAtFirstImage() throws Exception {
+        byte[] gif = createImage("gif");
+
+        MetadataPrefix prefix = read(gif, "gif");
+
+        assertTrue(prefix.complete());
+        assertTrue(prefix.data().length < gif.length);
+        assertEquals(0x3B, prefix.data()[prefix.data().length - 1]);
+        ImageMetadataReader.readMetadata(new ByteArrayInputStream(prefix.data()));
+    }
+
+    @Test
+    void testUnknownContainer_IsEmpty() throws Exception {
+        assertTrue(MetadataPrefix.read(new ByteArrayInputStream(createImage("bmp")), "bmp").isEmpty());
+        assertTrue(MetadataPrefix.read(new ByteArrayInputStream(createImage("png")), "jpeg").isEmpty());
+    }
+
+    private MetadataPrefix read(byte[] image, String format) throws IOException {
+        return MetadataPrefix.read(new ByteArrayInputStream(image), format).orElseThrow();
+    }
+}
@@ -0,0 +1,111 @@
+package com.metadatastripper.service.stripper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.metadatastripper.service.stripper.ImageFixtures.chunk;
+import static com.metadatastripper.service.stripper.ImageFixtures.insertAfterIhdr;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PngMetadataStripperTest {
+
+    private PngMetadataStripper stripper;
+
+    @BeforeEach
+    void setUp() {
+        stripper = new PngMetadataStripper();
+    }
+
+    @Test
+    void testStrip_RemovesTextAndExifChunks() throws IOException {
+        byte[] original = createPng();
+        byte[] withMetadata = insertAfterIhdr(original,
+            chunk("tEXt", "Author\0Jane Doe"),
+            chunk("eXIf", "MM\0*secret"),
+            chunk("tIME", "\7\352\1\1\0\0\0"));
+
+        byte[] stripped = strip(withMetadata);
+
+        List<String> types = chunkTypes(stripped);
+        assertFalse(types.contains("tEXt"));
+        assertFalse(types.contains("eXIf"));
+        assertFalse(types.contains("tIME"));
+        assertEquals("IHDR", types.get(0));
+        assertEquals("IEND", types.get(types.size() - 1));
+    }
+
+    @Test
+    void testStrip_CopiesImageDataUnchanged() throws IOException {
+        byte[] original = createPng();
+        byte[] withMetadata = insertAfterIhdr(original, chunk("iTXt", "XML:com.adobe.xmp\0\0\0\0\0<x/>"));
+
+        byte[] stripped = strip(withMetadata);
+
+        assertArrayEquals(original, stripped);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(stripped)));
+    }
+
+    @Test
+    void testStrip_KeepsChunksAllowedByPolicy() throws IOException {
+        byte[] withGamma = insertAfterIhdr(createPng(), chunk("gAMA", "\0\0\261\217"), chunk("zTXt", "k\0\0x"));
+
+        assertTrue(chunkTypes(strip(withGamma)).contains("gAMA"));
+
+        PngMetadataStripper strict = new PngMetadataStripper(Set.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        strict.strip(new ByteArrayInputStream(withGamma), out);
+        List<String> types = chunkTypes(out.toByteArray());
+        assertFalse(types.contains("gAMA"));
+        assertFalse(types.contains("zTXt"));
+    }
+
+    @Test
+    void testStrip_NotAPng_ThrowsException() {
+        assertThrows(IOException.class, () -> strip("not a png at all".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private byte[] strip(byte[] input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stripper.strip(new ByteArrayInputStream(input), out);
+        return out.toByteArray();
+    }
+
+    private byte[] createPng() throws IOException {
+        BufferedImage img = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.GREEN);
+        g.fillRect(0, 0, 40, 30);
+        g.dispose();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", baos);
+        // Normalise whatever ancillary chunks ImageIO adds so the fixture is predictable
+        ByteArrayOutputStream normalised = new ByteArrayOutputStream();
+        new PngMetadataStripper().strip(new ByteArrayInputStream(baos.toByteArray()), normalised);
+        return normalised.toByteArray();
+    }
+
+    private List<String> chunkTypes(byte[] png) {
+        List<String> types = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(png, 8, png.length - 8);
+        while (buffer.remaining() >= 12) {
+            int length = buffer.getInt();
+            byte[] type = new byte[4];
+            buffer.get(type);
+            types.add(new String(type, StandardCharsets.US_ASCII));
+            buffer.position(buffer.position() + length + 4);
+        }
+        return types;
+    }
+}
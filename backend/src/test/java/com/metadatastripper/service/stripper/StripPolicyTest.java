@@ -0,0 +1,202 @@
+package com.metadatastripper.service.stripper;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+import com.metadatastripper.service.metadata.TagClassifier.Category;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static com.metadatastripper.service.stripper.ImageFixtures.ascii;
+import static com.metadatastripper.service.stripper.ImageFixtures.chunk;
+import static com.metadatastripper.service.stripper.ImageFixtures.concat;
+import static com.metadatastripper.service.stripper.ImageFixtures.createImage;
+import static com.metadatastripper.service.stripper.ImageFixtures.insertAfterIhdr;
+import static com.metadatastripper.service.stripper.ImageFixtures.insertAfterSoi;
+import static com.metadatastripper.service.stripper.ImageFixtures.segment;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripPolicyTest {
+
+    private static final StripPolicy KEEP_RENDERING =
+            StripPolicy.compile("keep-rendering", Set.of(), List.of("Orientation"), List.of(), true);
+
+    @Test
+    void testJpeg_KeepsOrientationAndIccOnly() throws Exception {
+        byte[] original = createImage("jpeg");
+        byte[] jpeg = insertAfterSoi(original,
+                segment(0xE1, concat(ascii("Exif\0\0"), exif(ByteOrder.BIG_ENDIAN))),
+                segment(0xE2, concat(ascii("ICC_PROFILE\0"), new byte[] {1, 1, 'p', 'r', 'o', 'f'})));
+
+        byte[] stripped = strip(KEEP_RENDERING, jpeg, "jpeg");
+
+        Metadata metadata = ImageMetadataReader.readMetadata(new ByteArrayInputStream(stripped));
+        ExifIFD0Directory ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+        assertEquals(6, ifd0.getInt(ExifIFD0Directory.TAG_ORIENTATION));
+        assertFalse(ifd0.containsTag(ExifIFD0Directory.TAG_MAKE));
+        assertNull(metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class));
+        assertNull(metadata.getFirstDirectoryOfType(GpsDirectory.class));
+        String text = new String(stripped, StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("ICC_PROFILE\0\1\1prof"));
+        assertFalse(text.contains("Canon"));
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(stripped)));
+    }
+
+    @Test
+    void testJpeg_KeepsCategoryAcrossSubIfds() throws Exception {
+        StripPolicy policy = StripPolicy.compile("location", Set.of(Category.LOCATION, Category.DATE_TIME),
+                List.of(), List.of(), false);
+        byte[] jpeg = insertAfterSoi(createImage("jpeg"),
+                segment(0xE1, concat(ascii("Exif\0\0"), exif(ByteOrder.LITTLE_ENDIAN))));
+
+        byte[] stripped = strip(policy, jpeg, "jpeg");
+
+        Metadata metadata = ImageMetadataReader.readMetadata(new ByteArrayInputStream(stripped));
+        GpsDirectory gps = metadata.getFirstDirectoryOfType(GpsDirectory.class);
+        assertEquals("N", gps.getString(GpsDirectory.TAG_LATITUDE_REF));
+        assertEquals(3, gps.getRationalArray(GpsDirectory.TAG_LATITUDE).length);
+        assertEquals(51, gps.getRationalArray(GpsDirectory.TAG_LATITUDE)[0].intValue());
+        assertEquals("2024:01:02 03:04:05",
+                metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class)
+                        .getString(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL));
+        ExifIFD0Directory ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+        assertFalse(ifd0.containsTag(ExifIFD0Directory.TAG_MAKE));
+        assertFalse(ifd0.containsTag(ExifIFD0Directory.TAG_ORIENTATION));
+    }
+
+    @Test
+    void testJpeg_DroppedTagWinsOverKeptCategory() throws Exception {
+        StripPolicy policy = StripPolicy.compile("no-orientation", Set.of(Category.IMAGE),
+                List.of(), List.of("0x0112"), false);
+        byte[] original = createImage("jpeg");
+        byte[] jpeg = insertAfterSoi(original,
+                segment(0xE1, concat(ascii("Exif\0\0"), exif(ByteOrder.BIG_ENDIAN))));
+
+        // Nothing left to keep, so the segment goes entirely
+        assertArrayEquals(original, strip(policy, jpeg, "jpeg"));
+    }
+
+    @Test
+    void testJpeg_RemoveAllDropsIccAndExif() throws Exception {
+        byte[] original = createImage("jpeg");
+        byte[] jpeg = insertAfterSoi(original,
+                segment(0xE1, concat(ascii("Exif\0\0"), exif(ByteOrder.BIG_ENDIAN))),
+                segment(0xE2, concat(ascii("ICC_PROFILE\0"), new byte[] {1, 1})));
+
+        assertArrayEquals(original, strip(StripPolicy.REMOVE_ALL, jpeg, "jpeg"));
+    }
+
+    @Test
+    void testJpeg_MalformedExifIsDropped() throws Exception {
+        byte[] tiff = exif(ByteOrder.BIG_ENDIAN);
+        // Point the Make value past the end of the segment
+        ByteBuffer.wrap(tiff).putInt(8 + 2 + 8, 10_000);
+        StripPolicy policy = StripPolicy.compile("make", Set.of(), List.of("Make", "Orientation"), List.of(), false);
+        byte[] original = createImage("jpeg");
+        byte[] jpeg = insertAfterSoi(original, segment(0xE1, concat(ascii("Exif\0\0"), tiff)));
+
+        assertArrayEquals(original, strip(policy, jpeg, "jpeg"));
+    }
+
+    @Test
+    void testPng_RewritesExifChunk() throws Exception {
+        byte[] png = insertAfterIhdr(createImage("png"),
+                chunk("eXIf", exif(ByteOrder.BIG_ENDIAN)),
+                chunk("iCCP", ascii("icc\0\0profile")));
+
+        byte[] stripped = strip(KEEP_RENDERING, png, "png");
+
+        byte[] exif = chunkData(stripped, "eXIf");
+        assertNotNull(exif);
+        assertFalse(new String(exif, StandardCharsets.ISO_8859_1).contains("Canon"));
+        assertNotNull(chunkData(stripped, "iCCP"));
+        Metadata metadata = ImageMetadataReader.readMetadata(new ByteArrayInputStream(stripped));
+        assertEquals(6, metadata.getFirstDirectoryOfType(ExifIFD0Directory.class)
+                .getInt(ExifIFD0Directory.TAG_ORIENTATION));
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(stripped)));
+    }
+
+    @Test
+    void testCompile_UnknownTagName() {
+        assertThrows(IllegalArgumentException.class, () ->
+                StripPolicy.compile("typo", Set.of(), List.of("Orientaton"), List.of(), false));
+    }
+
+    /**
+     * IFD0 with Make and Orientation, an Exif IFD with DateTimeOriginal and a
+     * GPS IFD with a latitude
+     */
+    private byte[] exif(ByteOrder order) {
+        ByteBuffer b = ByteBuffer.allocate(160).order(order);
+        b.put(ascii(order == ByteOrder.BIG_ENDIAN ? "MM" : "II")).putShort((short) 42).putInt(8);
+
+        b.putShort((short) 4);
+        entry(b, 0x010F, 2, 6).putInt(62);
+        entry(b, 0x0112, 3, 1).putShort((short) 6).putShort((short) 0);
+        entry(b, 0x8769, 4, 1).putInt(68);
+        entry(b, 0x8825, 4, 1).putInt(106);
+        b.putInt(0);
+        b.put(ascii("Canon\0"));
+
+        b.putShort((short) 1);
+        entry(b, 0x9003, 2, 20).putInt(86);
+        b.putInt(0);
+        b.put(ascii("2024:01:02 03:04:05\0"));
+
+        b.putShort((short) 2);
+        entry(b, 0x0001, 2, 2).put(ascii("N\0\0\0"));
+        entry(b, 0x0002, 5, 3).putInt(136);
+        b.putInt(0);
+        b.putInt(51).putInt(1).putInt(30).putInt(1).putInt(0).putInt(1);
+
+        assertEquals(160, b.position());
+        return b.array();
+    }
+
+    private ByteBuffer entry(ByteBuffer b, int tag, int type, int count) {
+        return b.putShort((short) tag).putShort((short) type).putInt(count);
+    }
+
+    private byte[] strip(StripPolicy policy, byte[] image, String format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        switch (policy.stripperFor(format)) {
+            case StreamingStripper streaming -> streaming.strip(new ByteArrayInputStream(image), out);
+            case RandomAccessStripper randomAccess -> randomAccess.strip(ByteBuffer.wrap(image), out);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a chunk's data after checking its CRC, or null if there is none
+     */
+    private byte[] chunkData(byte[] png, String type) {
+        ByteBuffer b = ByteBuffer.wrap(png, 8, png.length - 8);
+        while (b.remaining() >= 12) {
+            int length = b.getInt();
+            byte[] typeBytes = new byte[4];
+            b.get(typeBytes);
+            byte[] data = new byte[length];
+            b.get(data);
+            int crc = b.getInt();
+            if (type.equals(new String(typeBytes, StandardCharsets.US_ASCII))) {
+                CRC32 expected = new CRC32();
+                expected.update(typeBytes);
+                expected.update(data);
+                assertEquals((int) expected.getValue(), crc);
+                return data;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,168 @@
+package com.metadatastripper.service.stripper;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+
+import static com.metadatastripper.service.stripper.ImageFixtures.ascii;
+import static com.metadatastripper.service.stripper.ImageFixtures.contains;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TiffMetadataStripperTest {
+
+    private static final int SIZE = 4;
+    private static final int STRIP_LENGTH = 2 * SIZE * 3;
+
+    @Test
+    void testStrip_DropsMetadataAndKeepsPixels() throws IOException {
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            byte[] tiff = createTiff(order, 1);
+
+            byte[] stripped = strip(new TiffMetadataStripper(), tiff);
+
+            assertFalse(contains(stripped, "Canon"), order.toString());
+            assertFalse(contains(stripped, "xmpmeta"), order.toString());
+            assertFalse(contains(stripped, "2024:01:02"), order.toString());
+            assertPixelsEqual(ImageIO.read(new ByteArrayInputStream(tiff)),
+                    ImageIO.read(new ByteArrayInputStream(stripped)));
+        }
+    }
+
+    @Test
+    void testStrip_KeepsEveryPage() throws IOException {
+        byte[] stripped = strip(new TiffMetadataStripper(), createTiff(ByteOrder.BIG_ENDIAN, 3));
+
+        ImageReader reader = ImageIO.getImageReadersByFormatName("tiff").next();
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(stripped))) {
+            reader.setInput(stream);
+            assertEquals(3, reader.getNumImages(true));
+            assertEquals(80, reader.read(2).getRaster().getSample(0, 0, 0));
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    @Test
+    void testStrip_KeepsIfd0TagsAllowedByPolicy() throws IOException {
+        BitSet make = new BitSet();
+        make.set(0x010F);
+        TiffMetadataStripper stripper = new TiffMetadataStripper(new ExifRewriter(make, new BitSet(), new BitSet()), false);
+
+        byte[] stripped = strip(stripper, createTiff(ByteOrder.LITTLE_ENDIAN, 1));
+
+        assertTrue(contains(stripped, "Canon"));
+        assertFalse(contains(stripped, "xmpmeta"));
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(stripped)));
+    }
+
+    @Test
+    void testStrip_RejectsBigTiffAndLoopingIfds() throws IOException {
+        byte[] bigTiff = {'I', 'I', 43, 0, 8, 0, 0, 0, 16, 0, 0, 0, 0, 0, 0, 0};
+        assertThrows(IOException.class, () -> strip(new TiffMetadataStripper(), bigTiff));
+
+        byte[] looping = createTiff(ByteOrder.BIG_ENDIAN, 2);
+        ByteBuffer buffer = ByteBuffer.wrap(looping);
+        int firstIfd = buffer.getInt(4);
+        int nextPointer = firstIfd + 2 + buffer.getShort(firstIfd) * 12;
+        buffer.putInt(nextPointer, firstIfd);
+        assertThrows(IOException.class, () -> strip(new TiffMetadataStripper(), looping));
+    }
+
+    @Test
+    void testStrip_RejectsStripsCopiedMoreThanOnce() {
+        byte[] overlapping = createTiff(ByteOrder.BIG_ENDIAN, 1);
+        ByteBuffer buffer = ByteBuffer.wrap(overlapping);
+        // Both strips cover the whole file
+        int stripOffsets = 8 + 2 * STRIP_LENGTH;
+        buffer.putInt(stripOffsets, 0).putInt(stripOffsets + 4, 0);
+        buffer.putInt(stripOffsets + 8, overlapping.length).putInt(stripOffsets + 12, overlapping.length);
+
+        assertThrows(IOException.class, () -> strip(new TiffMetadataStripper(), overlapping));
+    }
+
+    private byte[] strip(TiffMetadataStripper stripper, byte[] tiff) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stripper.strip(ByteBuffer.wrap(tiff), out);
+        return out.toByteArray();
+    }
+
+    private void assertPixelsEqual(BufferedImage expected, BufferedImage actual) {
+        assertNotNull(actual);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Builds an uncompressed RGB TIFF of 4x4 pages, each stored in two
+     * strips, with a Make, XMP and an Exif IFD holding DateTimeOriginal.
+     * Page p is filled with sample values 40 * p.
+     */
+    private byte[] createTiff(ByteOrder order, int pages) {
+        ByteBuffer tiff = ByteBuffer.allocate(4096).order(order);
+        tiff.put(ascii(order == ByteOrder.LITTLE_ENDIAN ? "II" : "MM")).putShort((short) 42).putInt(0);
+        int previousNext = 4;
+        for (int page = 0; page < pages; page++) {
+            int strips = tiff.position();
+            for (int i = 0; i < 2 * STRIP_LENGTH; i++) {
+                tiff.put((byte) (40 * page));
+            }
+            int stripOffsets = tiff.position();
+            tiff.putInt(strips).putInt(strips + STRIP_LENGTH);
+            int stripCounts = tiff.position();
+            tiff.putInt(STRIP_LENGTH).putInt(STRIP_LENGTH);
+            int bitsPerSample = tiff.position();
+            tiff.putShort((short) 8).putShort((short) 8).putShort((short) 8);
+            int make = tiff.position();
+            tiff.put(ascii("Canon\0"));
+            int xmp = tiff.position();
+            tiff.put(ascii("<x:xmpmeta/>"));
+            int dateTime = tiff.position();
+            tiff.put(ascii("2024:01:02 03:04:05\0"));
+            int exifIfd = tiff.position();
+            tiff.putShort((short) 1);
+            entry(tiff, 0x9003, 2, 20, dateTime);
+            tiff.putInt(0);
+
+            int ifd = tiff.position();
+            tiff.putInt(previousNext, ifd);
+            tiff.putShort((short) 12);
+            shortEntry(tiff, 256, SIZE);
+            shortEntry(tiff, 257, SIZE);
+            entry(tiff, 258, 3, 3, bitsPerSample);
+            shortEntry(tiff, 259, 1);
+            shortEntry(tiff, 262, 2);
+            entry(tiff, 271, 2, 6, make);
+            entry(tiff, 273, 4, 2, stripOffsets);
+            shortEntry(tiff, 277, 3);
+            shortEntry(tiff, 278, 2);
+            entry(tiff, 279, 4, 2, stripCounts);
+            entry(tiff, 700, 1, 12, xmp);
+            entry(tiff, 0x8769, 4, 1, exifIfd);
+            previousNext = tiff.position();
+            tiff.putInt(0);
+        }
+        byte[] bytes = new byte[tiff.position()];
+        tiff.get(0, bytes);
+        return bytes;
+    }
+
+    private void shortEntry(ByteBuffer tiff, int tag, int value) {
+        tiff.putShort((short) tag).putShort((short) 3).putInt(1).putShort((short) value).putShort((short) 0);
+    }
+
+    private void entry(ByteBuffer tiff, int tag, int type, int count, int value) {
+        tiff.putShort((short) tag).putShort((short) type).putInt(count).putInt(value);
+    }
+}
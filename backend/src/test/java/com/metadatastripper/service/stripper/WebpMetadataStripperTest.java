@@ -0,0 +1,108 @@
+package com.metadatastripper.service.stripper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+
+import static com.metadatastripper.service.stripper.ImageFixtures.ascii;
+import static com.metadatastripper.service.stripper.ImageFixtures.concat;
+import static com.metadatastripper.service.stripper.ImageFixtures.contains;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebpMetadataStripperTest {
+
+    private static final byte[] BITSTREAM = ascii("lossless pixels");
+
+    @Test
+    void testStrip_RemovesExifAndXmpAndClearsFlags() throws IOException {
+        byte[] webp = webp(
+            chunk("VP8X", vp8x(0x20 | 0x08 | 0x04 | 0x10)),
+            chunk("ICCP", ascii("prof")),
+            chunk("VP8L", BITSTREAM),
+            chunk("EXIF", exif()),
+            chunk("XMP ", ascii("<x:xmpmeta>secret</x:xmpmeta>")));
+
+        byte[] stripped = strip(new WebpMetadataStripper(), webp);
+
+        // Only the alpha flag survives, and the odd-sized bitstream keeps its padding
+        assertArrayEquals(webp(chunk("VP8X", vp8x(0x10)), chunk("VP8L", BITSTREAM)), stripped);
+    }
+
+    @Test
+    void testStrip_KeepsWhatPolicyAllows() throws IOException {
+        BitSet orientation = new BitSet();
+        orientation.set(0x0112);
+        WebpMetadataStripper stripper = new WebpMetadataStripper(
+                new ExifRewriter(orientation, new BitSet(), new BitSet()), true);
+        byte[] webp = webp(
+            chunk("VP8X", vp8x(0x20 | 0x08)),
+            chunk("ICCP", ascii("prof")),
+            chunk("VP8L", BITSTREAM),
+            chunk("EXIF", exif()));
+
+        byte[] stripped = strip(stripper, webp);
+
+        assertEquals(0x28, stripped[20]);
+        assertTrue(contains(stripped, ascii("ICCP\4\0\0\0prof")));
+        assertTrue(contains(stripped, ascii("EXIF")));
+        assertFalse(contains(stripped, ascii("Canon")));
+        assertEquals(stripped.length - 8, ByteBuffer.wrap(stripped).order(ByteOrder.LITTLE_ENDIAN).getInt(4));
+    }
+
+    @Test
+    void testStrip_DropsTrailingDataAfterRiff() throws IOException {
+        byte[] webp = webp(chunk("VP8L", BITSTREAM));
+        byte[] withTrailer = concat(webp, ascii("appended data"));
+
+        assertArrayEquals(webp, strip(new WebpMetadataStripper(), withTrailer));
+    }
+
+    @Test
+    void testStrip_RejectsNonWebp() {
+        assertThrows(IOException.class, () -> strip(new WebpMetadataStripper(), ascii("RIFF\0\0\0\0WAVEfmt ")));
+    }
+
+    private byte[] strip(WebpMetadataStripper stripper, byte[] webp) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stripper.strip(ByteBuffer.wrap(webp), out);
+        return out.toByteArray();
+    }
+
+    private byte[] webp(byte[]... chunks) {
+        byte[] body = concat(chunks);
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(ascii("RIFF")).putInt(4 + body.length).put(ascii("WEBP"));
+        return concat(header.array(), body);
+    }
+
+    private byte[] chunk(String type, byte[] data) {
+        ByteBuffer chunk = ByteBuffer.allocate(8 + data.length + (data.length & 1)).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.put(ascii(type)).putInt(data.length).put(data);
+        return chunk.array();
+    }
+
+    /**
+     * Feature flags, then canvas width and height minus one as 24-bit values
+     */
+    private byte[] vp8x(int flags) {
+        return new byte[] {(byte) flags, 0, 0, 0, 15, 0, 0, 15, 0, 0};
+    }
+
+    /**
+     * A little-endian TIFF with Make "Canon" and Orientation 6 in IFD0
+     */
+    private byte[] exif() {
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 2 + 2 * 12 + 4 + 6).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put(ascii("II")).putShort((short) 42).putInt(8);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x010F).putShort((short) 2).putInt(6).putInt(38);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 6).putShort((short) 0);
+        tiff.putInt(0);
+        tiff.put(ascii("Canon\0"));
+        return tiff.array();
+    }
+}
@@ -0,0 +1,217 @@
+package com.metadatastripper.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds metadata payloads shaped like a DSLR's: a TIFF/EXIF block with
+ * camera settings, GPS and a tag-heavy maker note, and a large XMP packet.
+ */
+final class ExifPayload {
+
+    private static final short ASCII = 2;
+    private static final short SHORT = 3;
+    private static final short LONG = 4;
+    private static final short RATIONAL = 5;
+    private static final short BYTE = 1;
+    private static final short UNDEFINED = 7;
+
+    private static final int EXIF_IFD_POINTER = 0x8769;
+    private static final int GPS_IFD_POINTER = 0x8825;
+
+    // Maker notes are where the bulk of a camera's tags live
+    private static final int MAKER_NOTE_TAGS = 400;
+    private static final int XMP_SUBJECTS = 600;
+
+    private ExifPayload() {
+    }
+
+    /**
+     * A big-endian TIFF block with IFD0, Exif and GPS directories
+     */
+    static byte[] tiff(int width, int height) {
+        byte[] makerNote = makerNote();
+        List<Entry> ifd0 = new ArrayList<>(List.of(
+            ascii(0x010E, "Holiday snapshot"),
+            ascii(0x010F, "Canon"),
+            ascii(0x0110, "Canon EOS R5"),
+            shorts(0x0112, 1),
+            rationals(0x011A, 72, 1),
+            rationals(0x011B, 72, 1),
+            shorts(0x0128, 2),
+            ascii(0x0131, "Firmware Version 1.8.1"),
+            ascii(0x0132, "2024:05:01 12:34:56"),
+            ascii(0x013B, "Jane Doe"),
+            ascii(0x8298, "Copyright Jane Doe. All rights reserved."),
+            longs(EXIF_IFD_POINTER, 0),
+            longs(GPS_IFD_POINTER, 0)
+        ));
+
+        List<Entry> exif = List.of(
+            rationals(0x829A, 1, 250),
+            rationals(0x829D, 28, 10),
+            shorts(0x8827, 400),
+            ascii(0x9003, "2024:05:01 12:34:56"),
+            ascii(0x9004, "2024:05:01 12:34:56"),
+            rationals(0x920A, 50, 1),
+            new Entry(0x927C, UNDEFINED, makerNote.length, makerNote),
+            new Entry(0x9286, UNDEFINED, 0, concat("ASCII\0\0\0".getBytes(StandardCharsets.US_ASCII),
+                "Taken on the beach at sunset".getBytes(StandardCharsets.US_ASCII))),
+            longs(0xA002, width),
+            longs(0xA003, height),
+            ascii(0xA431, "123456789012"),
+            ascii(0xA434, "RF24-105mm F4 L IS USM")
+        );
+
+        List<Entry> gps = List.of(
+            new Entry(0x0000, BYTE, 4, new byte[]{2, 3, 0, 0}),
+            ascii(0x0001, "N"),
+            rationals(0x0002, 51, 1, 30, 1, 2634, 100),
+            ascii(0x0003, "W"),
+            rationals(0x0004, 0, 1, 7, 1, 3972, 100),
+            new Entry(0x0005, BYTE, 1, new byte[]{0}),
+            rationals(0x0006, 3520, 100),
+            ascii(0x001D, "2024:05:01")
+        );
+
+        int ifd0Offset = 8;
+        int exifOffset = ifd0Offset + ifdSize(ifd0);
+        int gpsOffset = exifOffset + ifdSize(exif);
+        int dataOffset = gpsOffset + ifdSize(gps);
+        ifd0.replaceAll(entry -> switch (entry.tag) {
+            case EXIF_IFD_POINTER -> longs(EXIF_IFD_POINTER, exifOffset);
+            case GPS_IFD_POINTER -> longs(GPS_IFD_POINTER, gpsOffset);
+            default -> entry;
+        });
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteBuffer ifds = ByteBuffer.allocate(dataOffset);
+        ifds.put(new byte[]{'M', 'M', 0, 42}).putInt(ifd0Offset);
+        writeIfd(ifds, ifd0, dataOffset, data);
+        writeIfd(ifds, exif, dataOffset, data);
+        writeIfd(ifds, gps, dataOffset, data);
+        return concat(ifds.array(), data.toByteArray());
+    }
+
+    /**
+     * An XMP packet with a long keyword list, as written by photo managers
+     */
+    static byte[] xmp() {
+        StringBuilder xmp = new StringBuilder()
+            .append("<?xpacket begin=\"\uFEFF\" id=\"W5M0MpCehiHzreSzNTczkc9d\"?>\n")
+            .append("<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">\n")
+            .append("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">\n")
+            .append("<rdf:Description rdf:about=\"\"")
+            .append(" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"")
+            .append(" xmlns:xmp=\"http://ns.adobe.com/xap/1.0/\"")
+            .append(" xmlns:photoshop=\"http://ns.adobe.com/photoshop/1.0/\"")
+            .append(" xmlns:exif=\"http://ns.adobe.com/exif/1.0/\"")
+            .append(" xmp:CreatorTool=\"Adobe Lightroom Classic 13.2\"")
+            .append(" xmp:CreateDate=\"2024-05-01T12:34:56\"")
+            .append(" photoshop:City=\"London\"")
+            .append(" photoshop:Country=\"United Kingdom\"")
+            .append(" exif:GPSLatitude=\"51,30.4390N\"")
+            .append(" exif:GPSLongitude=\"0,7.6620W\">\n")
+            .append("<dc:creator><rdf:Seq><rdf:li>Jane Doe</rdf:li></rdf:Seq></dc:creator>\n")
+            .append("<dc:subject><rdf:Bag>\n");
+        for (int i = 0; i < XMP_SUBJECTS; i++) {
+            xmp.append("<rdf:li>keyword-").append(i).append("</rdf:li>\n");
+        }
+        xmp.append("</rdf:Bag></dc:subject>\n")
+            .append("</rdf:Description>\n")
+            .append("</rdf:RDF>\n")
+            .append("</x:xmpmeta>\n")
+            .append(" ".repeat(2048))
+            .append("<?xpacket end=\"w\"?>");
+        return xmp.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A Canon-style maker note: a bare IFD whose values all fit inline
+     */
+    private static byte[] makerNote() {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < MAKER_NOTE_TAGS; i++) {
+            entries.add(shorts(0x0100 + i, i, MAKER_NOTE_TAGS - i));
+        }
+        ByteBuffer ifd = ByteBuffer.allocate(ifdSize(entries));
+        writeIfd(ifd, entries, 0, new ByteArrayOutputStream());
+        return ifd.array();
+    }
+
+    private static int ifdSize(List<Entry> entries) {
+        return 2 + 12 * entries.size() + 4;
+    }
+
+    /**
+     * Writes an IFD; values over 4 bytes go to {@code data}, which starts at {@code dataOffset}
+     */
+    private static void writeIfd(ByteBuffer out, List<Entry> entries, int dataOffset, ByteArrayOutputStream data) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingInt(entry -> entry.tag));
+        out.putShort((short) sorted.size());
+        for (Entry entry : sorted) {
+            out.putShort((short) entry.tag).putShort(entry.type).putInt(entry.count);
+            if (entry.value.length <= 4) {
+                out.put(entry.value).put(new byte[4 - entry.value.length]);
+            } else {
+                out.putInt(dataOffset + data.size());
+                data.write(entry.value, 0, entry.value.length);
+                if (data.size() % 2 != 0) {
+                    data.write(0);
+                }
+            }
+        }
+        out.putInt(0);
+    }
+
+    private static Entry ascii(int tag, String value) {
+        byte[] bytes = (value + "\0").getBytes(StandardCharsets.US_ASCII);
+        return new Entry(tag, ASCII, bytes.length, bytes);
+    }
+
+    private static Entry shorts(int tag, int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * values.length);
+        for (int value : values) {
+            buffer.putShort((short) value);
+        }
+        return new Entry(tag, SHORT, values.length, buffer.array());
+    }
+
+    private static Entry longs(int tag, int value) {
+        return new Entry(tag, LONG, 1, ByteBuffer.allocate(4).putInt(value).array());
+    }
+
+    /**
+     * @param values numerator and denominator pairs
+     */
+    private static Entry rationals(int tag, int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return new Entry(tag, RATIONAL, values.length / 2, buffer.array());
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private record Entry(int tag, short type, int count, byte[] value) {
+
+        Entry {
+            // UNDEFINED entries built without a count are sized from their value
+            if (count == 0) {
+                count = value.length;
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.metadatastripper.benchmarks;
+
+import javax.imageio.ImageIO;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Generates the benchmark corpus: images of every supported format at
+ * several sizes, either straight from the encoder or carrying the kind of
+ * metadata a phone or DSLR writes (EXIF with GPS and maker notes, XMP, ICC).
+ *
+ * Everything is generated from a fixed seed, so runs are comparable.
+ */
+public final class ImageCorpus {
+
+    /**
+     * Image sizes, from a thumbnail up to a 40MP sensor
+     */
+    public enum Size {
+        THUMBNAIL(160, 120),
+        MP2(1600, 1200),
+        MP12(4000, 3000),
+        MP40(7744, 5163);
+
+        private final int width;
+        private final int height;
+
+        Size(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Metadata carried by the image. BMP has nowhere to put metadata, so
+     * HEAVY BMPs are the same as NONE.
+     */
+    public enum Payload {
+        NONE,
+        HEAVY
+    }
+
+    private static final long SEED = 42;
+
+    private ImageCorpus() {
+    }
+
+    /**
+     * Returns an encoded image
+     *
+     * @param format jpeg, png, gif or bmp
+     */
+    public static byte[] generate(String format, Size size, Payload payload) {
+        try {
+            byte[] image = encode(render(size.width, size.height, format), format);
+            if (payload == Payload.NONE) {
+                return image;
+            }
+            return switch (format) {
+                case "jpeg" -> withJpegMetadata(image, size);
+                case "png" -> withPngMetadata(image, size);
+                case "gif" -> withGifMetadata(image);
+                default -> image;
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the file name the service expects for a format
+     */
+    public static String fileName(String format) {
+        return "corpus." + (format.equals("jpeg") ? "jpg" : format);
+    }
+
+    /**
+     * A gradient with noise: compresses like a photo rather than a flat fill
+     */
+    private static BufferedImage render(int width, int height, String format) {
+        BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) rgb.getRaster().getDataBuffer()).getData();
+        Random random = new Random(SEED);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(16);
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = ((x ^ y) & 0x3F) + noise;
+                pixels[y * width + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+        if (!format.equals("gif")) {
+            return rgb;
+        }
+
+        BufferedImage indexed = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED);
+        indexed.createGraphics().drawImage(rgb, 0, 0, null);
+        return indexed;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, out)) {
+            throw new IOException("No ImageIO writer for " + format);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Inserts EXIF, XMP and ICC segments right after SOI
+     */
+    private static byte[] withJpegMetadata(byte[] jpeg, Size size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length + 65536 * 3);
+        out.write(jpeg, 0, 2);
+        writeJpegSegment(out, 0xE1, concat("Exif\0\0".getBytes(StandardCharsets.US_ASCII), ExifPayload.tiff(size.width, size.height)));
+        writeJpegSegment(out, 0xE1, concat("http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII), ExifPayload.xmp()));
+        writeJpegSegment(out, 0xE2, concat("ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII), new byte[]{1, 1}, iccProfile()));
+        writeJpegSegment(out, 0xFE, "Generated by the metadata-stripper benchmark corpus".getBytes(StandardCharsets.US_ASCII));
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static void writeJpegSegment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        int length = payload.length + 2;
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("JPEG segment too large: " + length);
+        }
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length);
+        out.write(payload, 0, payload.length);
+    }
+
+    /**
+     * Inserts eXIf, iTXt (XMP), iCCP and tEXt chunks right after IHDR
+     */
+    private static byte[] withPngMetadata(byte[] png, Size size) throws IOException {
+        // Signature (8) + IHDR chunk (8 + 13 + 4)
+        int ihdrEnd = 8 + 25;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(png.length + 65536 * 3);
+        out.write(png, 0, ihdrEnd);
+        writePngChunk(out, "eXIf", ExifPayload.tiff(size.width, size.height));
+        writePngChunk(out, "iTXt", concat("XML:com.adobe.xmp\0\0\0\0\0".getBytes(StandardCharsets.US_ASCII), ExifPayload.xmp()));
+        writePngChunk(out, "iCCP", concat("sRGB IEC61966-2.1\0\0".getBytes(StandardCharsets.US_ASCII), deflate(iccProfile())));
+        writePngChunk(out, "tEXt", "Author\0Jane Doe".getBytes(StandardCharsets.ISO_8859_1));
+        writePngChunk(out, "tEXt", "Description\0Benchmark corpus image".getBytes(StandardCharsets.ISO_8859_1));
+        out.write(png, ihdrEnd, png.length - ihdrEnd);
+        return out.toByteArray();
+    }
+
+    private static void writePngChunk(ByteArrayOutputStream out, String type, byte[] data) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        byte[] chunk = ByteBuffer.allocate(data.length + 12)
+                .putInt(data.length)
+                .put(typeBytes)
+                .put(data)
+                .putInt((int) crc.getValue())
+                .array();
+        out.write(chunk, 0, chunk.length);
+    }
+
+    /**
+     * Inserts a comment extension holding the XMP packet after the header
+     * and global color table
+     */
+    private static byte[] withGifMetadata(byte[] gif) {
+        // Header (6) + logical screen descriptor (7) + optional global color table
+        int packed = gif[10] & 0xFF;
+        int headerEnd = 13 + ((packed & 0x80) != 0 ? 3 * (1 << ((packed & 0x07) + 1)) : 0);
+
+        byte[] comment = ExifPayload.xmp();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(gif.length + comment.length + comment.length / 255 + 16);
+        out.write(gif, 0, headerEnd);
+        out.write(0x21);
+        out.write(0xFE);
+        for (int offset = 0; offset < comment.length; offset += 255) {
+            int length = Math.min(255, comment.length - offset);
+            out.write(length);
+            out.write(comment, offset, length);
+        }
+        out.write(0);
+        out.write(gif, headerEnd, gif.length - headerEnd);
+        return out.toByteArray();
+    }
+
+    private static byte[] iccProfile() {
+        return ICC_Profile.getInstance(ColorSpace.CS_sRGB).getData();
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
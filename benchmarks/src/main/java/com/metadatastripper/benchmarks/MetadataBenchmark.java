@@ -0,0 +1,92 @@
+package com.metadatastripper.benchmarks;
+
+import com.metadatastripper.dto.ImageMetadataDto;
+import com.metadatastripper.service.MetadataStripperService;
+import com.metadatastripper.service.metadata.MetadataFields;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metadata extraction and stripping across the corpus.
+ *
+ * The full matrix is large; narrow it with -p, e.g.
+ * {@code -p format=jpeg -p size=MP12}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MetadataBenchmark {
+
+    @Param({"jpeg", "png", "gif", "bmp"})
+    private String format;
+
+    @Param({"THUMBNAIL", "MP2", "MP12", "MP40"})
+    private ImageCorpus.Size size;
+
+    @Param({"NONE", "HEAVY"})
+    private ImageCorpus.Payload payload;
+
+    private static final MetadataFields LOCATION = MetadataFields.of("location", false);
+    private static final MetadataFields SUMMARY = MetadataFields.of(null, true);
+
+    private final MetadataStripperService service = new MetadataStripperService();
+    private String fileName;
+    private byte[] image;
+    private MockMultipartFile file;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fileName = ImageCorpus.fileName(format);
+        image = ImageCorpus.generate(format, size, payload);
+        file = new MockMultipartFile("file", fileName, "image/" + format, image);
+    }
+
+    @Benchmark
+    public ImageMetadataDto extractMetadata() {
+        return service.extractMetadata(file);
+    }
+
+    /**
+     * A projection to one group, as a location preview would ask for
+     */
+    @Benchmark
+    public ImageMetadataDto extractMetadataLocation() {
+        return service.extractMetadata(file, LOCATION);
+    }
+
+    @Benchmark
+    public ImageMetadataDto extractMetadataSummary() {
+        return service.extractMetadata(file, SUMMARY);
+    }
+
+    @Benchmark
+    public byte[] stripMetadata() {
+        return service.stripMetadata(file);
+    }
+
+    /**
+     * The raw-body streaming path, without materialising the output
+     */
+    @Benchmark
+    public void stripMetadataStreaming() {
+        service.stripMetadata(new ByteArrayInputStream(image), fileName, OutputStream.nullOutputStream());
+    }
+}
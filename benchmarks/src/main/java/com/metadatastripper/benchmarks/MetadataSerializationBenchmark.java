@@ -0,0 +1,110 @@
+package com.metadatastripper.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.metadatastripper.dto.ImageMetadataDto;
+import com.metadatastripper.service.MetadataStripperService;
+import com.metadatastripper.service.metadata.CompactMetadataEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The v1 metadata response against the compact v2 one, from parsed upload
+ * to encoded bytes. Both parse the same header; v1 then builds its maps and
+ * v2 describes tags as it writes them. The cached variants start from what
+ * the result cache holds: the v1 DTO, and the encoded v2 body. Response
+ * sizes are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class MetadataSerializationBenchmark {
+
+    public enum Encoding {
+        JSON(MediaType.APPLICATION_JSON),
+        CBOR(MediaType.APPLICATION_CBOR),
+        SMILE(CompactMetadataEncoder.APPLICATION_SMILE);
+
+        private final MediaType mediaType;
+
+        Encoding(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+    }
+
+    @Param({"jpeg", "png"})
+    private String format;
+
+    @Param({"NONE", "HEAVY"})
+    private ImageCorpus.Payload payload;
+
+    @Param({"JSON", "CBOR", "SMILE"})
+    private Encoding encoding;
+
+    private final MetadataStripperService service = new MetadataStripperService();
+    private final CompactMetadataEncoder encoder = new CompactMetadataEncoder();
+    private final ObjectMapper json = new ObjectMapper();
+    private MockMultipartFile file;
+    private ImageMetadataDto cachedV1;
+    private byte[] cachedV2;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Metadata doesn't grow with the image, so the smallest one will do
+        byte[] image = ImageCorpus.generate(format, ImageCorpus.Size.THUMBNAIL, payload);
+        file = new MockMultipartFile("file", ImageCorpus.fileName(format), "image/" + format, image);
+        cachedV1 = service.extractMetadata(file);
+        cachedV2 = encoder.encodeBody(service.extractCompactMetadata(file), encoding.mediaType);
+
+        System.out.printf("%nResponse bytes: v1 JSON %d, v2 %s %d%n",
+                json.writeValueAsBytes(cachedV1).length, encoding, encodeV2(cachedV2).length);
+    }
+
+    /**
+     * v1 is only served as JSON, so this ignores the encoding parameter
+     */
+    @Benchmark
+    public void metadataV1() throws IOException {
+        json.writeValue(OutputStream.nullOutputStream(), service.extractMetadata(file));
+    }
+
+    @Benchmark
+    public byte[] metadataV2() {
+        return encodeV2(encoder.encodeBody(service.extractCompactMetadata(file), encoding.mediaType));
+    }
+
+    /**
+     * A v1 cache hit still serializes the cached DTO
+     */
+    @Benchmark
+    public void metadataV1Cached() throws IOException {
+        json.writeValue(OutputStream.nullOutputStream(), cachedV1);
+    }
+
+    @Benchmark
+    public byte[] metadataV2Cached() {
+        return encodeV2(cachedV2);
+    }
+
+    private byte[] encodeV2(byte[] body) {
+        return encoder.encode(file.getOriginalFilename(), file.getSize(), body, encoding.mediaType);
+    }
+}
@@ -0,0 +1,84 @@
+package com.metadatastripper.benchmarks;
+
+import com.metadatastripper.service.RateLimitService;
+import com.metadatastripper.service.ratelimit.BucketBackend;
+import com.metadatastripper.service.ratelimit.InMemoryBucketBackend;
+import com.metadatastripper.service.ratelimit.JdbcBucketBackend;
+import com.metadatastripper.service.ratelimit.RateLimitPolicies;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request rate limit check, for one hot client and for many
+ * distinct clients. Most calls are rejections once the buckets drain,
+ * which is the path a flood of requests takes. The jdbc backend runs
+ * against an embedded H2 database, so it shows the limiter's own overhead
+ * rather than network latency to a real shared store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class RateLimitBenchmark {
+
+    @Param({"1", "100000"})
+    private int clients;
+
+    @Param({"memory", "jdbc"})
+    private String backend;
+
+    private BucketBackend bucketBackend;
+    private RateLimitService rateLimitService;
+    private String[] addresses;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("jdbc".equals(backend)) {
+            JdbcBucketBackend jdbc = new JdbcBucketBackend(
+                    JdbcConnectionPool.create("jdbc:h2:mem:buckets;DB_CLOSE_DELAY=-1", "", ""),
+                    Duration.ofMinutes(2), 0, Duration.ZERO);
+            jdbc.initializeSchema();
+            bucketBackend = jdbc;
+        } else {
+            bucketBackend = new InMemoryBucketBackend(300_000, Duration.ofMinutes(2));
+        }
+        rateLimitService = new RateLimitService(new SimpleMeterRegistry(), bucketBackend,
+                new RateLimitPolicies(), 100_000, Duration.ofMinutes(2), 64);
+        addresses = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            addresses[i] = "10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bucketBackend.close();
+    }
+
+    @Benchmark
+    public boolean allowRequest() {
+        String address = addresses[ThreadLocalRandom.current().nextInt(addresses.length)];
+        return rateLimitService.allowRequest(address);
+    }
+}
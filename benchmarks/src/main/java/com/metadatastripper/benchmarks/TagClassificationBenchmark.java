@@ -0,0 +1,109 @@
+package com.metadatastripper.benchmarks;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.Tag;
+import com.metadatastripper.service.metadata.TagClassifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grouping every tag of a tag-heavy camera JPEG: the precompiled
+ * {@link TagClassifier} against the keyword scan it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagClassificationBenchmark {
+
+    // The keyword sets and scan exactly as extractMetadata had them before the classifier
+    private static final Set<String> CAMERA_KEYWORDS = new HashSet<>(Arrays.asList(
+        "camera", "make", "model", "lens", "focal", "aperture", "iso", "shutter",
+        "exposure", "flash", "metering", "white balance", "f-number", "f-stop",
+        "manufacturer", "brightness", "contrast", "saturation", "sharpness"
+    ));
+
+    private static final Set<String> LOCATION_KEYWORDS = new HashSet<>(Arrays.asList(
+        "gps", "latitude", "longitude", "altitude", "location", "coordinates",
+        "geo", "position", "place"
+    ));
+
+    private static final Set<String> DATETIME_KEYWORDS = new HashSet<>(Arrays.asList(
+        "date", "time", "timestamp", "created", "modified", "digitized",
+        "datetime", "original", "offset"
+    ));
+
+    private static final Set<String> IMAGE_KEYWORDS = new HashSet<>(Arrays.asList(
+        "width", "height", "resolution", "dimension", "dpi", "orientation",
+        "color space", "bits per sample", "compression", "photometric",
+        "pixel", "image", "x resolution", "y resolution", "unit"
+    ));
+
+    private final TagClassifier classifier = TagClassifier.getInstance();
+    private final List<Directory> directories = new ArrayList<>();
+    private final List<Tag> tags = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] image = ImageCorpus.generate("jpeg", ImageCorpus.Size.THUMBNAIL, ImageCorpus.Payload.HEAVY);
+        Metadata metadata = ImageMetadataReader.readMetadata(new ByteArrayInputStream(image));
+        for (Directory directory : metadata.getDirectories()) {
+            for (Tag tag : directory.getTags()) {
+                directories.add(directory);
+                tags.add(tag);
+            }
+        }
+    }
+
+    @Benchmark
+    public void precompiledTable(Blackhole blackhole) {
+        for (int i = 0; i < tags.size(); i++) {
+            blackhole.consume(classifier.classify(directories.get(i), tags.get(i).getTagType()));
+        }
+    }
+
+    @Benchmark
+    public void keywordScan(Blackhole blackhole) {
+        for (int i = 0; i < tags.size(); i++) {
+            String key = directories.get(i).getName() + " - " + tags.get(i).getTagName();
+            String lowerKey = key.toLowerCase();
+            if (containsAny(lowerKey, CAMERA_KEYWORDS)) {
+                blackhole.consume(TagClassifier.Category.CAMERA);
+            } else if (containsAny(lowerKey, LOCATION_KEYWORDS)) {
+                blackhole.consume(TagClassifier.Category.LOCATION);
+            } else if (containsAny(lowerKey, DATETIME_KEYWORDS)) {
+                blackhole.consume(TagClassifier.Category.DATE_TIME);
+            } else if (containsAny(lowerKey, IMAGE_KEYWORDS)) {
+                blackhole.consume(TagClassifier.Category.IMAGE);
+            } else {
+                blackhole.consume(TagClassifier.Category.OTHER);
+            }
+        }
+    }
+
+    private boolean containsAny(String text, Set<String> keywords) {
+        return keywords.stream().anyMatch(text::contains);
+    }
+}
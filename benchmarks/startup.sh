@@ -0,0 +1,46 @@
+#!/usr/bin/env bash
+# Cold start of the backend: the time until /images/health answers, then the
+# latency of the first metadata request, which pays for ImageIO and
+# metadata-extractor initialisation. Prints one line per run.
+#
+#   ./startup.sh <image> <runs> <command...>
+#   ./startup.sh photo.jpg 5 java -jar ../backend/target/metadata-stripper-1.0.0-exec.jar
+#   ./startup.sh photo.jpg 5 ../backend/target/metadata-stripper
+set -euo pipefail
+
+if [ $# -lt 3 ]; then
+    sed -n '2,8p' "$0"
+    exit 1
+fi
+
+image=$1
+runs=$2
+shift 2
+port=${SERVER_PORT:-8080}
+base="http://localhost:$port/images"
+
+now_ms() {
+    echo $(( $(date +%s%N) / 1000000 ))
+}
+
+for run in $(seq "$runs"); do
+    start=$(now_ms)
+    SERVER_PORT=$port "$@" > /dev/null 2>&1 &
+    pid=$!
+    trap 'kill $pid 2>/dev/null || true' EXIT
+
+    until curl -sf "$base/health" > /dev/null; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "run $run: server exited before becoming healthy" >&2
+            exit 1
+        fi
+        sleep 0.01
+    done
+    ready=$(now_ms)
+
+    first=$(curl -sf -o /dev/null -w '%{time_total}' -F "file=@$image" "$base/metadata")
+
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    echo "run $run: startup $((ready - start)) ms, first metadata request $(awk "BEGIN {print $first * 1000}") ms"
+done
@@ -1,5 +1,5 @@
 import React, { useState, useRef, useEffect } from 'react';
-import { extractMetadata, stripMetadata } from '../services/apiService';
+import { processImage, downloadCleanedImage, stripMetadata } from '../services/apiService';
 import MetadataViewer from './MetadataViewer';
 import ErrorMessage from './ErrorMessage';
 import CloudStoragePicker from './CloudStoragePicker';
@@ -21,6 +21,7 @@ const ImageUploader = () => {
   const [selectedFile, setSelectedFile] = useState(null);
   const [previewUrl, setPreviewUrl] = useState(null);
   const [metadata, setMetadata] = useState(null);
+  const [downloadToken, setDownloadToken] = useState(null);
   const [loading, setLoading] = useState(false);
   const [error, setError] = useState(null);
   const [dragActive, setDragActive] = useState(false);
@@ -85,9 +86,12 @@ const ImageUploader = () => {
   
   const handleFileUpload = async (file) => {
     // Validate file type
-    const validTypes = ['image/jpeg', 'image/jpg', 'image/png', 'image/gif', 'image/bmp'];
-    if (!validTypes.includes(file.type)) {
-      setError('Please select a valid image file (JPG, PNG, GIF, BMP)');
+    const validTypes = ['image/jpeg', 'image/jpg', 'image/png', 'image/gif', 'image/bmp',
+      'image/webp', 'image/tiff', 'image/heic', 'image/heif', 'image/avif'];
+    // Browsers often leave the type of HEIC files empty, so fall back to the name
+    const validExtension = /\.(heic|heif|avif)$/i.test(file.name);
+    if (!validTypes.includes(file.type) && !validExtension) {
+      setError('Please select a valid image file (JPG, PNG, GIF, BMP, WebP, TIFF, HEIC, AVIF)');
       return;
     }
     
@@ -99,6 +103,7 @@ const ImageUploader = () => {
     
     setSelectedFile(file);
     setMetadata(null);
+    setDownloadToken(null);
     setError(null);
     setProcessingStep('idle');
     
@@ -133,8 +138,11 @@ const ImageUploader = () => {
     setProcessingStep('viewing');
     
     try {
-      const data = await extractMetadata(selectedFile);
+      // The server strips the file in the same request and keeps the result
+      // for one download, so stripping afterwards needs no second upload
+      const { metadata: data, downloadToken: token } = await processImage(selectedFile);
       setMetadata(data);
+      setDownloadToken(token);
       
       // Save metadata along with file
       const storableFile = await fileToStorable(selectedFile);
@@ -171,7 +179,18 @@ const ImageUploader = () => {
     setProcessingStep('stripping');
     
     try {
-      const cleanedBlob = await stripMetadata(selectedFile);
+      let cleanedBlob = null;
+      if (downloadToken) {
+        setDownloadToken(null);
+        try {
+          cleanedBlob = await downloadCleanedImage(downloadToken);
+        } catch {
+          // Token expired - fall back to uploading the file again
+        }
+      }
+      if (!cleanedBlob) {
+        cleanedBlob = await stripMetadata(selectedFile);
+      }
       
       // Create download link
       const url = window.URL.createObjectURL(cleanedBlob);
@@ -202,6 +221,7 @@ const ImageUploader = () => {
     setSelectedFile(null);
     setPreviewUrl(null);
     setMetadata(null);
+    setDownloadToken(null);
     setError(null);
     setProcessingStep('idle');
     if (fileInputRef.current) {
@@ -244,14 +264,14 @@ const ImageUploader = () => {
                             
               <div className="upload-text">
                 <h3>Drop files here or click to upload</h3>
-                <p className="upload-hint">Supported formats: JPG, PNG, GIF, BMP (Max 10MB)</p>
+                <p className="upload-hint">Supported formats: JPG, PNG, GIF, BMP, WebP, TIFF, HEIC, AVIF (Max 10MB)</p>
               </div>
               
               <input
                 type="file"
                 ref={fileInputRef}
                 onChange={handleFileSelect}
-                accept="image/jpeg,image/jpg,image/png,image/gif,image/bmp"
+                accept="image/jpeg,image/jpg,image/png,image/gif,image/bmp,image/webp,image/tiff,image/heic,image/heif,image/avif,.heic,.heif,.avif"
                 className="file-input-hidden"
                 id="file-input"
               />
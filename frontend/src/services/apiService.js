@@ -12,11 +12,19 @@ const apiClient = axios.create({
 /**
  * Extract metadata from an image
  * @param {File} file - The image file to analyze
+ * @param {number} [prefixBytes] - Only upload this many bytes from the start
+ *   of the file; metadata sits at the front, so the result stays the same
+ *   unless it is marked partial
  * @returns {Promise} - Promise with metadata information
  */
-export const extractMetadata = async (file) => {
+export const extractMetadata = async (file, prefixBytes) => {
   const formData = new FormData();
-  formData.append('file', file);
+  if (prefixBytes && file.size > prefixBytes) {
+    formData.append('file', file.slice(0, prefixBytes), file.name);
+    formData.append('fileSize', file.size);
+  } else {
+    formData.append('file', file);
+  }
   
   try {
     const response = await apiClient.post('/metadata', formData);
@@ -29,16 +37,56 @@ export const extractMetadata = async (file) => {
 };
 
 /**
- * Strip metadata from an image and download the cleaned version
- * @param {File} file - The image file to clean
- * @returns {Promise} - Promise with cleaned image blob
+ * Extract metadata and strip it in a single upload
+ * @param {File} file - The image file to process
+ * @param {string} [policy] - Strip policy name; the server default if omitted
+ * @returns {Promise} - Promise with metadata and a one-time download token
  */
-export const stripMetadata = async (file) => {
+export const processImage = async (file, policy) => {
   const formData = new FormData();
   formData.append('file', file);
+  if (policy) {
+    formData.append('policy', policy);
+  }
   
   try {
-    const response = await apiClient.post('/strip', formData, {
+    const response = await apiClient.post('/process', formData);
+    return response.data;
+  } catch (error) {
+    throw new Error(
+      error.response?.data?.error || 'Failed to process image'
+    );
+  }
+};
+
+/**
+ * Download a cleaned image produced by processImage
+ * @param {string} token - The download token returned by processImage
+ * @returns {Promise} - Promise with cleaned image blob
+ */
+export const downloadCleanedImage = async (token) => {
+  try {
+    const response = await apiClient.get(`/download/${token}`, {
+      responseType: 'blob',
+    });
+    return response.data;
+  } catch {
+    throw new Error('Cleaned image is no longer available');
+  }
+};
+
+/**
+ * Strip metadata from an image and download the cleaned version
+ * @param {File} file - The image file to clean
+ * @param {string} [policy] - Strip policy name; the server default if omitted
+ * @returns {Promise} - Promise with cleaned image blob
+ */
+export const stripMetadata = async (file, policy) => {
+  try {
+    // Send the raw file so the server can strip it as a stream
+    const response = await apiClient.post('/strip/stream', file, {
+      params: { filename: file.name, policy },
+      headers: { 'Content-Type': file.type || 'application/octet-stream' },
       responseType: 'blob',
     });
     return response.data;